@@ -33,6 +33,10 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        // Local unit tests run classes that log; android.jar stubs return defaults instead of throwing
+        unitTests.isReturnDefaultValues = true
+    }
     
     // Add lint options to ignore errors during build
     lint {
@@ -55,6 +59,7 @@ dependencies {
     implementation("androidx.navigation:navigation-fragment:2.6.0")
     implementation("androidx.navigation:navigation-ui:2.6.0")
     implementation("androidx.cardview:cardview:1.0.0")
+    implementation("androidx.recyclerview:recyclerview:1.3.2")
     testImplementation("junit:junit:4.13.2")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
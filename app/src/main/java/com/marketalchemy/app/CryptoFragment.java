@@ -27,6 +27,8 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -36,7 +38,6 @@ import okhttp3.Request;
 import okhttp3.Response;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.res.ColorStateList;
 import android.graphics.Color;
 import java.util.Currency;
@@ -47,9 +48,11 @@ import com.marketalchemy.app.api.BybitApiClient;
 import com.marketalchemy.app.api.BybitUpdateClient;
 import com.marketalchemy.app.api.CoinGeckoApiClient;
 import com.marketalchemy.app.api.CoinGeckoUpdateClient;
+import com.marketalchemy.app.api.InstrumentRegistry;
 import android.util.TypedValue;
+import com.marketalchemy.app.data.TradeLedger;
+import com.marketalchemy.app.model.OrderResult;
 import com.marketalchemy.app.model.VirtualPortfolio;
-import com.marketalchemy.app.model.Investment;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Spinner;
@@ -62,9 +65,8 @@ public class CryptoFragment extends Fragment {
     private EditText quantityInput;
     private Spinner spinnerCrypto;
     
-    // List of supported cryptocurrencies
-    private final String[] supportedCryptos = {"BTC", "ETH", "SOL", "BNB", "XRP", "ADA"};
-    private final String[] cryptoNames = {"Bitcoin", "Ethereum", "Solana", "Binance Coin", "Ripple", "Cardano"};
+    // Tradable instruments, in spinner order
+    private List<InstrumentRegistry.Instrument> instruments;
     private String currentCryptoId = "BTC"; // Default to Bitcoin
     
     private String getCurrentCryptoId() {
@@ -79,10 +81,6 @@ public class CryptoFragment extends Fragment {
 
     // Virtual portfolio for consistent portfolio tracking
     private VirtualPortfolio portfolio;
-    // Shared preferences for transaction history
-    private SharedPreferences prefs;
-    private static final String PREFS_NAME = "MarketAlchemyPrefs";
-    private static final String KEY_TRANSACTION_HISTORY = "transaction_history";
     
     private BybitUpdateClient updateClient;
     
@@ -112,9 +110,8 @@ public class CryptoFragment extends Fragment {
                 mainHandler = new Handler(Looper.getMainLooper());
             }
             
-            // Initialize SharedPreferences and portfolio
-            prefs = requireActivity().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            portfolio = new VirtualPortfolio(requireContext());
+            // Initialize portfolio
+            portfolio = VirtualPortfolio.getInstance(requireContext());
             
             // Initialize the currency format explicitly to ensure $ symbol
             currencyFormat.setCurrency(Currency.getInstance("USD"));
@@ -143,8 +140,9 @@ public class CryptoFragment extends Fragment {
                 priceSectionClickable.setOnClickListener(v -> {
                     // Get the current selected cryptocurrency
                     int position = spinnerCrypto.getSelectedItemPosition();
-                    String symbol = supportedCryptos[position];
-                    String name = cryptoNames[position];
+                    InstrumentRegistry.Instrument instrument = instruments.get(position);
+                    String symbol = instrument.symbol;
+                    String name = instrument.name;
                     
                     // Navigate to the detail fragment with the selected cryptocurrency
                     BitcoinDetailFragment.navigate(this, symbol, name);
@@ -184,6 +182,8 @@ public class CryptoFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
+        // Pick up a portfolio switch made while paused; loaded portfolios are cached
+        portfolio = VirtualPortfolio.getInstance(requireContext());
         fetchCryptoData();
         updatePortfolioDisplay();
     }
@@ -283,18 +283,15 @@ public class CryptoFragment extends Fragment {
         try {
             // Update holdings for current crypto if we own any
             if (portfolio != null && portfolio.hasInvestment(cryptoId)) {
-                Investment investment = portfolio.getInvestment(cryptoId);
-                if (investment != null) {
-                    double quantity = investment.getQuantity();
-                    String quantityStr = String.format(Locale.US, "Holdings: %.8f %s ($%.2f)", 
-                                                    quantity, cryptoId, quantity * currentPrice);
-                    
-                    // Update UI instead of showing toast
-                    TextView holdingsView = getView().findViewById(R.id.tvHoldings);
-                    if (holdingsView != null) {
-                        holdingsView.setText(quantityStr);
-                        holdingsView.setVisibility(View.VISIBLE);
-                    }
+                double quantity = portfolio.getQuantity(cryptoId);
+                String quantityStr = String.format(Locale.US, "Holdings: %.8f %s ($%.2f)", 
+                                                quantity, cryptoId, quantity * currentPrice);
+                
+                // Update UI instead of showing toast
+                TextView holdingsView = getView().findViewById(R.id.tvHoldings);
+                if (holdingsView != null) {
+                    holdingsView.setText(quantityStr);
+                    holdingsView.setVisibility(View.VISIBLE);
                 }
             } else {
                 // No holdings for this crypto
@@ -330,6 +327,11 @@ public class CryptoFragment extends Fragment {
     
     private void setupCryptoSpinner() {
         // Create an adapter for the spinner with crypto names
+        instruments = InstrumentRegistry.getInstance().getInstruments();
+        List<String> cryptoNames = new ArrayList<>(instruments.size());
+        for (InstrumentRegistry.Instrument instrument : instruments) {
+            cryptoNames.add(instrument.name);
+        }
         ArrayAdapter<String> adapter = new ArrayAdapter<>(requireContext(), 
                 android.R.layout.simple_spinner_item, cryptoNames);
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
@@ -340,29 +342,30 @@ public class CryptoFragment extends Fragment {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 // Update the current crypto ID
-                currentCryptoId = supportedCryptos[position];
+                InstrumentRegistry.Instrument instrument = instruments.get(position);
+                currentCryptoId = instrument.symbol;
                 
                 // Update the crypto title to show name and symbol
                 TextView titleView = getView().findViewById(R.id.tvBitcoinTitle);
                 if (titleView != null) {
-                    titleView.setText(cryptoNames[position] + " (" + supportedCryptos[position] + ")");
+                    titleView.setText(instrument.name + " (" + instrument.symbol + ")");
                 }
                 
                 // Update the trade amount section
                 TextView cryptoSymbolView = getView().findViewById(R.id.tvCryptoSymbol);
                 if (cryptoSymbolView != null) {
-                    cryptoSymbolView.setText(supportedCryptos[position]);
+                    cryptoSymbolView.setText(instrument.symbol);
                 }
                 
                 // Update the input hint
                 com.google.android.material.textfield.TextInputLayout amountInputLayout = 
                     getView().findViewById(R.id.amountInputLayout);
                 if (amountInputLayout != null) {
-                    amountInputLayout.setHint("Enter " + supportedCryptos[position] + " amount");
+                    amountInputLayout.setHint("Enter " + instrument.symbol + " amount");
                 }
                 
                 // Set up price update listener for the selected cryptocurrency using BybitUpdateClient
-                String symbol = supportedCryptos[position];
+                String symbol = instrument.symbol;
                 // First untrack all symbols to prevent multiple callbacks
                 updateClient.untrackAllSymbols();
                 
@@ -392,124 +395,91 @@ public class CryptoFragment extends Fragment {
     }
     
     private void handleBuy() {
+        placeOrder(true);
+    }
+    
+    private void handleSell() {
+        String cryptoId = getCurrentCryptoId();
+        
+        // Check if the user has this crypto investment
+        if (!portfolio.hasInvestment(cryptoId)) {
+            showToast("You don't own any " + cryptoId + " to sell", Toast.LENGTH_SHORT);
+            return;
+        }
+        placeOrder(false);
+    }
+    
+    /**
+     * Quote the current crypto and execute against the quote, all off the main thread.
+     * The price shown in the result is the price charged and recorded.
+     */
+    private void placeOrder(boolean isBuy) {
         try {
             String quantityStr = quantityInput.getText().toString();
-            if (!quantityStr.isEmpty()) {
-                double quantity = Double.parseDouble(quantityStr);
-                if (quantity > 0) {
-                    // Get current price from tvPrice
-                    String priceStr = tvPrice.getText().toString().replaceAll("[^0-9.]", "");
-                    double currentPrice = Double.parseDouble(priceStr);
-                    double totalCost = quantity * currentPrice;
-                    
-                    // Try to buy using the portfolio
-                    String cryptoId = getCurrentCryptoId();
-                    boolean success = portfolio.buyCrypto(cryptoId, quantity);
-                    
-                    if (success) {
-                        // Save transaction to history
-                        String transaction = String.format(Locale.US, 
-                            "BUY %.8f %s @ $%.2f = $%.2f", 
-                            quantity, cryptoId, currentPrice, totalCost);
-                        saveTransaction(transaction);
-                        
-                        // Update UI
-                        updatePortfolioDisplay();
-                        
-                        // Show success message
-                        String successMessage = String.format(Locale.US,
-                            "Successfully bought %.8f %s\nPrice: $%.2f\nTotal: $%.2f",
-                            quantity, cryptoId, currentPrice, totalCost);
-                        showToast(successMessage, Toast.LENGTH_LONG);
-                        
-                        // Clear input field
-                        quantityInput.setText("");
-                    } else {
-                        showToast(
-                            "Insufficient funds. You need $" + String.format(Locale.US, "%.2f", totalCost),
-                            Toast.LENGTH_SHORT);
-                    }
-                } else {
-                    showToast(
-                        "Please enter a positive quantity",
-                        Toast.LENGTH_SHORT);
-                }
-            } else {
-                showToast(
-                    "Please enter a quantity",
-                    Toast.LENGTH_SHORT);
+            if (quantityStr.isEmpty()) {
+                showToast("Please enter a quantity", Toast.LENGTH_SHORT);
+                return;
+            }
+            double quantity = Double.parseDouble(quantityStr);
+            if (quantity <= 0) {
+                showToast("Please enter a positive quantity", Toast.LENGTH_SHORT);
+                return;
             }
+            
+            String cryptoId = getCurrentCryptoId();
+            portfolio.requestQuote(cryptoId)
+                    .thenCompose(quote -> isBuy ? portfolio.buy(quote, quantity) : portfolio.sell(quote, quantity))
+                    .whenComplete((result, error) -> mainHandler.post(() -> onOrderResult(result, error)));
         } catch (NumberFormatException e) {
-            showToast(
-                "Invalid quantity",
-                Toast.LENGTH_SHORT);
+            showToast("Invalid quantity", Toast.LENGTH_SHORT);
         }
     }
     
-    private void saveTransaction(String transaction) {
-        String history = prefs.getString(KEY_TRANSACTION_HISTORY, "");
-        history = transaction + "\n" + history;
-        prefs.edit().putString(KEY_TRANSACTION_HISTORY, history).apply();
-    }
-    
-    private void handleSell() {
-        try {
-            String quantityStr = quantityInput.getText().toString();
-            if (!quantityStr.isEmpty()) {
-                double quantity = Double.parseDouble(quantityStr);
-                if (quantity > 0) {
-                    // Get current price from tvPrice
-                    String priceStr = tvPrice.getText().toString().replaceAll("[^0-9.]", "");
-                    double currentPrice = Double.parseDouble(priceStr);
-                    double totalValue = quantity * currentPrice;
-                    
-                    String cryptoId = getCurrentCryptoId();
-                    
-                    // Check if the user has this crypto investment
-                    if (portfolio.hasInvestment(cryptoId)) {
-                        // Try to sell using the portfolio
-                        boolean success = portfolio.sellCrypto(cryptoId, quantity);
-                        
-                        if (success) {
-                            // Save transaction to history
-                            String transaction = String.format(Locale.US, 
-                                "SELL %.8f %s @ $%.2f = $%.2f", 
-                                quantity, cryptoId, currentPrice, totalValue);
-                            saveTransaction(transaction);
-                            
-                            // Update UI
-                            updatePortfolioDisplay();
-                            
-                            // Show success message
-                            String successMessage = String.format(Locale.US,
-                                "Successfully sold %.8f %s\nPrice: $%.2f\nTotal: $%.2f",
-                                quantity, cryptoId, currentPrice, totalValue);
-                            showToast(successMessage, Toast.LENGTH_LONG);
-                            
-                            // Clear input field
-                            quantityInput.setText("");
-                        } else {
-                            showToast("Insufficient " + cryptoId + " holdings", Toast.LENGTH_SHORT);
-                        }
-                    } else {
-                        showToast("You don't own any " + cryptoId + " to sell", Toast.LENGTH_SHORT);
-                    }
-                } else {
-                    showToast(
-                        "Please enter a positive quantity",
-                        Toast.LENGTH_SHORT);
-                }
-            } else {
-                showToast(
-                    "Please enter a quantity",
-                    Toast.LENGTH_SHORT);
-                }
-            } catch (NumberFormatException e) {
+    private void onOrderResult(OrderResult result, Throwable error) {
+        if (!isAdded() || getContext() == null) {
+            return;
+        }
+        if (error != null) {
+            Log.e("CryptoFragment", "Order failed: " + error.getMessage());
+            showToast("Could not get a price, please try again", Toast.LENGTH_SHORT);
+            return;
+        }
+        
+        String cryptoId = result.getCryptoId();
+        switch (result.getStatus()) {
+            case FILLED: {
+                // Update UI
+                updatePortfolioDisplay();
+                
+                // Show success message
+                String successMessage = String.format(Locale.US,
+                    "Successfully %s %.8f %s\nPrice: $%.2f\nTotal: $%.2f",
+                    TradeLedger.SIDE_BUY.equals(result.getSide()) ? "bought" : "sold",
+                    result.getQuantity(), cryptoId, result.getPrice(), result.getTotal());
+                showToast(successMessage, Toast.LENGTH_LONG);
+                
+                // Clear input field
+                quantityInput.setText("");
+                break;
+            }
+            case INSUFFICIENT_FUNDS: {
+                double totalCost = result.getQuantity() * result.getPrice();
                 showToast(
-                    "Invalid quantity",
+                    "Insufficient funds. You need $" + String.format(Locale.US, "%.2f", totalCost),
                     Toast.LENGTH_SHORT);
+                break;
             }
+            case INSUFFICIENT_HOLDINGS:
+                showToast("Insufficient " + cryptoId + " holdings", Toast.LENGTH_SHORT);
+                break;
+            case QUOTE_EXPIRED:
+                showToast("Price expired, please try again", Toast.LENGTH_SHORT);
+                break;
+            case INVALID_QUANTITY:
+                showToast("Quantity is below the minimum step", Toast.LENGTH_SHORT);
+                break;
         }
+    }
     
     private void handleAddMoney() {
         // Create an EditText for the user to input the amount
@@ -546,15 +516,9 @@ public class CryptoFragment extends Fragment {
                         double amount = Double.parseDouble(amountStr);
                         if (amount > 0) {
                             // Add the money to the portfolio (true means it's an addition)
-                            portfolio.setBalance(amount, true);
-                            
-                            // Update the UI
-                            updatePortfolioDisplay();
-                            
-                            // Show success message
-                            showToast(
-                                "Successfully added $" + String.format(Locale.US, "%.2f", amount) + " to your portfolio", 
-                                Toast.LENGTH_SHORT);
+                            portfolio.setBalance(amount, true)
+                                    .whenComplete((result, error) -> mainHandler.post(() -> onBalanceResult(error,
+                                            "Successfully added $" + String.format(Locale.US, "%.2f", amount) + " to your portfolio")));
                         } else {
                             showToast(
                                 "Please enter a positive amount", 
@@ -575,6 +539,23 @@ public class CryptoFragment extends Fragment {
             .show();
     }
     
+    private void onBalanceResult(Throwable error, String successMessage) {
+        if (!isAdded() || getContext() == null) {
+            return;
+        }
+        if (error != null) {
+            Log.e("CryptoFragment", "Balance change failed: " + error.getMessage());
+            showToast("Could not update your balance, please try again", Toast.LENGTH_SHORT);
+            return;
+        }
+        
+        // Update the UI
+        updatePortfolioDisplay();
+        
+        // Show success message
+        showToast(successMessage, Toast.LENGTH_SHORT);
+    }
+    
     private void handleSetMoney() {
         // Create an EditText for the user to input the amount
         final EditText input = new EditText(requireContext());
@@ -610,15 +591,9 @@ public class CryptoFragment extends Fragment {
                         double amount = Double.parseDouble(amountStr);
                         if (amount > 0) {
                             // Set the money in the portfolio (false means it's setting a new value, not adding)
-                            portfolio.setBalance(amount, false);
-                            
-                            // Update the UI
-                            updatePortfolioDisplay();
-                            
-                            // Show success message
-                            showToast(
-                                "Successfully set $" + String.format(Locale.US, "%.2f", amount) + " in your portfolio", 
-                                Toast.LENGTH_SHORT);
+                            portfolio.setBalance(amount, false)
+                                    .whenComplete((result, error) -> mainHandler.post(() -> onBalanceResult(error,
+                                            "Successfully set $" + String.format(Locale.US, "%.2f", amount) + " in your portfolio")));
                         } else {
                             showToast(
                                 "Please enter a positive amount", 
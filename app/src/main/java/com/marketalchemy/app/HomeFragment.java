@@ -24,7 +24,8 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.marketalchemy.app.api.BybitApiClient;
 import com.marketalchemy.app.api.BybitUpdateClient;
-import com.marketalchemy.app.model.Investment;
+import com.marketalchemy.app.api.InstrumentRegistry;
+import com.marketalchemy.app.model.PortfolioState;
 import com.marketalchemy.app.model.VirtualPortfolio;
 
 import java.text.NumberFormat;
@@ -47,14 +48,14 @@ public class HomeFragment extends Fragment {
     private ImageView ivNotifications;
     private FirebaseAuth mAuth;
     private VirtualPortfolio portfolio;
+    private long renderedVersion = -1; // Version of the portfolio state on screen
     
     private final Handler updateHandler = new Handler(Looper.getMainLooper());
     private final BybitUpdateClient updateClient = BybitUpdateClient.getInstance();
     private final NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(Locale.US);
     
-    // Supported cryptocurrencies
-    private final String[] supportedCryptos = {"BTC", "ETH", "SOL", "BNB", "XRP", "ADA"};
-    private final String[] cryptoNames = {"Bitcoin", "Ethereum", "Solana", "Binance Coin", "Ripple", "Cardano"};
+    // Instrument lookups for the holdings table
+    private final InstrumentRegistry instrumentRegistry = InstrumentRegistry.getInstance();
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -71,7 +72,7 @@ public class HomeFragment extends Fragment {
         mAuth = FirebaseAuth.getInstance();
         
         // Initialize portfolio
-        portfolio = new VirtualPortfolio(requireContext());
+        portfolio = VirtualPortfolio.getInstance(requireContext());
         
         // Initialize views
         tvUsername = view.findViewById(R.id.tvUsername);
@@ -106,7 +107,7 @@ public class HomeFragment extends Fragment {
         updateUserInfo();
         
         // Update portfolio display
-        updatePortfolioInfo();
+        renderPortfolio(portfolio.getState());
         
         // Initial display for Bitcoin (will be updated with real data)
         updateBitcoinDisplay(0.0);
@@ -118,10 +119,12 @@ public class HomeFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
+        // Pick up a portfolio switch made while paused; loaded portfolios are cached
+        portfolio = VirtualPortfolio.getInstance(requireContext());
         // Start price updates when fragment is resumed
         startPriceUpdates();
         // Update portfolio display
-        updatePortfolioInfo();
+        renderPortfolio(portfolio.getState());
     }
     
     @Override
@@ -159,13 +162,22 @@ public class HomeFragment extends Fragment {
         }
     }
     
+    /**
+     * Draw the holdings table and the portfolio figures from one snapshot
+     */
+    private void renderPortfolio(PortfolioState snapshot) {
+        renderedVersion = snapshot.getVersion();
+        updateCryptoHoldings(snapshot);
+        updatePortfolioInfo(snapshot);
+    }
+    
     /**
      * Updates the portfolio information
+     * @param snapshot Portfolio state to show; every figure comes from this one snapshot
      */
-    private void updatePortfolioInfo() {
-        double balance = portfolio.getBalance();
-        double totalInvestmentValue = portfolio.getInvestmentsValue();
-        double portfolioValue = balance + totalInvestmentValue;
+    private void updatePortfolioInfo(PortfolioState snapshot) {
+        double balance = snapshot.getBalance();
+        double portfolioValue = snapshot.getTotalValue();
         
         // Update the wallet balance
         tvWalletBalance.setText(currencyFormat.format(balance));
@@ -173,13 +185,12 @@ public class HomeFragment extends Fragment {
         // Update the total portfolio value
         tvPortfolioValue.setText(currencyFormat.format(portfolioValue));
         
-        // Calculate profit/loss - For simplicity, we'll just show total portfolio value
-        double initialBalance = 10000.0; // Assuming starting with $10,000
-        double profitLoss = portfolioValue - initialBalance;
+        // Time-weighted return, so deposits and withdrawals don't count as profit
+        double profitLoss = snapshot.getTimeWeightedReturn();
         
         // Format with + or - sign
         String profitLossText = String.format(Locale.US, "%s%.2f%%", 
-                profitLoss >= 0 ? "+" : "", (profitLoss / initialBalance) * 100);
+                profitLoss >= 0 ? "+" : "", profitLoss * 100);
         
         // Set the profit/loss text
         tvProfitLoss.setText(profitLossText);
@@ -190,10 +201,10 @@ public class HomeFragment extends Fragment {
     }
     
     private void updateBitcoinDisplay(double price) {
-        // Get Bitcoin investment if it exists
-        Investment bitcoinInvestment = portfolio.getInvestment("BTC");
-        if (bitcoinInvestment != null) {
-            double quantity = bitcoinInvestment.getQuantity();
+        // Get Bitcoin holdings if any
+        PortfolioState snapshot = portfolio.getState();
+        if (snapshot.contains("BTC")) {
+            double quantity = snapshot.getQuantity("BTC");
             double value = quantity * price;
             
             // Format the BTC amount with 8 decimal places (standard for BTC)
@@ -211,8 +222,9 @@ public class HomeFragment extends Fragment {
     
     /**
      * Updates the crypto holdings display in the UI as a clean table
+     * @param snapshot Portfolio state to show
      */
-    private void updateCryptoHoldings() {
+    private void updateCryptoHoldings(PortfolioState snapshot) {
         // Clear existing rows (except header)
         if (cryptoTableLayout != null) {
             // Keep header row and remove all others
@@ -223,14 +235,14 @@ public class HomeFragment extends Fragment {
         }
         
         try {
-            // Create a row for each supported cryptocurrency
-            for (int i = 0; i < supportedCryptos.length; i++) {
-                final String symbol = supportedCryptos[i];
-                final String name = cryptoNames[i];
+            // Create a row for each featured cryptocurrency
+            List<InstrumentRegistry.Instrument> featured = instrumentRegistry.getFeaturedInstruments();
+            for (int i = 0; i < featured.size(); i++) {
+                final String symbol = featured.get(i).symbol;
+                final String name = featured.get(i).name;
                 
-                // Get investment data if it exists
-                Investment investment = portfolio.getInvestment(symbol);
-                final double quantity = investment != null ? investment.getQuantity() : 0.0;
+                // Get held quantity, 0 if none
+                final double quantity = snapshot.getQuantity(symbol);
                 
                 // Create table row
                 TableRow row = new TableRow(requireContext());
@@ -263,7 +275,7 @@ public class HomeFragment extends Fragment {
                 cryptoTableLayout.addView(row);
                 
                 // Add divider
-                if (i < supportedCryptos.length - 1) {
+                if (i < featured.size() - 1) {
                     View divider = new View(requireContext());
                     divider.setLayoutParams(new TableLayout.LayoutParams(
                             TableLayout.LayoutParams.MATCH_PARENT, 1));
@@ -283,9 +295,11 @@ public class HomeFragment extends Fragment {
             @Override
             public void run() {
                 try {
-                    // Update all supported cryptocurrencies
-                    updateCryptoHoldings();
-                    updatePortfolioInfo(); // Refresh all values
+                    // Read one snapshot and redraw only if the portfolio changed
+                    PortfolioState snapshot = portfolio.getState();
+                    if (snapshot.getVersion() != renderedVersion) {
+                        renderPortfolio(snapshot); // Refresh all values
+                    }
                     
                     // Schedule next update
                     updateHandler.postDelayed(this, 1000); // Real-time 1-second updates
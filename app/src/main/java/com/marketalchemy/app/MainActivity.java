@@ -1,5 +1,6 @@
 package com.marketalchemy.app;
 
+import android.app.AlertDialog;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.MenuItem;
@@ -11,6 +12,8 @@ import androidx.fragment.app.Fragment;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.marketalchemy.app.data.PersistenceCoordinator;
+import com.marketalchemy.app.model.VirtualPortfolio;
 import com.marketalchemy.app.utils.ThemeManager;
 
 public class MainActivity extends AppCompatActivity {
@@ -49,6 +52,32 @@ public class MainActivity extends AppCompatActivity {
                     .replace(R.id.fragment_container, new HomeFragment())
                     .commit();
         }
+        
+        showRecoveryFailure();
+    }
+    
+    /**
+     * Tell the user once if the saved portfolio could not be recovered at startup
+     */
+    private void showRecoveryFailure() {
+        VirtualPortfolio portfolio = VirtualPortfolio.getInstance(this);
+        if (!portfolio.isRecoveryFailed()) {
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Portfolio could not be restored")
+                .setMessage("Your saved portfolio was damaged and could not be fully recovered, "
+                        + "so an older or fresh portfolio has been opened. Your trade history is kept.")
+                .setPositiveButton("OK", (dialog, which) -> portfolio.acknowledgeRecoveryFailure())
+                .setCancelable(false)
+                .show();
+    }
+    
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Write pending portfolio, order and history state before going to background
+        PersistenceCoordinator.getInstance().flush();
     }
     
     /**
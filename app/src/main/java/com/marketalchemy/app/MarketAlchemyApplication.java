@@ -3,6 +3,13 @@ package com.marketalchemy.app;
 import android.app.Application;
 import androidx.appcompat.app.AppCompatDelegate;
 
+import com.marketalchemy.app.api.InstrumentRegistry;
+import com.marketalchemy.app.data.EquityCurveStore;
+import com.marketalchemy.app.data.TickHistoryStore;
+import com.marketalchemy.app.model.PortfolioRegistry;
+import com.marketalchemy.app.model.VirtualPortfolio;
+import com.marketalchemy.app.orders.OrderMatcher;
+
 public class MarketAlchemyApplication extends Application {
     @Override
     public void onCreate() {
@@ -10,5 +17,18 @@ public class MarketAlchemyApplication extends Application {
         
         // Force dark mode for the entire app
         AppCompatDelegate.setDefaultNightMode(AppCompatDelegate.MODE_NIGHT_YES);
+        
+        // Load tradable instruments from disk, refreshing from the exchanges if stale
+        InstrumentRegistry.getInstance().init(getFilesDir());
+        
+        // Set up on-disk tick history
+        TickHistoryStore.getInstance().init(getFilesDir());
+        
+        // Record the equity curve of the main portfolio
+        VirtualPortfolio portfolio = VirtualPortfolio.getInstance(this, PortfolioRegistry.DEFAULT_ID);
+        EquityCurveStore.getInstance().init(getFilesDir(), portfolio::getTotalPortfolioValue);
+        
+        // Resume matching resting orders
+        OrderMatcher.getInstance(this);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,258 @@
+package com.marketalchemy.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.marketalchemy.app.data.TradeLedger;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * RecyclerView adapter that pages the trade ledger in newest-first order.
+ * <p>
+ * Pages are fetched with keyset queries and formatted on a background thread.
+ * Only the most recently used pages are kept; the key of every page start is
+ * remembered (two longs per page) so an evicted page can be fetched again when
+ * it scrolls back into view.
+ */
+public class TradeHistoryAdapter extends RecyclerView.Adapter<TradeHistoryAdapter.TradeViewHolder> {
+
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_CACHED_PAGES = 6;
+
+    private final TradeLedger ledger;
+    private final ExecutorService executorService;
+    private final Handler mainHandler;
+    private final LoadListener loadListener;
+
+    // Page index -> formatted rows, least recently used first
+    private final LinkedHashMap<Integer, List<Row>> pages;
+    // (time, id) of the row before each page; entry 0 is the top of the ledger
+    private final List<long[]> pageKeys;
+    private final Set<Integer> loading;
+
+    private int itemCount;
+    private int appendedPages; // Pages whose rows are counted in itemCount
+    private boolean endReached;
+    private int generation;
+
+    public interface LoadListener {
+        /**
+         * Called on the main thread once the first page is known
+         * @param empty True if the ledger has no trades
+         */
+        void onFirstPageLoaded(boolean empty);
+    }
+
+    /**
+     * Display strings for one trade, built off the main thread
+     */
+    static class Row {
+        final String type;
+        final String date;
+        final String crypto;
+        final String amount;
+        final String price;
+        final String total;
+
+        Row(String type, String date, String crypto, String amount, String price, String total) {
+            this.type = type;
+            this.date = date;
+            this.crypto = crypto;
+            this.amount = amount;
+            this.price = price;
+            this.total = total;
+        }
+    }
+
+    static class TradeViewHolder extends RecyclerView.ViewHolder {
+        final TextView type;
+        final TextView date;
+        final TextView crypto;
+        final TextView amount;
+        final TextView price;
+        final TextView total;
+
+        TradeViewHolder(View itemView) {
+            super(itemView);
+            type = itemView.findViewById(R.id.tvTransactionType);
+            date = itemView.findViewById(R.id.tvTransactionDate);
+            crypto = itemView.findViewById(R.id.tvCryptoName);
+            amount = itemView.findViewById(R.id.tvAmount);
+            price = itemView.findViewById(R.id.tvPrice);
+            total = itemView.findViewById(R.id.tvTotal);
+        }
+    }
+
+    public TradeHistoryAdapter(TradeLedger ledger, LoadListener loadListener) {
+        this.ledger = ledger;
+        this.loadListener = loadListener;
+        executorService = Executors.newSingleThreadExecutor();
+        mainHandler = new Handler(Looper.getMainLooper());
+        pages = new LinkedHashMap<Integer, List<Row>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Row>> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+        pageKeys = new ArrayList<>();
+        loading = new HashSet<>();
+    }
+
+    /**
+     * Drop everything and load the first page again
+     */
+    public void refresh() {
+        generation++;
+        pages.clear();
+        pageKeys.clear();
+        loading.clear();
+        pageKeys.add(new long[]{Long.MAX_VALUE, Long.MAX_VALUE});
+        endReached = false;
+        appendedPages = 0;
+        int removed = itemCount;
+        itemCount = 0;
+        if (removed > 0) {
+            notifyItemRangeRemoved(0, removed);
+        }
+        requestPage(0);
+    }
+
+    /**
+     * Stop the background loader; call when the view is destroyed
+     */
+    public void shutdown() {
+        generation++;
+        executorService.shutdownNow();
+    }
+
+    @NonNull
+    @Override
+    public TradeViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_transaction, parent, false);
+        return new TradeViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TradeViewHolder holder, int position) {
+        int page = position / PAGE_SIZE;
+        List<Row> rows = pages.get(page);
+
+        // Fetch the next page before the user reaches the end
+        if (!endReached && position >= itemCount - PAGE_SIZE / 2) {
+            requestPage(pageKeys.size() - 1);
+        }
+
+        if (rows == null || position % PAGE_SIZE >= rows.size()) {
+            // Evicted page; show a blank row until it is reloaded
+            requestPage(page);
+            bindPlaceholder(holder);
+            return;
+        }
+
+        Row row = rows.get(position % PAGE_SIZE);
+        holder.type.setText(row.type);
+        holder.date.setText(row.date);
+        holder.crypto.setText(row.crypto);
+        holder.amount.setText(row.amount);
+        holder.price.setText(row.price);
+        holder.total.setText(row.total);
+    }
+
+    @Override
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    private void bindPlaceholder(TradeViewHolder holder) {
+        holder.type.setText("");
+        holder.date.setText("");
+        holder.crypto.setText("");
+        holder.amount.setText("");
+        holder.price.setText("");
+        holder.total.setText("");
+    }
+
+    /**
+     * Load a page on the background thread. Only pages whose start key is known
+     * (every page up to the first unloaded one) can be requested.
+     */
+    private void requestPage(int page) {
+        if (page >= pageKeys.size() || loading.contains(page) || executorService.isShutdown()) {
+            return;
+        }
+        loading.add(page);
+        final long[] key = pageKeys.get(page);
+        final int requestGeneration = generation;
+        executorService.execute(() -> {
+            if (page == 0) {
+                // Include trades that are still queued for insertion
+                ledger.flush();
+            }
+            List<TradeLedger.Trade> trades = ledger.getPage(key[0], key[1], PAGE_SIZE);
+            List<Row> rows = toRows(trades);
+            TradeLedger.Trade last = trades.isEmpty() ? null : trades.get(trades.size() - 1);
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                onPageLoaded(page, rows, last);
+            });
+        });
+    }
+
+    private void onPageLoaded(int page, List<Row> rows, TradeLedger.Trade last) {
+        loading.remove(page);
+        pages.put(page, rows);
+
+        if (page == appendedPages) {
+            // First load of the next page; its last row keys the one after it.
+            // Pages evicted and loaded again take the change path below.
+            if (rows.size() == PAGE_SIZE) {
+                pageKeys.add(new long[]{last.timeMs, last.id});
+            } else {
+                endReached = true;
+            }
+            appendedPages++;
+            itemCount += rows.size();
+            notifyItemRangeInserted(page * PAGE_SIZE, rows.size());
+            if (page == 0 && loadListener != null) {
+                loadListener.onFirstPageLoaded(rows.isEmpty());
+            }
+        } else {
+            notifyItemRangeChanged(page * PAGE_SIZE, rows.size());
+        }
+    }
+
+    private static List<Row> toRows(List<TradeLedger.Trade> trades) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.US);
+        List<Row> rows = new ArrayList<>(trades.size());
+        for (TradeLedger.Trade trade : trades) {
+            rows.add(new Row(
+                    trade.side,
+                    dateFormat.format(new Date(trade.timeMs)),
+                    trade.instrument,
+                    String.format(Locale.US, "%.8f", trade.getQuantity()),
+                    String.format(Locale.US, "$%.2f", trade.getPrice()),
+                    String.format(Locale.US, "$%.2f", trade.getTotal())));
+        }
+        return rows;
+    }
+}
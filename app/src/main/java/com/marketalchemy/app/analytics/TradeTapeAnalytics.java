@@ -0,0 +1,308 @@
+package com.marketalchemy.app.analytics;
+
+import com.marketalchemy.app.api.BinanceWebSocketClient;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming microstructure metrics over a sliding time window of trades:
+ * rolling VWAP, buy/sell volume imbalance, trades per second and a
+ * volume-by-price profile, kept separately for each symbol.
+ * <p>
+ * Each symbol's window is a ring of fixed-width time buckets held in
+ * preallocated arrays. Each trade updates one bucket and the running totals in
+ * O(1); buckets leaving the window are subtracted from the totals, so raw
+ * trades are never stored.
+ */
+public class TradeTapeAnalytics implements BinanceWebSocketClient.OnTradeListener {
+
+    private final long bucketMs;
+    private final int bucketCount;
+
+    // Volume profile grid
+    private final double priceStep;
+    private final int profileBins;
+
+    // Per-symbol windows, keyed by upper-case symbol
+    private final Map<String, Window> windows;
+
+    /**
+     * @param windowMs Sliding window length (e.g. 60_000 for one minute)
+     * @param bucketMs Bucket width; the window slides in steps of this size
+     * @param priceStep Price width of one volume profile bin
+     * @param profileBins Number of volume profile bins, centered on the first trade
+     */
+    public TradeTapeAnalytics(long windowMs, long bucketMs, double priceStep, int profileBins) {
+        if (bucketMs <= 0 || windowMs < bucketMs) {
+            throw new IllegalArgumentException("Window must be at least one bucket long");
+        }
+        this.bucketMs = bucketMs;
+        this.bucketCount = (int) (windowMs / bucketMs);
+        this.priceStep = priceStep;
+        this.profileBins = profileBins;
+        windows = new HashMap<>();
+    }
+
+    @Override
+    public synchronized void onTrade(String symbol, double price, double quantity, boolean buyerIsMaker, long tradeTimeMs) {
+        String key = symbol.toUpperCase(Locale.US);
+        Window window = windows.get(key);
+        if (window == null) {
+            window = new Window();
+            windows.put(key, window);
+        }
+        window.onTrade(price, quantity, buyerIsMaker, tradeTimeMs);
+    }
+
+    /**
+     * Slide every symbol's window forward to a point in time, expiring old buckets.
+     * Trades do this automatically; call it to age out an idle stream.
+     * @param nowMs Current time in epoch millis
+     */
+    public synchronized void advanceTo(long nowMs) {
+        for (Window window : windows.values()) {
+            window.advanceTo(nowMs);
+        }
+    }
+
+    /**
+     * Get the volume-weighted average price over the window, or NaN if no trades
+     */
+    public synchronized double getVwap(String symbol) {
+        Window window = window(symbol);
+        return window != null && window.totalVolume > 0 ? window.totalNotional / window.totalVolume : Double.NaN;
+    }
+
+    public synchronized double getVolume(String symbol) {
+        Window window = window(symbol);
+        return window != null ? window.totalVolume : 0;
+    }
+
+    public synchronized double getBuyVolume(String symbol) {
+        Window window = window(symbol);
+        return window != null ? window.totalBuyVolume : 0;
+    }
+
+    public synchronized double getSellVolume(String symbol) {
+        Window window = window(symbol);
+        return window != null ? window.totalVolume - window.totalBuyVolume : 0;
+    }
+
+    /**
+     * Get buy/sell imbalance in [-1, 1]: positive when aggressive buyers dominate
+     */
+    public synchronized double getImbalance(String symbol) {
+        Window window = window(symbol);
+        if (window == null || window.totalVolume <= 0) {
+            return 0;
+        }
+        return (2 * window.totalBuyVolume - window.totalVolume) / window.totalVolume;
+    }
+
+    /**
+     * Get the average number of trades per second over the window
+     */
+    public synchronized double getTradesPerSecond(String symbol) {
+        return getTradeCount(symbol) * 1000.0 / (bucketCount * bucketMs);
+    }
+
+    public synchronized int getTradeCount(String symbol) {
+        Window window = window(symbol);
+        return window != null ? window.totalTrades : 0;
+    }
+
+    /**
+     * Get the last traded price, or NaN before the first trade
+     */
+    public synchronized double getLastPrice(String symbol) {
+        Window window = window(symbol);
+        return window != null ? window.lastPrice : Double.NaN;
+    }
+
+    public int getProfileBinCount() {
+        return profileBins;
+    }
+
+    /**
+     * Get the lower price bound of a volume profile bin, or NaN before the first trade
+     */
+    public synchronized double getProfileBinPrice(String symbol, int bin) {
+        Window window = window(symbol);
+        return window != null ? window.profileBasePrice + bin * priceStep : Double.NaN;
+    }
+
+    /**
+     * Get traded volume in a volume profile bin over the window
+     */
+    public synchronized double getProfileVolume(String symbol, int bin) {
+        Window window = window(symbol);
+        return window != null ? window.profile[bin] : 0;
+    }
+
+    /**
+     * Get the price bin with the most traded volume (point of control)
+     * @return Lower price bound of that bin, or NaN if no trades
+     */
+    public synchronized double getPointOfControl(String symbol) {
+        Window window = window(symbol);
+        if (window == null) {
+            return Double.NaN;
+        }
+        int best = -1;
+        double bestVolume = 0;
+        for (int i = 0; i < profileBins; i++) {
+            if (window.profile[i] > bestVolume) {
+                bestVolume = window.profile[i];
+                best = i;
+            }
+        }
+        return best >= 0 ? window.profileBasePrice + best * priceStep : Double.NaN;
+    }
+
+    private Window window(String symbol) {
+        return windows.get(symbol.toUpperCase(Locale.US));
+    }
+
+    /**
+     * Bucket ring and running totals for one symbol
+     */
+    private class Window {
+        // Per-bucket aggregates
+        private final double[] bucketVolume = new double[bucketCount];
+        private final double[] bucketNotional = new double[bucketCount];
+        private final double[] bucketBuyVolume = new double[bucketCount];
+        private final int[] bucketTrades = new int[bucketCount];
+
+        // Per-bucket volume profile rows, bucketCount x profileBins
+        private final double[] bucketProfile = new double[bucketCount * profileBins];
+
+        // Running totals over the window
+        private double totalVolume;
+        private double totalNotional;
+        private double totalBuyVolume;
+        private int totalTrades;
+        private final double[] profile = new double[profileBins];
+
+        private double profileBasePrice = Double.NaN;
+
+        private long currentBucketStart = Long.MIN_VALUE;
+        private int currentBucket;
+        private double lastPrice = Double.NaN;
+
+        void onTrade(double price, double quantity, boolean buyerIsMaker, long tradeTimeMs) {
+            advanceTo(tradeTimeMs);
+
+            int bucket = currentBucket;
+            double notional = price * quantity;
+            bucketVolume[bucket] += quantity;
+            bucketNotional[bucket] += notional;
+            bucketTrades[bucket]++;
+            totalVolume += quantity;
+            totalNotional += notional;
+            totalTrades++;
+
+            // Buyer is maker means the seller crossed the spread
+            if (!buyerIsMaker) {
+                bucketBuyVolume[bucket] += quantity;
+                totalBuyVolume += quantity;
+            }
+
+            int bin = profileBin(price);
+            bucketProfile[bucket * profileBins + bin] += quantity;
+            profile[bin] += quantity;
+
+            lastPrice = price;
+        }
+
+        void advanceTo(long nowMs) {
+            long start = Math.floorDiv(nowMs, bucketMs) * bucketMs;
+            if (start <= currentBucketStart) {
+                return;
+            }
+            long steps = currentBucketStart == Long.MIN_VALUE
+                    ? bucketCount
+                    : (start - currentBucketStart) / bucketMs;
+            // Expire at most one full window of buckets
+            for (long i = 0; i < Math.min(steps, bucketCount); i++) {
+                currentBucket = (currentBucket + 1) % bucketCount;
+                expireBucket(currentBucket);
+            }
+            currentBucketStart = start;
+        }
+
+        private void expireBucket(int bucket) {
+            totalVolume -= bucketVolume[bucket];
+            totalNotional -= bucketNotional[bucket];
+            totalBuyVolume -= bucketBuyVolume[bucket];
+            totalTrades -= bucketTrades[bucket];
+            bucketVolume[bucket] = 0;
+            bucketNotional[bucket] = 0;
+            bucketBuyVolume[bucket] = 0;
+            bucketTrades[bucket] = 0;
+
+            int row = bucket * profileBins;
+            for (int i = 0; i < profileBins; i++) {
+                profile[i] -= bucketProfile[row + i];
+                bucketProfile[row + i] = 0;
+            }
+
+            if (totalTrades == 0) {
+                // Clear accumulated floating point drift
+                totalVolume = 0;
+                totalNotional = 0;
+                totalBuyVolume = 0;
+            }
+        }
+
+        /**
+         * Map a price to its profile bin, re-centering the grid if price has left it
+         */
+        private int profileBin(double price) {
+            if (Double.isNaN(profileBasePrice)) {
+                profileBasePrice = centeredBase(price);
+            }
+            int bin = (int) Math.floor((price - profileBasePrice) / priceStep);
+            if (bin < 0 || bin >= profileBins) {
+                // Price moved outside the grid: slide it to center on the price,
+                // keeping the volume of the bins that still overlap
+                double base = centeredBase(price);
+                shiftProfile(Math.round((base - profileBasePrice) / priceStep));
+                profileBasePrice = base;
+                bin = (int) Math.floor((price - profileBasePrice) / priceStep);
+            }
+            return bin;
+        }
+
+        private double centeredBase(double price) {
+            return (Math.floor(price / priceStep) - profileBins / 2) * priceStep;
+        }
+
+        /**
+         * Move every profile row down by a number of bins (up if negative).
+         * Volume shifted past either end of the grid leaves the profile.
+         */
+        private void shiftProfile(long bins) {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                shiftRow(bucketProfile, bucket * profileBins, bins);
+            }
+            shiftRow(profile, 0, bins);
+        }
+
+        private void shiftRow(double[] values, int row, long bins) {
+            if (Math.abs(bins) >= profileBins) {
+                Arrays.fill(values, row, row + profileBins, 0);
+            } else if (bins > 0) {
+                int shift = (int) bins;
+                System.arraycopy(values, row + shift, values, row, profileBins - shift);
+                Arrays.fill(values, row + profileBins - shift, row + profileBins, 0);
+            } else if (bins < 0) {
+                int shift = (int) -bins;
+                System.arraycopy(values, row, values, row + shift, profileBins - shift);
+                Arrays.fill(values, row, row + shift, 0);
+            }
+        }
+    }
+}
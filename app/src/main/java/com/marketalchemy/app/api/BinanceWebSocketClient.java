@@ -1,6 +1,7 @@
 package com.marketalchemy.app.api;
 
 import android.util.Log;
+import com.marketalchemy.app.replay.FeedRecorder;
 import okhttp3.*;
 import org.json.JSONObject;
 import java.util.concurrent.TimeUnit;
@@ -15,6 +16,7 @@ public class BinanceWebSocketClient {
     private Map<String, WebSocket> webSockets;
     private OnPriceUpdateListener priceUpdateListener;
     private OnKlineUpdateListener klineUpdateListener;
+    private OnTradeListener tradeListener;
     
     public interface OnPriceUpdateListener {
         void onPriceUpdate(String symbol, double price, double change);
@@ -24,6 +26,10 @@ public class BinanceWebSocketClient {
         void onKlineUpdate(String symbol, double open, double high, double low, double close, long timestamp);
     }
     
+    public interface OnTradeListener {
+        void onTrade(String symbol, double price, double quantity, boolean buyerIsMaker, long tradeTimeMs);
+    }
+    
     public BinanceWebSocketClient() {
         client = new OkHttpClient.Builder()
             .readTimeout(0, TimeUnit.MILLISECONDS)
@@ -57,11 +63,16 @@ public class BinanceWebSocketClient {
                         // Handle trade stream data
                         String symbol = json.getString("s");
                         double price = Double.parseDouble(json.getString("p"));
-                        double change = Double.parseDouble(json.getString("P"));
+                        // Trade events carry no 24h change
+                        double change = Double.parseDouble(json.optString("P", "0"));
                         
-                        if (priceUpdateListener != null) {
-                            priceUpdateListener.onPriceUpdate(symbol, price, change);
+                        if (tradeListener != null) {
+                            double quantity = Double.parseDouble(json.getString("q"));
+                            tradeListener.onTrade(symbol, price, quantity, json.getBoolean("m"), json.getLong("T"));
                         }
+                        
+                        FeedRecorder.getInstance().recordTick(FeedRecorder.SOURCE_BINANCE, symbol, price, change);
+                        dispatchPriceUpdate(symbol, price, change);
                     } else {
                         // Handle kline stream data
                         String symbol = json.getString("s");
@@ -73,9 +84,9 @@ public class BinanceWebSocketClient {
                         double close = Double.parseDouble(kline.getString("c"));
                         long timestamp = kline.getLong("t") / 1000; // Convert to seconds
                         
-                        if (klineUpdateListener != null) {
-                            klineUpdateListener.onKlineUpdate(symbol, open, high, low, close, timestamp);
-                        }
+                        FeedRecorder.getInstance().recordKline(FeedRecorder.SOURCE_BINANCE,
+                                symbol, open, high, low, close, timestamp);
+                        dispatchKlineUpdate(symbol, open, high, low, close, timestamp);
                     }
                 } catch (Exception e) {
                     Log.e(TAG, "Error parsing WebSocket message: " + e.getMessage());
@@ -107,6 +118,24 @@ public class BinanceWebSocketClient {
         }
     }
     
+    /**
+     * Deliver a trade update to the listener (live stream or feed replay)
+     */
+    public void dispatchPriceUpdate(String symbol, double price, double change) {
+        if (priceUpdateListener != null) {
+            priceUpdateListener.onPriceUpdate(symbol, price, change);
+        }
+    }
+    
+    /**
+     * Deliver a kline update to the listener (live stream or feed replay)
+     */
+    public void dispatchKlineUpdate(String symbol, double open, double high, double low, double close, long timestamp) {
+        if (klineUpdateListener != null) {
+            klineUpdateListener.onKlineUpdate(symbol, open, high, low, close, timestamp);
+        }
+    }
+    
     public void setPriceUpdateListener(OnPriceUpdateListener listener) {
         this.priceUpdateListener = listener;
     }
@@ -115,6 +144,10 @@ public class BinanceWebSocketClient {
         this.klineUpdateListener = listener;
     }
     
+    public void setTradeListener(OnTradeListener listener) {
+        this.tradeListener = listener;
+    }
+    
     public void disconnect() {
         for (WebSocket webSocket : webSockets.values()) {
             if (webSocket != null) {
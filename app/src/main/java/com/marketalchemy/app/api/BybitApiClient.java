@@ -4,6 +4,8 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.marketalchemy.app.replay.FeedRecorder;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -14,6 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +32,7 @@ public class BybitApiClient {
     private static final String TAG = "BybitApiClient";
     private static final String BASE_URL = "https://api.bybit.com";
     private static final long CACHE_TIME_MS = 1000; // Cache for 1 second (real-time updates)
+    private static final int KLINE_PAGE_LIMIT = 1000; // Max candles per kline request
     
     // Singleton instance
     private static BybitApiClient instance;
@@ -39,18 +43,20 @@ public class BybitApiClient {
     // Cache for responses
     private final Map<String, CachedResponse> cache;
     
+    // Range-aware cache for candles
+    private final CandleCache candleCache;
+    
     // Price cache to avoid network calls
     private final Map<String, Double> priceCache;
     
     // 24h Change cache
     private final Map<String, Double> changeCache;
     
-    // Symbol mappings
-    private final Map<String, String> idToSymbol;
-    private final Map<String, String> symbolToId;
+    // Notified of every price written to the price cache
+    private final List<PriceListener> priceListeners;
     
-    // Supported cryptos
-    private final List<String> supportedCryptos;
+    // Instrument lookups (symbol, ID and exchange symbol)
+    private final InstrumentRegistry registry;
     
     // Executor service for background tasks
     private final ExecutorService executorService;
@@ -69,47 +75,21 @@ public class BybitApiClient {
         // Initialize cache
         cache = new ConcurrentHashMap<>();
         
+        // Initialize candle cache
+        candleCache = new CandleCache();
+        
         // Initialize price cache
         priceCache = new ConcurrentHashMap<>();
         
         // Initialize change cache
         changeCache = new ConcurrentHashMap<>();
+        priceListeners = new CopyOnWriteArrayList<>();
         
-        // Initialize symbol mappings
-        idToSymbol = new HashMap<>();
-        symbolToId = new HashMap<>();
-        
-        // Initialize supported cryptos
-        supportedCryptos = new ArrayList<>();
+        // Initialize instrument registry
+        registry = InstrumentRegistry.getInstance();
         
         // Initialize executor service
         executorService = Executors.newFixedThreadPool(2);
-        
-        // Add supported cryptocurrencies
-        addCryptoMapping("bitcoin", "BTC");
-        addCryptoMapping("ethereum", "ETH");
-        addCryptoMapping("solana", "SOL");
-        addCryptoMapping("binance-coin", "BNB");
-        addCryptoMapping("ripple", "XRP");
-        addCryptoMapping("cardano", "ADA");
-        
-        // Add to supported list
-        supportedCryptos.add("BTC");
-        supportedCryptos.add("ETH");
-        supportedCryptos.add("SOL");
-        supportedCryptos.add("BNB");
-        supportedCryptos.add("XRP");
-        supportedCryptos.add("ADA");
-    }
-    
-    /**
-     * Add mapping between ID and symbol
-     * @param id Cryptocurrency ID
-     * @param symbol Cryptocurrency symbol
-     */
-    private void addCryptoMapping(String id, String symbol) {
-        idToSymbol.put(id.toLowerCase(), symbol.toUpperCase());
-        symbolToId.put(symbol.toUpperCase(), id.toLowerCase());
     }
     
     /**
@@ -129,7 +109,8 @@ public class BybitApiClient {
      * @return Symbol (e.g., BTC)
      */
     public String getSymbolFromId(String id) {
-        return idToSymbol.getOrDefault(id.toLowerCase(), id.toUpperCase());
+        InstrumentRegistry.Instrument instrument = registry.find(id);
+        return instrument != null ? instrument.symbol : id.toUpperCase();
     }
     
     /**
@@ -138,21 +119,35 @@ public class BybitApiClient {
      * @return ID (e.g., bitcoin)
      */
     public String getIdFromSymbol(String symbol) {
-        String id = symbolToId.get(symbol.toUpperCase());
-        if (id != null) {
-            return id;
+        InstrumentRegistry.Instrument instrument = registry.find(symbol);
+        if (instrument != null) {
+            return instrument.coinGeckoId;
         }
         
         // If not found, assume it's already an ID
         return symbol.toLowerCase();
     }
     
+    /**
+     * Get Bybit spot symbol
+     * @param cryptoId Coin ID or symbol
+     * @return Exchange symbol (e.g., BTCUSDT)
+     */
+    public String getExchangeSymbol(String cryptoId) {
+        InstrumentRegistry.Instrument instrument = registry.find(cryptoId);
+        return instrument != null ? instrument.exchangeSymbol : cryptoId.toUpperCase() + "USDT";
+    }
+    
     /**
      * Get supported cryptocurrencies
      * @return List of supported cryptocurrency symbols
      */
     public List<String> getSupportedCryptos() {
-        return new ArrayList<>(supportedCryptos);
+        List<String> symbols = new ArrayList<>();
+        for (InstrumentRegistry.Instrument instrument : registry.getFeaturedInstruments()) {
+            symbols.add(instrument.symbol);
+        }
+        return symbols;
     }
     
     /**
@@ -161,9 +156,20 @@ public class BybitApiClient {
      * @return Cached price in USD, or null if not cached
      */
     public Double getCachedPrice(String cryptoId) {
-        // Convert symbol to ID if needed
-        String symbol = getSymbolFromId(cryptoId);
-        return priceCache.get(symbol.toUpperCase());
+        // Prices are cached by exchange symbol
+        return priceCache.get(getExchangeSymbol(cryptoId));
+    }
+    
+    /**
+     * Register a listener for price updates
+     * @param listener Called on the thread that fetched the price
+     */
+    public void addPriceListener(PriceListener listener) {
+        priceListeners.add(listener);
+    }
+    
+    public void removePriceListener(PriceListener listener) {
+        priceListeners.remove(listener);
     }
     
     /**
@@ -172,9 +178,8 @@ public class BybitApiClient {
      * @return Cached 24h price change percentage, or null if not cached
      */
     public Double getCachedChange(String cryptoId) {
-        // Convert symbol to ID if needed
-        String symbol = getSymbolFromId(cryptoId);
-        return changeCache.get(symbol.toUpperCase());
+        // Changes are cached by exchange symbol
+        return changeCache.get(getExchangeSymbol(cryptoId));
     }
     
     /**
@@ -187,7 +192,7 @@ public class BybitApiClient {
         // We should avoid network operations on the main thread
         
         // Convert to symbol format for Bybit API
-        String symbol = getSymbolFromId(cryptoId).toUpperCase() + "USDT";
+        String symbol = getExchangeSymbol(cryptoId);
         
         // First check our cache
         Double cachedPrice = priceCache.get(symbol);
@@ -216,7 +221,7 @@ public class BybitApiClient {
                     JSONObject ticker = list.getJSONObject(0);
                     if (ticker.has("lastPrice")) {
                         double price = ticker.getDouble("lastPrice");
-                        priceCache.put(symbol, price); // Update cache
+                        putPrice(symbol, price); // Update cache
                         
                         // Also update change cache if available
                         if (ticker.has("price24hPcnt")) {
@@ -244,7 +249,7 @@ public class BybitApiClient {
      */
     public void getCurrentPriceAsync(String cryptoId, PriceCallback callback) {
         // Convert to symbol format for Bybit API
-        final String symbol = getSymbolFromId(cryptoId).toUpperCase() + "USDT";
+        final String symbol = getExchangeSymbol(cryptoId);
         
         // Execute on background thread
         executorService.execute(() -> {
@@ -265,7 +270,7 @@ public class BybitApiClient {
                         JSONObject ticker = list.getJSONObject(0);
                         if (ticker.has("lastPrice")) {
                             price = ticker.getDouble("lastPrice");
-                            priceCache.put(symbol, price); // Update cache
+                            putPrice(symbol, price); // Update cache
                             
                             // Also update change cache if available
                             if (ticker.has("price24hPcnt")) {
@@ -316,7 +321,7 @@ public class BybitApiClient {
                 
                 for (String symbol : symbols) {
                     // Convert to symbol format for Bybit API
-                    final String apiSymbol = getSymbolFromId(symbol).toUpperCase() + "USDT";
+                    final String apiSymbol = getExchangeSymbol(symbol);
                     
                     // Build URL - use Bybit's ticker endpoint
                     String url = String.format("%s/v5/market/tickers?category=spot&symbol=%s", BASE_URL, apiSymbol);
@@ -336,7 +341,7 @@ public class BybitApiClient {
                             
                             if (ticker.has("lastPrice")) {
                                 marketData.currentPrice = ticker.getDouble("lastPrice");
-                                priceCache.put(apiSymbol, marketData.currentPrice);
+                                putPrice(apiSymbol, marketData.currentPrice);
                             }
                             
                             if (ticker.has("price24hPcnt")) {
@@ -388,7 +393,7 @@ public class BybitApiClient {
         
         for (String symbol : symbols) {
             // Convert to symbol format for Bybit API
-            final String apiSymbol = getSymbolFromId(symbol).toUpperCase() + "USDT";
+            final String apiSymbol = getExchangeSymbol(symbol);
             
             // Build URL - use Bybit's ticker endpoint
             String url = String.format("%s/v5/market/tickers?category=spot&symbol=%s", BASE_URL, apiSymbol);
@@ -408,7 +413,7 @@ public class BybitApiClient {
                     
                     if (ticker.has("lastPrice")) {
                         marketData.currentPrice = ticker.getDouble("lastPrice");
-                        priceCache.put(apiSymbol, marketData.currentPrice);
+                        putPrice(apiSymbol, marketData.currentPrice);
                     }
                     
                     if (ticker.has("price24hPcnt")) {
@@ -436,6 +441,97 @@ public class BybitApiClient {
         return marketDataMap;
     }
     
+    /**
+     * Get candles for a cryptocurrency, downloading only the ranges that are not cached yet
+     * @param cryptoId Coin ID or symbol
+     * @param interval Bybit kline interval ("1", "5", "60", "D", ...)
+     * @param startMs Range start in epoch millis (inclusive)
+     * @param endMs Range end in epoch millis (inclusive)
+     * @return Candles in range, oldest first
+     * @throws IOException if API request fails
+     * @throws JSONException if parsing response fails
+     */
+    public List<CandleCache.Candle> getCandles(String cryptoId, String interval, long startMs, long endMs)
+            throws IOException, JSONException {
+        String apiSymbol = getExchangeSymbol(cryptoId);
+        long intervalMs = CandleCache.intervalToMillis(interval);
+        
+        // Only fetch the gaps between ranges we already have
+        for (long[] gap : candleCache.getMissingRanges(apiSymbol, interval, startMs, endMs)) {
+            long pageStart = gap[0];
+            while (pageStart < gap[1]) {
+                long pageEnd = Math.min(gap[1], pageStart + KLINE_PAGE_LIMIT * intervalMs);
+                List<CandleCache.Candle> candles = fetchCandles(apiSymbol, interval, pageStart, pageEnd - 1);
+                candleCache.put(apiSymbol, interval, pageStart, pageEnd, candles);
+                pageStart = pageEnd;
+            }
+        }
+        
+        return candleCache.get(apiSymbol, interval, startMs, endMs);
+    }
+    
+    /**
+     * Get candles for a cryptocurrency asynchronously
+     * @param cryptoId Coin ID or symbol
+     * @param interval Bybit kline interval
+     * @param startMs Range start in epoch millis (inclusive)
+     * @param endMs Range end in epoch millis (inclusive)
+     * @param callback Callback to receive candles
+     */
+    public void getCandlesAsync(String cryptoId, String interval, long startMs, long endMs, CandleCallback callback) {
+        executorService.execute(() -> {
+            try {
+                List<CandleCache.Candle> candles = getCandles(cryptoId, interval, startMs, endMs);
+                
+                // Return result on main thread
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    callback.onCandles(candles);
+                });
+                
+            } catch (Exception e) {
+                Log.e(TAG, "Error fetching candles async: " + e.getMessage());
+                
+                // Return error on main thread
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    callback.onError(e);
+                });
+            }
+        });
+    }
+    
+    /**
+     * Fetch one page of candles from Bybit's kline endpoint
+     * @param apiSymbol Bybit symbol (e.g., BTCUSDT)
+     * @param interval Bybit kline interval
+     * @param startMs Range start (inclusive)
+     * @param endMs Range end (inclusive)
+     * @return Candles in range, oldest first
+     */
+    private List<CandleCache.Candle> fetchCandles(String apiSymbol, String interval, long startMs, long endMs)
+            throws IOException, JSONException {
+        String url = String.format("%s/v5/market/kline?category=spot&symbol=%s&interval=%s&start=%d&end=%d&limit=%d",
+                BASE_URL, apiSymbol, interval, startMs, endMs, KLINE_PAGE_LIMIT);
+        
+        JSONObject response = getJsonObjectFromUrl(url);
+        
+        List<CandleCache.Candle> candles = new ArrayList<>();
+        if (response.has("result") && response.getJSONObject("result").has("list")) {
+            JSONArray list = response.getJSONObject("result").getJSONArray("list");
+            // Bybit returns newest first
+            for (int i = list.length() - 1; i >= 0; i--) {
+                JSONArray row = list.getJSONArray(i);
+                candles.add(new CandleCache.Candle(
+                        row.getLong(0),
+                        row.getDouble(1),
+                        row.getDouble(2),
+                        row.getDouble(3),
+                        row.getDouble(4),
+                        row.getDouble(5)));
+            }
+        }
+        return candles;
+    }
+    
     /**
      * Get JSON object from URL with caching
      * @param url URL to fetch
@@ -477,10 +573,30 @@ public class BybitApiClient {
             // Cache response
             cache.put(url, new CachedResponse(responseStr));
             
+            // Keep the feed log
+            FeedRecorder.getInstance().recordSnapshot(FeedRecorder.SOURCE_BYBIT, url, responseStr);
+            
             return responseStr;
         }
     }
     
+    /**
+     * Cache a price and notify listeners
+     */
+    private void putPrice(String exchangeSymbol, double price) {
+        priceCache.put(exchangeSymbol, price);
+        for (PriceListener listener : priceListeners) {
+            listener.onPriceUpdate(exchangeSymbol, price);
+        }
+    }
+    
+    /**
+     * Listener interface for price updates
+     */
+    public interface PriceListener {
+        void onPriceUpdate(String exchangeSymbol, double price);
+    }
+    
     /**
      * Callback interface for async price fetching
      */
@@ -497,6 +613,14 @@ public class BybitApiClient {
         void onError(Exception e);
     }
     
+    /**
+     * Callback interface for async candle fetching
+     */
+    public interface CandleCallback {
+        void onCandles(List<CandleCache.Candle> candles);
+        void onError(Exception e);
+    }
+    
     /**
      * Data class for crypto market data
      */
@@ -4,6 +4,9 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.marketalchemy.app.data.TickHistoryStore;
+import com.marketalchemy.app.replay.FeedRecorder;
+
 import org.json.JSONException;
 
 import java.io.IOException;
@@ -210,19 +213,13 @@ public class BybitUpdateClient {
                                 // Get market data for this symbol
                                 BybitApiClient.CryptoMarketData data = marketData.get(symbol);
                                 if (data != null) {
-                                    // Cache prices
-                                    priceCache.put(symbol, data.currentPrice);
-                                    changeCache.put(symbol, data.priceChangePercentage24h);
+                                    // Keep tick history and the feed log
+                                    TickHistoryStore.getInstance().record(symbol, System.currentTimeMillis(), data.currentPrice);
+                                    FeedRecorder.getInstance().recordTick(FeedRecorder.SOURCE_BYBIT,
+                                            symbol, data.currentPrice, data.priceChangePercentage24h);
                                     
-                                    // Notify listeners
-                                    List<PriceUpdateListener> symbolListeners = listeners.getOrDefault(symbol, new ArrayList<>());
-                                    for (PriceUpdateListener listener : symbolListeners) {
-                                        try {
-                                            listener.onPriceUpdate(data.symbol, data.currentPrice, data.priceChangePercentage24h);
-                                        } catch (Exception e) {
-                                            Log.e(TAG, "Error notifying listener: " + e.getMessage());
-                                        }
-                                    }
+                                    // Cache prices and notify listeners
+                                    publishUpdate(symbol, data.currentPrice, data.priceChangePercentage24h);
                                 }
                             }
                         }
@@ -245,6 +242,29 @@ public class BybitUpdateClient {
         }
     }
     
+    /**
+     * Cache a price update and notify the listeners of its symbol.
+     * Used by the live poller and by feed replay; call on the main thread.
+     * @param symbol Cryptocurrency symbol
+     * @param price Current price
+     * @param change 24h price change percentage
+     */
+    public void publishUpdate(String symbol, double price, double change) {
+        // Cache prices
+        priceCache.put(symbol, price);
+        changeCache.put(symbol, change);
+        
+        // Notify listeners
+        List<PriceUpdateListener> symbolListeners = listeners.getOrDefault(symbol, new ArrayList<>());
+        for (PriceUpdateListener listener : symbolListeners) {
+            try {
+                listener.onPriceUpdate(symbol, price, change);
+            } catch (Exception e) {
+                Log.e(TAG, "Error notifying listener: " + e.getMessage());
+            }
+        }
+    }
+    
     /**
      * Get the last known price for a cryptocurrency
      * @param symbol Cryptocurrency symbol
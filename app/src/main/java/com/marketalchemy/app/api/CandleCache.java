@@ -0,0 +1,219 @@
+package com.marketalchemy.app.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Range-aware cache for candlestick data.
+ * Candles are stored per (instrument, interval) together with the set of time ranges
+ * that have already been downloaded, so a request only needs to fetch the gaps.
+ */
+public class CandleCache {
+
+    // Series keyed by "SYMBOL|interval"
+    private final Map<String, Series> seriesMap;
+
+    public CandleCache() {
+        seriesMap = new HashMap<>();
+    }
+
+    /**
+     * Convert a Bybit kline interval to its length in milliseconds
+     * @param interval Bybit interval ("1", "5", "60", "D", "W", ...)
+     * @return Interval length in milliseconds
+     * @throws IllegalArgumentException if the interval has no fixed length (e.g. "M")
+     */
+    public static long intervalToMillis(String interval) {
+        switch (interval) {
+            case "D":
+                return 24L * 60 * 60 * 1000;
+            case "W":
+                return 7L * 24 * 60 * 60 * 1000;
+            default:
+                try {
+                    long minutes = Long.parseLong(interval);
+                    if (minutes > 0) {
+                        return minutes * 60 * 1000;
+                    }
+                } catch (NumberFormatException ignored) {
+                    // Fall through to error below
+                }
+                throw new IllegalArgumentException("Unsupported candle interval: " + interval);
+        }
+    }
+
+    /**
+     * Get the time ranges in [startMs, endMs] that are not cached yet
+     * @param symbol Instrument symbol (e.g., BTCUSDT)
+     * @param interval Bybit interval
+     * @param startMs Range start (inclusive)
+     * @param endMs Range end (inclusive)
+     * @return List of {from, to} pairs of candle open times, half-open, aligned to the interval
+     */
+    public synchronized List<long[]> getMissingRanges(String symbol, String interval, long startMs, long endMs) {
+        long intervalMs = intervalToMillis(interval);
+        long from = alignDown(startMs, intervalMs);
+        long to = alignDown(endMs, intervalMs) + intervalMs;
+
+        List<long[]> gaps = new ArrayList<>();
+        Series series = seriesMap.get(key(symbol, interval));
+        if (series == null) {
+            gaps.add(new long[]{from, to});
+            return gaps;
+        }
+
+        long cursor = from;
+        // Start from the covered range that may contain 'from'
+        Map.Entry<Long, Long> floor = series.covered.floorEntry(from);
+        NavigableMap<Long, Long> ranges = floor != null
+                ? series.covered.tailMap(floor.getKey(), true)
+                : series.covered.tailMap(from, true);
+
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            if (range.getKey() >= to) {
+                break;
+            }
+            if (range.getKey() > cursor) {
+                gaps.add(new long[]{cursor, range.getKey()});
+            }
+            cursor = Math.max(cursor, range.getValue());
+            if (cursor >= to) {
+                break;
+            }
+        }
+        if (cursor < to) {
+            gaps.add(new long[]{cursor, to});
+        }
+        return gaps;
+    }
+
+    /**
+     * Store fetched candles and mark [fromMs, toMs) as covered
+     * @param symbol Instrument symbol
+     * @param interval Bybit interval
+     * @param fromMs Start of the fetched range (candle open time, inclusive)
+     * @param toMs End of the fetched range (candle open time, exclusive)
+     * @param candles Candles returned by the exchange for this range
+     */
+    public synchronized void put(String symbol, String interval, long fromMs, long toMs, List<Candle> candles) {
+        long intervalMs = intervalToMillis(interval);
+        Series series = seriesMap.get(key(symbol, interval));
+        if (series == null) {
+            series = new Series();
+            seriesMap.put(key(symbol, interval), series);
+        }
+
+        for (Candle candle : candles) {
+            series.candles.put(candle.openTime, candle);
+        }
+
+        // The candle that is still open keeps changing, so never mark it as covered
+        long openCandleStart = alignDown(System.currentTimeMillis(), intervalMs);
+        long coveredTo = Math.min(alignDown(toMs, intervalMs), openCandleStart);
+        long coveredFrom = alignDown(fromMs, intervalMs);
+        if (coveredFrom < coveredTo) {
+            markCovered(series, coveredFrom, coveredTo);
+        }
+    }
+
+    /**
+     * Get cached candles in [startMs, endMs], oldest first
+     * @param symbol Instrument symbol
+     * @param interval Bybit interval
+     * @param startMs Range start (inclusive)
+     * @param endMs Range end (inclusive)
+     * @return Cached candles in range
+     */
+    public synchronized List<Candle> get(String symbol, String interval, long startMs, long endMs) {
+        Series series = seriesMap.get(key(symbol, interval));
+        if (series == null) {
+            return new ArrayList<>();
+        }
+        long from = alignDown(startMs, intervalToMillis(interval));
+        return new ArrayList<>(series.candles.subMap(from, true, endMs, true).values());
+    }
+
+    /**
+     * Get number of disjoint covered ranges for a series (mainly for diagnostics)
+     */
+    public synchronized int getCoveredRangeCount(String symbol, String interval) {
+        Series series = seriesMap.get(key(symbol, interval));
+        return series != null ? series.covered.size() : 0;
+    }
+
+    /**
+     * Drop all cached candles
+     */
+    public synchronized void clear() {
+        seriesMap.clear();
+    }
+
+    /**
+     * Merge [from, to) into the covered set, joining overlapping and adjacent ranges
+     */
+    private void markCovered(Series series, long from, long to) {
+        long mergedFrom = from;
+        long mergedTo = to;
+
+        // Absorb a range that starts before 'from' and reaches it
+        Map.Entry<Long, Long> lower = series.covered.floorEntry(from);
+        if (lower != null && lower.getValue() >= from) {
+            mergedFrom = lower.getKey();
+            mergedTo = Math.max(mergedTo, lower.getValue());
+            series.covered.remove(lower.getKey());
+        }
+
+        // Absorb all ranges that start inside [from, to]
+        Map.Entry<Long, Long> next = series.covered.ceilingEntry(mergedFrom);
+        while (next != null && next.getKey() <= mergedTo) {
+            mergedTo = Math.max(mergedTo, next.getValue());
+            series.covered.remove(next.getKey());
+            next = series.covered.ceilingEntry(mergedFrom);
+        }
+
+        series.covered.put(mergedFrom, mergedTo);
+    }
+
+    private static long alignDown(long timeMs, long intervalMs) {
+        return Math.floorDiv(timeMs, intervalMs) * intervalMs;
+    }
+
+    private static String key(String symbol, String interval) {
+        return symbol.toUpperCase() + "|" + interval;
+    }
+
+    /**
+     * Candles and covered ranges for one (instrument, interval)
+     */
+    private static class Series {
+        // Candle open time -> candle
+        final TreeMap<Long, Candle> candles = new TreeMap<>();
+        // Disjoint covered ranges: start (inclusive) -> end (exclusive)
+        final TreeMap<Long, Long> covered = new TreeMap<>();
+    }
+
+    /**
+     * Data class for a single OHLCV candle
+     */
+    public static class Candle {
+        public long openTime;
+        public double open;
+        public double high;
+        public double low;
+        public double close;
+        public double volume;
+
+        public Candle(long openTime, double open, double high, double low, double close, double volume) {
+            this.openTime = openTime;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.marketalchemy.app.replay.FeedRecorder;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -43,9 +45,8 @@ public class CoinGeckoApiClient {
     // In-memory cache
     private final Map<String, CachedResponse> cache;
     
-    // Map of CoinGecko IDs to symbols
-    private final Map<String, String> idToSymbol;
-    private final Map<String, String> symbolToId;
+    // Instrument lookups (symbol <-> CoinGecko ID)
+    private final InstrumentRegistry registry;
     
     // Price cache to avoid network calls
     private final Map<String, Double> priceCache;
@@ -67,27 +68,14 @@ public class CoinGeckoApiClient {
         // Initialize cache
         cache = new ConcurrentHashMap<>();
         
-        // Initialize ID to symbol maps
-        idToSymbol = new HashMap<>();
-        symbolToId = new HashMap<>();
+        // Initialize instrument registry
+        registry = InstrumentRegistry.getInstance();
         
         // Initialize price cache
         priceCache = new HashMap<>();
         
         // Executor service for background tasks
         executorService = Executors.newFixedThreadPool(2);
-        
-        // Add common cryptocurrencies
-        addCryptoMapping("bitcoin", "BTC");
-        addCryptoMapping("ethereum", "ETH");
-        addCryptoMapping("ripple", "XRP");
-        addCryptoMapping("litecoin", "LTC");
-        addCryptoMapping("bitcoin-cash", "BCH");
-        addCryptoMapping("cardano", "ADA");
-        addCryptoMapping("polkadot", "DOT");
-        addCryptoMapping("stellar", "XLM");
-        addCryptoMapping("chainlink", "LINK");
-        addCryptoMapping("binancecoin", "BNB");
     }
     
     /**
@@ -101,16 +89,6 @@ public class CoinGeckoApiClient {
         return instance;
     }
     
-    /**
-     * Add a mapping from CoinGecko ID to symbol
-     * @param id CoinGecko ID
-     * @param symbol Cryptocurrency symbol
-     */
-    private void addCryptoMapping(String id, String symbol) {
-        idToSymbol.put(id.toLowerCase(), symbol.toUpperCase());
-        symbolToId.put(symbol.toUpperCase(), id.toLowerCase());
-    }
-    
     /**
      * Get CoinGecko ID from symbol
      * @param symbol Cryptocurrency symbol (e.g., BTC)
@@ -118,9 +96,9 @@ public class CoinGeckoApiClient {
      */
     public String getIdFromSymbol(String symbol) {
         // Try to get ID from symbol
-        String id = symbolToId.get(symbol.toUpperCase());
-        if (id != null) {
-            return id;
+        InstrumentRegistry.Instrument instrument = registry.find(symbol);
+        if (instrument != null) {
+            return instrument.coinGeckoId;
         }
         
         // If not found, assume it's already an ID
@@ -144,7 +122,8 @@ public class CoinGeckoApiClient {
      * @return Cryptocurrency symbol (e.g., BTC)
      */
     public String getSymbolFromId(String id) {
-        return idToSymbol.getOrDefault(id.toLowerCase(), id.toUpperCase());
+        InstrumentRegistry.Instrument instrument = registry.find(id);
+        return instrument != null ? instrument.symbol : id.toUpperCase();
     }
     
     /**
@@ -263,7 +242,7 @@ public class CoinGeckoApiClient {
         StringBuilder idParam = new StringBuilder();
         for (String id : ids) {
             // Convert symbol to ID if needed
-            String coinId = symbolToId.getOrDefault(id.toUpperCase(), id.toLowerCase());
+            String coinId = getIdFromSymbol(id);
             idParam.append(coinId).append(",");
         }
         
@@ -353,6 +332,9 @@ public class CoinGeckoApiClient {
             // Cache response
             cache.put(url, new CachedResponse(responseStr));
             
+            // Keep the feed log
+            FeedRecorder.getInstance().recordSnapshot(FeedRecorder.SOURCE_COINGECKO, url, responseStr);
+            
             return responseStr;
         }
     }
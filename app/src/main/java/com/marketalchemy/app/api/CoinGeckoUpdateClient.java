@@ -4,6 +4,8 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.marketalchemy.app.replay.FeedRecorder;
+
 import org.json.JSONException;
 
 import java.io.IOException;
@@ -203,20 +205,12 @@ public class CoinGeckoUpdateClient {
                                 // Get market data for this coin
                                 CoinGeckoApiClient.CryptoMarketData data = marketData.get(coinId);
                                 if (data != null) {
-                                    // Cache prices
-                                    Double oldPrice = priceCache.getOrDefault(coinId, data.currentPrice);
-                                    priceCache.put(coinId, data.currentPrice);
-                                    changeCache.put(coinId, data.priceChangePercentage24h);
+                                    // Keep the feed log
+                                    FeedRecorder.getInstance().recordTick(FeedRecorder.SOURCE_COINGECKO,
+                                            data.symbol, data.currentPrice, data.priceChangePercentage24h);
                                     
-                                    // Notify listeners
-                                    List<PriceUpdateListener> coinListeners = listeners.getOrDefault(coinId, new ArrayList<>());
-                                    for (PriceUpdateListener listener : coinListeners) {
-                                        try {
-                                            listener.onPriceUpdate(data.symbol, data.currentPrice, data.priceChangePercentage24h);
-                                        } catch (Exception e) {
-                                            Log.e(TAG, "Error notifying listener: " + e.getMessage());
-                                        }
-                                    }
+                                    // Cache prices and notify listeners
+                                    notifyListeners(coinId, data.symbol, data.currentPrice, data.priceChangePercentage24h);
                                 }
                             }
                         } catch (Exception e) {
@@ -238,6 +232,40 @@ public class CoinGeckoUpdateClient {
         }
     }
     
+    /**
+     * Cache a price update and notify the listeners of its coin.
+     * Used by feed replay; call on the main thread.
+     * @param symbol Cryptocurrency symbol (e.g., BTC)
+     * @param price Current price in USD
+     * @param change 24h price change percentage
+     */
+    public void publishUpdate(String symbol, double price, double change) {
+        notifyListeners(apiClient.getIdFromSymbol(symbol), symbol, price, change);
+    }
+    
+    /**
+     * Cache a price update and notify listeners
+     * @param coinId CoinGecko ID
+     * @param symbol Cryptocurrency symbol
+     * @param price Current price in USD
+     * @param change 24h price change percentage
+     */
+    private void notifyListeners(String coinId, String symbol, double price, double change) {
+        // Cache prices
+        priceCache.put(coinId, price);
+        changeCache.put(coinId, change);
+        
+        // Notify listeners
+        List<PriceUpdateListener> coinListeners = listeners.getOrDefault(coinId, new ArrayList<>());
+        for (PriceUpdateListener listener : coinListeners) {
+            try {
+                listener.onPriceUpdate(symbol, price, change);
+            } catch (Exception e) {
+                Log.e(TAG, "Error notifying listener: " + e.getMessage());
+            }
+        }
+    }
+    
     /**
      * Get the last known price for a coin
      * @param coinId CoinGecko ID or symbol
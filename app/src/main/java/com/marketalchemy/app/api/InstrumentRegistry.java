@@ -0,0 +1,445 @@
+package com.marketalchemy.app.api;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.marketalchemy.app.utils.FixedPoint;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Registry of tradable instruments shared by all API clients and screens.
+ * <p>
+ * Loads Bybit spot instruments (/v5/market/instruments-info) and the CoinGecko
+ * coin list, joins them by base coin into a cross-venue mapping and caches the
+ * result on disk with a version stamp. Lookups by symbol, CoinGecko ID and
+ * exchange symbol are hash lookups on an immutable index that is swapped
+ * atomically on refresh, so readers never lock.
+ */
+public class InstrumentRegistry {
+
+    private static final String TAG = "InstrumentRegistry";
+    private static final String BYBIT_URL = "https://api.bybit.com/v5/market/instruments-info?category=spot";
+    private static final String COINGECKO_URL = "https://api.coingecko.com/api/v3/coins/list";
+    private static final String CACHE_FILE = "instruments.json";
+    private static final int CACHE_VERSION = 1; // Bump when the cached format changes
+    private static final long REFRESH_INTERVAL_MS = 24 * 60 * 60 * 1000; // Refresh daily
+    private static final String QUOTE_COIN = "USDT";
+
+    // Instruments shown by default, in display order
+    private static final String[][] FEATURED = {
+            {"BTC", "bitcoin", "Bitcoin"},
+            {"ETH", "ethereum", "Ethereum"},
+            {"SOL", "solana", "Solana"},
+            {"BNB", "binancecoin", "Binance Coin"},
+            {"XRP", "ripple", "Ripple"},
+            {"ADA", "cardano", "Cardano"},
+    };
+
+    // Preferred CoinGecko IDs for symbols shared by several coins
+    private static final String[][] KNOWN_IDS = {
+            {"LTC", "litecoin", "Litecoin"},
+            {"BCH", "bitcoin-cash", "Bitcoin Cash"},
+            {"DOT", "polkadot", "Polkadot"},
+            {"XLM", "stellar", "Stellar"},
+            {"LINK", "chainlink", "Chainlink"},
+    };
+
+    // Singleton instance
+    private static InstrumentRegistry instance;
+
+    private final OkHttpClient client;
+    private final ExecutorService executorService;
+    private final Gson gson;
+
+    // Current lookup index, replaced as a whole on refresh
+    private volatile Index index;
+
+    private File cacheFile;
+
+    /**
+     * Private constructor for singleton pattern
+     */
+    private InstrumentRegistry() {
+        client = new OkHttpClient.Builder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+        executorService = Executors.newSingleThreadExecutor();
+        gson = new Gson();
+
+        // Start with the built-in instruments so lookups work before anything is loaded
+        List<Instrument> defaults = new ArrayList<>();
+        for (String[] row : FEATURED) {
+            defaults.add(new Instrument(row[0], row[2], row[1], row[0] + QUOTE_COIN, true));
+        }
+        for (String[] row : KNOWN_IDS) {
+            defaults.add(new Instrument(row[0], row[2], row[1], row[0] + QUOTE_COIN, false));
+        }
+        index = new Index(defaults);
+    }
+
+    /**
+     * Get singleton instance
+     * @return InstrumentRegistry instance
+     */
+    public static synchronized InstrumentRegistry getInstance() {
+        if (instance == null) {
+            instance = new InstrumentRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Load the disk cache and refresh from the network if it is stale
+     * @param filesDir App private files directory
+     */
+    public synchronized void init(File filesDir) {
+        if (cacheFile != null) {
+            return;
+        }
+        cacheFile = new File(filesDir, CACHE_FILE);
+        executorService.execute(() -> {
+            CachedRegistry cached = readCache();
+            if (cached != null) {
+                index = new Index(cached.instruments);
+            }
+            if (cached == null || System.currentTimeMillis() - cached.fetchedAt > REFRESH_INTERVAL_MS) {
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Reload instruments from Bybit and CoinGecko on a background thread
+     */
+    public void refreshAsync() {
+        executorService.execute(this::refresh);
+    }
+
+    /**
+     * Find an instrument by symbol (e.g., BTC)
+     * @return Instrument or null
+     */
+    public Instrument findBySymbol(String symbol) {
+        return index.bySymbol.get(symbol.toUpperCase(Locale.US));
+    }
+
+    /**
+     * Find an instrument by CoinGecko ID (e.g., bitcoin)
+     * @return Instrument or null
+     */
+    public Instrument findByCoinGeckoId(String id) {
+        return index.byCoinGeckoId.get(id.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Find an instrument by exchange symbol (e.g., BTCUSDT)
+     * @return Instrument or null
+     */
+    public Instrument findByExchangeSymbol(String exchangeSymbol) {
+        return index.byExchangeSymbol.get(exchangeSymbol.toUpperCase(Locale.US));
+    }
+
+    /**
+     * Find an instrument by symbol, CoinGecko ID or exchange symbol
+     * @return Instrument or null
+     */
+    public Instrument find(String key) {
+        Instrument instrument = findBySymbol(key);
+        if (instrument == null) {
+            instrument = findByCoinGeckoId(key);
+        }
+        if (instrument == null) {
+            instrument = findByExchangeSymbol(key);
+        }
+        return instrument;
+    }
+
+    /**
+     * Get the instruments shown by default, in display order
+     */
+    public List<Instrument> getFeaturedInstruments() {
+        return index.featured;
+    }
+
+    /**
+     * Get all known instruments, featured first, then by symbol
+     */
+    public List<Instrument> getInstruments() {
+        return index.all;
+    }
+
+    /**
+     * Fetch both venues, join them and publish a new index
+     */
+    private void refresh() {
+        try {
+            // CoinGecko coins by symbol (a symbol can map to several coins)
+            Map<String, List<String[]>> coinsBySymbol = new HashMap<>();
+            JSONArray coins = new JSONArray(get(COINGECKO_URL));
+            for (int i = 0; i < coins.length(); i++) {
+                JSONObject coin = coins.getJSONObject(i);
+                String symbol = coin.getString("symbol").toUpperCase(Locale.US);
+                List<String[]> matches = coinsBySymbol.get(symbol);
+                if (matches == null) {
+                    matches = new ArrayList<>();
+                    coinsBySymbol.put(symbol, matches);
+                }
+                matches.add(new String[]{coin.getString("id"), coin.getString("name")});
+            }
+
+            // Bybit spot pairs quoted in USDT
+            List<Instrument> instruments = new ArrayList<>();
+            JSONArray list = new JSONObject(get(BYBIT_URL)).getJSONObject("result").getJSONArray("list");
+            for (int i = 0; i < list.length(); i++) {
+                JSONObject item = list.getJSONObject(i);
+                if (!QUOTE_COIN.equals(item.optString("quoteCoin")) || !"Trading".equals(item.optString("status"))) {
+                    continue;
+                }
+                String base = item.getString("baseCoin").toUpperCase(Locale.US);
+                String[] coin = pickCoin(base, coinsBySymbol.get(base));
+                if (coin == null) {
+                    // No CoinGecko listing, so no names or market data for it
+                    continue;
+                }
+                Instrument instrument = new Instrument(base, coin[1], coin[0], item.getString("symbol"), isFeatured(base));
+                JSONObject lotSize = item.optJSONObject("lotSizeFilter");
+                if (lotSize != null) {
+                    instrument.quantityStep = lotSize.optString("basePrecision", null);
+                    instrument.minOrderQuantity = lotSize.optString("minOrderQty", null);
+                }
+                JSONObject priceFilter = item.optJSONObject("priceFilter");
+                if (priceFilter != null) {
+                    instrument.tickSize = priceFilter.optString("tickSize", null);
+                }
+                instruments.add(instrument);
+            }
+
+            if (instruments.isEmpty()) {
+                Log.w(TAG, "No instruments returned, keeping current registry");
+                return;
+            }
+            index = new Index(instruments);
+            writeCache(instruments);
+            Log.d(TAG, "Loaded " + instruments.size() + " instruments");
+        } catch (Exception e) {
+            Log.e(TAG, "Error refreshing instruments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Choose the CoinGecko coin for a base symbol
+     */
+    private String[] pickCoin(String symbol, List<String[]> candidates) {
+        // Built-in mappings win over ambiguous symbol matches
+        String knownId = knownId(symbol);
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        for (String[] candidate : candidates) {
+            if (candidate[0].equals(knownId)) {
+                return candidate;
+            }
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        // Prefer the coin whose ID is its own name (e.g. "solana" over "solana-wormhole")
+        for (String[] candidate : candidates) {
+            if (candidate[0].equals(candidate[1].toLowerCase(Locale.US).replace(' ', '-'))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static String knownId(String symbol) {
+        for (String[] row : FEATURED) {
+            if (row[0].equals(symbol)) {
+                return row[1];
+            }
+        }
+        for (String[] row : KNOWN_IDS) {
+            if (row[0].equals(symbol)) {
+                return row[1];
+            }
+        }
+        return null;
+    }
+
+    private static boolean isFeatured(String symbol) {
+        for (String[] row : FEATURED) {
+            if (row[0].equals(symbol)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String get(String url) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unexpected response code: " + response);
+            }
+            return response.body().string();
+        }
+    }
+
+    private CachedRegistry readCache() {
+        if (cacheFile == null || !cacheFile.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8)) {
+            CachedRegistry cached = gson.fromJson(reader, CachedRegistry.class);
+            if (cached == null || cached.version != CACHE_VERSION || cached.instruments == null) {
+                // Stale format, ignore and reload
+                return null;
+            }
+            return cached;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading instrument cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeCache(List<Instrument> instruments) {
+        if (cacheFile == null) {
+            return;
+        }
+        CachedRegistry cached = new CachedRegistry();
+        cached.version = CACHE_VERSION;
+        cached.fetchedAt = System.currentTimeMillis();
+        cached.instruments = instruments;
+
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            gson.toJson(cached, writer);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing instrument cache: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(cacheFile)) {
+            Log.e(TAG, "Error replacing instrument cache");
+        }
+    }
+
+    /**
+     * On-disk cache format
+     */
+    private static class CachedRegistry {
+        int version;
+        long fetchedAt;
+        List<Instrument> instruments;
+    }
+
+    /**
+     * Immutable lookup tables built from one instrument list
+     */
+    private static class Index {
+        final Map<String, Instrument> bySymbol = new HashMap<>();
+        final Map<String, Instrument> byCoinGeckoId = new HashMap<>();
+        final Map<String, Instrument> byExchangeSymbol = new HashMap<>();
+        final List<Instrument> featured;
+        final List<Instrument> all;
+
+        Index(List<Instrument> instruments) {
+            List<Instrument> featuredList = new ArrayList<>();
+            List<Instrument> others = new ArrayList<>();
+            for (Instrument instrument : instruments) {
+                if (bySymbol.containsKey(instrument.symbol)) {
+                    continue;
+                }
+                bySymbol.put(instrument.symbol, instrument);
+                byCoinGeckoId.put(instrument.coinGeckoId, instrument);
+                byExchangeSymbol.put(instrument.exchangeSymbol, instrument);
+                if (instrument.featured) {
+                    featuredList.add(instrument);
+                } else {
+                    others.add(instrument);
+                }
+            }
+
+            // Featured in their fixed order, the rest alphabetically
+            List<Instrument> ordered = new ArrayList<>();
+            for (String[] row : FEATURED) {
+                for (Instrument instrument : featuredList) {
+                    if (instrument.symbol.equals(row[0])) {
+                        ordered.add(instrument);
+                    }
+                }
+            }
+            Collections.sort(others, (a, b) -> a.symbol.compareTo(b.symbol));
+            featured = Collections.unmodifiableList(new ArrayList<>(ordered));
+            ordered.addAll(others);
+            all = Collections.unmodifiableList(ordered);
+        }
+    }
+
+    /**
+     * Data class for one tradable instrument
+     */
+    public static class Instrument {
+        public String symbol;          // Base coin, e.g. BTC
+        public String name;            // Display name, e.g. Bitcoin
+        public String coinGeckoId;     // e.g. bitcoin
+        public String exchangeSymbol;  // Bybit spot pair, e.g. BTCUSDT
+        public boolean featured;
+        public String quantityStep;    // Bybit basePrecision, e.g. "0.000001"
+        public String minOrderQuantity;
+        public String tickSize;
+
+        public Instrument(String symbol, String name, String coinGeckoId, String exchangeSymbol, boolean featured) {
+            this.symbol = symbol;
+            this.name = name;
+            this.coinGeckoId = coinGeckoId;
+            this.exchangeSymbol = exchangeSymbol;
+            this.featured = featured;
+        }
+
+        // For Gson deserialization
+        public Instrument() {
+        }
+
+        /**
+         * Number of decimals an order quantity may have, from the quantity step
+         */
+        public int getQuantityScale() {
+            return FixedPoint.scaleOf(quantityStep, FixedPoint.QUANTITY_SCALE);
+        }
+
+        /**
+         * Number of decimals a price may have, from the tick size
+         */
+        public int getPriceScale() {
+            return FixedPoint.scaleOf(tickSize, FixedPoint.PRICE_SCALE);
+        }
+    }
+}
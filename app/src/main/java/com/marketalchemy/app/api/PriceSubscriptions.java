@@ -0,0 +1,142 @@
+package com.marketalchemy.app.api;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Reference-counted price subscriptions shared by every portfolio.
+ * <p>
+ * The first subscriber of an instrument starts polling it through
+ * {@link BybitUpdateClient}; the last one to leave stops it. Each tick is
+ * converted to fixed point once and delivered only to that instrument's
+ * subscribers, so a symbol is fetched and valued once per tick however many
+ * portfolios hold it.
+ */
+public class PriceSubscriptions implements BybitApiClient.PriceListener, BybitUpdateClient.PriceUpdateListener {
+
+    // Singleton instance
+    private static PriceSubscriptions instance;
+
+    // By exchange symbol; read without locking on the tick path
+    private final Map<String, Subscription> subscriptions;
+    private final Handler mainHandler;
+
+    /**
+     * Receives marks for subscribed instruments
+     */
+    public interface MarkListener {
+        /**
+         * @param exchangeSymbol Exchange symbol of the instrument
+         * @param price Price at FixedPoint.PRICE_SCALE
+         */
+        void onMark(String exchangeSymbol, long price);
+    }
+
+    /**
+     * Subscribers of one instrument
+     */
+    private static class Subscription {
+        final String trackedSymbol; // Symbol as tracked by BybitUpdateClient
+        final List<MarkListener> listeners = new CopyOnWriteArrayList<>();
+
+        Subscription(String trackedSymbol) {
+            this.trackedSymbol = trackedSymbol;
+        }
+    }
+
+    /**
+     * Private constructor for singleton pattern
+     */
+    private PriceSubscriptions() {
+        subscriptions = new ConcurrentHashMap<>();
+        mainHandler = new Handler(Looper.getMainLooper());
+        BybitApiClient.getInstance().addPriceListener(this);
+    }
+
+    /**
+     * Get singleton instance
+     * @return PriceSubscriptions instance
+     */
+    public static synchronized PriceSubscriptions getInstance() {
+        if (instance == null) {
+            instance = new PriceSubscriptions();
+        }
+        return instance;
+    }
+
+    /**
+     * Subscribe to an instrument's marks; polling starts with the first subscriber
+     * @param cryptoId Crypto ID of the instrument
+     * @param exchangeSymbol Exchange symbol the marks are keyed by
+     */
+    public synchronized void subscribe(String cryptoId, String exchangeSymbol, MarkListener listener) {
+        Subscription subscription = subscriptions.get(exchangeSymbol);
+        if (subscription == null) {
+            String symbol = BybitApiClient.getInstance().getSymbolFromId(cryptoId);
+            subscription = new Subscription(symbol);
+            subscriptions.put(exchangeSymbol, subscription);
+            // BybitUpdateClient is confined to the main thread
+            mainHandler.post(() -> BybitUpdateClient.getInstance().trackSymbol(symbol, this));
+        }
+        if (!subscription.listeners.contains(listener)) {
+            subscription.listeners.add(listener);
+        }
+    }
+
+    /**
+     * Drop a subscription; polling stops with the last subscriber
+     */
+    public synchronized void unsubscribe(String exchangeSymbol, MarkListener listener) {
+        Subscription subscription = subscriptions.get(exchangeSymbol);
+        if (subscription == null) {
+            return;
+        }
+        subscription.listeners.remove(listener);
+        if (subscription.listeners.isEmpty()) {
+            subscriptions.remove(exchangeSymbol);
+            String symbol = subscription.trackedSymbol;
+            mainHandler.post(() -> BybitUpdateClient.getInstance().untrackSymbol(symbol, this));
+        }
+    }
+
+    /**
+     * Get the number of subscribers of an instrument
+     */
+    public int getSubscriberCount(String exchangeSymbol) {
+        Subscription subscription = subscriptions.get(exchangeSymbol);
+        return subscription != null ? subscription.listeners.size() : 0;
+    }
+
+    /**
+     * Fan a cached price out to the instrument's subscribers
+     */
+    @Override
+    public void onPriceUpdate(String exchangeSymbol, double price) {
+        Subscription subscription = subscriptions.get(exchangeSymbol);
+        if (subscription == null || !(price > 0) || Double.isInfinite(price)) {
+            return;
+        }
+        long mark = FixedPoint.of(price, FixedPoint.PRICE_SCALE);
+        if (mark <= 0) {
+            return; // Below the smallest representable price
+        }
+        for (MarkListener listener : subscription.listeners) {
+            listener.onMark(exchangeSymbol, mark);
+        }
+    }
+
+    /**
+     * Polled updates are only used to keep symbols tracked; their prices reach
+     * subscribers through the API client's price cache
+     */
+    @Override
+    public void onPriceUpdate(String symbol, double price, double change) {
+    }
+}
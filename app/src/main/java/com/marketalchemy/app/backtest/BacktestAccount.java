@@ -0,0 +1,242 @@
+package com.marketalchemy.app.backtest;
+
+import com.marketalchemy.app.model.LotBook;
+import com.marketalchemy.app.model.VirtualPortfolio;
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.math.RoundingMode;
+
+/**
+ * In-memory account a strategy trades on during a backtest.
+ * <p>
+ * Buys and sells follow the virtual portfolio: costs round up and proceeds round
+ * down with {@link VirtualPortfolio#buyCost} and {@link VirtualPortfolio#sellProceeds},
+ * a buy the balance cannot cover and a sell larger than the holding are rejected,
+ * and a {@link LotBook} decides the cost basis each sale relieves. Nothing is
+ * persisted and no listeners are notified. Orders are queued and filled at the
+ * next bar's open by the {@link Backtester}.
+ */
+public class BacktestAccount {
+
+    private static final long BPS = 10000;
+
+    private final String cryptoId;
+    private final int feeBps;
+    private final LotBook lots;
+    private final BacktestResult.Trades trades;
+
+    private long balance;  // At FixedPoint.MONEY_SCALE
+    private long quantity; // At FixedPoint.QUANTITY_SCALE
+    private long mark;     // Last close at FixedPoint.PRICE_SCALE
+    private long feesPaid;
+    private int rejectedOrders;
+
+    // Orders waiting for the next bar
+    private long pendingBuyQuantity;
+    private long pendingBuyCash;
+    private long pendingSellQuantity;
+    private boolean pendingSellAll;
+
+    BacktestAccount(String cryptoId, long initialBalance, int feeBps, int lotMethod) {
+        this.cryptoId = cryptoId;
+        this.feeBps = feeBps;
+        this.balance = initialBalance;
+        lots = new LotBook();
+        lots.setMethod(lotMethod);
+        trades = new BacktestResult.Trades();
+    }
+
+    /**
+     * Get the cash balance at FixedPoint.MONEY_SCALE
+     */
+    public long getBalance() {
+        return balance;
+    }
+
+    /**
+     * Get the quantity held at FixedPoint.QUANTITY_SCALE
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Get the cost basis of the holding at FixedPoint.MONEY_SCALE, fees included
+     */
+    public long getCostBasis() {
+        return lots.getCost(cryptoId);
+    }
+
+    /**
+     * Get the realized profit/loss so far at FixedPoint.MONEY_SCALE, net of fees
+     */
+    public long getRealizedProfitLoss() {
+        return lots.getRealized();
+    }
+
+    /**
+     * Get cash plus the holding marked at the last close, at FixedPoint.MONEY_SCALE
+     */
+    public long getEquity() {
+        return FixedPoint.add(balance, FixedPoint.multiply(quantity, FixedPoint.QUANTITY_SCALE,
+                mark, FixedPoint.PRICE_SCALE, FixedPoint.MONEY_SCALE, RoundingMode.HALF_EVEN));
+    }
+
+    /**
+     * Check whether any order is waiting for the next bar
+     */
+    public boolean hasPendingOrders() {
+        return pendingBuyQuantity > 0 || pendingBuyCash > 0 || pendingSellQuantity > 0 || pendingSellAll;
+    }
+
+    /**
+     * Buy a quantity at the next open; rejected if the balance cannot cover it
+     * @param quantity Quantity at FixedPoint.QUANTITY_SCALE
+     */
+    public void buy(long quantity) {
+        if (quantity > 0) {
+            pendingBuyQuantity += quantity;
+        }
+    }
+
+    /**
+     * Buy as much as an amount of cash covers at the next open, fees included
+     * @param amount Amount at FixedPoint.MONEY_SCALE; capped at the balance when filled
+     */
+    public void buyWithCash(long amount) {
+        if (amount > 0) {
+            pendingBuyCash += amount;
+        }
+    }
+
+    /**
+     * Sell a quantity at the next open; rejected if more than the holding at that time
+     * @param quantity Quantity at FixedPoint.QUANTITY_SCALE
+     */
+    public void sell(long quantity) {
+        if (quantity > 0) {
+            pendingSellQuantity += quantity;
+        }
+    }
+
+    /**
+     * Sell the whole holding at the next open
+     */
+    public void sellAll() {
+        pendingSellAll = true;
+    }
+
+    /**
+     * Drop every order that has not filled yet
+     */
+    public void cancelPending() {
+        pendingBuyQuantity = 0;
+        pendingBuyCash = 0;
+        pendingSellQuantity = 0;
+        pendingSellAll = false;
+    }
+
+    int getRejectedOrders() {
+        return rejectedOrders;
+    }
+
+    long getFeesPaid() {
+        return feesPaid;
+    }
+
+    BacktestResult.Trades getTrades() {
+        return trades;
+    }
+
+    /**
+     * Mark the holding at a bar's close
+     */
+    void mark(long close) {
+        mark = close;
+    }
+
+    /**
+     * Fill queued orders at a bar's open: sells first, so their proceeds can fund buys
+     */
+    void fill(long timeMs, long price) {
+        if (!hasPendingOrders()) {
+            return;
+        }
+        long sellQuantity = pendingSellAll ? quantity : pendingSellQuantity;
+        if (sellQuantity > 0) {
+            if (sellQuantity <= quantity) {
+                executeSell(timeMs, sellQuantity, price);
+            } else {
+                rejectedOrders++;
+            }
+        }
+        if (pendingBuyQuantity > 0) {
+            executeBuy(timeMs, pendingBuyQuantity, price);
+        }
+        if (pendingBuyCash > 0) {
+            long affordable = affordableQuantity(Math.min(pendingBuyCash, balance), price);
+            if (affordable > 0) {
+                executeBuy(timeMs, affordable, price);
+            } else {
+                rejectedOrders++;
+            }
+        }
+        cancelPending();
+    }
+
+    private void executeBuy(long timeMs, long buyQuantity, long price) {
+        long cost = VirtualPortfolio.buyCost(buyQuantity, price);
+        long fee = fee(cost);
+        long total = FixedPoint.add(cost, fee);
+        if (total > balance) {
+            rejectedOrders++;
+            return;
+        }
+        balance = FixedPoint.subtract(balance, total);
+        quantity = FixedPoint.add(quantity, buyQuantity);
+        lots.addLot(cryptoId, buyQuantity, total, price, timeMs);
+        feesPaid = FixedPoint.add(feesPaid, fee);
+        trades.add(timeMs, BacktestResult.SIDE_BUY, buyQuantity, price, fee, 0);
+    }
+
+    private void executeSell(long timeMs, long sellQuantity, long price) {
+        long proceeds = VirtualPortfolio.sellProceeds(sellQuantity, price);
+        long fee = fee(proceeds);
+        long net = FixedPoint.subtract(proceeds, fee);
+        long realizedBefore = lots.getRealized();
+        lots.relieve(cryptoId, sellQuantity, net);
+        balance = FixedPoint.add(balance, net);
+        quantity -= sellQuantity;
+        feesPaid = FixedPoint.add(feesPaid, fee);
+        trades.add(timeMs, BacktestResult.SIDE_SELL, sellQuantity, price, fee,
+                FixedPoint.subtract(lots.getRealized(), realizedBefore));
+    }
+
+    /**
+     * Fee on a notional at FixedPoint.MONEY_SCALE, rounded up in the house's favour
+     */
+    private long fee(long notional) {
+        return feeBps == 0 ? 0 : FixedPoint.multiplyDivide(notional, feeBps, BPS, RoundingMode.CEILING);
+    }
+
+    /**
+     * Largest quantity whose cost and fee fit in a budget
+     */
+    private long affordableQuantity(long budget, long price) {
+        if (budget <= 0 || price <= 0) {
+            return 0;
+        }
+        long beforeFees = FixedPoint.multiplyDivide(budget, BPS, BPS + feeBps, RoundingMode.FLOOR);
+        long affordable = FixedPoint.divide(beforeFees, FixedPoint.MONEY_SCALE, price, FixedPoint.PRICE_SCALE,
+                FixedPoint.QUANTITY_SCALE, RoundingMode.FLOOR);
+        // Rounding the cost and fee up can overshoot by a unit or two
+        while (affordable > 0) {
+            long cost = VirtualPortfolio.buyCost(affordable, price);
+            if (FixedPoint.add(cost, fee(cost)) <= budget) {
+                break;
+            }
+            affordable--;
+        }
+        return affordable;
+    }
+}
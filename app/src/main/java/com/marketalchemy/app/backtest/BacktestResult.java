@@ -0,0 +1,204 @@
+package com.marketalchemy.app.backtest;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of one backtest: the fills, the equity curve and summary statistics.
+ * Money values are at FixedPoint.MONEY_SCALE.
+ */
+public class BacktestResult {
+
+    public static final byte SIDE_BUY = 1;
+    public static final byte SIDE_SELL = 2;
+
+    private final CandleSeries series;
+    private final int fromBar;
+    private final int toBar;
+    private final long[] equity; // Per bar, marked at the close
+    private final Trades trades;
+    private final long initialEquity;
+    private final long feesPaid;
+    private final int rejectedOrders;
+    private final int barsInMarket;
+
+    // Computed once from the equity curve
+    private final double maxDrawdown;
+    private final double sharpeRatio;
+
+    /**
+     * Fills in time order, in parallel arrays
+     */
+    public static class Trades {
+        private static final int INITIAL_CAPACITY = 64;
+
+        public long[] times = new long[INITIAL_CAPACITY];
+        public byte[] sides = new byte[INITIAL_CAPACITY];
+        public long[] quantities = new long[INITIAL_CAPACITY]; // At FixedPoint.QUANTITY_SCALE
+        public long[] prices = new long[INITIAL_CAPACITY];     // At FixedPoint.PRICE_SCALE
+        public long[] fees = new long[INITIAL_CAPACITY];
+        public long[] realized = new long[INITIAL_CAPACITY];   // Realized profit/loss of sells
+        public int size;
+
+        void add(long timeMs, byte side, long quantity, long price, long fee, long profit) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                sides = Arrays.copyOf(sides, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                fees = Arrays.copyOf(fees, capacity);
+                realized = Arrays.copyOf(realized, capacity);
+            }
+            times[size] = timeMs;
+            sides[size] = side;
+            quantities[size] = quantity;
+            prices[size] = price;
+            fees[size] = fee;
+            realized[size] = profit;
+            size++;
+        }
+    }
+
+    BacktestResult(CandleSeries series, int fromBar, int toBar, long[] equity, long initialEquity,
+                   BacktestAccount account, int barsInMarket) {
+        this.series = series;
+        this.fromBar = fromBar;
+        this.toBar = toBar;
+        this.equity = equity;
+        this.initialEquity = initialEquity;
+        this.trades = account.getTrades();
+        this.feesPaid = account.getFeesPaid();
+        this.rejectedOrders = account.getRejectedOrders();
+        this.barsInMarket = barsInMarket;
+
+        // One pass for drawdown and the mean and variance of bar returns (Welford)
+        double peak = FixedPoint.toDouble(initialEquity, FixedPoint.MONEY_SCALE);
+        double previous = peak;
+        double drawdown = 0;
+        double mean = 0;
+        double squares = 0;
+        int count = 0;
+        for (long units : equity) {
+            double value = FixedPoint.toDouble(units, FixedPoint.MONEY_SCALE);
+            peak = Math.max(peak, value);
+            if (peak > 0) {
+                drawdown = Math.max(drawdown, (peak - value) / peak);
+            }
+            if (previous > 0) {
+                double barReturn = value / previous - 1;
+                count++;
+                double delta = barReturn - mean;
+                mean += delta / count;
+                squares += delta * (barReturn - mean);
+            }
+            previous = value;
+        }
+        maxDrawdown = drawdown;
+        double deviation = count > 1 ? Math.sqrt(squares / (count - 1)) : 0;
+        double barsPerYear = 365.25 * 24 * 60 * 60 * 1000 / series.getIntervalMs();
+        sharpeRatio = deviation > 0 ? mean / deviation * Math.sqrt(barsPerYear) : 0;
+    }
+
+    public CandleSeries getSeries() {
+        return series;
+    }
+
+    /**
+     * Get the first replayed bar
+     */
+    public int getFromBar() {
+        return fromBar;
+    }
+
+    /**
+     * Get the bar after the last replayed one
+     */
+    public int getToBar() {
+        return toBar;
+    }
+
+    /**
+     * Get the equity curve, one value per replayed bar marked at its close; bar
+     * {@code fromBar + i} is at index i. Not copied, do not modify.
+     */
+    public long[] getEquityCurve() {
+        return equity;
+    }
+
+    public Trades getTrades() {
+        return trades;
+    }
+
+    public long getInitialEquity() {
+        return initialEquity;
+    }
+
+    public long getFinalEquity() {
+        return equity.length > 0 ? equity[equity.length - 1] : initialEquity;
+    }
+
+    /**
+     * Get the return over the whole run, e.g. 0.12 for +12%
+     */
+    public double getTotalReturn() {
+        if (initialEquity == 0) {
+            return 0;
+        }
+        return (double) (getFinalEquity() - initialEquity) / initialEquity;
+    }
+
+    /**
+     * Get the largest peak-to-trough fall of equity as a fraction of the peak
+     */
+    public double getMaxDrawdown() {
+        return maxDrawdown;
+    }
+
+    /**
+     * Get the annualized Sharpe ratio of bar returns, with a zero risk-free rate
+     */
+    public double getSharpeRatio() {
+        return sharpeRatio;
+    }
+
+    public int getTradeCount() {
+        return trades.size;
+    }
+
+    /**
+     * Get the share of sells that realized a profit, 0 if there were none
+     */
+    public double getWinRate() {
+        int sells = 0;
+        int wins = 0;
+        for (int i = 0; i < trades.size; i++) {
+            if (trades.sides[i] == SIDE_SELL) {
+                sells++;
+                if (trades.realized[i] > 0) {
+                    wins++;
+                }
+            }
+        }
+        return sells > 0 ? (double) wins / sells : 0;
+    }
+
+    public long getFeesPaid() {
+        return feesPaid;
+    }
+
+    /**
+     * Get the number of orders rejected for lack of cash or holdings
+     */
+    public int getRejectedOrders() {
+        return rejectedOrders;
+    }
+
+    /**
+     * Get the share of bars that closed with a position open
+     */
+    public double getExposure() {
+        return equity.length > 0 ? (double) barsInMarket / equity.length : 0;
+    }
+}
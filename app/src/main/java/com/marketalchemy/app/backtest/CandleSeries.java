@@ -0,0 +1,218 @@
+package com.marketalchemy.app.backtest;
+
+import com.marketalchemy.app.api.CandleCache;
+import com.marketalchemy.app.data.TickHistoryStore;
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only price bars for backtesting, stored column by column.
+ * <p>
+ * Prices are fixed-point at FixedPoint.PRICE_SCALE, like the prices the virtual
+ * portfolio trades at. The arrays are never modified after construction, so one
+ * series can be shared by any number of concurrent backtests without copying.
+ */
+public final class CandleSeries {
+
+    private final String symbol;
+    private final long intervalMs;
+    private final int size;
+    private final long[] times; // Bar open times
+    private final long[] opens;
+    private final long[] highs;
+    private final long[] lows;
+    private final long[] closes;
+    private final double[] volumes;
+
+    private CandleSeries(String symbol, long intervalMs, int size, long[] times, long[] opens,
+                         long[] highs, long[] lows, long[] closes, double[] volumes) {
+        this.symbol = symbol;
+        this.intervalMs = intervalMs;
+        this.size = size;
+        this.times = times;
+        this.opens = opens;
+        this.highs = highs;
+        this.lows = lows;
+        this.closes = closes;
+        this.volumes = volumes;
+    }
+
+    /**
+     * Build a series from cached exchange candles
+     * @param symbol Instrument symbol
+     * @param interval Bybit interval of the candles
+     * @param candles Candles, oldest first
+     */
+    public static CandleSeries fromCandles(String symbol, String interval, List<CandleCache.Candle> candles) {
+        Builder builder = new Builder(symbol, CandleCache.intervalToMillis(interval), candles.size());
+        for (CandleCache.Candle candle : candles) {
+            builder.add(candle.openTime, candle.open, candle.high, candle.low, candle.close, candle.volume);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build a series from recorded ticks and candles, bucketed into bars. Reads
+     * disk, so call off the main thread.
+     * @param symbol Cryptocurrency symbol as recorded
+     * @param fromMs Range start (inclusive)
+     * @param toMs Range end (inclusive)
+     * @param intervalMs Bar length; at least one minute, the resolution of downsampled history
+     */
+    public static CandleSeries fromHistory(String symbol, long fromMs, long toMs, long intervalMs) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Bar interval must be positive");
+        }
+        final Builder builder = new Builder(symbol, intervalMs, 1024);
+        TickHistoryStore.getInstance().query(symbol, fromMs, toMs, new TickHistoryStore.SeriesVisitor() {
+            @Override
+            public void onTick(long timeMs, double price) {
+                builder.merge(timeMs, price, price, price, price);
+            }
+
+            @Override
+            public void onCandle(long openTimeMs, double open, double high, double low, double close) {
+                builder.merge(openTimeMs, open, high, low, close);
+            }
+        });
+        return builder.build();
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int bar) {
+        return times[bar];
+    }
+
+    public long getOpen(int bar) {
+        return opens[bar];
+    }
+
+    public long getHigh(int bar) {
+        return highs[bar];
+    }
+
+    public long getLow(int bar) {
+        return lows[bar];
+    }
+
+    public long getClose(int bar) {
+        return closes[bar];
+    }
+
+    public double getVolume(int bar) {
+        return volumes[bar];
+    }
+
+    /**
+     * Find the first bar opening at or after a time
+     * @return Bar index, or size() if every bar opens earlier
+     */
+    public int indexOf(long timeMs) {
+        int index = Arrays.binarySearch(times, 0, size, timeMs);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Collects bars into growable arrays
+     */
+    public static class Builder {
+        private final String symbol;
+        private final long intervalMs;
+        private int size;
+        private long[] times;
+        private long[] opens;
+        private long[] highs;
+        private long[] lows;
+        private long[] closes;
+        private double[] volumes;
+
+        public Builder(String symbol, long intervalMs, int capacity) {
+            this.symbol = symbol;
+            this.intervalMs = intervalMs;
+            int initial = Math.max(capacity, 16);
+            times = new long[initial];
+            opens = new long[initial];
+            highs = new long[initial];
+            lows = new long[initial];
+            closes = new long[initial];
+            volumes = new double[initial];
+        }
+
+        /**
+         * Append a bar; bars must be added oldest first
+         */
+        public Builder add(long openTimeMs, double open, double high, double low, double close, double volume) {
+            return add(openTimeMs, FixedPoint.of(open, FixedPoint.PRICE_SCALE),
+                    FixedPoint.of(high, FixedPoint.PRICE_SCALE), FixedPoint.of(low, FixedPoint.PRICE_SCALE),
+                    FixedPoint.of(close, FixedPoint.PRICE_SCALE), volume);
+        }
+
+        /**
+         * Append a bar with prices at FixedPoint.PRICE_SCALE; bars must be added oldest first
+         */
+        public Builder add(long openTimeMs, long open, long high, long low, long close, double volume) {
+            if (size > 0 && openTimeMs <= times[size - 1]) {
+                throw new IllegalArgumentException("Bars must be added in time order");
+            }
+            ensureCapacity();
+            times[size] = openTimeMs;
+            opens[size] = open;
+            highs[size] = high;
+            lows[size] = low;
+            closes[size] = close;
+            volumes[size] = volume;
+            size++;
+            return this;
+        }
+
+        /**
+         * Fold a price or a finer candle into the bar of its time, opening the bar if needed
+         */
+        void merge(long timeMs, double open, double high, double low, double close) {
+            long barTime = Math.floorDiv(timeMs, intervalMs) * intervalMs;
+            if (size == 0 || barTime > times[size - 1]) {
+                add(barTime, open, high, low, close, 0);
+                return;
+            }
+            if (barTime < times[size - 1]) {
+                return; // Out of order, already covered by a later bar
+            }
+            int bar = size - 1;
+            highs[bar] = Math.max(highs[bar], FixedPoint.of(high, FixedPoint.PRICE_SCALE));
+            lows[bar] = Math.min(lows[bar], FixedPoint.of(low, FixedPoint.PRICE_SCALE));
+            closes[bar] = FixedPoint.of(close, FixedPoint.PRICE_SCALE);
+        }
+
+        public CandleSeries build() {
+            return new CandleSeries(symbol, intervalMs, size, Arrays.copyOf(times, size),
+                    Arrays.copyOf(opens, size), Arrays.copyOf(highs, size), Arrays.copyOf(lows, size),
+                    Arrays.copyOf(closes, size), Arrays.copyOf(volumes, size));
+        }
+
+        private void ensureCapacity() {
+            if (size < times.length) {
+                return;
+            }
+            int capacity = times.length * 2;
+            times = Arrays.copyOf(times, capacity);
+            opens = Arrays.copyOf(opens, capacity);
+            highs = Arrays.copyOf(highs, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            closes = Arrays.copyOf(closes, capacity);
+            volumes = Arrays.copyOf(volumes, capacity);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.marketalchemy.app.backtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The strategy settings a sweep tries: either every combination of a grid of
+ * values, or random samples from ranges. Variants are numbered 0..size()-1 and
+ * decoded on demand, so a large grid costs no memory up front.
+ */
+public class ParameterSpace {
+
+    private final String[] names;
+    private final double[][] values;  // Grid values per parameter, null for random spaces
+    private final double[][] samples; // Random variants, null for grids
+    private final int size;
+
+    private ParameterSpace(String[] names, double[][] values, double[][] samples, int size) {
+        this.names = names;
+        this.values = values;
+        this.samples = samples;
+        this.size = size;
+    }
+
+    /**
+     * Every combination of the given values; the last parameter varies fastest
+     * @param names Parameter names, in the order strategies receive them
+     * @param values Candidate values of each parameter
+     */
+    public static ParameterSpace grid(String[] names, double[][] values) {
+        if (names.length != values.length) {
+            throw new IllegalArgumentException("One list of values per parameter");
+        }
+        long size = 1;
+        for (double[] candidates : values) {
+            if (candidates.length == 0) {
+                throw new IllegalArgumentException("Every parameter needs at least one value");
+            }
+            size *= candidates.length;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Grid too large");
+            }
+        }
+        double[][] copies = new double[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            copies[i] = values[i].clone();
+        }
+        return new ParameterSpace(names.clone(), copies, null, (int) size);
+    }
+
+    /**
+     * Uniform random samples within ranges. Parameters marked as integers are
+     * drawn from whole numbers in [min, max].
+     * @param names Parameter names, in the order strategies receive them
+     * @param min Lower bound of each parameter
+     * @param max Upper bound of each parameter
+     * @param integer Whether each parameter takes whole values
+     * @param count Number of variants
+     * @param seed Seed, so a search can be repeated
+     */
+    public static ParameterSpace random(String[] names, double[] min, double[] max, boolean[] integer,
+                                        int count, long seed) {
+        if (min.length != names.length || max.length != names.length || integer.length != names.length) {
+            throw new IllegalArgumentException("One range per parameter");
+        }
+        Random random = new Random(seed);
+        double[][] samples = new double[count][names.length];
+        for (int v = 0; v < count; v++) {
+            for (int p = 0; p < names.length; p++) {
+                samples[v][p] = integer[p]
+                        ? Math.floor(min[p]) + random.nextInt((int) (Math.floor(max[p]) - Math.floor(min[p])) + 1)
+                        : min[p] + random.nextDouble() * (max[p] - min[p]);
+            }
+        }
+        return new ParameterSpace(names.clone(), null, samples, count);
+    }
+
+    /**
+     * Get the number of variants
+     */
+    public int size() {
+        return size;
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * Decode a variant's parameters
+     * @param variant Variant number, 0..size()-1
+     * @param out Receives one value per parameter
+     */
+    public void get(int variant, double[] out) {
+        if (samples != null) {
+            System.arraycopy(samples[variant], 0, out, 0, names.length);
+            return;
+        }
+        int rest = variant;
+        for (int p = values.length - 1; p >= 0; p--) {
+            out[p] = values[p][rest % values[p].length];
+            rest /= values[p].length;
+        }
+    }
+
+    /**
+     * Describe a variant, e.g. "fast=20, slow=100"
+     */
+    public String describe(double[] parameters) {
+        StringBuilder out = new StringBuilder();
+        for (int p = 0; p < names.length; p++) {
+            if (p > 0) {
+                out.append(", ");
+            }
+            double value = parameters[p];
+            out.append(names[p]).append('=');
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                out.append((long) value);
+            } else {
+                out.append(value);
+            }
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "ParameterSpace" + Arrays.toString(names) + " x" + size;
+    }
+}
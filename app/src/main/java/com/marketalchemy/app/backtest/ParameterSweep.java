@@ -0,0 +1,307 @@
+package com.marketalchemy.app.backtest;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs one backtest per variant of a {@link ParameterSpace} in parallel.
+ * <p>
+ * Variants are split recursively across a fork-join pool with one worker per
+ * core; idle workers steal the remaining ranges, so slow variants do not hold
+ * the others up. Every worker reads the same {@link CandleSeries} arrays, which
+ * are never written, so nothing is copied. Results are ranked as they arrive
+ * and each one is streamed to the listener with its current rank. Only the
+ * summary of a run is kept, never its equity curve, so memory does not grow
+ * with the length of the history times the number of variants.
+ */
+public class ParameterSweep {
+
+    private static final String TAG = "ParameterSweep";
+
+    // Shared by all sweeps; the common pool leaves one core to the caller
+    private static ForkJoinPool pool;
+
+    private final Backtester backtester;
+    private final CandleSeries series;
+    private final ParameterSpace space;
+    private final StrategyFactory factory;
+    private final Score score;
+
+    /**
+     * Creates the strategy for one variant
+     */
+    public interface StrategyFactory {
+        /**
+         * @param parameters Values in the order of {@link ParameterSpace#getNames()}; not retained by the caller
+         */
+        Strategy create(double[] parameters);
+    }
+
+    /**
+     * Ranks results; higher is better
+     */
+    public interface Score {
+        double of(BacktestResult result);
+    }
+
+    public static final Score SHARPE_RATIO = new Score() {
+        @Override
+        public double of(BacktestResult result) {
+            return result.getSharpeRatio();
+        }
+    };
+
+    public static final Score TOTAL_RETURN = new Score() {
+        @Override
+        public double of(BacktestResult result) {
+            return result.getTotalReturn();
+        }
+    };
+
+    /**
+     * Receives results as variants finish. Called on pool threads, one call at
+     * a time.
+     */
+    public interface SweepListener {
+        /**
+         * @param result The finished variant
+         * @param rank Its rank among the results so far, 0 being the best
+         * @param completed Variants finished so far
+         * @param total Variants in the sweep
+         */
+        void onResult(Result result, int rank, int completed, int total);
+
+        /**
+         * @param ranked Every finished variant, best first
+         * @param cancelled Whether the sweep stopped early
+         */
+        void onComplete(List<Result> ranked, boolean cancelled);
+    }
+
+    /**
+     * Summary of one variant's backtest
+     */
+    public static class Result {
+        public final int variant;
+        public final double[] parameters;
+        public final double score;
+        public final long finalEquity; // At FixedPoint.MONEY_SCALE
+        public final double totalReturn;
+        public final double maxDrawdown;
+        public final double sharpeRatio;
+        public final double winRate;
+        public final int tradeCount;
+
+        Result(int variant, double[] parameters, double score, BacktestResult backtest) {
+            this.variant = variant;
+            this.parameters = parameters;
+            this.score = score;
+            finalEquity = backtest.getFinalEquity();
+            totalReturn = backtest.getTotalReturn();
+            maxDrawdown = backtest.getMaxDrawdown();
+            sharpeRatio = backtest.getSharpeRatio();
+            winRate = backtest.getWinRate();
+            tradeCount = backtest.getTradeCount();
+        }
+    }
+
+    /**
+     * A running sweep
+     */
+    public static class Handle {
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final List<Result> ranked = new ArrayList<>();
+        private final int total;
+        private volatile boolean done;
+
+        Handle(int total) {
+            this.total = total;
+        }
+
+        /**
+         * Stop the sweep; running backtests stop within a few thousand bars and
+         * variants not started yet are skipped
+         */
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Get the results so far, best first
+         */
+        public synchronized List<Result> getRanked() {
+            return Collections.unmodifiableList(new ArrayList<>(ranked));
+        }
+
+        /**
+         * Insert a result in rank order
+         * @return Its rank
+         */
+        private int insert(Result result) {
+            int low = 0;
+            int high = ranked.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ranked.get(middle).score >= result.score) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            ranked.add(low, result);
+            return low;
+        }
+    }
+
+    /**
+     * @param backtester Settings every variant runs with
+     * @param series Bars to replay, shared by all workers
+     * @param space Variants to try
+     * @param factory Creates a strategy per variant
+     * @param score Ranks the results, e.g. {@link #SHARPE_RATIO}
+     */
+    public ParameterSweep(Backtester backtester, CandleSeries series, ParameterSpace space,
+                          StrategyFactory factory, Score score) {
+        this.backtester = backtester;
+        this.series = series;
+        this.space = space;
+        this.factory = factory;
+        this.score = score;
+    }
+
+    /**
+     * Start the sweep in the background
+     * @param listener Receives results as they finish; may be null
+     * @return Handle to follow or cancel the sweep
+     */
+    public Handle start(SweepListener listener) {
+        Handle handle = new Handle(space.size());
+        getPool().execute(new SweepTask(handle, listener));
+        return handle;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    /**
+     * Runs the whole sweep, then reports completion
+     */
+    private class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Handle handle;
+        private final SweepListener listener;
+
+        SweepTask(Handle handle, SweepListener listener) {
+            this.handle = handle;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                new RangeTask(handle, listener, 0, space.size()).invoke();
+            } finally {
+                // Report completion even if a task failed, so callers never wait forever
+                handle.done = true;
+                if (listener != null) {
+                    List<Result> ranked;
+                    synchronized (handle) {
+                        ranked = Collections.unmodifiableList(new ArrayList<>(handle.ranked));
+                    }
+                    listener.onComplete(ranked, handle.isCancelled());
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs variants [from, to), splitting until one variant is left so work
+     * stealing can balance variants of very different cost
+     */
+    private class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Handle handle;
+        private final SweepListener listener;
+        private final int from;
+        private final int to;
+
+        RangeTask(Handle handle, SweepListener listener, int from, int to) {
+            this.handle = handle;
+            this.listener = listener;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (from >= to || handle.isCancelled()) {
+                return;
+            }
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(handle, listener, from, middle),
+                        new RangeTask(handle, listener, middle, to));
+                return;
+            }
+            runVariant(from);
+        }
+
+        private void runVariant(int variant) {
+            Result result;
+            try {
+                double[] parameters = new double[space.getNames().length];
+                space.get(variant, parameters);
+                BacktestResult backtest = backtester.run(series, factory.create(parameters),
+                        0, series.size(), handle.cancelled);
+                if (backtest == null) {
+                    return; // Cancelled
+                }
+                double value = score.of(backtest);
+                result = new Result(variant, parameters,
+                        Double.isNaN(value) ? Double.NEGATIVE_INFINITY : value, backtest);
+            } catch (RuntimeException e) {
+                // A failed variant still counts as completed so progress reaches the total
+                Log.e(TAG, "Variant " + variant + " failed: " + e.getMessage());
+                handle.completed.incrementAndGet();
+                return;
+            }
+            synchronized (handle) {
+                int rank = handle.insert(result);
+                int completed = handle.completed.incrementAndGet();
+                if (listener != null) {
+                    listener.onResult(result, rank, completed, handle.total);
+                }
+            }
+        }
+    }
+}
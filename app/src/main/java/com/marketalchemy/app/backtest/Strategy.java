@@ -0,0 +1,20 @@
+package com.marketalchemy.app.backtest;
+
+/**
+ * A trading strategy that can be replayed over historical bars.
+ * <p>
+ * The backtester calls {@link #onBar} once per bar, after the bar has closed.
+ * Orders placed on the account fill at the next bar's open, so a strategy never
+ * trades at a price it has already seen. Each run gets its own strategy
+ * instance; keep indicator state in fields and avoid allocating per bar, the
+ * replay loop itself does not allocate.
+ */
+public interface Strategy {
+
+    /**
+     * @param series Bars being replayed; only bars up to and including {@code bar} may be read
+     * @param bar Index of the bar that just closed
+     * @param account Simulated account to place orders on
+     */
+    void onBar(CandleSeries series, int bar, BacktestAccount account);
+}
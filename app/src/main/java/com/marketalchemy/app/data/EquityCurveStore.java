@@ -0,0 +1,443 @@
+package com.marketalchemy.app.data;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sampled history of total portfolio value.
+ * <p>
+ * The value is polled every second. A sample is kept whenever the value moves;
+ * while it stays flat the gap between samples doubles up to a few minutes, so an
+ * idle portfolio costs almost nothing. Samples age through three tiers: raw for
+ * the last day, one per minute for the last month and one per hour beyond that.
+ * Queries are reduced with Largest-Triangle-Three-Buckets, which keeps the visual
+ * shape of the curve, so a year of history renders from a few hundred points.
+ */
+public class EquityCurveStore {
+
+    private static final String TAG = "EquityCurveStore";
+    private static final String FILE_NAME = "equity.curve";
+
+    private static final int MAGIC = 0x4D414551; // "MAEQ"
+    private static final int VERSION = 1;
+
+    // Sampling: every second while the value moves, backing off to this when flat
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+    private static final long MAX_IDLE_INTERVAL_MS = 5 * 60 * 1000;
+
+    // Tier retention and resolution
+    private static final long RAW_RETENTION_MS = 24 * 60 * 60 * 1000L;
+    private static final long MINUTE_RETENTION_MS = 30 * 24 * 60 * 60 * 1000L;
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    private static final long COMPACTION_INTERVAL_MS = 10 * 60 * 1000;
+    private static final long SAVE_INTERVAL_MS = 60 * 1000;
+
+    // Singleton instance
+    private static EquityCurveStore instance;
+
+    // Oldest first: hourly, then minutely, then raw; time ranges do not overlap
+    private final Series hourly;
+    private final Series minutely;
+    private final Series raw;
+
+    // Single background thread for sampling, compaction and saving
+    private final ScheduledExecutorService executorService;
+
+    private File file;
+    private ValueSource source;
+    private boolean dirty;
+
+    // Sampler state, touched only on the background thread
+    private double lastValue = Double.NaN;
+    private long lastSampleTime;
+    private long idleInterval = SAMPLE_INTERVAL_MS;
+
+    /**
+     * Private constructor for singleton pattern
+     */
+    private EquityCurveStore() {
+        hourly = new Series();
+        minutely = new Series();
+        raw = new Series();
+        executorService = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Get singleton instance
+     * @return EquityCurveStore instance
+     */
+    public static synchronized EquityCurveStore getInstance() {
+        if (instance == null) {
+            instance = new EquityCurveStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Load saved history and start sampling
+     * @param filesDir App private files directory
+     * @param source Supplies the current total portfolio value
+     */
+    public synchronized void init(File filesDir, ValueSource source) {
+        if (file != null) {
+            return;
+        }
+        file = new File(filesDir, FILE_NAME);
+        this.source = source;
+        executorService.execute(this::load);
+        executorService.scheduleWithFixedDelay(this::sample,
+                SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        executorService.scheduleWithFixedDelay(() -> compact(System.currentTimeMillis()),
+                COMPACTION_INTERVAL_MS, COMPACTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        executorService.scheduleWithFixedDelay(this::save,
+                SAVE_INTERVAL_MS, SAVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        PersistenceCoordinator.getInstance().register(this::flush);
+    }
+
+    /**
+     * Check if the store has been initialized
+     */
+    public synchronized boolean isInitialized() {
+        return file != null;
+    }
+
+    /**
+     * Query the curve, reduced to at most maxPoints points with LTTB
+     * @param fromMs Range start (inclusive)
+     * @param toMs Range end (inclusive)
+     * @param maxPoints Point budget, e.g. the chart width in pixels; at least 3
+     * @return Points in time order
+     */
+    public Points query(long fromMs, long toMs, int maxPoints) {
+        Points points;
+        synchronized (this) {
+            int count = hourly.count(fromMs, toMs) + minutely.count(fromMs, toMs) + raw.count(fromMs, toMs);
+            points = new Points(count);
+            hourly.copy(fromMs, toMs, points);
+            minutely.copy(fromMs, toMs, points);
+            raw.copy(fromMs, toMs, points);
+        }
+        return downsample(points, maxPoints);
+    }
+
+    /**
+     * Get the number of stored samples across all tiers
+     */
+    public synchronized int size() {
+        return hourly.size + minutely.size + raw.size;
+    }
+
+    /**
+     * Save pending samples to disk, e.g. when the app goes to background
+     */
+    public void flush() {
+        if (!isInitialized()) {
+            return;
+        }
+        executorService.execute(this::save);
+    }
+
+    /**
+     * Supplier of the value being recorded
+     */
+    public interface ValueSource {
+        double getValue();
+    }
+
+    /**
+     * Time-ordered samples returned by a query
+     */
+    public static class Points {
+        public final long[] times;
+        public final double[] values;
+        public int size;
+
+        Points(int capacity) {
+            times = new long[capacity];
+            values = new double[capacity];
+        }
+
+        private void add(long timeMs, double value) {
+            times[size] = timeMs;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    /**
+     * Reduce a series with Largest-Triangle-Three-Buckets. The first and last points
+     * are kept; from each bucket in between the point forming the largest triangle
+     * with the previously kept point and the average of the next bucket is kept.
+     * @param points Series in time order
+     * @param threshold Number of points to keep
+     * @return Reduced series, or the input if it already fits
+     */
+    public static Points downsample(Points points, int threshold) {
+        int n = points.size;
+        if (threshold < 3 || n <= threshold) {
+            return points;
+        }
+        long[] times = points.times;
+        double[] values = points.values;
+        Points sampled = new Points(threshold);
+        sampled.add(times[0], values[0]);
+
+        // Buckets exclude the first and last points
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int kept = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+
+            // Average of the next bucket; the last point stands in for the final one
+            int nextStart = end;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, n);
+            if (nextStart >= n - 1) {
+                nextStart = n - 1;
+                nextEnd = n;
+            }
+            double avgTime = 0;
+            double avgValue = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgTime += times[i];
+                avgValue += values[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            avgTime /= nextCount;
+            avgValue /= nextCount;
+
+            // Times relative to the kept point keep the products in double range
+            long baseTime = times[kept];
+            double baseValue = values[kept];
+            double avgDt = avgTime - baseTime;
+            double avgDv = avgValue - baseValue;
+            double maxArea = -1;
+            int best = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs(avgDt * (values[i] - baseValue) - (times[i] - baseTime) * avgDv);
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = i;
+                }
+            }
+            sampled.add(times[best], values[best]);
+            kept = best;
+        }
+        sampled.add(times[n - 1], values[n - 1]);
+        return sampled;
+    }
+
+    /**
+     * Poll the value and keep a sample if it moved or the idle interval has passed
+     */
+    private void sample() {
+        double value;
+        try {
+            value = source.getValue();
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading portfolio value: " + e.getMessage());
+            return;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (value != lastValue) {
+            // Active: sample at full resolution
+            idleInterval = SAMPLE_INTERVAL_MS;
+        } else if (now - lastSampleTime < idleInterval) {
+            return;
+        } else {
+            // Idle: keep a heartbeat sample and back off
+            idleInterval = Math.min(idleInterval * 2, MAX_IDLE_INTERVAL_MS);
+        }
+        synchronized (this) {
+            raw.append(now, value);
+            dirty = true;
+        }
+        lastValue = value;
+        lastSampleTime = now;
+    }
+
+    /**
+     * Age raw samples into the minute tier and minute samples into the hour tier
+     */
+    private synchronized void compact(long now) {
+        if (raw.rollInto(minutely, now - RAW_RETENTION_MS, MINUTE_MS)
+                | minutely.rollInto(hourly, now - MINUTE_RETENTION_MS, HOUR_MS)) {
+            dirty = true;
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an equity curve: " + file.getName());
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported equity curve version " + version);
+            }
+            int[] counts = {in.readInt(), in.readInt(), in.readInt()};
+            DataInputStream body = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in, new Inflater())));
+            synchronized (this) {
+                Series[] tiers = {hourly, minutely, raw};
+                long time = 0;
+                long bits = 0;
+                for (int t = 0; t < tiers.length; t++) {
+                    for (int i = 0; i < counts[t]; i++) {
+                        time += body.readLong();
+                        bits ^= body.readLong();
+                        tiers[t].append(time, Double.longBitsToDouble(bits));
+                    }
+                }
+            }
+            Log.d(TAG, "Loaded " + size() + " equity samples");
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading equity curve: " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        long[] times;
+        double[] values;
+        int[] counts;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            counts = new int[]{hourly.size, minutely.size, raw.size};
+            Points all = new Points(counts[0] + counts[1] + counts[2]);
+            hourly.copy(Long.MIN_VALUE, Long.MAX_VALUE, all);
+            minutely.copy(Long.MIN_VALUE, Long.MAX_VALUE, all);
+            raw.copy(Long.MIN_VALUE, Long.MAX_VALUE, all);
+            times = all.times;
+            values = all.values;
+            dirty = false;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                for (int count : counts) {
+                    out.writeInt(count);
+                }
+                DataOutputStream body = new DataOutputStream(new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED)));
+                long prevTime = 0;
+                long prevBits = 0;
+                for (int i = 0; i < times.length; i++) {
+                    body.writeLong(times[i] - prevTime);
+                    long bits = Double.doubleToRawLongBits(values[i]);
+                    body.writeLong(bits ^ prevBits);
+                    prevTime = times[i];
+                    prevBits = bits;
+                }
+                body.close();
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("Could not replace " + file.getName());
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            Log.e(TAG, "Error saving equity curve: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Growable time-ordered samples in parallel primitive arrays
+     */
+    private static class Series {
+        private long[] times = new long[256];
+        private double[] values = new double[256];
+        private int size;
+
+        void append(long timeMs, double value) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = timeMs;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * Index of the first sample at or after timeMs
+         */
+        int lowerBound(long timeMs) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid] < timeMs) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        int count(long fromMs, long toMs) {
+            if (toMs == Long.MAX_VALUE) {
+                return size - lowerBound(fromMs);
+            }
+            return Math.max(0, lowerBound(toMs + 1) - lowerBound(fromMs));
+        }
+
+        void copy(long fromMs, long toMs, Points points) {
+            int start = lowerBound(fromMs);
+            int count = count(fromMs, toMs);
+            System.arraycopy(times, start, points.times, points.size, count);
+            System.arraycopy(values, start, points.values, points.size, count);
+            points.size += count;
+        }
+
+        /**
+         * Move samples older than cutoff into a coarser tier, keeping the last
+         * sample of each interval
+         * @return True if anything moved
+         */
+        boolean rollInto(Series coarser, long cutoff, long intervalMs) {
+            int end = lowerBound(cutoff);
+            if (end == 0) {
+                return false;
+            }
+            for (int i = 0; i < end; i++) {
+                boolean lastInInterval = i == end - 1 || times[i + 1] / intervalMs != times[i] / intervalMs;
+                if (lastInInterval) {
+                    coarser.append(times[i], values[i]);
+                }
+            }
+            System.arraycopy(times, end, times, 0, size - end);
+            System.arraycopy(values, end, values, 0, size - end);
+            size -= end;
+            return true;
+        }
+    }
+}
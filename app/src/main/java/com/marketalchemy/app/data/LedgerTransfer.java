@@ -0,0 +1,338 @@
+package com.marketalchemy.app.data;
+
+import android.util.Log;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.marketalchemy.app.model.Investment;
+import com.marketalchemy.app.model.PortfolioState;
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Streaming CSV and JSON-lines export and import of trades and positions.
+ * <p>
+ * Files are read and written line by line through buffered readers and writers
+ * over NIO file channels, and trades are inserted in fixed-size transactions, so
+ * memory stays constant however large the file. Amounts are written as exact
+ * decimals from the fixed-point values, so a round trip loses nothing. All
+ * methods block; call them off the main thread.
+ */
+public final class LedgerTransfer {
+
+    private static final String TAG = "LedgerTransfer";
+
+    public static final int FORMAT_CSV = 1;
+    public static final int FORMAT_JSONL = 2;
+
+    private static final String TRADES_HEADER = "time,side,instrument,quantity,price,fees";
+    private static final String POSITIONS_HEADER = "cryptoId,quantity,averagePrice,updated";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INSERT_BATCH = 1000;
+    private static final int PROGRESS_INTERVAL = 1000; // Rows between progress reports
+
+    private LedgerTransfer() {
+    }
+
+    /**
+     * Receives progress during a transfer
+     */
+    public interface ProgressListener {
+        /**
+         * @param done Rows written for exports, bytes read for imports
+         * @param total Rows to write or bytes to read
+         */
+        void onProgress(long done, long total);
+    }
+
+    /**
+     * Outcome of an import
+     */
+    public static class ImportResult {
+        public long imported;
+        public long skipped; // Lines that could not be parsed
+    }
+
+    /**
+     * Pick the format from a file name: ".jsonl" and ".json" are JSON lines,
+     * anything else CSV
+     */
+    public static int formatOf(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".jsonl") || name.endsWith(".json") ? FORMAT_JSONL : FORMAT_CSV;
+    }
+
+    /**
+     * Write every trade in the ledger, oldest first
+     * @param listener Progress receiver, or null
+     * @return Number of trades written
+     */
+    public static long exportTrades(TradeLedger ledger, File file, int format, ProgressListener listener)
+            throws IOException {
+        long total = ledger.getTradeCount();
+        long[] written = {0};
+        StringBuilder line = new StringBuilder(128);
+        try (BufferedWriter writer = openWriter(file)) {
+            if (format == FORMAT_CSV) {
+                writer.write(TRADES_HEADER);
+                writer.newLine();
+            }
+            ledger.forEach(trade -> {
+                line.setLength(0);
+                if (format == FORMAT_CSV) {
+                    line.append(trade.timeMs).append(',')
+                            .append(trade.side).append(',')
+                            .append(trade.instrument).append(',');
+                    FixedPoint.append(line, trade.quantityUnits, FixedPoint.QUANTITY_SCALE).append(',');
+                    FixedPoint.append(line, trade.priceUnits, FixedPoint.PRICE_SCALE).append(',');
+                    FixedPoint.append(line, trade.feesUnits, FixedPoint.MONEY_SCALE);
+                } else {
+                    line.append("{\"time\":").append(trade.timeMs);
+                    appendJsonString(line.append(",\"side\":"), trade.side);
+                    appendJsonString(line.append(",\"instrument\":"), trade.instrument);
+                    appendJsonDecimal(line.append(",\"quantity\":"), trade.quantityUnits, FixedPoint.QUANTITY_SCALE);
+                    appendJsonDecimal(line.append(",\"price\":"), trade.priceUnits, FixedPoint.PRICE_SCALE);
+                    appendJsonDecimal(line.append(",\"fees\":"), trade.feesUnits, FixedPoint.MONEY_SCALE);
+                    line.append('}');
+                }
+                writer.append(line);
+                writer.newLine();
+                if (++written[0] % PROGRESS_INTERVAL == 0 && listener != null) {
+                    listener.onProgress(written[0], total);
+                }
+            });
+        }
+        if (listener != null) {
+            listener.onProgress(written[0], total);
+        }
+        return written[0];
+    }
+
+    /**
+     * Append trades from a file to the ledger. Imported trades are history only;
+     * they do not change the portfolio's balance or positions.
+     * @param listener Progress receiver, or null
+     */
+    public static ImportResult importTrades(TradeLedger ledger, File file, int format, ProgressListener listener)
+            throws IOException {
+        ImportResult result = new ImportResult();
+        long total = file.length();
+        long bytesRead = 0;
+        try (BufferedReader reader = openReader(file);
+             TradeLedger.BulkInsert insert = ledger.beginBulkInsert(INSERT_BATCH)) {
+            String line;
+            long lines = 0;
+            while ((line = reader.readLine()) != null) {
+                bytesRead += line.length() + 1;
+                if (++lines % PROGRESS_INTERVAL == 0 && listener != null) {
+                    listener.onProgress(Math.min(bytesRead, total), total);
+                }
+                line = line.trim();
+                if (line.isEmpty() || (format == FORMAT_CSV && line.startsWith("time,"))) {
+                    continue;
+                }
+                try {
+                    long time;
+                    String side;
+                    String instrument;
+                    long quantity;
+                    long price;
+                    long fees;
+                    if (format == FORMAT_CSV) {
+                        String[] fields = splitCsv(line, 6);
+                        time = Long.parseLong(fields[0]);
+                        side = fields[1];
+                        instrument = fields[2];
+                        quantity = parseDecimal(fields[3], FixedPoint.QUANTITY_SCALE);
+                        price = parseDecimal(fields[4], FixedPoint.PRICE_SCALE);
+                        fees = fields[5].isEmpty() ? 0 : parseDecimal(fields[5], FixedPoint.MONEY_SCALE);
+                    } else {
+                        JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                        time = json.get("time").getAsLong();
+                        side = json.get("side").getAsString();
+                        instrument = json.get("instrument").getAsString();
+                        quantity = jsonDecimal(json.get("quantity"), FixedPoint.QUANTITY_SCALE);
+                        price = jsonDecimal(json.get("price"), FixedPoint.PRICE_SCALE);
+                        fees = json.has("fees") ? jsonDecimal(json.get("fees"), FixedPoint.MONEY_SCALE) : 0;
+                    }
+                    side = side.toUpperCase();
+                    if (!TradeLedger.SIDE_BUY.equals(side) && !TradeLedger.SIDE_SELL.equals(side)
+                            || instrument.isEmpty() || quantity <= 0 || price <= 0) {
+                        throw new IllegalArgumentException("Invalid trade");
+                    }
+                    insert.add(time, side, instrument, quantity, price, fees);
+                    result.imported++;
+                } catch (RuntimeException e) {
+                    result.skipped++;
+                }
+            }
+        }
+        if (listener != null) {
+            listener.onProgress(total, total);
+        }
+        if (result.skipped > 0) {
+            Log.w(TAG, "Skipped " + result.skipped + " unreadable trade lines in " + file.getName());
+        }
+        return result;
+    }
+
+    /**
+     * Write the positions of a portfolio state
+     * @return Number of positions written
+     */
+    public static int exportPositions(PortfolioState state, File file, int format) throws IOException {
+        List<Investment> investments = state.getInvestments();
+        StringBuilder line = new StringBuilder(128);
+        try (BufferedWriter writer = openWriter(file)) {
+            if (format == FORMAT_CSV) {
+                writer.write(POSITIONS_HEADER);
+                writer.newLine();
+            }
+            for (Investment investment : investments) {
+                Date updated = investment.getLastUpdated();
+                long updatedMs = updated != null ? updated.getTime() : 0;
+                line.setLength(0);
+                if (format == FORMAT_CSV) {
+                    line.append(investment.getCryptoId()).append(',');
+                    FixedPoint.append(line, investment.getQuantityUnits(), FixedPoint.QUANTITY_SCALE).append(',');
+                    FixedPoint.append(line, investment.getPurchasePriceUnits(), FixedPoint.PRICE_SCALE).append(',');
+                    line.append(updatedMs);
+                } else {
+                    appendJsonString(line.append("{\"cryptoId\":"), investment.getCryptoId());
+                    appendJsonDecimal(line.append(",\"quantity\":"), investment.getQuantityUnits(),
+                            FixedPoint.QUANTITY_SCALE);
+                    appendJsonDecimal(line.append(",\"averagePrice\":"), investment.getPurchasePriceUnits(),
+                            FixedPoint.PRICE_SCALE);
+                    line.append(",\"updated\":").append(updatedMs).append('}');
+                }
+                writer.append(line);
+                writer.newLine();
+            }
+        }
+        return investments.size();
+    }
+
+    /**
+     * Read positions written by {@link #exportPositions}; apply them with
+     * VirtualPortfolio.replacePositions
+     * @return Positions in file order; unreadable lines are skipped
+     */
+    public static List<Investment> readPositions(File file, int format) throws IOException {
+        List<Investment> investments = new ArrayList<>();
+        try (BufferedReader reader = openReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || (format == FORMAT_CSV && line.startsWith("cryptoId,"))) {
+                    continue;
+                }
+                try {
+                    String cryptoId;
+                    long quantity;
+                    long averagePrice;
+                    long updated;
+                    if (format == FORMAT_CSV) {
+                        String[] fields = splitCsv(line, 4);
+                        cryptoId = fields[0];
+                        quantity = parseDecimal(fields[1], FixedPoint.QUANTITY_SCALE);
+                        averagePrice = parseDecimal(fields[2], FixedPoint.PRICE_SCALE);
+                        updated = fields[3].isEmpty() ? 0 : Long.parseLong(fields[3]);
+                    } else {
+                        JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                        cryptoId = json.get("cryptoId").getAsString();
+                        quantity = jsonDecimal(json.get("quantity"), FixedPoint.QUANTITY_SCALE);
+                        averagePrice = jsonDecimal(json.get("averagePrice"), FixedPoint.PRICE_SCALE);
+                        updated = json.has("updated") ? json.get("updated").getAsLong() : 0;
+                    }
+                    if (cryptoId.isEmpty() || quantity <= 0 || averagePrice < 0) {
+                        continue;
+                    }
+                    investments.add(new Investment(cryptoId, quantity, averagePrice, new Date(updated)));
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Skipping unreadable position line: " + e.getMessage());
+                }
+            }
+        }
+        return investments;
+    }
+
+    private static BufferedWriter openWriter(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1),
+                BUFFER_SIZE);
+    }
+
+    private static BufferedReader openReader(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        return new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1),
+                BUFFER_SIZE);
+    }
+
+    /**
+     * Split a CSV line into exactly count fields, removing surrounding quotes.
+     * Fields in these files never contain commas.
+     */
+    private static String[] splitCsv(String line, int count) {
+        String[] fields = new String[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            int end = i == count - 1 ? line.length() : line.indexOf(',', start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Expected " + count + " fields");
+            }
+            String field = line.substring(start, end).trim();
+            if (field.length() >= 2 && field.charAt(0) == '"' && field.charAt(field.length() - 1) == '"') {
+                field = field.substring(1, field.length() - 1);
+            }
+            fields[i] = field;
+            start = end + 1;
+        }
+        return fields;
+    }
+
+    private static long parseDecimal(String text, int scale) {
+        return FixedPoint.parse(text, scale, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Read a decimal written as a JSON string or number
+     */
+    private static long jsonDecimal(JsonElement element, int scale) {
+        return parseDecimal(element.getAsJsonPrimitive().getAsString(), scale);
+    }
+
+    private static void appendJsonDecimal(StringBuilder out, long raw, int scale) {
+        // Strings keep every digit through parsers that read numbers as doubles
+        FixedPoint.append(out.append('"'), raw, scale).append('"');
+    }
+
+    private static void appendJsonString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,124 @@
+package com.marketalchemy.app.data;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces writes of persistent state.
+ * <p>
+ * A store marks itself dirty after each change instead of writing. The first
+ * mark schedules a flush a short window later; every store marked in the
+ * meantime is written in that one pass, once, however many changes it saw. A
+ * burst of trades therefore costs one write per store rather than one per
+ * change. Lifecycle events call {@link #flush()} to write everything pending
+ * right away, including registered stores that batch on their own.
+ */
+public class PersistenceCoordinator {
+
+    private static final String TAG = "PersistenceCoordinator";
+
+    private static final long WINDOW_MS = 250; // Changes within this window share one write
+
+    // Singleton instance
+    private static PersistenceCoordinator instance;
+
+    private final ScheduledExecutorService executorService;
+    private final Set<Store> dirty;
+    private final List<Store> registered;
+    private boolean flushScheduled;
+
+    /**
+     * State that can be written to disk
+     */
+    public interface Store {
+        /**
+         * Write the current state durably. Called on the coordinator thread; must be
+         * cheap when nothing changed.
+         */
+        void flush();
+    }
+
+    /**
+     * Private constructor for singleton pattern
+     */
+    private PersistenceCoordinator() {
+        executorService = Executors.newSingleThreadScheduledExecutor();
+        dirty = new LinkedHashSet<>();
+        registered = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Get singleton instance
+     * @return PersistenceCoordinator instance
+     */
+    public static synchronized PersistenceCoordinator getInstance() {
+        if (instance == null) {
+            instance = new PersistenceCoordinator();
+        }
+        return instance;
+    }
+
+    /**
+     * Register a store to be flushed on every lifecycle flush
+     */
+    public void register(Store store) {
+        if (!registered.contains(store)) {
+            registered.add(store);
+        }
+    }
+
+    /**
+     * Note that a store has changed; it is written within {@link #WINDOW_MS}
+     */
+    public void markDirty(Store store) {
+        synchronized (dirty) {
+            dirty.add(store);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        executorService.schedule(this::flushDirty, WINDOW_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write every dirty and registered store now, e.g. when the app is paused.
+     * The writes happen on the coordinator thread.
+     */
+    public void flush() {
+        executorService.execute(() -> {
+            flushDirty();
+            for (Store store : registered) {
+                flushStore(store);
+            }
+        });
+    }
+
+    private void flushDirty() {
+        List<Store> stores;
+        synchronized (dirty) {
+            flushScheduled = false;
+            stores = new ArrayList<>(dirty);
+            dirty.clear();
+        }
+        for (Store store : stores) {
+            flushStore(store);
+        }
+    }
+
+    private void flushStore(Store store) {
+        try {
+            store.flush();
+        } catch (Exception e) {
+            Log.e(TAG, "Error flushing store: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,607 @@
+package com.marketalchemy.app.data;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tiered price history for tracked instruments.
+ * <p>
+ * Recent ticks live in a bounded in-heap ring buffer (hot tier). Older ticks are
+ * sealed into compressed on-disk segments (cold tier). A background compactor
+ * merges small segments and downsamples old raw ticks into 1-minute candles, so
+ * memory stays bounded however long the session runs without losing history.
+ * <p>
+ * Appends run on their own thread and only touch memory; sealing, compaction
+ * and reads of segment files happen outside the per-symbol lock, so disk IO
+ * never stalls tick ingestion. A flush writes everything still in memory to a
+ * checkpoint file, which is replayed when the symbol is next loaded.
+ */
+public class TickHistoryStore {
+
+    private static final String TAG = "TickHistoryStore";
+    private static final String DIR_NAME = "ticks";
+    private static final String EXT_RAW = ".raw";
+    private static final String EXT_CANDLE = ".cdl";
+    private static final String CHECKPOINT_NAME = "checkpoint.hot";
+
+    // Hot tier: last 15 minutes, hard-capped per symbol
+    private static final long HOT_WINDOW_MS = 15 * 60 * 1000;
+    private static final int HOT_CAPACITY = 16384;
+
+    // Ticks per sealed segment
+    private static final int SEGMENT_TICKS = 4096;
+
+    // Raw ticks older than this are downsampled into candles
+    private static final long RAW_RETENTION_MS = 24 * 60 * 60 * 1000;
+    private static final long CANDLE_INTERVAL_MS = 60 * 1000;
+    private static final int MAX_CANDLES_PER_SEGMENT = 7 * 24 * 60; // One week of minutes
+
+    private static final long COMPACTION_INTERVAL_MS = 5 * 60 * 1000;
+
+    // Singleton instance
+    private static TickHistoryStore instance;
+
+    // Per-symbol history
+    private final Map<String, SymbolHistory> histories;
+
+    // Background thread for appends; never waits on disk
+    private final ScheduledExecutorService executorService;
+
+    // Background thread for sealing and compaction
+    private final ScheduledExecutorService ioExecutor;
+
+    // Sequence for unique segment file names
+    private final AtomicLong segmentSequence;
+
+    private File baseDir;
+
+    /**
+     * Private constructor for singleton pattern
+     */
+    private TickHistoryStore() {
+        histories = new HashMap<>();
+        executorService = Executors.newSingleThreadScheduledExecutor();
+        ioExecutor = Executors.newSingleThreadScheduledExecutor();
+        segmentSequence = new AtomicLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Get singleton instance
+     * @return TickHistoryStore instance
+     */
+    public static synchronized TickHistoryStore getInstance() {
+        if (instance == null) {
+            instance = new TickHistoryStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Initialize on-disk storage and start the background compactor
+     * @param filesDir App private files directory
+     */
+    public synchronized void init(File filesDir) {
+        if (baseDir != null) {
+            return;
+        }
+        baseDir = new File(filesDir, DIR_NAME);
+        if (!baseDir.exists() && !baseDir.mkdirs()) {
+            Log.e(TAG, "Could not create tick history directory");
+        }
+        ioExecutor.scheduleWithFixedDelay(this::compactAll,
+                COMPACTION_INTERVAL_MS, COMPACTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        PersistenceCoordinator.getInstance().register(this::flush);
+    }
+
+    /**
+     * Check if the store has been initialized
+     */
+    public synchronized boolean isInitialized() {
+        return baseDir != null;
+    }
+
+    /**
+     * Record a price tick. The append happens on the background thread.
+     * @param symbol Cryptocurrency symbol (e.g., BTC)
+     * @param timeMs Tick time in epoch millis
+     * @param price Price
+     */
+    public void record(String symbol, long timeMs, double price) {
+        if (!isInitialized()) {
+            return;
+        }
+        executorService.execute(() -> {
+            SymbolHistory history = getHistory(symbol);
+            if (history != null) {
+                history.append(timeMs, price);
+            }
+        });
+    }
+
+    /**
+     * Query history across both tiers, oldest first. Reads disk, so call off the main thread.
+     * Ranges that have been downsampled are reported as candles, the rest as raw ticks.
+     * @param symbol Cryptocurrency symbol
+     * @param fromMs Range start (inclusive)
+     * @param toMs Range end (inclusive)
+     * @param visitor Receives ticks and candles in time order
+     */
+    public void query(String symbol, long fromMs, long toMs, SeriesVisitor visitor) {
+        SymbolHistory history = getHistory(symbol);
+        if (history != null) {
+            history.query(fromMs, toMs, visitor);
+        }
+    }
+
+    /**
+     * Checkpoint the ticks still in memory, e.g. when the app goes to background.
+     * Writes on the calling thread; ticks recorded but not yet appended are not included.
+     */
+    public void flush() {
+        if (!isInitialized()) {
+            return;
+        }
+        for (SymbolHistory history : snapshotHistories()) {
+            history.checkpoint();
+        }
+    }
+
+    /**
+     * Run compaction for every known symbol
+     */
+    private void compactAll() {
+        long now = System.currentTimeMillis();
+        for (SymbolHistory history : snapshotHistories()) {
+            try {
+                history.compact(now);
+            } catch (Exception e) {
+                Log.e(TAG, "Error compacting tick history: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized List<SymbolHistory> snapshotHistories() {
+        return new ArrayList<>(histories.values());
+    }
+
+    private synchronized SymbolHistory getHistory(String symbol) {
+        if (baseDir == null) {
+            return null;
+        }
+        String key = symbol.toUpperCase(Locale.US);
+        SymbolHistory history = histories.get(key);
+        if (history == null) {
+            history = new SymbolHistory(new File(baseDir, key));
+            histories.put(key, history);
+        }
+        return history;
+    }
+
+    /**
+     * Receiver for queried history
+     */
+    public interface SeriesVisitor {
+        void onTick(long timeMs, double price);
+        void onCandle(long openTimeMs, double open, double high, double low, double close);
+    }
+
+    /**
+     * Hot and cold tiers for a single symbol.
+     * <p>
+     * The monitor guards the in-memory state and the segment list and is only
+     * held for memory work. Segment files are read under the read lock of
+     * {@code fileLock} and deleted under its write lock, so a query never reads a
+     * file compaction has removed. Take {@code fileLock} before the monitor.
+     */
+    private class SymbolHistory {
+        private final File dir;
+        private final TickRingBuffer hot;
+
+        // Ticks evicted from the hot tier, waiting to fill a segment
+        private Ticks pending;
+
+        // Full batches handed to the IO thread, still served from memory
+        private final List<Ticks> sealing;
+
+        // Sealed segments ordered by start time; changed only on the IO thread
+        private final List<TickSegment> segments;
+
+        private final ReentrantReadWriteLock fileLock;
+
+        // Appends so far, and the count the last checkpoint covered
+        private long appended;
+        private final Object checkpointLock = new Object();
+        private long checkpointed;
+
+        SymbolHistory(File dir) {
+            this.dir = dir;
+            hot = new TickRingBuffer(HOT_CAPACITY);
+            pending = new Ticks(SEGMENT_TICKS);
+            sealing = new ArrayList<>();
+            segments = new ArrayList<>();
+            fileLock = new ReentrantReadWriteLock();
+            loadSegments();
+            restoreCheckpoint();
+        }
+
+        private void loadSegments() {
+            if (!dir.exists() && !dir.mkdirs()) {
+                Log.e(TAG, "Could not create directory " + dir);
+                return;
+            }
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(".tmp")) {
+                    // Left over from an interrupted write
+                    file.delete();
+                } else if (name.endsWith(EXT_RAW) || name.endsWith(EXT_CANDLE)) {
+                    try {
+                        segments.add(TickSegment.open(file));
+                    } catch (IOException e) {
+                        Log.e(TAG, "Dropping unreadable segment " + name + ": " + e.getMessage());
+                        file.delete();
+                    }
+                }
+            }
+            sortSegments();
+        }
+
+        /**
+         * Replay the ticks of the last checkpoint that no segment holds yet.
+         * The file is kept until the next checkpoint replaces it, so a crash
+         * before then replays it again.
+         */
+        private void restoreCheckpoint() {
+            File file = new File(dir, CHECKPOINT_NAME);
+            if (!file.exists()) {
+                return;
+            }
+            long sealedUntil = Long.MIN_VALUE;
+            for (TickSegment segment : segments) {
+                sealedUntil = Math.max(sealedUntil, segment.maxTime);
+            }
+            try {
+                TickSegment.open(file).read(sealedUntil + 1, Long.MAX_VALUE, new SeriesVisitor() {
+                    @Override
+                    public void onTick(long timeMs, double price) {
+                        append(timeMs, price);
+                    }
+
+                    @Override
+                    public void onCandle(long openTimeMs, double open, double high, double low, double close) {
+                        // Checkpoints contain no candles
+                    }
+                });
+            } catch (IOException e) {
+                Log.e(TAG, "Dropping unreadable checkpoint in " + dir.getName() + ": " + e.getMessage());
+                file.delete();
+            }
+        }
+
+        synchronized void append(long timeMs, double price) {
+            // Move ticks that left the hot window (or overflow it) to the cold tier
+            while (!hot.isEmpty() && (hot.isFull() || hot.oldestTime() < timeMs - HOT_WINDOW_MS)) {
+                spill(hot.oldestTime(), hot.oldestPrice());
+                hot.removeOldest();
+            }
+            hot.add(timeMs, price);
+            appended++;
+        }
+
+        private void spill(long timeMs, double price) {
+            pending.add(timeMs, price);
+            if (pending.size == SEGMENT_TICKS) {
+                final Ticks batch = pending;
+                sealing.add(batch);
+                pending = new Ticks(SEGMENT_TICKS);
+                ioExecutor.execute(() -> seal(batch));
+            }
+        }
+
+        /**
+         * Write a full batch to a segment; runs on the IO thread
+         */
+        private void seal(Ticks batch) {
+            TickSegment segment = null;
+            try {
+                segment = TickSegment.writeRaw(newSegmentFile(batch.times[0], EXT_RAW),
+                        batch.times, batch.prices, 0, batch.size);
+            } catch (IOException e) {
+                Log.e(TAG, "Error sealing tick segment: " + e.getMessage());
+            }
+            synchronized (this) {
+                sealing.remove(batch);
+                if (segment != null) {
+                    segments.add(segment);
+                    sortSegments();
+                }
+            }
+        }
+
+        /**
+         * Write every tick still in memory to the checkpoint file, if any arrived
+         * since the last one
+         */
+        void checkpoint() {
+            synchronized (checkpointLock) {
+                Ticks ticks = new Ticks(SEGMENT_TICKS);
+                long version;
+                synchronized (this) {
+                    if (appended == checkpointed) {
+                        return;
+                    }
+                    version = appended;
+                    collectMemory(Long.MIN_VALUE, Long.MAX_VALUE, ticks);
+                }
+                File file = new File(dir, CHECKPOINT_NAME);
+                try {
+                    if (ticks.size > 0) {
+                        TickSegment.writeRaw(file, ticks.times, ticks.prices, 0, ticks.size);
+                    } else if (file.exists() && !file.delete()) {
+                        throw new IOException("Could not delete stale checkpoint");
+                    }
+                    checkpointed = version;
+                } catch (IOException e) {
+                    Log.e(TAG, "Error writing tick checkpoint: " + e.getMessage());
+                }
+            }
+        }
+
+        void query(long fromMs, long toMs, SeriesVisitor visitor) {
+            List<TickSegment> cold = new ArrayList<>();
+            Ticks recent = new Ticks(64);
+            fileLock.readLock().lock();
+            try {
+                synchronized (this) {
+                    for (TickSegment segment : segments) {
+                        if (segment.maxTime >= fromMs && segment.minTime <= toMs) {
+                            cold.add(segment);
+                        }
+                    }
+                    collectMemory(fromMs, toMs, recent);
+                }
+                for (TickSegment segment : cold) {
+                    try {
+                        segment.read(fromMs, toMs, visitor);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Error reading segment " + segment.file.getName() + ": " + e.getMessage());
+                    }
+                }
+            } finally {
+                fileLock.readLock().unlock();
+            }
+            for (int i = 0; i < recent.size; i++) {
+                visitor.onTick(recent.times[i], recent.prices[i]);
+            }
+        }
+
+        /**
+         * Copy in-memory ticks within a range, oldest first. Call with the monitor held.
+         */
+        private void collectMemory(long fromMs, long toMs, Ticks out) {
+            for (Ticks batch : sealing) {
+                batch.copyTo(fromMs, toMs, out);
+            }
+            pending.copyTo(fromMs, toMs, out);
+            for (int i = 0; i < hot.size(); i++) {
+                long time = hot.timeAt(i);
+                if (time >= fromMs && time <= toMs) {
+                    out.add(time, hot.priceAt(i));
+                }
+            }
+        }
+
+        /**
+         * Downsample old raw segments and merge small adjacent segments. Runs on
+         * the IO thread, the only writer of the segment list, so the files it
+         * reads stay in place.
+         */
+        void compact(long now) throws IOException {
+            // Downsample runs of raw segments that are past retention
+            List<TickSegment> run = new ArrayList<>();
+            for (TickSegment segment : snapshotSegments()) {
+                if (segment.type == TickSegment.TYPE_RAW && segment.maxTime < now - RAW_RETENTION_MS) {
+                    run.add(segment);
+                } else if (!run.isEmpty()) {
+                    downsample(run);
+                    run.clear();
+                }
+            }
+            if (!run.isEmpty()) {
+                downsample(run);
+            }
+
+            // Merge neighbours of the same type while they stay under the size limit
+            List<TickSegment> group = new ArrayList<>();
+            int groupCount = 0;
+            for (TickSegment segment : snapshotSegments()) {
+                int limit = segment.type == TickSegment.TYPE_RAW ? SEGMENT_TICKS : MAX_CANDLES_PER_SEGMENT;
+                boolean fits = !group.isEmpty()
+                        && group.get(0).type == segment.type
+                        && groupCount + segment.count <= limit;
+                if (!fits) {
+                    merge(group);
+                    group.clear();
+                    groupCount = 0;
+                }
+                group.add(segment);
+                groupCount += segment.count;
+            }
+            merge(group);
+        }
+
+        private synchronized List<TickSegment> snapshotSegments() {
+            return new ArrayList<>(segments);
+        }
+        private void downsample(List<TickSegment> raws) throws IOException {
+            int maxCandles = 0;
+            for (TickSegment segment : raws) {
+                maxCandles += segment.count;
+            }
+            CandleCollector collector = new CandleCollector(maxCandles);
+            for (TickSegment segment : raws) {
+                segment.read(Long.MIN_VALUE, Long.MAX_VALUE, collector);
+            }
+            replace(raws, collector.write(newSegmentFile(raws.get(0).minTime, EXT_CANDLE)));
+        }
+
+        private void merge(List<TickSegment> group) throws IOException {
+            if (group.size() < 2) {
+                return;
+            }
+            int total = 0;
+            for (TickSegment segment : group) {
+                total += segment.count;
+            }
+            TickSegment merged;
+            if (group.get(0).type == TickSegment.TYPE_RAW) {
+                final long[] times = new long[total];
+                final double[] prices = new double[total];
+                final int[] count = {0};
+                SeriesVisitor collector = new SeriesVisitor() {
+                    @Override
+                    public void onTick(long timeMs, double price) {
+                        times[count[0]] = timeMs;
+                        prices[count[0]] = price;
+                        count[0]++;
+                    }
+
+                    @Override
+                    public void onCandle(long openTimeMs, double open, double high, double low, double close) {
+                        // Raw segments contain no candles
+                    }
+                };
+                for (TickSegment segment : group) {
+                    segment.read(Long.MIN_VALUE, Long.MAX_VALUE, collector);
+                }
+                merged = TickSegment.writeRaw(newSegmentFile(group.get(0).minTime, EXT_RAW), times, prices, 0, count[0]);
+            } else {
+                CandleCollector collector = new CandleCollector(total);
+                for (TickSegment segment : group) {
+                    segment.read(Long.MIN_VALUE, Long.MAX_VALUE, collector);
+                }
+                merged = collector.write(newSegmentFile(group.get(0).minTime, EXT_CANDLE));
+            }
+            replace(group, merged);
+        }
+
+        private void replace(List<TickSegment> oldSegments, TickSegment newSegment) {
+            fileLock.writeLock().lock();
+            try {
+                synchronized (this) {
+                    segments.removeAll(oldSegments);
+                    segments.add(newSegment);
+                    sortSegments();
+                }
+                for (TickSegment segment : oldSegments) {
+                    if (!segment.file.delete()) {
+                        Log.w(TAG, "Could not delete compacted segment " + segment.file.getName());
+                    }
+                }
+            } finally {
+                fileLock.writeLock().unlock();
+            }
+        }
+
+        private void sortSegments() {
+            Collections.sort(segments, (a, b) -> Long.compare(a.minTime, b.minTime));
+        }
+
+        private File newSegmentFile(long minTime, String extension) {
+            return new File(dir, String.format(Locale.US, "%013d_%d%s",
+                    minTime, segmentSequence.incrementAndGet(), extension));
+        }
+    }
+
+    /**
+     * Growable run of ticks in time order
+     */
+    private static class Ticks {
+        long[] times;
+        double[] prices;
+        int size;
+
+        Ticks(int capacity) {
+            times = new long[capacity];
+            prices = new double[capacity];
+        }
+
+        void add(long timeMs, double price) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            times[size] = timeMs;
+            prices[size] = price;
+            size++;
+        }
+
+        void copyTo(long fromMs, long toMs, Ticks out) {
+            for (int i = 0; i < size; i++) {
+                if (times[i] >= fromMs && times[i] <= toMs) {
+                    out.add(times[i], prices[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds 1-minute candles from ticks, merging candles that share an open time
+     */
+    private static class CandleCollector implements SeriesVisitor {
+        private final long[] openTimes;
+        private final double[] ohlc;
+        private int count;
+
+        CandleCollector(int capacity) {
+            openTimes = new long[capacity];
+            ohlc = new double[capacity * 4];
+        }
+
+        @Override
+        public void onTick(long timeMs, double price) {
+            long bucket = Math.floorDiv(timeMs, CANDLE_INTERVAL_MS) * CANDLE_INTERVAL_MS;
+            onCandle(bucket, price, price, price, price);
+        }
+
+        @Override
+        public void onCandle(long openTimeMs, double open, double high, double low, double close) {
+            if (count > 0 && openTimes[count - 1] == openTimeMs) {
+                int i = (count - 1) * 4;
+                ohlc[i + 1] = Math.max(ohlc[i + 1], high);
+                ohlc[i + 2] = Math.min(ohlc[i + 2], low);
+                ohlc[i + 3] = close;
+                return;
+            }
+            openTimes[count] = openTimeMs;
+            int i = count * 4;
+            ohlc[i] = open;
+            ohlc[i + 1] = high;
+            ohlc[i + 2] = low;
+            ohlc[i + 3] = close;
+            count++;
+        }
+
+        TickSegment write(File file) throws IOException {
+            return TickSegment.writeCandles(file, openTimes, ohlc, count);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.marketalchemy.app.data;
+
+/**
+ * Fixed-capacity ring buffer of (timestamp, price) ticks backed by primitive arrays.
+ * Not thread-safe; callers synchronize externally.
+ */
+public class TickRingBuffer {
+
+    private final long[] times;
+    private final double[] prices;
+    private int head; // Index of oldest tick
+    private int size;
+
+    public TickRingBuffer(int capacity) {
+        times = new long[capacity];
+        prices = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == times.length;
+    }
+
+    /**
+     * Append a tick. The buffer must not be full.
+     */
+    public void add(long timeMs, double price) {
+        int index = (head + size) % times.length;
+        times[index] = timeMs;
+        prices[index] = price;
+        size++;
+    }
+
+    public long oldestTime() {
+        return times[head];
+    }
+
+    public double oldestPrice() {
+        return prices[head];
+    }
+
+    /**
+     * Drop the oldest tick
+     */
+    public void removeOldest() {
+        head = (head + 1) % times.length;
+        size--;
+    }
+
+    /**
+     * Get the i-th tick time, 0 being the oldest
+     */
+    public long timeAt(int i) {
+        return times[(head + i) % times.length];
+    }
+
+    /**
+     * Get the i-th tick price, 0 being the oldest
+     */
+    public double priceAt(int i) {
+        return prices[(head + i) % times.length];
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,184 @@
+package com.marketalchemy.app.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sealed, compressed on-disk segment of tick or candle history.
+ * <p>
+ * Layout: an uncompressed header (magic, version, type, count, min/max time)
+ * followed by a deflated body. Times are delta-encoded and prices are XOR-ed with
+ * the previous value so that slowly moving series compress well.
+ */
+public class TickSegment {
+
+    public static final int TYPE_RAW = 1;
+    public static final int TYPE_CANDLE = 2;
+
+    private static final int MAGIC = 0x4D415453; // "MATS"
+    private static final int VERSION = 1;
+
+    public final File file;
+    public final int type;
+    public final int count;
+    public final long minTime;
+    public final long maxTime;
+
+    private TickSegment(File file, int type, int count, long minTime, long maxTime) {
+        this.file = file;
+        this.type = type;
+        this.count = count;
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Read only the header of a segment file
+     * @param file Segment file
+     * @return Segment metadata
+     * @throws IOException if the file is not a valid segment
+     */
+    public static TickSegment open(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a tick segment: " + file.getName());
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported segment version " + version + ": " + file.getName());
+            }
+            int type = in.readInt();
+            int count = in.readInt();
+            long minTime = in.readLong();
+            long maxTime = in.readLong();
+            return new TickSegment(file, type, count, minTime, maxTime);
+        }
+    }
+
+    /**
+     * Write raw ticks to a new segment file
+     * @param file Target file (written via a temporary file and renamed)
+     * @param times Tick times, ascending
+     * @param prices Tick prices
+     * @param offset Index of first tick
+     * @param count Number of ticks
+     * @return Segment metadata
+     */
+    public static TickSegment writeRaw(File file, long[] times, double[] prices, int offset, int count) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            writeHeader(out, TYPE_RAW, count, times[offset], times[offset + count - 1]);
+            DataOutputStream body = new DataOutputStream(new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED)));
+            long prevTime = 0;
+            long prevBits = 0;
+            for (int i = offset; i < offset + count; i++) {
+                body.writeLong(times[i] - prevTime);
+                long bits = Double.doubleToRawLongBits(prices[i]);
+                body.writeLong(bits ^ prevBits);
+                prevTime = times[i];
+                prevBits = bits;
+            }
+            body.close();
+        }
+        return commit(tmp, file);
+    }
+
+    /**
+     * Write candles to a new segment file
+     * @param file Target file (written via a temporary file and renamed)
+     * @param openTimes Candle open times, ascending
+     * @param ohlc Open/high/low/close values, 4 per candle
+     * @param count Number of candles
+     * @return Segment metadata
+     */
+    public static TickSegment writeCandles(File file, long[] openTimes, double[] ohlc, int count) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            writeHeader(out, TYPE_CANDLE, count, openTimes[0], openTimes[count - 1]);
+            DataOutputStream body = new DataOutputStream(new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED)));
+            long prevTime = 0;
+            long prevBits = 0;
+            for (int i = 0; i < count; i++) {
+                body.writeLong(openTimes[i] - prevTime);
+                prevTime = openTimes[i];
+                for (int j = 0; j < 4; j++) {
+                    long bits = Double.doubleToRawLongBits(ohlc[i * 4 + j]);
+                    body.writeLong(bits ^ prevBits);
+                    prevBits = bits;
+                }
+            }
+            body.close();
+        }
+        return commit(tmp, file);
+    }
+
+    /**
+     * Stream the contents of this segment to a visitor
+     * @param fromMs Range start (inclusive)
+     * @param toMs Range end (inclusive)
+     * @param visitor Receives ticks or candles in time order
+     */
+    public void read(long fromMs, long toMs, TickHistoryStore.SeriesVisitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            // Skip header: magic, version, type, count, minTime, maxTime
+            in.skipBytes(4 * 4 + 8 * 2);
+            DataInputStream body = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in, new Inflater())));
+            long time = 0;
+            long bits = 0;
+            for (int i = 0; i < count; i++) {
+                time += body.readLong();
+                if (type == TYPE_RAW) {
+                    bits ^= body.readLong();
+                    if (time > toMs) {
+                        break;
+                    }
+                    if (time >= fromMs) {
+                        visitor.onTick(time, Double.longBitsToDouble(bits));
+                    }
+                } else {
+                    bits ^= body.readLong();
+                    double open = Double.longBitsToDouble(bits);
+                    bits ^= body.readLong();
+                    double high = Double.longBitsToDouble(bits);
+                    bits ^= body.readLong();
+                    double low = Double.longBitsToDouble(bits);
+                    bits ^= body.readLong();
+                    double close = Double.longBitsToDouble(bits);
+                    if (time > toMs) {
+                        break;
+                    }
+                    if (time >= fromMs) {
+                        visitor.onCandle(time, open, high, low, close);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, int type, int count, long minTime, long maxTime) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(type);
+        out.writeInt(count);
+        out.writeLong(minTime);
+        out.writeLong(maxTime);
+    }
+
+    private static TickSegment commit(File tmp, File file) throws IOException {
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not seal segment " + file.getName());
+        }
+        return open(file);
+    }
+}
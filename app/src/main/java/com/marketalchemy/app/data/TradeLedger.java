@@ -0,0 +1,492 @@
+package com.marketalchemy.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQLite ledger of executed trades with typed columns.
+ * <p>
+ * Trades are queued and inserted by one background thread, with everything queued
+ * so far going in as a single transaction, so recording a trade costs the same
+ * however long the history is. Rows carry the portfolio journal sequence number
+ * so replaying the journal after a crash does not insert a trade twice. Each
+ * portfolio has its own database.
+ * Quantities, prices and fees are stored as fixed-point integers (see {@link FixedPoint}).
+ */
+public class TradeLedger extends SQLiteOpenHelper {
+
+    private static final String TAG = "TradeLedger";
+    private static final String DATABASE_NAME = "ledger.db";
+    private static final int DATABASE_VERSION = 2; // 2: fixed-point INTEGER amounts
+
+    public static final String SIDE_BUY = "BUY";
+    public static final String SIDE_SELL = "SELL";
+
+    private static final String TABLE_TRADES = "trades";
+
+    // Legacy history string written by earlier versions
+    private static final String LEGACY_PREFS_NAME = "MarketAlchemyPrefs";
+    private static final String LEGACY_KEY_HISTORY = "transaction_history";
+    private static final Pattern LEGACY_LINE =
+            Pattern.compile("(BUY|SELL) (\\d+\\.\\d+) (\\w+) @ \\$(\\d+\\.\\d+)");
+
+    // One ledger per portfolio; null is the default portfolio
+    private static final Map<String, TradeLedger> instances = new HashMap<>();
+
+    private final Context context;
+    private final boolean importsLegacyHistory;
+    private final ExecutorService executorService;
+    private final List<Trade> pending;
+
+    /**
+     * A single executed trade
+     */
+    public static class Trade {
+        public final long id;
+        public final long sequence; // Portfolio journal sequence, 0 if unknown
+        public final long timeMs;
+        public final String side;
+        public final String instrument;
+        public final long quantityUnits; // At FixedPoint.QUANTITY_SCALE
+        public final long priceUnits;    // At FixedPoint.PRICE_SCALE
+        public final long feesUnits;     // At FixedPoint.MONEY_SCALE
+
+        public Trade(long id, long sequence, long timeMs, String side, String instrument,
+                     long quantityUnits, long priceUnits, long feesUnits) {
+            this.id = id;
+            this.sequence = sequence;
+            this.timeMs = timeMs;
+            this.side = side;
+            this.instrument = instrument;
+            this.quantityUnits = quantityUnits;
+            this.priceUnits = priceUnits;
+            this.feesUnits = feesUnits;
+        }
+
+        public double getQuantity() {
+            return FixedPoint.toDouble(quantityUnits, FixedPoint.QUANTITY_SCALE);
+        }
+
+        public double getPrice() {
+            return FixedPoint.toDouble(priceUnits, FixedPoint.PRICE_SCALE);
+        }
+
+        public double getFees() {
+            return FixedPoint.toDouble(feesUnits, FixedPoint.MONEY_SCALE);
+        }
+
+        /**
+         * Get quantity times price at FixedPoint.MONEY_SCALE
+         */
+        public long getTotalUnits() {
+            return FixedPoint.multiply(quantityUnits, FixedPoint.QUANTITY_SCALE, priceUnits, FixedPoint.PRICE_SCALE,
+                    FixedPoint.MONEY_SCALE, RoundingMode.HALF_EVEN);
+        }
+
+        public double getTotal() {
+            return FixedPoint.toDouble(getTotalUnits(), FixedPoint.MONEY_SCALE);
+        }
+    }
+
+    /**
+     * Aggregate figures for one instrument
+     */
+    public static class Totals {
+        public int tradeCount;
+        public double boughtQuantity;
+        public double soldQuantity;
+        public double boughtNotional;
+        public double soldNotional;
+        public double fees;
+
+        public double getNetQuantity() {
+            return boughtQuantity - soldQuantity;
+        }
+    }
+
+    private TradeLedger(Context context, String portfolioId) {
+        super(context, databaseName(portfolioId), null, DATABASE_VERSION);
+        this.context = context;
+        importsLegacyHistory = portfolioId == null;
+        executorService = Executors.newSingleThreadExecutor();
+        pending = new ArrayList<>();
+    }
+
+    /**
+     * Get the ledger of the default portfolio
+     * @param context Any context, the application context is kept
+     * @return TradeLedger instance
+     */
+    public static TradeLedger getInstance(Context context) {
+        return getInstance(context, null);
+    }
+
+    /**
+     * Get the ledger of a portfolio
+     * @param context Any context, the application context is kept
+     * @param portfolioId Portfolio ID, or null for the default portfolio
+     * @return TradeLedger instance
+     */
+    public static synchronized TradeLedger getInstance(Context context, String portfolioId) {
+        TradeLedger ledger = instances.get(portfolioId);
+        if (ledger == null) {
+            ledger = new TradeLedger(context.getApplicationContext(), portfolioId);
+            instances.put(portfolioId, ledger);
+        }
+        return ledger;
+    }
+
+    private static String databaseName(String portfolioId) {
+        return portfolioId == null ? DATABASE_NAME : "ledger_" + portfolioId + ".db";
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        createTable(db);
+        if (importsLegacyHistory) {
+            importLegacyHistory(db);
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // REAL amounts become fixed-point integers; all three scales are 8
+            db.execSQL("ALTER TABLE " + TABLE_TRADES + " RENAME TO trades_v1");
+            db.execSQL("DROP INDEX IF EXISTS idx_trades_time");
+            db.execSQL("DROP INDEX IF EXISTS idx_trades_instrument");
+            createTable(db);
+            db.execSQL("INSERT INTO " + TABLE_TRADES
+                    + " (id, sequence, time, side, instrument, quantity, price, fees)"
+                    + " SELECT id, sequence, time, side, instrument,"
+                    + " CAST(ROUND(quantity * 100000000) AS INTEGER),"
+                    + " CAST(ROUND(price * 100000000) AS INTEGER),"
+                    + " CAST(ROUND(fees * 100000000) AS INTEGER) FROM trades_v1");
+            db.execSQL("DROP TABLE trades_v1");
+        }
+    }
+
+    private static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_TRADES + " ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "sequence INTEGER UNIQUE, "
+                + "time INTEGER NOT NULL, "
+                + "side TEXT NOT NULL, "
+                + "instrument TEXT NOT NULL, "
+                + "quantity INTEGER NOT NULL, "
+                + "price INTEGER NOT NULL, "
+                + "fees INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_trades_time ON " + TABLE_TRADES + " (time)");
+        db.execSQL("CREATE INDEX idx_trades_instrument ON " + TABLE_TRADES + " (instrument, time)");
+    }
+
+    /**
+     * Queue a trade for insertion
+     * @param sequence Portfolio journal sequence number; a trade with a sequence already in the ledger is ignored
+     * @param timeMs Execution time in epoch millis
+     * @param side {@link #SIDE_BUY} or {@link #SIDE_SELL}
+     * @param instrument Instrument symbol (e.g., BTC)
+     * @param quantity Quantity at FixedPoint.QUANTITY_SCALE
+     * @param price Price at FixedPoint.PRICE_SCALE
+     * @param fees Fees at FixedPoint.MONEY_SCALE
+     */
+    public void record(long sequence, long timeMs, String side, String instrument,
+                       long quantity, long price, long fees) {
+        boolean first;
+        synchronized (pending) {
+            first = pending.isEmpty();
+            pending.add(new Trade(0, sequence, timeMs, side, instrument, quantity, price, fees));
+        }
+        if (first) {
+            // Later trades join this batch until it runs
+            executorService.execute(this::insertPending);
+        }
+    }
+
+    /**
+     * Wait until every queued trade has been written
+     */
+    public void flush() {
+        try {
+            executorService.submit(this::insertPending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error flushing ledger: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get trades in a time range, newest first. Blocking; call off the main thread.
+     * @param fromMs Start time (inclusive)
+     * @param toMs End time (exclusive)
+     * @param instrument Instrument symbol, or null for all
+     * @param limit Maximum number of rows
+     */
+    public List<Trade> query(long fromMs, long toMs, String instrument, int limit) {
+        String selection = "time >= ? AND time < ?";
+        String[] args;
+        if (instrument != null) {
+            selection += " AND instrument = ?";
+            args = new String[]{String.valueOf(fromMs), String.valueOf(toMs), instrument};
+        } else {
+            args = new String[]{String.valueOf(fromMs), String.valueOf(toMs)};
+        }
+        List<Trade> trades = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TRADES, null, selection, args,
+                null, null, "time DESC, id DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                trades.add(readTrade(cursor));
+            }
+        }
+        return trades;
+    }
+
+    /**
+     * Get the page of trades that follows a row, newest first. Uses the (time, id)
+     * key instead of an offset, so every page costs the same index seek. Blocking.
+     * @param beforeTimeMs Time of the last row of the previous page, or Long.MAX_VALUE for the first page
+     * @param beforeId ID of the last row of the previous page, or Long.MAX_VALUE for the first page
+     * @param limit Page size
+     */
+    public List<Trade> getPage(long beforeTimeMs, long beforeId, int limit) {
+        String time = String.valueOf(beforeTimeMs);
+        List<Trade> trades = new ArrayList<>(limit);
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TRADES, null,
+                "time < ? OR (time = ? AND id < ?)",
+                new String[]{time, time, String.valueOf(beforeId)},
+                null, null, "time DESC, id DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                trades.add(readTrade(cursor));
+            }
+        }
+        return trades;
+    }
+
+    /**
+     * Get aggregate figures for an instrument over a time range. Blocking.
+     * @param instrument Instrument symbol
+     * @param fromMs Start time (inclusive)
+     * @param toMs End time (exclusive)
+     */
+    public Totals getTotals(String instrument, long fromMs, long toMs) {
+        Totals totals = new Totals();
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT side, COUNT(*), SUM(quantity), SUM(CAST(quantity AS REAL) * price), SUM(fees) FROM " + TABLE_TRADES
+                        + " WHERE instrument = ? AND time >= ? AND time < ? GROUP BY side",
+                new String[]{instrument, String.valueOf(fromMs), String.valueOf(toMs)})) {
+            // Unit products carry both scales
+            double notionalUnit = (double) FixedPoint.one(FixedPoint.QUANTITY_SCALE)
+                    * FixedPoint.one(FixedPoint.PRICE_SCALE);
+            while (cursor.moveToNext()) {
+                totals.tradeCount += cursor.getInt(1);
+                totals.fees += FixedPoint.toDouble(cursor.getLong(4), FixedPoint.MONEY_SCALE);
+                double quantity = FixedPoint.toDouble(cursor.getLong(2), FixedPoint.QUANTITY_SCALE);
+                double notional = cursor.getDouble(3) / notionalUnit;
+                if (SIDE_BUY.equals(cursor.getString(0))) {
+                    totals.boughtQuantity = quantity;
+                    totals.boughtNotional = notional;
+                } else {
+                    totals.soldQuantity = quantity;
+                    totals.soldNotional = notional;
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Visit every trade, oldest first, one row at a time, so memory does not grow
+     * with the ledger. Blocking; call off the main thread.
+     * @throws IOException if the visitor fails; the walk stops there
+     */
+    public void forEach(TradeVisitor visitor) throws IOException {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TRADES, null, null, null,
+                null, null, "time ASC, id ASC")) {
+            while (cursor.moveToNext()) {
+                visitor.onTrade(readTrade(cursor));
+            }
+        }
+    }
+
+    /**
+     * Receiver for {@link #forEach}
+     */
+    public interface TradeVisitor {
+        void onTrade(Trade trade) throws IOException;
+    }
+
+    /**
+     * Start inserting a large number of trades, e.g. from an import. Rows are
+     * committed every batchSize trades; close the inserter to commit the rest.
+     * Blocking; call off the main thread.
+     */
+    public BulkInsert beginBulkInsert(int batchSize) {
+        return new BulkInsert(getWritableDatabase(), batchSize);
+    }
+
+    /**
+     * Inserts trades in transactions of a fixed size. Trades carry no journal
+     * sequence, since they did not come from this portfolio's journal.
+     */
+    public static class BulkInsert implements Closeable {
+        private final SQLiteDatabase db;
+        private final SQLiteStatement insert;
+        private final int batchSize;
+        private int inBatch;
+        private long inserted;
+
+        private BulkInsert(SQLiteDatabase db, int batchSize) {
+            this.db = db;
+            this.batchSize = batchSize;
+            insert = db.compileStatement("INSERT INTO " + TABLE_TRADES
+                    + " (sequence, time, side, instrument, quantity, price, fees) VALUES (NULL, ?, ?, ?, ?, ?, ?)");
+            db.beginTransaction();
+        }
+
+        public void add(long timeMs, String side, String instrument, long quantity, long price, long fees) {
+            insert.bindLong(1, timeMs);
+            insert.bindString(2, side);
+            insert.bindString(3, instrument);
+            insert.bindLong(4, quantity);
+            insert.bindLong(5, price);
+            insert.bindLong(6, fees);
+            insert.executeInsert();
+            inserted++;
+            if (++inBatch >= batchSize) {
+                db.setTransactionSuccessful();
+                db.endTransaction();
+                db.beginTransaction();
+                inBatch = 0;
+            }
+        }
+
+        /**
+         * Get the number of trades inserted so far
+         */
+        public long getInserted() {
+            return inserted;
+        }
+
+        /**
+         * Commit the last batch
+         */
+        @Override
+        public void close() {
+            try {
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+            }
+        }
+    }
+
+    /**
+     * Get the number of trades in the ledger. Blocking.
+     */
+    public long getTradeCount() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_TRADES);
+    }
+
+    private void insertPending() {
+        List<Trade> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_TRADES
+                + " (sequence, time, side, instrument, quantity, price, fees) VALUES (?, ?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (Trade trade : batch) {
+                if (trade.sequence > 0) {
+                    insert.bindLong(1, trade.sequence);
+                } else {
+                    insert.bindNull(1);
+                }
+                insert.bindLong(2, trade.timeMs);
+                insert.bindString(3, trade.side);
+                insert.bindString(4, trade.instrument);
+                insert.bindLong(5, trade.quantityUnits);
+                insert.bindLong(6, trade.priceUnits);
+                insert.bindLong(7, trade.feesUnits);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Error inserting trades: " + e.getMessage());
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Move the old newest-first history string into the new table.
+     * Those lines carry no time, so they are stamped just before the import, in order.
+     */
+    private void importLegacyHistory(SQLiteDatabase db) {
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        String history = prefs.getString(LEGACY_KEY_HISTORY, "");
+        if (history.isEmpty()) {
+            return;
+        }
+        String[] lines = history.split("\n");
+        long time = System.currentTimeMillis();
+        for (String line : lines) {
+            Matcher matcher = LEGACY_LINE.matcher(line);
+            if (!matcher.find()) {
+                continue;
+            }
+            ContentValues values = new ContentValues();
+            values.put("time", time--);
+            values.put("side", matcher.group(1));
+            values.put("instrument", matcher.group(3));
+            values.put("quantity", FixedPoint.parse(matcher.group(2), FixedPoint.QUANTITY_SCALE, RoundingMode.HALF_EVEN));
+            values.put("price", FixedPoint.parse(matcher.group(4), FixedPoint.PRICE_SCALE, RoundingMode.HALF_EVEN));
+            db.insert(TABLE_TRADES, null, values);
+        }
+        prefs.edit().remove(LEGACY_KEY_HISTORY).apply();
+    }
+
+    private static Trade readTrade(Cursor cursor) {
+        int sequenceColumn = cursor.getColumnIndexOrThrow("sequence");
+        return new Trade(
+                cursor.getLong(cursor.getColumnIndexOrThrow("id")),
+                cursor.isNull(sequenceColumn) ? 0 : cursor.getLong(sequenceColumn),
+                cursor.getLong(cursor.getColumnIndexOrThrow("time")),
+                cursor.getString(cursor.getColumnIndexOrThrow("side")),
+                cursor.getString(cursor.getColumnIndexOrThrow("instrument")),
+                cursor.getLong(cursor.getColumnIndexOrThrow("quantity")),
+                cursor.getLong(cursor.getColumnIndexOrThrow("price")),
+                cursor.getLong(cursor.getColumnIndexOrThrow("fees")));
+    }
+}
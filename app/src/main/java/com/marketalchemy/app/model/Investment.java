@@ -1,5 +1,7 @@
 package com.marketalchemy.app.model;
 
+import com.marketalchemy.app.utils.FixedPoint;
+
 import java.util.Date;
 
 /**
@@ -7,14 +9,19 @@ import java.util.Date;
  */
 public class Investment {
     private String cryptoId;
-    private double quantity;
-    private double purchasePrice;
+    private long quantityUnits;      // Fixed-point at FixedPoint.QUANTITY_SCALE
+    private long purchasePriceUnits; // Fixed-point at FixedPoint.PRICE_SCALE
     private Date lastUpdated;
     
     public Investment(String cryptoId, double quantity, double purchasePrice, Date lastUpdated) {
+        this(cryptoId, FixedPoint.of(quantity, FixedPoint.QUANTITY_SCALE),
+                FixedPoint.of(purchasePrice, FixedPoint.PRICE_SCALE), lastUpdated);
+    }
+    
+    public Investment(String cryptoId, long quantityUnits, long purchasePriceUnits, Date lastUpdated) {
         this.cryptoId = cryptoId;
-        this.quantity = quantity;
-        this.purchasePrice = purchasePrice;
+        this.quantityUnits = quantityUnits;
+        this.purchasePriceUnits = purchasePriceUnits;
         this.lastUpdated = lastUpdated;
     }
     
@@ -31,19 +38,35 @@ public class Investment {
     }
     
     public double getQuantity() {
-        return quantity;
+        return FixedPoint.toDouble(quantityUnits, FixedPoint.QUANTITY_SCALE);
     }
     
     public void setQuantity(double quantity) {
-        this.quantity = quantity;
+        this.quantityUnits = FixedPoint.of(quantity, FixedPoint.QUANTITY_SCALE);
+    }
+    
+    public long getQuantityUnits() {
+        return quantityUnits;
+    }
+    
+    public void setQuantityUnits(long quantityUnits) {
+        this.quantityUnits = quantityUnits;
     }
     
     public double getPurchasePrice() {
-        return purchasePrice;
+        return FixedPoint.toDouble(purchasePriceUnits, FixedPoint.PRICE_SCALE);
     }
     
     public void setPurchasePrice(double purchasePrice) {
-        this.purchasePrice = purchasePrice;
+        this.purchasePriceUnits = FixedPoint.of(purchasePrice, FixedPoint.PRICE_SCALE);
+    }
+    
+    public long getPurchasePriceUnits() {
+        return purchasePriceUnits;
+    }
+    
+    public void setPurchasePriceUnits(long purchasePriceUnits) {
+        this.purchasePriceUnits = purchasePriceUnits;
     }
     
     public Date getLastUpdated() {
@@ -60,7 +83,7 @@ public class Investment {
      * @return Current value of the investment
      */
     public double getCurrentValue(double currentPrice) {
-        return quantity * currentPrice;
+        return getQuantity() * currentPrice;
     }
     
     /**
@@ -70,7 +93,7 @@ public class Investment {
      */
     public double getProfitLoss(double currentPrice) {
         double currentValue = getCurrentValue(currentPrice);
-        double investedValue = quantity * purchasePrice;
+        double investedValue = getQuantity() * getPurchasePrice();
         return currentValue - investedValue;
     }
     
@@ -81,7 +104,7 @@ public class Investment {
      */
     public double getProfitLossPercentage(double currentPrice) {
         double profitLoss = getProfitLoss(currentPrice);
-        double investedValue = quantity * purchasePrice;
+        double investedValue = getQuantity() * getPurchasePrice();
         if (investedValue == 0) {
             return 0;
         }
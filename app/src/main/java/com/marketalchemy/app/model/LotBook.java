@@ -0,0 +1,442 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tax lots per instrument and realized profit/loss.
+ * <p>
+ * Every buy opens a lot; every sell relieves lots using the selected method and
+ * adds proceeds less relieved cost to the realized total. Lots live in a deque of
+ * parallel primitive arrays per instrument, so FIFO and LIFO relief are amortized
+ * O(1) per lot, average cost is O(1) and HIFO is O(log n) through a heap of lot
+ * prices. Amounts are fixed-point units (see {@link FixedPoint}).
+ * Not thread-safe; {@link VirtualPortfolio} uses it on its sequencer thread.
+ */
+public class LotBook {
+
+    public static final int METHOD_FIFO = 1;         // First in, first out
+    public static final int METHOD_LIFO = 2;         // Last in, first out
+    public static final int METHOD_HIFO = 3;         // Highest price first
+    public static final int METHOD_AVERAGE_COST = 4; // Relieve at the average cost of all lots
+
+    private final Map<String, LotQueue> queues;
+    private int method;
+    private long realized; // At FixedPoint.MONEY_SCALE
+
+    public LotBook() {
+        queues = new HashMap<>();
+        method = METHOD_FIFO;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * Select the relief method for later sales; existing lots are kept
+     */
+    public void setMethod(int method) {
+        if (method < METHOD_FIFO || method > METHOD_AVERAGE_COST) {
+            throw new IllegalArgumentException("Unknown lot method " + method);
+        }
+        this.method = method;
+    }
+
+    /**
+     * Open a lot
+     * @param quantity Quantity at FixedPoint.QUANTITY_SCALE
+     * @param cost Cost including rounding at FixedPoint.MONEY_SCALE
+     * @param price Trade price at FixedPoint.PRICE_SCALE, used to rank lots for HIFO
+     */
+    public void addLot(String cryptoId, long quantity, long cost, long price, long timeMs) {
+        if (quantity <= 0) {
+            return;
+        }
+        LotQueue queue = queues.get(cryptoId);
+        if (queue == null) {
+            queue = new LotQueue();
+            queues.put(cryptoId, queue);
+        }
+        queue.add(quantity, cost, price, timeMs);
+    }
+
+    /**
+     * Relieve lots for a sale and book the realized profit/loss
+     * @param quantity Quantity sold at FixedPoint.QUANTITY_SCALE; capped at the quantity held
+     * @param proceeds Proceeds of the whole sale at FixedPoint.MONEY_SCALE
+     * @return Cost relieved at FixedPoint.MONEY_SCALE
+     */
+    public long relieve(String cryptoId, long quantity, long proceeds) {
+        LotQueue queue = queues.get(cryptoId);
+        long held = queue != null ? queue.totalQuantity : 0;
+        long sold = Math.min(quantity, held);
+        if (sold <= 0) {
+            return 0;
+        }
+        if (sold < quantity) {
+            // Only part of the sale was covered by lots
+            proceeds = FixedPoint.multiplyDivide(proceeds, sold, quantity, RoundingMode.HALF_EVEN);
+        }
+        long cost = queue.relieve(sold, method);
+        long profit = FixedPoint.subtract(proceeds, cost);
+        queue.realized = FixedPoint.add(queue.realized, profit);
+        realized = FixedPoint.add(realized, profit);
+        return cost;
+    }
+
+    /**
+     * Get lifetime realized profit/loss at FixedPoint.MONEY_SCALE
+     */
+    public long getRealized() {
+        return realized;
+    }
+
+    /**
+     * Get lifetime realized profit/loss of one instrument at FixedPoint.MONEY_SCALE
+     */
+    public long getRealized(String cryptoId) {
+        LotQueue queue = queues.get(cryptoId);
+        return queue != null ? queue.realized : 0;
+    }
+
+    /**
+     * Get the cost basis of the open lots of one instrument at FixedPoint.MONEY_SCALE
+     */
+    public long getCost(String cryptoId) {
+        LotQueue queue = queues.get(cryptoId);
+        return queue != null ? queue.totalCost : 0;
+    }
+
+    /**
+     * Get the number of open lots of one instrument
+     */
+    public int getLotCount(String cryptoId) {
+        LotQueue queue = queues.get(cryptoId);
+        return queue != null ? queue.liveCount : 0;
+    }
+
+    public void clear() {
+        queues.clear();
+        realized = 0;
+    }
+
+    /**
+     * Restore the realized total, e.g. after replacing every lot
+     * @param realized Realized profit/loss at FixedPoint.MONEY_SCALE
+     */
+    public void setRealized(long realized) {
+        this.realized = realized;
+    }
+
+    /**
+     * Copy the book into plain data for a snapshot
+     */
+    public Data toData() {
+        Data data = new Data();
+        data.method = method;
+        data.realized = realized;
+        data.queues = new ArrayList<>(queues.size());
+        for (Map.Entry<String, LotQueue> entry : queues.entrySet()) {
+            data.queues.add(entry.getValue().toData(entry.getKey()));
+        }
+        return data;
+    }
+
+    /**
+     * Replace the book with snapshot data
+     */
+    public void load(Data data) {
+        clear();
+        method = data.method;
+        realized = data.realized;
+        if (data.queues == null) {
+            return;
+        }
+        for (QueueData queueData : data.queues) {
+            LotQueue queue = new LotQueue();
+            queue.realized = queueData.realized;
+            int count = queueData.quantities != null ? queueData.quantities.length : 0;
+            for (int i = 0; i < count; i++) {
+                queue.add(queueData.quantities[i], queueData.costs[i], queueData.prices[i], queueData.times[i]);
+            }
+            // Restore exact totals; average-cost relief lets them differ from the sum of lots
+            queue.totalQuantity = queueData.totalQuantity;
+            queue.totalCost = queueData.totalCost;
+            queues.put(queueData.cryptoId, queue);
+        }
+    }
+
+    /**
+     * Snapshot of the whole book
+     */
+    public static class Data {
+        public int method;
+        public long realized;
+        public List<QueueData> queues;
+    }
+
+    /**
+     * Snapshot of the open lots of one instrument, oldest first
+     */
+    public static class QueueData {
+        public String cryptoId;
+        public long realized;
+        public long totalQuantity;
+        public long totalCost;
+        public long[] quantities;
+        public long[] costs;
+        public long[] prices;
+        public long[] times;
+    }
+
+    /**
+     * Open lots of one instrument. Lots occupy slots head..tail-1 in purchase order;
+     * a lot emptied from the middle (HIFO) stays as a zero-quantity slot until it
+     * reaches either end. Every lot has a number that increases with its slot, so a
+     * heap entry can find its lot by binary search after the arrays are compacted.
+     */
+    private static class LotQueue {
+        private static final int INITIAL_CAPACITY = 8;
+
+        long[] quantities = new long[INITIAL_CAPACITY];
+        long[] costs = new long[INITIAL_CAPACITY];
+        long[] prices = new long[INITIAL_CAPACITY];
+        long[] times = new long[INITIAL_CAPACITY];
+        long[] numbers = new long[INITIAL_CAPACITY];
+        int head;
+        int tail;
+        int liveCount;
+        long nextNumber;
+
+        // Max-heap of (price, lot number); entries of emptied lots are skipped lazily
+        long[] heapPrices = new long[INITIAL_CAPACITY];
+        long[] heapNumbers = new long[INITIAL_CAPACITY];
+        int heapSize;
+
+        long totalQuantity;
+        long totalCost;
+        long realized;
+
+        void add(long quantity, long cost, long price, long timeMs) {
+            if (tail == quantities.length) {
+                compact();
+            }
+            int slot = tail++;
+            quantities[slot] = quantity;
+            costs[slot] = cost;
+            prices[slot] = price;
+            times[slot] = timeMs;
+            numbers[slot] = nextNumber++;
+            liveCount++;
+            totalQuantity = FixedPoint.add(totalQuantity, quantity);
+            totalCost = FixedPoint.add(totalCost, cost);
+            if (heapSize > 2 * liveCount + INITIAL_CAPACITY) {
+                rebuildHeap();
+            } else {
+                heapPush(price, numbers[slot]);
+            }
+        }
+
+        /**
+         * Relieve a quantity no larger than the total held
+         * @return Cost relieved
+         */
+        long relieve(long quantity, int method) {
+            long remaining = quantity;
+            long lotCost = 0;
+            while (remaining > 0) {
+                int slot = method == METHOD_LIFO ? lastLive()
+                        : method == METHOD_HIFO ? highestLive()
+                        : firstLive(); // FIFO, and the quantity side of average cost
+                long take = Math.min(remaining, quantities[slot]);
+                long share = take == quantities[slot] ? costs[slot]
+                        : FixedPoint.multiplyDivide(costs[slot], take, quantities[slot], RoundingMode.HALF_EVEN);
+                quantities[slot] -= take;
+                costs[slot] -= share;
+                if (quantities[slot] == 0) {
+                    liveCount--;
+                }
+                lotCost += share;
+                remaining -= take;
+            }
+
+            long relieved;
+            if (quantity == totalQuantity) {
+                // Closing the position relieves whatever cost is left
+                relieved = totalCost;
+            } else if (method == METHOD_AVERAGE_COST) {
+                relieved = FixedPoint.multiplyDivide(totalCost, quantity, totalQuantity, RoundingMode.HALF_EVEN);
+            } else {
+                relieved = lotCost;
+            }
+            totalQuantity -= quantity;
+            totalCost -= relieved;
+            if (liveCount == 0) {
+                head = 0;
+                tail = 0;
+                heapSize = 0;
+            }
+            return relieved;
+        }
+
+        private int firstLive() {
+            while (quantities[head] == 0) {
+                head++;
+            }
+            return head;
+        }
+
+        private int lastLive() {
+            while (quantities[tail - 1] == 0) {
+                tail--;
+            }
+            return tail - 1;
+        }
+
+        private int highestLive() {
+            while (true) {
+                int slot = findSlot(heapNumbers[0]);
+                if (slot >= 0 && quantities[slot] > 0) {
+                    return slot;
+                }
+                heapPop();
+            }
+        }
+
+        /**
+         * Find the slot of a lot number among head..tail-1
+         * @return Slot, or -1 if the lot is gone
+         */
+        private int findSlot(long number) {
+            int low = head;
+            int high = tail - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (numbers[mid] < number) {
+                    low = mid + 1;
+                } else if (numbers[mid] > number) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Drop emptied slots and make room at the tail
+         */
+        private void compact() {
+            int count = 0;
+            for (int i = head; i < tail; i++) {
+                if (quantities[i] > 0) {
+                    quantities[count] = quantities[i];
+                    costs[count] = costs[i];
+                    prices[count] = prices[i];
+                    times[count] = times[i];
+                    numbers[count] = numbers[i];
+                    count++;
+                }
+            }
+            head = 0;
+            tail = count;
+            if (count * 2 > quantities.length) {
+                int capacity = quantities.length * 2;
+                quantities = Arrays.copyOf(quantities, capacity);
+                costs = Arrays.copyOf(costs, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                times = Arrays.copyOf(times, capacity);
+                numbers = Arrays.copyOf(numbers, capacity);
+            }
+        }
+
+        private void rebuildHeap() {
+            heapSize = 0;
+            for (int i = head; i < tail; i++) {
+                if (quantities[i] > 0) {
+                    heapPush(prices[i], numbers[i]);
+                }
+            }
+        }
+
+        private void heapPush(long price, long number) {
+            if (heapSize == heapPrices.length) {
+                heapPrices = Arrays.copyOf(heapPrices, heapSize * 2);
+                heapNumbers = Arrays.copyOf(heapNumbers, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(price, number, heapPrices[parent], heapNumbers[parent])) {
+                    break;
+                }
+                heapPrices[i] = heapPrices[parent];
+                heapNumbers[i] = heapNumbers[parent];
+                i = parent;
+            }
+            heapPrices[i] = price;
+            heapNumbers[i] = number;
+        }
+
+        private void heapPop() {
+            long price = heapPrices[--heapSize];
+            long number = heapNumbers[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize
+                        && before(heapPrices[child + 1], heapNumbers[child + 1], heapPrices[child], heapNumbers[child])) {
+                    child++;
+                }
+                if (!before(heapPrices[child], heapNumbers[child], price, number)) {
+                    break;
+                }
+                heapPrices[i] = heapPrices[child];
+                heapNumbers[i] = heapNumbers[child];
+                i = child;
+            }
+            heapPrices[i] = price;
+            heapNumbers[i] = number;
+        }
+
+        /**
+         * Heap order: higher price first, then the older lot
+         */
+        private static boolean before(long price, long number, long otherPrice, long otherNumber) {
+            return price > otherPrice || (price == otherPrice && number < otherNumber);
+        }
+
+        QueueData toData(String cryptoId) {
+            QueueData data = new QueueData();
+            data.cryptoId = cryptoId;
+            data.realized = realized;
+            data.totalQuantity = totalQuantity;
+            data.totalCost = totalCost;
+            data.quantities = new long[liveCount];
+            data.costs = new long[liveCount];
+            data.prices = new long[liveCount];
+            data.times = new long[liveCount];
+            int count = 0;
+            for (int i = head; i < tail; i++) {
+                if (quantities[i] > 0) {
+                    data.quantities[count] = quantities[i];
+                    data.costs[count] = costs[i];
+                    data.prices[count] = prices[i];
+                    data.times[count] = times[i];
+                    count++;
+                }
+            }
+            return data;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+/**
+ * Outcome of an order executed against a quote
+ */
+public final class OrderResult {
+    
+    public enum Status {
+        FILLED,
+        INSUFFICIENT_FUNDS,
+        INSUFFICIENT_HOLDINGS,
+        QUOTE_EXPIRED,
+        INVALID_QUANTITY
+    }
+    
+    private final Status status;
+    private final String side; // TradeLedger.SIDE_BUY or SIDE_SELL
+    private final String cryptoId;
+    private final long quantityUnits; // Fixed-point at FixedPoint.QUANTITY_SCALE
+    private final long priceUnits;    // Fixed-point at FixedPoint.PRICE_SCALE
+    private final long totalUnits;    // Cost or proceeds at FixedPoint.MONEY_SCALE, 0 unless filled
+    private final long timeMs;
+    
+    public OrderResult(Status status, String side, String cryptoId, long quantityUnits, long priceUnits,
+                       long totalUnits, long timeMs) {
+        this.status = status;
+        this.side = side;
+        this.cryptoId = cryptoId;
+        this.quantityUnits = quantityUnits;
+        this.priceUnits = priceUnits;
+        this.totalUnits = totalUnits;
+        this.timeMs = timeMs;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public boolean isFilled() {
+        return status == Status.FILLED;
+    }
+    
+    public String getSide() {
+        return side;
+    }
+    
+    public String getCryptoId() {
+        return cryptoId;
+    }
+    
+    public long getQuantityUnits() {
+        return quantityUnits;
+    }
+    
+    public double getQuantity() {
+        return FixedPoint.toDouble(quantityUnits, FixedPoint.QUANTITY_SCALE);
+    }
+    
+    public long getPriceUnits() {
+        return priceUnits;
+    }
+    
+    public double getPrice() {
+        return FixedPoint.toDouble(priceUnits, FixedPoint.PRICE_SCALE);
+    }
+    
+    /**
+     * Get the cost of a buy or the proceeds of a sell
+     */
+    public double getTotal() {
+        return FixedPoint.toDouble(totalUnits, FixedPoint.MONEY_SCALE);
+    }
+    
+    public long getTime() {
+        return timeMs;
+    }
+}
@@ -0,0 +1,279 @@
+package com.marketalchemy.app.model;
+
+import android.util.Log;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of portfolio events.
+ * <p>
+ * Each event is one small fixed-layout record with a CRC, written by a single
+ * background thread. Writes are flushed and fsync-ed in batches, so a burst of
+ * trades costs one disk sync. A torn record at the end of the file (crash during
+ * a write) fails its CRC and is cut off when the journal is opened. Compaction
+ * moves the records a snapshot covers to a ".prev" file, which is kept until the
+ * next compaction so the snapshot before it can still be replayed forward.
+ */
+public class PortfolioJournal {
+
+    private static final String TAG = "PortfolioJournal";
+
+    public static final byte EVENT_BUY = 1;
+    public static final byte EVENT_SELL = 2;
+    public static final byte EVENT_DEPOSIT = 3;
+    public static final byte EVENT_SET_BALANCE = 4;
+
+    // Set on the stored type of records with fixed-point amounts; older records hold doubles
+    private static final byte FLAG_FIXED_POINT = 0x40;
+
+    private static final long SYNC_DELAY_MS = 100; // Window for batching fsyncs
+
+    private final File file;
+    private final ScheduledExecutorService executorService;
+
+    private FileOutputStream out;
+    private long nextSequence = 1;
+    private boolean syncScheduled;
+
+    /**
+     * Receives journal events during replay. Quantity and price are fixed-point
+     * units; for balance events the amount is carried in price.
+     */
+    public interface EventVisitor {
+        void onEvent(long sequence, byte type, String cryptoId, long quantity, long price, long timeMs);
+    }
+
+    /**
+     * @param file Journal file, created if missing
+     */
+    public PortfolioJournal(File file) {
+        this.file = file;
+        executorService = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Replay every event after a sequence number and open the journal for appending.
+     * Records compacted away last time are replayed first, so a snapshot one
+     * compaction old can still be brought up to date. Must be called once before
+     * {@link #append}.
+     * @param afterSequence Sequence covered by the snapshot that was loaded
+     * @param visitor Receives each event in order
+     * @return False if records between the snapshot and the first one replayed are missing
+     */
+    public synchronized boolean open(long afterSequence, EventVisitor visitor) {
+        final long[] first = {0};
+        EventVisitor tracking = (sequence, type, cryptoId, quantity, price, timeMs) -> {
+            if (first[0] == 0) {
+                first[0] = sequence;
+            }
+            visitor.onEvent(sequence, type, cryptoId, quantity, price, timeMs);
+        };
+        long[] previous = replay(previousFile(), afterSequence, afterSequence, tracking);
+        long[] current = replay(file, afterSequence, previous[0], tracking);
+        long validLength = current[1];
+        nextSequence = current[0] + 1;
+
+        try {
+            // Cut off a torn tail so new records follow the last good one
+            if (file.exists() && file.length() > validLength) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(validLength);
+                }
+            }
+            out = new FileOutputStream(file, true);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening journal: " + e.getMessage());
+        }
+        return first[0] == 0 || first[0] == afterSequence + 1;
+    }
+
+    /**
+     * Replay the valid records of one journal file
+     * @param lastSequence Highest sequence seen so far
+     * @return {highest sequence seen, length of the valid records}
+     */
+    private static long[] replay(File journalFile, long afterSequence, long lastSequence, EventVisitor visitor) {
+        long validLength = 0;
+        if (journalFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                CRC32 crc = new CRC32();
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readUnsignedShort();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    byte[] record = new byte[length];
+                    in.readFully(record);
+                    int checksum = in.readInt();
+                    crc.reset();
+                    crc.update(record, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        Log.w(TAG, "Corrupt journal record at offset " + validLength);
+                        break;
+                    }
+                    validLength += 2 + length + 4;
+
+                    DataInputStream event = new DataInputStream(new ByteArrayInputStream(record));
+                    long sequence = event.readLong();
+                    byte storedType = event.readByte();
+                    byte type = (byte) (storedType & ~FLAG_FIXED_POINT);
+                    long timeMs = event.readLong();
+                    long quantity;
+                    long price;
+                    if ((storedType & FLAG_FIXED_POINT) != 0) {
+                        quantity = event.readLong();
+                        price = event.readLong();
+                    } else {
+                        quantity = FixedPoint.of(event.readDouble(), FixedPoint.QUANTITY_SCALE);
+                        price = FixedPoint.of(event.readDouble(), FixedPoint.PRICE_SCALE);
+                    }
+                    String cryptoId = event.readUTF();
+                    if (sequence > afterSequence && sequence > lastSequence) {
+                        visitor.onEvent(sequence, type, cryptoId, quantity, price, timeMs);
+                    }
+                    lastSequence = Math.max(lastSequence, sequence);
+                }
+            } catch (EOFException e) {
+                Log.w(TAG, "Truncated journal record at offset " + validLength);
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading journal: " + e.getMessage());
+            }
+        }
+        return new long[]{lastSequence, validLength};
+    }
+
+    /**
+     * Append an event. The record is encoded on the caller's thread and written
+     * in the background; it reaches disk within {@link #SYNC_DELAY_MS}.
+     * @return Sequence number assigned to the event
+     */
+    public synchronized long append(byte type, String cryptoId, long quantity, long price, long timeMs) {
+        long sequence = nextSequence++;
+        byte[] record = encode(sequence, type, cryptoId, quantity, price, timeMs);
+        executorService.execute(() -> write(record));
+        return sequence;
+    }
+
+    /**
+     * Get the sequence number of the last appended event
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Write a snapshot and start a new journal file. Runs on the journal thread
+     * after every record appended so far, so the snapshot writer must persist
+     * state captured at {@link #getLastSequence()} before returning. The records
+     * the snapshot covers are kept until the next compaction, so the previous
+     * snapshot can still be replayed to the same state.
+     * @param snapshotWriter Writes the snapshot durably
+     */
+    public void compact(Runnable snapshotWriter) {
+        executorService.execute(() -> {
+            try {
+                syncNow();
+                snapshotWriter.run();
+                // Snapshot is durable; the covered records replace the previous generation
+                out.close();
+                boolean rotated = file.renameTo(previousFile());
+                out = new FileOutputStream(file, true);
+                if (!rotated) {
+                    // Still correct, the journal just keeps growing until the next compaction
+                    Log.w(TAG, "Could not rotate " + file.getName());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error compacting journal: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Flush pending records to disk and wait for it to finish
+     */
+    public void sync() {
+        try {
+            executorService.submit(this::syncNow).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error syncing journal: " + e.getMessage());
+        }
+    }
+
+    private File previousFile() {
+        return new File(file.getPath() + ".prev");
+    }
+
+    private void write(byte[] record) {
+        try {
+            out.write(record);
+            if (!syncScheduled) {
+                syncScheduled = true;
+                executorService.schedule(this::syncNow, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing journal: " + e.getMessage());
+        }
+    }
+
+    private void syncNow() {
+        syncScheduled = false;
+        try {
+            if (out != null) {
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error syncing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record layout: u16 length, body, i32 CRC32 of body.
+     * Body: sequence, type, time, quantity, price, crypto ID (modified UTF-8).
+     */
+    private static byte[] encode(long sequence, byte type, String cryptoId, long quantity, long price, long timeMs) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(48);
+            DataOutputStream event = new DataOutputStream(body);
+            event.writeLong(sequence);
+            event.writeByte(type | FLAG_FIXED_POINT);
+            event.writeLong(timeMs);
+            event.writeLong(quantity);
+            event.writeLong(price);
+            event.writeUTF(cryptoId != null ? cryptoId : "");
+            byte[] bytes = body.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + 6);
+            DataOutputStream recordOut = new DataOutputStream(record);
+            recordOut.writeShort(bytes.length);
+            recordOut.write(bytes);
+            recordOut.writeInt((int) crc.getValue());
+            return record.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.marketalchemy.app.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The user's virtual portfolios and which one is active.
+ * <p>
+ * Each portfolio keeps its own snapshot, journal and trade ledger. A portfolio
+ * is loaded from disk the first time it is used and then stays in memory, so
+ * switching between portfolios is a reference swap. The default portfolio uses
+ * the storage of the single-portfolio versions.
+ */
+public class PortfolioRegistry {
+
+    private static final String TAG = "PortfolioRegistry";
+    private static final String PREFS_NAME = "PortfolioRegistry";
+    private static final String KEY_PORTFOLIOS = "portfolios";
+    private static final String KEY_ACTIVE = "activePortfolio";
+
+    public static final String DEFAULT_ID = "default";
+
+    // Singleton instance
+    private static PortfolioRegistry instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final Gson gson;
+    private final List<Entry> entries;
+    private final Map<String, VirtualPortfolio> loaded;
+    private final List<ActiveListener> listeners;
+    private String activeId;
+
+    /**
+     * Name and ID of a portfolio
+     */
+    public static class Entry {
+        public String id;
+        public String name;
+        public long createdAt;
+
+        public Entry(String id, String name, long createdAt) {
+            this.id = id;
+            this.name = name;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Notified when another portfolio becomes active
+     */
+    public interface ActiveListener {
+        void onActivePortfolioChanged(VirtualPortfolio portfolio);
+    }
+
+    private PortfolioRegistry(Context context) {
+        this.context = context;
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        gson = new Gson();
+        entries = new ArrayList<>();
+        loaded = new HashMap<>();
+        listeners = new CopyOnWriteArrayList<>();
+
+        String json = prefs.getString(KEY_PORTFOLIOS, "");
+        if (!json.isEmpty()) {
+            try {
+                List<Entry> saved = gson.fromJson(json, new TypeToken<List<Entry>>() {}.getType());
+                if (saved != null) {
+                    entries.addAll(saved);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading portfolio list: " + e.getMessage());
+            }
+        }
+        if (find(DEFAULT_ID) == null) {
+            entries.add(0, new Entry(DEFAULT_ID, "Main", 0));
+        }
+        activeId = prefs.getString(KEY_ACTIVE, DEFAULT_ID);
+        if (find(activeId) == null) {
+            activeId = DEFAULT_ID;
+        }
+    }
+
+    /**
+     * Get singleton instance
+     * @param context Any context, the application context is kept
+     * @return PortfolioRegistry instance
+     */
+    public static synchronized PortfolioRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new PortfolioRegistry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Get every portfolio, default first, then in creation order
+     */
+    public synchronized List<Entry> getPortfolios() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public synchronized String getActiveId() {
+        return activeId;
+    }
+
+    /**
+     * Get the active portfolio, loading it on first use
+     */
+    public synchronized VirtualPortfolio getActive() {
+        return get(activeId);
+    }
+
+    /**
+     * Get a portfolio, loading it on first use
+     * @param portfolioId Portfolio ID
+     * @return Portfolio
+     * @throws IllegalArgumentException if there is no such portfolio
+     */
+    public synchronized VirtualPortfolio get(String portfolioId) {
+        VirtualPortfolio portfolio = loaded.get(portfolioId);
+        if (portfolio == null) {
+            if (find(portfolioId) == null) {
+                throw new IllegalArgumentException("Unknown portfolio " + portfolioId);
+            }
+            portfolio = new VirtualPortfolio(context, portfolioId);
+            loaded.put(portfolioId, portfolio);
+        }
+        return portfolio;
+    }
+
+    /**
+     * Create an empty portfolio with the starting balance
+     * @param name Display name
+     * @return The new portfolio's entry
+     */
+    public synchronized Entry create(String name) {
+        long now = System.currentTimeMillis();
+        String id = Long.toString(now, 36).toLowerCase(Locale.US);
+        while (find(id) != null) {
+            id = Long.toString(++now, 36).toLowerCase(Locale.US);
+        }
+        Entry entry = new Entry(id, name, now);
+        entries.add(entry);
+        save();
+        return entry;
+    }
+
+    /**
+     * Make a portfolio active. Loaded portfolios stay in memory, so switching
+     * back and forth does not touch the disk.
+     * @param portfolioId Portfolio ID
+     */
+    public void setActive(String portfolioId) {
+        VirtualPortfolio portfolio;
+        synchronized (this) {
+            portfolio = get(portfolioId);
+            if (portfolioId.equals(activeId)) {
+                return;
+            }
+            activeId = portfolioId;
+            prefs.edit().putString(KEY_ACTIVE, portfolioId).apply();
+        }
+        for (ActiveListener listener : listeners) {
+            listener.onActivePortfolioChanged(portfolio);
+        }
+    }
+
+    public void addActiveListener(ActiveListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeActiveListener(ActiveListener listener) {
+        listeners.remove(listener);
+    }
+
+    private Entry find(String portfolioId) {
+        for (Entry entry : entries) {
+            if (entry.id.equals(portfolioId)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void save() {
+        prefs.edit().putString(KEY_PORTFOLIOS, gson.toJson(entries)).apply();
+    }
+}
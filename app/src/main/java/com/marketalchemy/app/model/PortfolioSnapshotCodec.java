@@ -0,0 +1,279 @@
+package com.marketalchemy.app.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned binary codec for the portfolio snapshot.
+ * <p>
+ * Layout: magic, version, then the body field by field (journal sequence,
+ * balance, positions, lots, returns) and a CRC32 of the body. Nothing is
+ * reflective: each field is written and read in a fixed order with
+ * DataOutput/DataInput. A snapshot of a typical portfolio is a few hundred bytes
+ * and decodes in microseconds. Files are replaced through a synced temporary
+ * file, and the snapshot being replaced is kept as a backup, so a crash or a
+ * corrupt file still leaves the previous snapshot to load.
+ */
+public final class PortfolioSnapshotCodec {
+
+    private static final int MAGIC = 0x4D415053; // "MAPS"
+    private static final int VERSION = 1;
+
+    private PortfolioSnapshotCodec() {
+    }
+
+    /**
+     * Decoded snapshot. Amounts are fixed-point units.
+     */
+    public static class Snapshot {
+        public long sequence; // Last journal sequence covered
+        public long balance;
+        public String[] positionIds;
+        public long[] positionQuantities;
+        public long[] positionCosts;
+        public long[] positionTimes;
+        public LotBook.Data lots;
+        public ReturnTracker.Data returns;
+    }
+
+    /**
+     * Get the file the previous snapshot is kept in
+     */
+    public static File backupOf(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+
+    /**
+     * Write a snapshot durably, replacing the file; the replaced snapshot
+     * becomes the backup
+     * @throws IOException if the file could not be written
+     */
+    public static void write(File file, Snapshot snapshot) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp)) {
+            DataOutputStream header = new DataOutputStream(fileOut);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOut, crc)));
+            writeBody(out, snapshot);
+            out.flush();
+            header.writeLong(crc.getValue());
+            header.flush();
+            fileOut.getFD().sync();
+        }
+        if (file.exists() && !file.renameTo(backupOf(file))) {
+            tmp.delete();
+            throw new IOException("Could not keep a backup of " + file.getName());
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file.getName());
+        }
+    }
+
+    /**
+     * Read a snapshot
+     * @throws IOException if the file is missing, of another version or corrupt
+     */
+    public static Snapshot read(File file) throws IOException {
+        try (FileInputStream fileIn = new FileInputStream(file)) {
+            DataInputStream header = new DataInputStream(fileIn);
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Not a portfolio snapshot: " + file.getName());
+            }
+            int version = header.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            CRC32 crc = new CRC32();
+            // The expected value is taken before the trailing checksum passes through the CRC
+            DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(fileIn), crc));
+            Snapshot snapshot = readBody(in);
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch: " + file.getName());
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Outcome of {@link #recover}
+     */
+    public static class Recovery {
+        public Snapshot snapshot; // Null if neither file could be read
+        public boolean fromBackup; // The snapshot file was missing or unreadable
+        public int corruptFiles; // Files moved aside by quarantine()
+    }
+
+    /**
+     * Read the snapshot, falling back to its backup. Files that cannot be read
+     * are moved aside with {@link #quarantine}, so they are kept for diagnosis
+     * but neither loaded again nor rotated into the backup by the next write.
+     * @return The newest readable snapshot and where it came from
+     */
+    public static Recovery recover(File file) {
+        Recovery recovery = new Recovery();
+        File backup = backupOf(file);
+        recovery.fromBackup = !file.exists() && backup.exists();
+        if (file.exists()) {
+            try {
+                recovery.snapshot = read(file);
+                return recovery;
+            } catch (IOException e) {
+                quarantine(file);
+                recovery.corruptFiles++;
+                recovery.fromBackup = backup.exists();
+            }
+        }
+        if (backup.exists()) {
+            try {
+                recovery.snapshot = read(backup);
+            } catch (IOException e) {
+                quarantine(backup);
+                recovery.corruptFiles++;
+            }
+        }
+        return recovery;
+    }
+
+    /**
+     * Move an unreadable file to {@code <name>.corrupt}, replacing an older one
+     * @return The file it was moved to, or null if it could not be moved
+     */
+    public static File quarantine(File file) {
+        File corrupt = new File(file.getPath() + ".corrupt");
+        return file.renameTo(corrupt) ? corrupt : null;
+    }
+
+    private static void writeBody(DataOutputStream out, Snapshot snapshot) throws IOException {
+        out.writeLong(snapshot.sequence);
+        out.writeLong(snapshot.balance);
+
+        int positions = snapshot.positionIds.length;
+        out.writeInt(positions);
+        for (int i = 0; i < positions; i++) {
+            out.writeUTF(snapshot.positionIds[i]);
+            out.writeLong(snapshot.positionQuantities[i]);
+            out.writeLong(snapshot.positionCosts[i]);
+            out.writeLong(snapshot.positionTimes[i]);
+        }
+
+        LotBook.Data lots = snapshot.lots;
+        out.writeInt(lots.method);
+        out.writeLong(lots.realized);
+        int queues = lots.queues != null ? lots.queues.size() : 0;
+        out.writeInt(queues);
+        for (int q = 0; q < queues; q++) {
+            LotBook.QueueData queue = lots.queues.get(q);
+            out.writeUTF(queue.cryptoId);
+            out.writeLong(queue.realized);
+            out.writeLong(queue.totalQuantity);
+            out.writeLong(queue.totalCost);
+            int count = queue.quantities != null ? queue.quantities.length : 0;
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(queue.quantities[i]);
+                out.writeLong(queue.costs[i]);
+                out.writeLong(queue.prices[i]);
+                out.writeLong(queue.times[i]);
+            }
+        }
+
+        ReturnTracker.Data returns = snapshot.returns;
+        out.writeLong(returns.inceptionTime);
+        out.writeDouble(returns.linkedGrowth);
+        out.writeLong(returns.periodStartValue);
+        out.writeLong(returns.netContributions);
+        out.writeDouble(returns.lastRate);
+        int flows = returns.flowTimes != null ? returns.flowTimes.length : 0;
+        out.writeInt(flows);
+        for (int i = 0; i < flows; i++) {
+            out.writeLong(returns.flowTimes[i]);
+            out.writeLong(returns.flowAmounts[i]);
+        }
+    }
+
+    private static Snapshot readBody(DataInputStream in) throws IOException {
+        Snapshot snapshot = new Snapshot();
+        snapshot.sequence = in.readLong();
+        snapshot.balance = in.readLong();
+
+        int positions = readCount(in);
+        snapshot.positionIds = new String[positions];
+        snapshot.positionQuantities = new long[positions];
+        snapshot.positionCosts = new long[positions];
+        snapshot.positionTimes = new long[positions];
+        for (int i = 0; i < positions; i++) {
+            snapshot.positionIds[i] = in.readUTF();
+            snapshot.positionQuantities[i] = in.readLong();
+            snapshot.positionCosts[i] = in.readLong();
+            snapshot.positionTimes[i] = in.readLong();
+        }
+
+        LotBook.Data lots = new LotBook.Data();
+        lots.method = in.readInt();
+        lots.realized = in.readLong();
+        int queues = readCount(in);
+        lots.queues = new ArrayList<>(queues);
+        for (int q = 0; q < queues; q++) {
+            LotBook.QueueData queue = new LotBook.QueueData();
+            queue.cryptoId = in.readUTF();
+            queue.realized = in.readLong();
+            queue.totalQuantity = in.readLong();
+            queue.totalCost = in.readLong();
+            int count = readCount(in);
+            queue.quantities = new long[count];
+            queue.costs = new long[count];
+            queue.prices = new long[count];
+            queue.times = new long[count];
+            for (int i = 0; i < count; i++) {
+                queue.quantities[i] = in.readLong();
+                queue.costs[i] = in.readLong();
+                queue.prices[i] = in.readLong();
+                queue.times[i] = in.readLong();
+            }
+            lots.queues.add(queue);
+        }
+        snapshot.lots = lots;
+
+        ReturnTracker.Data returns = new ReturnTracker.Data();
+        returns.inceptionTime = in.readLong();
+        returns.linkedGrowth = in.readDouble();
+        returns.periodStartValue = in.readLong();
+        returns.netContributions = in.readLong();
+        returns.lastRate = in.readDouble();
+        int flows = readCount(in);
+        returns.flowTimes = new long[flows];
+        returns.flowAmounts = new long[flows];
+        for (int i = 0; i < flows; i++) {
+            returns.flowTimes[i] = in.readLong();
+            returns.flowAmounts[i] = in.readLong();
+        }
+        snapshot.returns = returns;
+        return snapshot;
+    }
+
+    /**
+     * Read an element count, rejecting values a corrupt file could use to
+     * allocate huge arrays
+     */
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > 1 << 24) {
+            throw new IOException("Corrupt snapshot count " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,230 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, versioned copy of the portfolio published after each change.
+ * <p>
+ * The writer publishes a new state after every trade or cash flow, and a price
+ * tick publishes a copy with new valuation totals that shares the position
+ * arrays. Readers on any thread get a consistent balance, set of positions and
+ * valuation from one volatile load, without locking and without seeing a
+ * half-applied trade. Amounts are fixed-point units (see {@link FixedPoint}).
+ */
+public final class PortfolioState {
+
+    private final long version;
+    private final PortfolioValuation.Totals totals;
+    private final double linkedGrowth; // Time-weighted growth of closed sub-periods
+    private final long periodStartValue; // At FixedPoint.MONEY_SCALE
+    private final long netContributions; // At FixedPoint.MONEY_SCALE
+    private final long balance; // At FixedPoint.MONEY_SCALE
+    private final long realizedProfitLoss; // At FixedPoint.MONEY_SCALE
+    private final int lotMethod;
+    private final Map<String, Integer> slots;
+    private final String[] ids;
+    private final long[] quantities;    // At FixedPoint.QUANTITY_SCALE
+    private final long[] averagePrices; // At FixedPoint.PRICE_SCALE
+    private final long[] updatedTimes;
+
+    PortfolioState(long version, long balance, PositionBook positions, LotBook lots, ReturnTracker returns,
+                   PortfolioValuation.Totals totals) {
+        this.version = version;
+        this.totals = totals;
+        linkedGrowth = returns.getLinkedGrowth();
+        periodStartValue = returns.getPeriodStartValue();
+        netContributions = returns.getNetContributions();
+        this.balance = balance;
+        realizedProfitLoss = lots.getRealized();
+        lotMethod = lots.getMethod();
+        int size = positions.size();
+        Map<String, Integer> slots = new HashMap<>(size * 2);
+        ids = new String[size];
+        quantities = new long[size];
+        averagePrices = new long[size];
+        updatedTimes = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = positions.getId(i);
+            quantities[i] = positions.getQuantity(i);
+            averagePrices[i] = positions.getAveragePrice(i);
+            updatedTimes[i] = positions.getUpdatedTime(i);
+            slots.put(ids[i], i);
+        }
+        this.slots = Collections.unmodifiableMap(slots);
+    }
+
+    /**
+     * Copy with new valuation totals, sharing the immutable position arrays
+     */
+    private PortfolioState(PortfolioState state, long version, PortfolioValuation.Totals totals) {
+        this.version = version;
+        this.totals = totals;
+        linkedGrowth = state.linkedGrowth;
+        periodStartValue = state.periodStartValue;
+        netContributions = state.netContributions;
+        balance = state.balance;
+        realizedProfitLoss = state.realizedProfitLoss;
+        lotMethod = state.lotMethod;
+        slots = state.slots;
+        ids = state.ids;
+        quantities = state.quantities;
+        averagePrices = state.averagePrices;
+        updatedTimes = state.updatedTimes;
+    }
+
+    /**
+     * Revalue this state with totals from a price tick. The totals are applied only
+     * if they are newer and cover the same holdings; otherwise this state is kept
+     * and the writer's next publication carries them.
+     */
+    PortfolioState withTotals(PortfolioValuation.Totals totals) {
+        if (totals.version <= this.totals.version || totals.tradeVersion != this.totals.tradeVersion) {
+            return this;
+        }
+        return new PortfolioState(this, version + 1, totals);
+    }
+
+    /**
+     * Get the publication number; every change, including a price tick, increases it
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the version of the valuation this state was marked with
+     */
+    public long getPriceVersion() {
+        return totals.version;
+    }
+
+    /**
+     * Get the market value of all positions at FixedPoint.MONEY_SCALE
+     */
+    public long getMarketValueUnits() {
+        return totals.marketValue;
+    }
+
+    public double getMarketValue() {
+        return FixedPoint.toDouble(totals.marketValue, FixedPoint.MONEY_SCALE);
+    }
+
+    /**
+     * Get balance plus market value at FixedPoint.MONEY_SCALE
+     */
+    public long getTotalValueUnits() {
+        return FixedPoint.add(balance, totals.marketValue);
+    }
+
+    public double getTotalValue() {
+        return FixedPoint.toDouble(getTotalValueUnits(), FixedPoint.MONEY_SCALE);
+    }
+
+    public long getUnrealizedProfitLossUnits() {
+        return FixedPoint.subtract(totals.marketValue, totals.costBasis);
+    }
+
+    public double getUnrealizedProfitLoss() {
+        return FixedPoint.toDouble(getUnrealizedProfitLossUnits(), FixedPoint.MONEY_SCALE);
+    }
+
+    /**
+     * Get the cumulative time-weighted return at this state's value, e.g. 0.05 for 5%
+     */
+    public double getTimeWeightedReturn() {
+        return ReturnTracker.timeWeightedReturn(linkedGrowth, periodStartValue, getTotalValueUnits());
+    }
+
+    /**
+     * Get the starting value plus deposits less withdrawals at FixedPoint.MONEY_SCALE
+     */
+    public long getNetContributionsUnits() {
+        return netContributions;
+    }
+
+    public double getNetContributions() {
+        return FixedPoint.toDouble(netContributions, FixedPoint.MONEY_SCALE);
+    }
+
+    public long getBalanceUnits() {
+        return balance;
+    }
+
+    public double getBalance() {
+        return FixedPoint.toDouble(balance, FixedPoint.MONEY_SCALE);
+    }
+
+    public long getRealizedProfitLossUnits() {
+        return realizedProfitLoss;
+    }
+
+    public double getRealizedProfitLoss() {
+        return FixedPoint.toDouble(realizedProfitLoss, FixedPoint.MONEY_SCALE);
+    }
+
+    /**
+     * Get the tax-lot relief method, one of the LotBook.METHOD_ constants
+     */
+    public int getLotMethod() {
+        return lotMethod;
+    }
+
+    public int getPositionCount() {
+        return ids.length;
+    }
+
+    public boolean contains(String cryptoId) {
+        return slots.containsKey(cryptoId);
+    }
+
+    /**
+     * Get the quantity held at FixedPoint.QUANTITY_SCALE, or 0 if there is no position
+     */
+    public long getQuantityUnits(String cryptoId) {
+        Integer slot = slots.get(cryptoId);
+        return slot != null ? quantities[slot] : 0;
+    }
+
+    public double getQuantity(String cryptoId) {
+        return FixedPoint.toDouble(getQuantityUnits(cryptoId), FixedPoint.QUANTITY_SCALE);
+    }
+
+    /**
+     * Build a detached Investment for a position
+     * @return Investment, or null if there is no position
+     */
+    public Investment getInvestment(String cryptoId) {
+        Integer slot = slots.get(cryptoId);
+        return slot != null ? toInvestment(slot) : null;
+    }
+
+    /**
+     * Build detached Investments for every position
+     */
+    public List<Investment> getInvestments() {
+        List<Investment> investments = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            investments.add(toInvestment(i));
+        }
+        return investments;
+    }
+
+    /**
+     * Get the IDs of every position
+     */
+    public List<String> getIds() {
+        return Collections.unmodifiableList(Arrays.asList(ids));
+    }
+
+    private Investment toInvestment(int slot) {
+        return new Investment(ids[slot], quantities[slot], averagePrices[slot], new Date(updatedTimes[slot]));
+    }
+}
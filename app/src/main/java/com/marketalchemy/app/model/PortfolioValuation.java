@@ -0,0 +1,215 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.api.PriceSubscriptions;
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running mark-to-market totals for the open positions.
+ * <p>
+ * Market value and cost basis are kept as fixed-point totals and adjusted in
+ * O(1): a price tick moves the total by price change times quantity, a trade by
+ * the change in its quantity and cost. Every change publishes immutable
+ * {@link Totals}, so reading the portfolio value is one volatile load with no
+ * locks and no price lookups. Each open position holds a subscription to its
+ * instrument's marks for as long as it is open.
+ */
+public class PortfolioValuation implements PriceSubscriptions.MarkListener {
+
+    /**
+     * Holdings and mark of one exchange symbol
+     */
+    private static class Mark {
+        final String cryptoId;
+        long quantity; // At FixedPoint.QUANTITY_SCALE
+        long cost;     // At FixedPoint.MONEY_SCALE
+        long price;    // At FixedPoint.PRICE_SCALE
+        long value;    // quantity * price at FixedPoint.MONEY_SCALE
+        boolean live;  // Price came from a tick rather than a trade or the snapshot
+
+        Mark(String cryptoId) {
+            this.cryptoId = cryptoId;
+        }
+    }
+
+    /**
+     * Immutable valuation totals, replaced on every change
+     */
+    public static final class Totals {
+        public final long version;      // Increases on every change
+        public final long tradeVersion; // Increases on every change in holdings
+        public final long marketValue;  // At FixedPoint.MONEY_SCALE
+        public final long costBasis;    // At FixedPoint.MONEY_SCALE
+
+        Totals(long version, long tradeVersion, long marketValue, long costBasis) {
+            this.version = version;
+            this.tradeVersion = tradeVersion;
+            this.marketValue = marketValue;
+            this.costBasis = costBasis;
+        }
+    }
+
+    /**
+     * Notified after a price tick moves the totals
+     */
+    public interface TotalsListener {
+        void onTotalsChanged(Totals totals);
+    }
+
+    private final PriceSubscriptions subscriptions;
+    private final Map<String, Mark> marks; // By exchange symbol
+    private long marketValue;
+    private long costBasis;
+    private volatile Totals totals;
+    private volatile TotalsListener listener;
+
+    /**
+     * @param subscriptions Source of marks for open positions, or null if the caller
+     *                      delivers marks itself
+     */
+    public PortfolioValuation(PriceSubscriptions subscriptions) {
+        this.subscriptions = subscriptions;
+        marks = new HashMap<>();
+        totals = new Totals(0, 0, 0, 0);
+    }
+
+    /**
+     * Set the listener for price-driven changes; trades are not reported since
+     * the caller applying them publishes its own state
+     */
+    public void setTotalsListener(TotalsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Apply a change in holdings
+     * @param exchangeSymbol Exchange symbol the position is priced by
+     * @param cryptoId Crypto ID of the position
+     * @param quantityDelta Change in quantity at FixedPoint.QUANTITY_SCALE
+     * @param costDelta Change in cost basis at FixedPoint.MONEY_SCALE
+     * @param price Trade price at FixedPoint.PRICE_SCALE; marks the position until the next tick
+     */
+    public synchronized void onTrade(String exchangeSymbol, String cryptoId, long quantityDelta, long costDelta,
+                                     long price) {
+        Mark mark = marks.get(exchangeSymbol);
+        if (mark == null) {
+            mark = new Mark(cryptoId);
+            marks.put(exchangeSymbol, mark);
+            if (subscriptions != null) {
+                subscriptions.subscribe(cryptoId, exchangeSymbol, this);
+            }
+        }
+        mark.quantity = FixedPoint.add(mark.quantity, quantityDelta);
+        mark.cost = FixedPoint.add(mark.cost, costDelta);
+        costBasis = FixedPoint.add(costBasis, costDelta);
+        if (!mark.live) {
+            mark.price = price;
+        }
+        revalue(mark);
+        if (mark.quantity <= 0) {
+            // Position closed; drop whatever cost rounding left behind
+            costBasis = FixedPoint.subtract(costBasis, mark.cost);
+            marketValue = FixedPoint.subtract(marketValue, mark.value);
+            marks.remove(exchangeSymbol);
+            if (subscriptions != null) {
+                subscriptions.unsubscribe(exchangeSymbol, this);
+            }
+        }
+        publish(true);
+    }
+
+    /**
+     * Re-mark a position on a price tick
+     * @param price Price at FixedPoint.PRICE_SCALE
+     */
+    @Override
+    public synchronized void onMark(String exchangeSymbol, long price) {
+        Mark mark = marks.get(exchangeSymbol);
+        if (mark == null || price <= 0) {
+            return;
+        }
+        mark.price = price;
+        mark.live = true;
+        revalue(mark);
+        publish(false);
+        TotalsListener current = listener;
+        if (current != null) {
+            current.onTotalsChanged(totals);
+        }
+    }
+
+    /**
+     * Get the latest totals without locking
+     */
+    public Totals getTotals() {
+        return totals;
+    }
+
+    /**
+     * Get the market value of all positions at FixedPoint.MONEY_SCALE
+     */
+    public long getMarketValue() {
+        return totals.marketValue;
+    }
+
+    /**
+     * Get the total cost basis at FixedPoint.MONEY_SCALE
+     */
+    public long getCostBasis() {
+        return totals.costBasis;
+    }
+
+    /**
+     * Get market value less cost basis at FixedPoint.MONEY_SCALE
+     */
+    public long getUnrealizedProfitLoss() {
+        Totals current = totals;
+        return FixedPoint.subtract(current.marketValue, current.costBasis);
+    }
+
+    /**
+     * Get the crypto IDs of positions that have not had a price tick yet
+     */
+    public synchronized List<String> getUnpricedIds() {
+        List<String> ids = new ArrayList<>();
+        for (Mark mark : marks.values()) {
+            if (!mark.live) {
+                ids.add(mark.cryptoId);
+            }
+        }
+        return ids;
+    }
+
+    public synchronized void clear() {
+        if (subscriptions != null) {
+            for (String exchangeSymbol : marks.keySet()) {
+                subscriptions.unsubscribe(exchangeSymbol, this);
+            }
+        }
+        marks.clear();
+        marketValue = 0;
+        costBasis = 0;
+        publish(true);
+    }
+
+    private void publish(boolean trade) {
+        Totals previous = totals;
+        totals = new Totals(previous.version + 1, previous.tradeVersion + (trade ? 1 : 0),
+                marketValue, costBasis);
+    }
+
+    /**
+     * Recompute a mark's value and move the total by the difference
+     */
+    private void revalue(Mark mark) {
+        long value = FixedPoint.multiply(mark.quantity, FixedPoint.QUANTITY_SCALE, mark.price,
+                FixedPoint.PRICE_SCALE, FixedPoint.MONEY_SCALE, RoundingMode.HALF_EVEN);
+        marketValue = FixedPoint.add(marketValue, value - mark.value);
+        mark.value = value;
+    }
+}
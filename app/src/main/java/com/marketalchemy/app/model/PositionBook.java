@@ -0,0 +1,224 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Open positions keyed by crypto ID.
+ * <p>
+ * Quantities and cost basis are fixed-point units (see {@link FixedPoint}) kept in
+ * dense parallel primitive arrays; a hash map from ID to slot gives O(1) lookup and
+ * update. Removing a position moves the last slot into the hole, so slots
+ * 0..size()-1 are always filled and valuation is a plain loop.
+ * Not thread-safe; {@link VirtualPortfolio} guards it.
+ */
+public class PositionBook {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> slots;
+    private String[] ids;
+    private long[] quantities; // At FixedPoint.QUANTITY_SCALE
+    private long[] costs;      // Total cost basis at FixedPoint.MONEY_SCALE
+    private long[] updatedTimes;
+    private int size;
+
+    public PositionBook() {
+        slots = new HashMap<>();
+        ids = new String[INITIAL_CAPACITY];
+        quantities = new long[INITIAL_CAPACITY];
+        costs = new long[INITIAL_CAPACITY];
+        updatedTimes = new long[INITIAL_CAPACITY];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the slot of a position
+     * @return Slot index, or -1 if there is no position
+     */
+    public int indexOf(String cryptoId) {
+        Integer slot = slots.get(cryptoId);
+        return slot != null ? slot : -1;
+    }
+
+    public boolean contains(String cryptoId) {
+        return slots.containsKey(cryptoId);
+    }
+
+    public String getId(int slot) {
+        return ids[slot];
+    }
+
+    public long getQuantity(int slot) {
+        return quantities[slot];
+    }
+
+    public long getCost(int slot) {
+        return costs[slot];
+    }
+
+    /**
+     * Get the average purchase price at FixedPoint.PRICE_SCALE
+     */
+    public long getAveragePrice(int slot) {
+        if (quantities[slot] <= 0) {
+            return 0;
+        }
+        return FixedPoint.divide(costs[slot], FixedPoint.MONEY_SCALE, quantities[slot], FixedPoint.QUANTITY_SCALE,
+                FixedPoint.PRICE_SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    public long getUpdatedTime(int slot) {
+        return updatedTimes[slot];
+    }
+
+    /**
+     * Get the quantity held, or 0 if there is no position
+     */
+    public long getQuantity(String cryptoId) {
+        int slot = indexOf(cryptoId);
+        return slot >= 0 ? quantities[slot] : 0;
+    }
+
+    /**
+     * Get the cost basis at FixedPoint.MONEY_SCALE, or 0 if there is no position
+     */
+    public long getCost(String cryptoId) {
+        int slot = indexOf(cryptoId);
+        return slot >= 0 ? costs[slot] : 0;
+    }
+
+    /**
+     * Add to a position, opening it if needed; the cost of the new lot is added
+     * to the cost basis, so the average price is the quantity-weighted average
+     * @param cost Cost of the lot at FixedPoint.MONEY_SCALE
+     */
+    public void add(String cryptoId, long quantity, long cost, long timeMs) {
+        int slot = indexOf(cryptoId);
+        if (slot < 0) {
+            slot = open(cryptoId, timeMs);
+        }
+        quantities[slot] = FixedPoint.add(quantities[slot], quantity);
+        costs[slot] = FixedPoint.add(costs[slot], cost);
+        updatedTimes[slot] = timeMs;
+    }
+
+    /**
+     * Reduce a position; the position is closed when nothing remains
+     * @param cost Cost basis relieved at FixedPoint.MONEY_SCALE, as chosen by the lot method
+     */
+    public void reduce(String cryptoId, long quantity, long cost, long timeMs) {
+        int slot = indexOf(cryptoId);
+        if (slot < 0) {
+            return;
+        }
+        long remaining = quantities[slot] - quantity;
+        if (remaining > 0) {
+            costs[slot] = FixedPoint.subtract(costs[slot], cost);
+            quantities[slot] = remaining;
+            updatedTimes[slot] = timeMs;
+        } else {
+            remove(slot);
+        }
+    }
+
+    /**
+     * Replace a position outright, used when loading a snapshot
+     * @param averagePrice Average purchase price at FixedPoint.PRICE_SCALE
+     */
+    public void set(String cryptoId, long quantity, long averagePrice, long timeMs) {
+        int slot = indexOf(cryptoId);
+        if (slot < 0) {
+            slot = open(cryptoId, timeMs);
+        }
+        quantities[slot] = quantity;
+        costs[slot] = FixedPoint.multiply(quantity, FixedPoint.QUANTITY_SCALE, averagePrice,
+                FixedPoint.PRICE_SCALE, FixedPoint.MONEY_SCALE, RoundingMode.HALF_EVEN);
+        updatedTimes[slot] = timeMs;
+    }
+
+    /**
+     * Restore a position with its exact cost basis, used when loading a snapshot
+     * @param cost Cost basis at FixedPoint.MONEY_SCALE
+     */
+    public void restore(String cryptoId, long quantity, long cost, long timeMs) {
+        int slot = indexOf(cryptoId);
+        if (slot < 0) {
+            slot = open(cryptoId, timeMs);
+        }
+        quantities[slot] = quantity;
+        costs[slot] = cost;
+        updatedTimes[slot] = timeMs;
+    }
+
+    public void clear() {
+        slots.clear();
+        Arrays.fill(ids, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Build a detached Investment for a position
+     * @return Investment, or null if there is no position
+     */
+    public Investment toInvestment(String cryptoId) {
+        int slot = indexOf(cryptoId);
+        return slot >= 0 ? toInvestment(slot) : null;
+    }
+
+    public Investment toInvestment(int slot) {
+        return new Investment(ids[slot], quantities[slot], getAveragePrice(slot), new Date(updatedTimes[slot]));
+    }
+
+    /**
+     * Build detached Investments for every position, in slot order
+     */
+    public List<Investment> toInvestments() {
+        List<Investment> investments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            investments.add(toInvestment(i));
+        }
+        return investments;
+    }
+
+    private int open(String cryptoId, long timeMs) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            updatedTimes = Arrays.copyOf(updatedTimes, capacity);
+        }
+        int slot = size++;
+        ids[slot] = cryptoId;
+        quantities[slot] = 0;
+        costs[slot] = 0;
+        updatedTimes[slot] = timeMs;
+        slots.put(cryptoId, slot);
+        return slot;
+    }
+
+    private void remove(int slot) {
+        slots.remove(ids[slot]);
+        int last = --size;
+        if (slot != last) {
+            // Move the last position into the hole
+            ids[slot] = ids[last];
+            quantities[slot] = quantities[last];
+            costs[slot] = costs[last];
+            updatedTimes[slot] = updatedTimes[last];
+            slots.put(ids[slot], slot);
+        }
+        ids[last] = null;
+    }
+}
@@ -0,0 +1,53 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+/**
+ * Firm price for a cryptocurrency, valid until it expires.
+ * <p>
+ * Orders placed with a quote execute at exactly its price, so the price shown,
+ * charged and recorded are the same.
+ */
+public final class Quote {
+    private final String cryptoId;
+    private final long priceUnits; // Fixed-point at FixedPoint.PRICE_SCALE
+    private final long quotedAtMs;
+    private final long expiresAtMs;
+    
+    /**
+     * @throws IllegalArgumentException if the price is not positive; nothing may trade for free
+     */
+    public Quote(String cryptoId, long priceUnits, long quotedAtMs, long expiresAtMs) {
+        if (priceUnits <= 0) {
+            throw new IllegalArgumentException("Quote price must be positive");
+        }
+        this.cryptoId = cryptoId;
+        this.priceUnits = priceUnits;
+        this.quotedAtMs = quotedAtMs;
+        this.expiresAtMs = expiresAtMs;
+    }
+    
+    public String getCryptoId() {
+        return cryptoId;
+    }
+    
+    public long getPriceUnits() {
+        return priceUnits;
+    }
+    
+    public double getPrice() {
+        return FixedPoint.toDouble(priceUnits, FixedPoint.PRICE_SCALE);
+    }
+    
+    public long getQuotedAt() {
+        return quotedAtMs;
+    }
+    
+    public long getExpiresAt() {
+        return expiresAtMs;
+    }
+    
+    public boolean isExpired(long nowMs) {
+        return nowMs >= expiresAtMs;
+    }
+}
@@ -0,0 +1,276 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import java.util.Arrays;
+
+/**
+ * Time-weighted and money-weighted return with external cash flows kept apart
+ * from trading gains.
+ * <p>
+ * Every deposit or withdrawal closes a sub-period. The growth of closed
+ * sub-periods is chained into one cached factor, so the time-weighted return is
+ * that factor times the growth of the open sub-period: O(1) after any trade or
+ * flow. The money-weighted return is the internal rate of return of the flows;
+ * the solver starts from the previous solution, which after a small change in
+ * value converges in one or two Newton steps. Trades are not flows and never
+ * touch the flow list. Amounts are fixed-point units (see {@link FixedPoint}).
+ */
+public class ReturnTracker {
+
+    private static final long YEAR_MS = 365L * 24 * 60 * 60 * 1000;
+    private static final int MAX_ITERATIONS = 50;
+    private static final double TOLERANCE = 1e-10;
+
+    private long inceptionTime;
+    private double linkedGrowth;  // Product of closed sub-period growth factors
+    private long periodStartValue; // Value just after the last flow at FixedPoint.MONEY_SCALE
+    private long netContributions; // Inception value plus deposits less withdrawals
+    private long[] flowTimes;
+    private long[] flowAmounts; // Inception value first, then flows at FixedPoint.MONEY_SCALE
+    private int flowCount;
+    private double lastRate; // Warm start for the solver, per whole period
+
+    public ReturnTracker() {
+        flowTimes = new long[8];
+        flowAmounts = new long[8];
+        linkedGrowth = 1.0;
+    }
+
+    public synchronized boolean isStarted() {
+        return flowCount > 0;
+    }
+
+    /**
+     * Start tracking from the current value, which counts as the first contribution
+     * @param value Total portfolio value at FixedPoint.MONEY_SCALE
+     */
+    public synchronized void start(long value, long timeMs) {
+        clearFlows();
+        inceptionTime = timeMs;
+        periodStartValue = value;
+        netContributions = value;
+        addFlow(timeMs, value);
+    }
+
+    /**
+     * Record a deposit (positive) or withdrawal (negative)
+     * @param amount Flow at FixedPoint.MONEY_SCALE
+     * @param valueBefore Total portfolio value just before the flow at FixedPoint.MONEY_SCALE
+     */
+    public synchronized void onCashFlow(long amount, long valueBefore, long timeMs) {
+        if (flowCount == 0) {
+            start(valueBefore, timeMs);
+        }
+        if (amount == 0) {
+            return;
+        }
+        // Close the current sub-period; an empty portfolio has no growth to link
+        if (periodStartValue > 0) {
+            linkedGrowth *= (double) valueBefore / periodStartValue;
+        }
+        periodStartValue = FixedPoint.add(valueBefore, amount);
+        netContributions = FixedPoint.add(netContributions, amount);
+        addFlow(timeMs, amount);
+    }
+
+    /**
+     * Get the cumulative time-weighted return, e.g. 0.05 for 5%
+     * @param value Current total portfolio value at FixedPoint.MONEY_SCALE
+     */
+    public synchronized double getTimeWeightedReturn(long value) {
+        return timeWeightedReturn(linkedGrowth, periodStartValue, value);
+    }
+
+    /**
+     * Chain the open sub-period onto the closed ones
+     */
+    static double timeWeightedReturn(double linkedGrowth, long periodStartValue, long value) {
+        if (periodStartValue <= 0) {
+            return linkedGrowth - 1.0;
+        }
+        return linkedGrowth * ((double) value / periodStartValue) - 1.0;
+    }
+
+    /**
+     * Get the money-weighted return (internal rate of return) of the flows. Periods
+     * shorter than a year give the cumulative rate, longer ones the annualized rate.
+     * @param value Current total portfolio value at FixedPoint.MONEY_SCALE
+     * @return Rate, e.g. 0.05 for 5%, or NaN if there is no solution
+     */
+    public synchronized double getMoneyWeightedReturn(long value, long nowMs) {
+        long span = nowMs - inceptionTime;
+        if (flowCount == 0 || span <= 0) {
+            return 0.0;
+        }
+        // Solve per whole period so that short periods stay well conditioned
+        double[] exponents = new double[flowCount];
+        double[] amounts = new double[flowCount];
+        for (int i = 0; i < flowCount; i++) {
+            exponents[i] = (double) (nowMs - flowTimes[i]) / span;
+            amounts[i] = FixedPoint.toDouble(flowAmounts[i], FixedPoint.MONEY_SCALE);
+        }
+        double target = FixedPoint.toDouble(value, FixedPoint.MONEY_SCALE);
+        double rate = solve(exponents, amounts, target, lastRate);
+        if (Double.isNaN(rate)) {
+            return rate;
+        }
+        lastRate = rate;
+        if (span < YEAR_MS) {
+            return rate;
+        }
+        return Math.pow(1.0 + rate, (double) YEAR_MS / span) - 1.0;
+    }
+
+    /**
+     * Get the inception value plus deposits less withdrawals at FixedPoint.MONEY_SCALE
+     */
+    public synchronized long getNetContributions() {
+        return netContributions;
+    }
+
+    /**
+     * Get the chained growth factor of the closed sub-periods
+     */
+    public synchronized double getLinkedGrowth() {
+        return linkedGrowth;
+    }
+
+    /**
+     * Get the value just after the last flow at FixedPoint.MONEY_SCALE
+     */
+    public synchronized long getPeriodStartValue() {
+        return periodStartValue;
+    }
+
+    public synchronized long getInceptionTime() {
+        return inceptionTime;
+    }
+
+    public synchronized Data toData() {
+        Data data = new Data();
+        data.inceptionTime = inceptionTime;
+        data.linkedGrowth = linkedGrowth;
+        data.periodStartValue = periodStartValue;
+        data.netContributions = netContributions;
+        data.flowTimes = Arrays.copyOf(flowTimes, flowCount);
+        data.flowAmounts = Arrays.copyOf(flowAmounts, flowCount);
+        data.lastRate = lastRate;
+        return data;
+    }
+
+    /**
+     * Replace the tracker with snapshot data
+     */
+    public synchronized void load(Data data) {
+        clearFlows();
+        inceptionTime = data.inceptionTime;
+        linkedGrowth = data.linkedGrowth;
+        periodStartValue = data.periodStartValue;
+        netContributions = data.netContributions;
+        lastRate = data.lastRate;
+        int count = data.flowTimes != null ? data.flowTimes.length : 0;
+        for (int i = 0; i < count; i++) {
+            addFlow(data.flowTimes[i], data.flowAmounts[i]);
+        }
+    }
+
+    public synchronized void clear() {
+        clearFlows();
+        inceptionTime = 0;
+        periodStartValue = 0;
+        netContributions = 0;
+    }
+
+    /**
+     * Snapshot of the tracker, for persistence
+     */
+    public static class Data {
+        public long inceptionTime;
+        public double linkedGrowth;
+        public long periodStartValue;
+        public long netContributions;
+        public long[] flowTimes;
+        public long[] flowAmounts;
+        public double lastRate;
+    }
+
+    /**
+     * Find r with sum(amount * (1 + r)^exponent) = target. Newton's method from the
+     * guess, falling back to bisection if it leaves the domain or fails to converge.
+     */
+    private static double solve(double[] exponents, double[] amounts, double target, double guess) {
+        double rate = guess > -1.0 ? guess : 0.0;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            double f = -target;
+            double df = 0;
+            for (int j = 0; j < exponents.length; j++) {
+                double growth = Math.pow(1.0 + rate, exponents[j]);
+                f += amounts[j] * growth;
+                df += amounts[j] * exponents[j] * growth / (1.0 + rate);
+            }
+            if (Math.abs(f) <= TOLERANCE * Math.max(1.0, Math.abs(target))) {
+                return rate;
+            }
+            if (df == 0 || Double.isNaN(df)) {
+                break;
+            }
+            double next = rate - f / df;
+            if (!(next > -1.0) || Double.isInfinite(next)) {
+                break;
+            }
+            rate = next;
+        }
+        return bisect(exponents, amounts, target);
+    }
+
+    private static double bisect(double[] exponents, double[] amounts, double target) {
+        double low = -0.999999;
+        double high = 1.0;
+        double fLow = futureValue(exponents, amounts, low) - target;
+        double fHigh = futureValue(exponents, amounts, high) - target;
+        // Widen the bracket for large gains
+        while (fLow * fHigh > 0 && high < 1e6) {
+            high *= 10;
+            fHigh = futureValue(exponents, amounts, high) - target;
+        }
+        if (fLow * fHigh > 0) {
+            return Double.NaN;
+        }
+        for (int i = 0; i < 200 && high - low > TOLERANCE; i++) {
+            double mid = (low + high) / 2;
+            double fMid = futureValue(exponents, amounts, mid) - target;
+            if (fLow * fMid <= 0) {
+                high = mid;
+            } else {
+                low = mid;
+                fLow = fMid;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    private static double futureValue(double[] exponents, double[] amounts, double rate) {
+        double total = 0;
+        for (int j = 0; j < exponents.length; j++) {
+            total += amounts[j] * Math.pow(1.0 + rate, exponents[j]);
+        }
+        return total;
+    }
+
+    private void addFlow(long timeMs, long amount) {
+        if (flowCount == flowTimes.length) {
+            flowTimes = Arrays.copyOf(flowTimes, flowCount * 2);
+            flowAmounts = Arrays.copyOf(flowAmounts, flowCount * 2);
+        }
+        flowTimes[flowCount] = timeMs;
+        flowAmounts[flowCount] = amount;
+        flowCount++;
+    }
+
+    private void clearFlows() {
+        flowCount = 0;
+        linkedGrowth = 1.0;
+        lastRate = 0.0;
+    }
+}
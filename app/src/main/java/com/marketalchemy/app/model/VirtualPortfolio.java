@@ -3,31 +3,43 @@ package com.marketalchemy.app.model;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 
 import com.marketalchemy.app.api.BybitApiClient;
-import com.marketalchemy.app.api.CoinGeckoApiClient;
+import com.marketalchemy.app.api.InstrumentRegistry;
+import com.marketalchemy.app.api.PriceSubscriptions;
+import com.marketalchemy.app.data.PersistenceCoordinator;
+import com.marketalchemy.app.data.TradeLedger;
+import com.marketalchemy.app.utils.FixedPoint;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
-import org.json.JSONException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Type;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
- * Model class for handling virtual portfolio functionality using Bybit API
+ * Model class for handling virtual portfolio functionality using Bybit API.
+ * <p>
+ * Single writer: every change runs on one sequencer thread, which owns the
+ * balance, the position book and the journal. After each change it publishes an
+ * immutable, versioned {@link PortfolioState}, and price ticks publish a revalued
+ * copy; readers use that and never lock. There is one instance per portfolio
+ * in {@link PortfolioRegistry}, each with its own storage.
  */
 public class VirtualPortfolio {
     
@@ -35,53 +47,196 @@ public class VirtualPortfolio {
     private static final String PREFS_NAME = "VirtualPortfolioPrefs";
     private static final double INITIAL_BALANCE = 10000.0; // $10,000 initial virtual fiat balance
     private static final String KEY_BALANCE = "virtualBalance";
+    private static final String KEY_BALANCE_BITS = "virtualBalanceBits"; // Double bits, read for migration only
+    private static final String KEY_BALANCE_UNITS = "virtualBalanceUnits";
     private static final String KEY_INVESTMENTS = "investments";
-    private static final String KEY_TRANSACTION_HISTORY = "transaction_history";
+    private static final String KEY_LOTS = "lots";
+    private static final String KEY_RETURNS = "returns";
+    private static final String KEY_SNAPSHOT_SEQUENCE = "snapshotSequence";
+    private static final String JOURNAL_FILE = "portfolio.journal";
+    private static final String SNAPSHOT_FILE = "portfolio.snapshot";
+    private static final int SNAPSHOT_INTERVAL = 64; // Journal events between snapshots
+    private static final long QUOTE_TTL_MS = 10000; // Quotes are firm for 10 seconds
     
-    private double balance;
-    private List<Investment> investments;
+    // Owned by the sequencer thread once the constructor returns
+    private long balance; // Fixed-point at FixedPoint.MONEY_SCALE
+    private final PositionBook positions;
+    private final LotBook lots;
+    private final ReturnTracker returns;
+    private final ExecutorService sequencer;
+    private final AtomicReference<PortfolioState> state;
+    private final PortfolioValuation valuation;
+    private final String id;
     private final SharedPreferences prefs;
-    private final Gson gson;
+    private final File snapshotFile;
     private final BybitApiClient bybitClient;
-    private final CoinGeckoApiClient coinGeckoClient;
+    private final PortfolioJournal journal;
+    private final TradeLedger ledger;
+    private int eventsSinceSnapshot;
+    private volatile boolean recoveryFailed;
     
-    public VirtualPortfolio(Context context) {
-        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+    /**
+     * Load a portfolio from its storage; use {@link PortfolioRegistry} to get one
+     * @param context Application context
+     * @param portfolioId Portfolio ID; the default portfolio keeps the original file names
+     */
+    VirtualPortfolio(Context context, String portfolioId) {
+        id = portfolioId;
+        boolean isDefault = PortfolioRegistry.DEFAULT_ID.equals(portfolioId);
+        prefs = context.getSharedPreferences(isDefault ? PREFS_NAME : PREFS_NAME + "_" + portfolioId,
+                Context.MODE_PRIVATE);
+        snapshotFile = new File(context.getFilesDir(),
+                isDefault ? SNAPSHOT_FILE : "portfolio_" + portfolioId + ".snapshot");
         // Initialize API clients
         bybitClient = BybitApiClient.getInstance();
-        coinGeckoClient = CoinGeckoApiClient.getInstance();
         
-        // Load saved balance
-        balance = prefs.getFloat(KEY_BALANCE, (float) INITIAL_BALANCE); // Default $10,000
+        // Load the last snapshot; older versions kept it as JSON in SharedPreferences
+        positions = new PositionBook();
+        lots = new LotBook();
+        returns = new ReturnTracker();
+        valuation = new PortfolioValuation(PriceSubscriptions.getInstance());
+        PortfolioSnapshotCodec.Recovery recovery = PortfolioSnapshotCodec.recover(snapshotFile);
+        long snapshotSequence = recovery.snapshot != null ? loadSnapshot(recovery.snapshot) : -1;
+        if (recovery.snapshot != null && snapshotSequence < 0) {
+            PortfolioSnapshotCodec.quarantine(recovery.fromBackup
+                    ? PortfolioSnapshotCodec.backupOf(snapshotFile) : snapshotFile);
+            recovery.corruptFiles++;
+        }
+        // Recovering: the newest snapshot is missing or unreadable but there was one
+        boolean recovering = recovery.fromBackup || recovery.corruptFiles > 0;
+        // Migrate from the JSON snapshot if there is no file yet, or while it is
+        // still kept because no backup was written since
+        boolean migrated = snapshotSequence < 0;
+        if (migrated) {
+            if (recovering && prefs.getAll().isEmpty()) {
+                // Nothing left to recover from: start over and keep the files for diagnosis
+                Log.e(TAG, "Snapshot of portfolio " + portfolioId + " and its backup are unreadable");
+                recoveryFailed = true;
+            }
+            snapshotSequence = loadLegacySnapshot();
+        }
+        for (int i = 0; i < positions.size(); i++) {
+            // Marked at cost until the first price tick
+            String cryptoId = positions.getId(i);
+            valuation.onTrade(bybitClient.getExchangeSymbol(cryptoId), cryptoId,
+                    positions.getQuantity(i), positions.getCost(i), positions.getAveragePrice(i));
+        }
         
-        // Load saved investments
-        String investmentsJson = prefs.getString(KEY_INVESTMENTS, "");
-        if (investmentsJson.isEmpty()) {
-            investments = new ArrayList<>();
-        } else {
-            try {
-                Type type = new TypeToken<List<Investment>>() {}.getType();
-                investments = gson.fromJson(investmentsJson, type);
-            } catch (Exception e) {
-                Log.e(TAG, "Error loading investments: " + e.getMessage());
-                investments = new ArrayList<>();
+        // Replay trades made since the snapshot; the ledger ignores trades it already has.
+        // Events are only applied while they follow on from the snapshot.
+        ledger = TradeLedger.getInstance(context, isDefault ? null : portfolioId);
+        journal = new PortfolioJournal(new File(context.getFilesDir(),
+                isDefault ? JOURNAL_FILE : "portfolio_" + portfolioId + ".journal"));
+        final long[] expectedSequence = {recoveryFailed ? -1 : snapshotSequence + 1};
+        boolean contiguous = journal.open(snapshotSequence,
+                (sequence, type, cryptoId, quantity, price, timeMs) -> {
+                    recordTrade(sequence, type, cryptoId, quantity, price, timeMs);
+                    if (recovering && sequence != expectedSequence[0]) {
+                        expectedSequence[0] = -1;
+                        return;
+                    }
+                    expectedSequence[0]++;
+                    applyEvent(type, cryptoId, quantity, price, timeMs);
+                    eventsSinceSnapshot++;
+                });
+        if (recovering && !contiguous && !recoveryFailed) {
+            // Keep the older snapshot as it is rather than apply events after a gap
+            Log.e(TAG, "Snapshot of portfolio " + portfolioId
+                    + " is unreadable and the older one cannot be brought up to date");
+            recoveryFailed = true;
+        }
+        
+        if (!returns.isStarted()) {
+            returns.start(totalValueUnits(), System.currentTimeMillis());
+        }
+        if (recovering || migrated) {
+            // Unreadable files were moved aside, so this does not rotate one into the backup
+            if (recovering && !recoveryFailed) {
+                Log.w(TAG, "Recovered portfolio " + portfolioId + " from an older snapshot");
             }
+            saveSnapshot();
         }
+        
+        state = new AtomicReference<>(new PortfolioState(1, balance, positions, lots, returns,
+                valuation.getTotals()));
+        sequencer = Executors.newSingleThreadExecutor();
+        
+        // Republish the state on each tick; open positions subscribe to their marks
+        valuation.setTotalsListener(totals -> state.updateAndGet(current -> current.withTotals(totals)));
+        
+        // Snapshot and sync on lifecycle flushes
+        PersistenceCoordinator.getInstance().register(this::flushStores);
+    }
+    
+    /**
+     * Check whether the last snapshot could not be recovered at startup. The
+     * portfolio then holds the best state left (an older snapshot, or a fresh
+     * start) and the unreadable files are kept as {@code .corrupt}.
+     */
+    public boolean isRecoveryFailed() {
+        return recoveryFailed;
+    }
+    
+    /**
+     * Stop reporting a failed recovery once the user has been told
+     */
+    public void acknowledgeRecoveryFailure() {
+        recoveryFailed = false;
+    }
+    
+    /**
+     * Get the active portfolio
+     * @param context Any context, the application context is kept
+     * @return VirtualPortfolio instance
+     */
+    public static VirtualPortfolio getInstance(Context context) {
+        return PortfolioRegistry.getInstance(context).getActive();
+    }
+    
+    /**
+     * Get a portfolio by ID
+     * @param context Any context, the application context is kept
+     * @param portfolioId Portfolio ID
+     * @return VirtualPortfolio instance
+     */
+    public static VirtualPortfolio getInstance(Context context, String portfolioId) {
+        return PortfolioRegistry.getInstance(context).get(portfolioId);
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * Get this portfolio's trade ledger
+     */
+    public TradeLedger getLedger() {
+        return ledger;
     }
     
     /**
      * Set the initial or add to virtual money balance
      * @param amount Amount to set or add
      * @param isAddition True if adding to balance, false if setting new balance
+     * @return Future completed on the sequencer thread once the new balance is published
      */
-    public void setBalance(double amount, boolean isAddition) {
-        if (isAddition) {
-            balance += amount;
-        } else {
-            balance = amount;
-        }
-        saveBalance();
+    public CompletableFuture<Void> setBalance(double amount, boolean isAddition) {
+        byte type = isAddition ? PortfolioJournal.EVENT_DEPOSIT : PortfolioJournal.EVENT_SET_BALANCE;
+        long units = FixedPoint.of(amount, FixedPoint.MONEY_SCALE);
+        return submit(() -> {
+            long timeMs = System.currentTimeMillis();
+            applyEvent(type, null, 0, units, timeMs);
+            record(type, null, 0, units, timeMs);
+            return null;
+        });
+    }
+    
+    /**
+     * Get the latest published state
+     * @return Immutable portfolio state; safe to read from any thread
+     */
+    public PortfolioState getState() {
+        return state.get();
     }
     
     /**
@@ -89,56 +244,83 @@ public class VirtualPortfolio {
      * @return Current balance
      */
     public double getBalance() {
-        return balance;
+        return state.get().getBalance();
+    }
+    
+    /**
+     * Get current virtual money balance as fixed-point units at FixedPoint.MONEY_SCALE
+     */
+    public long getBalanceUnits() {
+        return state.get().getBalanceUnits();
+    }
+    
+    /**
+     * Request a firm quote at the current Bybit price
+     * @param cryptoId Cryptocurrency ID (e.g., "BTC")
+     * @return Future completed with a quote valid for QUOTE_TTL_MS, or exceptionally if no price is available
+     */
+    public CompletableFuture<Quote> requestQuote(String cryptoId) {
+        CompletableFuture<Quote> future = new CompletableFuture<>();
+        bybitClient.getCurrentPriceAsync(cryptoId, new BybitApiClient.PriceCallback() {
+            @Override
+            public void onPrice(double price, double change) {
+                long priceUnits = toPriceUnits(cryptoId, price);
+                if (priceUnits <= 0) {
+                    future.completeExceptionally(new IllegalStateException("No price for " + cryptoId));
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                future.complete(new Quote(cryptoId, priceUnits, now, now + QUOTE_TTL_MS));
+            }
+            
+            @Override
+            public void onError(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Buy against a quote on the sequencer thread; never blocks the caller
+     * @param quantity Amount to buy, rounded down to the instrument's quantity step
+     * @return Future completed on the sequencer thread with the result
+     */
+    public CompletableFuture<OrderResult> buy(Quote quote, double quantity) {
+        long quantityUnits = toQuantityUnits(quote.getCryptoId(), quantity);
+        return submit(() -> executeOrder(TradeLedger.SIDE_BUY, quote, quantityUnits));
+    }
+    
+    /**
+     * Sell against a quote on the sequencer thread; never blocks the caller
+     * @param quantity Amount to sell, rounded down to the instrument's quantity step
+     * @return Future completed on the sequencer thread with the result
+     */
+    public CompletableFuture<OrderResult> sell(Quote quote, double quantity) {
+        long quantityUnits = toQuantityUnits(quote.getCryptoId(), quantity);
+        return submit(() -> executeOrder(TradeLedger.SIDE_SELL, quote, quantityUnits));
+    }
+    
+    /**
+     * Execute an order for an exact quantity against a quote on the sequencer thread
+     * @param side TradeLedger.SIDE_BUY or SIDE_SELL
+     * @param quantityUnits Quantity at FixedPoint.QUANTITY_SCALE
+     * @return Future completed on the sequencer thread with the result
+     */
+    public CompletableFuture<OrderResult> submitOrder(String side, Quote quote, long quantityUnits) {
+        return submit(() -> executeOrder(side, quote, quantityUnits));
     }
     
     /**
-     * Buy a cryptocurrency with virtual money using Bybit API
-     * @param cryptoId Cryptocurrency ID (e.g., "BTCUSDT")
+     * Buy a cryptocurrency at the current price, waiting for the result.
+     * Fetches the price, so call off the main thread.
+     * @param cryptoId Cryptocurrency ID (e.g., "BTC")
      * @param quantity Amount to buy
      * @return True if purchase successful, false if insufficient funds
      */
     public boolean buyCrypto(String cryptoId, double quantity) {
         try {
-            // Get current price from Bybit
-            double currentPrice = bybitClient.getCurrentPrice(cryptoId);
-            
-            double cost = quantity * currentPrice;
-            
-            // Check if user has enough funds
-            if (cost > balance) {
-                return false;
-            }
-            
-            // Deduct the cost from balance
-            balance -= cost;
-            saveBalance();
-            
-            // Check if user already has this crypto
-            Investment existingInvestment = getInvestment(cryptoId);
-            if (existingInvestment != null) {
-                // Calculate new average purchase price
-                double oldValue = existingInvestment.getQuantity() * existingInvestment.getPurchasePrice();
-                double newValue = quantity * currentPrice;
-                double totalQuantity = existingInvestment.getQuantity() + quantity;
-                double newAveragePrice = (oldValue + newValue) / totalQuantity;
-                
-                // Update existing investment
-                existingInvestment.setQuantity(totalQuantity);
-                existingInvestment.setPurchasePrice(newAveragePrice);
-            } else {
-                // Create new investment
-                Investment newInvestment = new Investment(cryptoId, quantity, currentPrice, new Date());
-                investments.add(newInvestment);
-            }
-            
-            // Save investments
-            saveInvestments();
-            
-            // Save transaction to history
-            saveTransactionHistory("BUY", cryptoId, quantity, currentPrice);
-            
-            return true;
+            return buy(quoteNow(cryptoId), quantity).get().isFilled();
         } catch (Exception e) {
             Log.e(TAG, "Error buying crypto: " + e.getMessage());
             return false;
@@ -146,45 +328,15 @@ public class VirtualPortfolio {
     }
     
     /**
-     * Sell a cryptocurrency for virtual money using Bybit API
-     * @param cryptoId Cryptocurrency ID (e.g., "BTCUSDT")
+     * Sell a cryptocurrency at the current price, waiting for the result.
+     * Fetches the price, so call off the main thread.
+     * @param cryptoId Cryptocurrency ID (e.g., "BTC")
      * @param quantity Amount to sell
      * @return True if sale successful, false if insufficient holdings
      */
     public boolean sellCrypto(String cryptoId, double quantity) {
         try {
-            // Check if user has this crypto and enough quantity
-            Investment investment = getInvestment(cryptoId);
-            if (investment == null || investment.getQuantity() < quantity) {
-                return false;
-            }
-            
-            // Get current price from Bybit
-            double currentPrice = bybitClient.getCurrentPrice(cryptoId);
-            
-            // Calculate proceeds
-            double proceeds = quantity * currentPrice;
-            
-            // Add proceeds to balance
-            balance += proceeds;
-            saveBalance();
-            
-            // Update investment
-            double remainingQuantity = investment.getQuantity() - quantity;
-            if (remainingQuantity > 0.00000001) { // Keep a small threshold to avoid floating point issues
-                investment.setQuantity(remainingQuantity);
-            } else {
-                // Remove investment if quantity is effectively zero
-                investments.remove(investment);
-            }
-            
-            // Save investments
-            saveInvestments();
-            
-            // Save transaction to history
-            saveTransactionHistory("SELL", cryptoId, quantity, currentPrice);
-            
-            return true;
+            return sell(quoteNow(cryptoId), quantity).get().isFilled();
         } catch (Exception e) {
             Log.e(TAG, "Error selling crypto: " + e.getMessage());
             return false;
@@ -196,9 +348,7 @@ public class VirtualPortfolio {
      * @return Total portfolio value
      */
     public double getTotalPortfolioValue() {
-        // This could be called from the main thread
-        // Use cached investment values to avoid network operations
-        return balance + getInvestmentsValueCached();
+        return state.get().getTotalValue();
     }
     
     /**
@@ -207,7 +357,7 @@ public class VirtualPortfolio {
      */
     public void getTotalPortfolioValueAsync(PortfolioValueCallback callback) {
         getInvestmentsValueAsync(investmentValue -> {
-            double total = balance + investmentValue;
+            double total = getBalance() + investmentValue;
             callback.onValueCalculated(total);
         });
     }
@@ -220,22 +370,11 @@ public class VirtualPortfolio {
     }
     
     /**
-     * Get total value of all crypto investments
+     * Get total value of all crypto investments at the latest prices
      * @return Total value of all crypto investments
      */
     public double getInvestmentsValue() {
-        // This should not be called from the main thread
-        if (Looper.myLooper() == Looper.getMainLooper()) {
-            Log.w("VirtualPortfolio", "getInvestmentsValue called on main thread, returning cached value");
-            return getInvestmentsValueCached();
-        }
-        
-        double total = 0.0;
-        for (Investment investment : investments) {
-            double currentPrice = bybitClient.getCurrentPrice(investment.getCryptoId());
-            total += investment.getQuantity() * currentPrice;
-        }
-        return total;
+        return state.get().getMarketValue();
     }
     
     /**
@@ -243,75 +382,42 @@ public class VirtualPortfolio {
      * @return Total cached value
      */
     public double getInvestmentsValueCached() {
-        double total = 0.0;
-        BybitApiClient apiClient = BybitApiClient.getInstance();
-        
-        for (Investment investment : investments) {
-            // Try to get cached price first
-            String coinId = investment.getCryptoId();
-            Double cachedPrice = apiClient.getCachedPrice(coinId);
-            double price = (cachedPrice != null) ? cachedPrice : 0.0;
-            
-            total += investment.getQuantity() * price;
-        }
-        return total;
+        return getInvestmentsValue();
     }
     
     /**
-     * Get total value of all investments asynchronously
-     * @param callback Callback to receive result
+     * Get total value of all investments asynchronously, first fetching prices
+     * for positions that have not been priced since they were loaded
+     * @param callback Callback to receive result on the main thread
      */
     public void getInvestmentsValueAsync(InvestmentValueCallback callback) {
-        // If no investments, return 0 immediately
-        if (investments.isEmpty()) {
-            callback.onValueCalculated(0.0);
+        List<String> unpriced = valuation.getUnpricedIds();
+        if (unpriced.isEmpty()) {
+            callback.onValueCalculated(getInvestmentsValue());
             return;
         }
         
-        BybitApiClient apiClient = BybitApiClient.getInstance();
-        AtomicInteger pendingRequests = new AtomicInteger(investments.size());
-        AtomicReference<Double> totalValue = new AtomicReference<>(0.0);
-        
-        for (Investment investment : investments) {
-            String coinId = investment.getCryptoId();
-            final double quantity = investment.getQuantity();
-            
-            // Try to get cached price first
-            Double cachedPrice = apiClient.getCachedPrice(coinId);
-            if (cachedPrice != null) {
-                // Use cached price
-                double investmentValue = quantity * cachedPrice;
-                totalValue.updateAndGet(currentTotal -> currentTotal + investmentValue);
-                
-                // Decrease pending count
-                if (pendingRequests.decrementAndGet() == 0) {
-                    callback.onValueCalculated(totalValue.get());
-                }
-            } else {
-                // Fetch price asynchronously
-                apiClient.getCurrentPriceAsync(coinId, new BybitApiClient.PriceCallback() {
-                    @Override
-                    public void onPrice(double price, double change) {
-                        double investmentValue = quantity * price;
-                        totalValue.updateAndGet(currentTotal -> currentTotal + investmentValue);
-                        
-                        // If all requests are complete, call the callback
-                        if (pendingRequests.decrementAndGet() == 0) {
-                            callback.onValueCalculated(totalValue.get());
-                        }
+        // Each fetched price reaches the valuation as a tick
+        AtomicInteger pendingRequests = new AtomicInteger(unpriced.size());
+        for (String coinId : unpriced) {
+            bybitClient.getCurrentPriceAsync(coinId, new BybitApiClient.PriceCallback() {
+                @Override
+                public void onPrice(double price, double change) {
+                    if (pendingRequests.decrementAndGet() == 0) {
+                        callback.onValueCalculated(getInvestmentsValue());
                     }
+                }
+                
+                @Override
+                public void onError(Exception e) {
+                    Log.e(TAG, "Error getting price for " + coinId + ": " + e.getMessage());
                     
-                    @Override
-                    public void onError(Exception e) {
-                        Log.e("VirtualPortfolio", "Error getting price for " + coinId + ": " + e.getMessage());
-                        
-                        // Even on error, we need to count this as complete
-                        if (pendingRequests.decrementAndGet() == 0) {
-                            callback.onValueCalculated(totalValue.get());
-                        }
+                    // Even on error, we need to count this as complete
+                    if (pendingRequests.decrementAndGet() == 0) {
+                        callback.onValueCalculated(getInvestmentsValue());
                     }
-                });
-            }
+                }
+            });
         }
     }
     
@@ -323,24 +429,112 @@ public class VirtualPortfolio {
     }
     
     /**
-     * Get the total profit/loss of all investments
+     * Get the total profit/loss, realized plus unrealized
      * @return Total profit/loss
      */
     public double getTotalProfitLoss() {
-        double totalProfitLoss = 0.0;
-        
-        try {
+        return getRealizedProfitLoss() + getUnrealizedProfitLoss();
+    }
+    
+    /**
+     * Get the lifetime profit/loss booked by sales
+     * @return Realized profit/loss
+     */
+    public double getRealizedProfitLoss() {
+        return state.get().getRealizedProfitLoss();
+    }
+    
+    /**
+     * Get the profit/loss of open positions at the latest prices
+     * @return Unrealized profit/loss
+     */
+    public double getUnrealizedProfitLoss() {
+        return state.get().getUnrealizedProfitLoss();
+    }
+    
+    /**
+     * Get the cumulative time-weighted return since tracking started, which
+     * excludes the effect of deposits and withdrawals
+     * @return Return, e.g. 0.05 for 5%
+     */
+    public double getTimeWeightedReturn() {
+        return state.get().getTimeWeightedReturn();
+    }
+    
+    /**
+     * Get the money-weighted return (IRR), cumulative for the first year and
+     * annualized after that
+     * @return Return, e.g. 0.05 for 5%, or NaN if the flows have no solution
+     */
+    public double getMoneyWeightedReturn() {
+        return returns.getMoneyWeightedReturn(state.get().getTotalValueUnits(), System.currentTimeMillis());
+    }
+    
+    /**
+     * Get the starting value plus deposits less withdrawals
+     * @return Net contributions
+     */
+    public double getNetContributions() {
+        return state.get().getNetContributions();
+    }
+    
+    /**
+     * Get the total value less net contributions
+     * @return Profit/loss from trading
+     */
+    public double getContributionProfitLoss() {
+        PortfolioState current = state.get();
+        long profit = FixedPoint.subtract(current.getTotalValueUnits(), current.getNetContributionsUnits());
+        return FixedPoint.toDouble(profit, FixedPoint.MONEY_SCALE);
+    }
+    
+    /**
+     * Replace every position, e.g. from an import. Each position becomes a single
+     * lot at its average price; the balance and realized profit/loss are kept.
+     * The result is snapshotted at once so the journal does not replay over it.
+     * @param investments New positions
+     * @return Future completed once the positions are applied
+     */
+    public CompletableFuture<Void> replacePositions(List<Investment> investments) {
+        return submit(() -> {
+            long realized = lots.getRealized();
+            int method = lots.getMethod();
+            valuation.clear();
+            positions.clear();
+            lots.clear();
+            lots.setMethod(method);
+            lots.setRealized(realized);
             for (Investment investment : investments) {
                 String cryptoId = investment.getCryptoId();
-                double currentPrice = bybitClient.getCurrentPrice(cryptoId);
-                double profitLoss = investment.getQuantity() * (currentPrice - investment.getPurchasePrice());
-                totalProfitLoss += profitLoss;
+                Date lastUpdated = investment.getLastUpdated();
+                long timeMs = lastUpdated != null ? lastUpdated.getTime() : System.currentTimeMillis();
+                long price = investment.getPurchasePriceUnits();
+                positions.set(cryptoId, investment.getQuantityUnits(), price, timeMs);
+                long quantity = positions.getQuantity(cryptoId);
+                long cost = positions.getCost(cryptoId);
+                lots.addLot(cryptoId, quantity, cost, price, timeMs);
+                valuation.onTrade(bybitClient.getExchangeSymbol(cryptoId), cryptoId, quantity, cost, price);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error calculating profit/loss: " + e.getMessage());
-        }
-        
-        return totalProfitLoss;
+            saveSnapshot();
+            return null;
+        });
+    }
+    
+    /**
+     * Select how sales relieve tax lots; applies to later sales
+     * @param method One of the LotBook.METHOD_ constants
+     */
+    public void setLotMethod(int method) {
+        submit(() -> {
+            lots.setMethod(method);
+            // Snapshot now so replaying earlier sales keeps their method
+            saveSnapshot();
+            return null;
+        });
+    }
+    
+    public int getLotMethod() {
+        return state.get().getLotMethod();
     }
     
     /**
@@ -349,81 +543,401 @@ public class VirtualPortfolio {
      * @return True if the user has the investment, false otherwise
      */
     public boolean hasInvestment(String cryptoId) {
-        return getInvestment(cryptoId) != null;
+        return state.get().contains(cryptoId);
+    }
+    
+    /**
+     * Get quantity held of a specific cryptocurrency
+     * @param cryptoId Cryptocurrency ID (e.g., "bitcoin")
+     * @return Quantity, or 0 if not held
+     */
+    public double getQuantity(String cryptoId) {
+        return state.get().getQuantity(cryptoId);
     }
     
     /**
      * Get all crypto investments
-     * @return List of all investments
+     * @return Copies of all investments; changing them does not affect the portfolio
      */
     public List<Investment> getInvestments() {
-        return investments;
+        return state.get().getInvestments();
     }
     
     /**
      * Get investment for a specific cryptocurrency
      * @param cryptoId Cryptocurrency ID (e.g., "bitcoin")
-     * @return Investment or null if not found
+     * @return Copy of the investment, or null if not found
      */
     public Investment getInvestment(String cryptoId) {
-        for (Investment investment : investments) {
-            if (investment.getCryptoId().equals(cryptoId)) {
-                return investment;
+        return state.get().getInvestment(cryptoId);
+    }
+    
+    /**
+     * Run a change on the sequencer thread and publish the new state
+     * @return Future completed on the sequencer thread with the change's result
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> change) {
+        return CompletableFuture.supplyAsync(() -> {
+            T result = change.get();
+            publishState();
+            return result;
+        }, sequencer);
+    }
+    
+    /**
+     * Publish the writer's state with the latest valuation. Runs on the sequencer thread;
+     * the update function may rerun if a price tick publishes at the same time.
+     */
+    private void publishState() {
+        state.updateAndGet(current -> new PortfolioState(current.getVersion() + 1, balance, positions, lots,
+                returns, valuation.getTotals()));
+    }
+    
+    /**
+     * Execute an order against a quote. Runs on the sequencer thread.
+     */
+    private OrderResult executeOrder(String side, Quote quote, long quantity) {
+        String cryptoId = quote.getCryptoId();
+        long price = quote.getPriceUnits();
+        long timeMs = System.currentTimeMillis();
+        boolean isBuy = TradeLedger.SIDE_BUY.equals(side);
+        OrderResult.Status status;
+        long total = 0;
+        if (quantity <= 0 || !fitsInRange(cryptoId, quantity, price, isBuy)) {
+            status = OrderResult.Status.INVALID_QUANTITY;
+        } else if (quote.isExpired(timeMs)) {
+            status = OrderResult.Status.QUOTE_EXPIRED;
+        } else if (isBuy) {
+            total = buyCost(quantity, price);
+            // Check if user has enough funds
+            status = total <= balance ? OrderResult.Status.FILLED : OrderResult.Status.INSUFFICIENT_FUNDS;
+        } else {
+            total = sellProceeds(quantity, price);
+            // Check if user has enough of this crypto
+            status = positions.getQuantity(cryptoId) >= quantity
+                    ? OrderResult.Status.FILLED : OrderResult.Status.INSUFFICIENT_HOLDINGS;
+        }
+        
+        if (status == OrderResult.Status.FILLED) {
+            byte type = isBuy ? PortfolioJournal.EVENT_BUY : PortfolioJournal.EVENT_SELL;
+            applyEvent(type, cryptoId, quantity, price, timeMs);
+            record(type, cryptoId, quantity, price, timeMs);
+        } else {
+            total = 0;
+        }
+        return new OrderResult(status, side, cryptoId, quantity, price, total, timeMs);
+    }
+    
+    /**
+     * Check that an order and the position it leaves can be valued without
+     * overflowing, e.g. a huge quantity of a coin priced in fractions of a cent
+     */
+    private boolean fitsInRange(String cryptoId, long quantity, long price, boolean isBuy) {
+        try {
+            long resulting = isBuy ? Math.addExact(positions.getQuantity(cryptoId), quantity) : quantity;
+            buyCost(resulting, price);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Quote the current price synchronously, for the blocking order methods
+     */
+    private Quote quoteNow(String cryptoId) {
+        long priceUnits = toPriceUnits(cryptoId, bybitClient.getCurrentPrice(cryptoId));
+        if (priceUnits <= 0) {
+            throw new IllegalStateException("No price for " + cryptoId);
+        }
+        long now = System.currentTimeMillis();
+        return new Quote(cryptoId, priceUnits, now, now + QUOTE_TTL_MS);
+    }
+    
+    /**
+     * Apply a journal event to the in-memory state
+     */
+    private void applyEvent(byte type, String cryptoId, long quantity, long price, long timeMs) {
+        switch (type) {
+            case PortfolioJournal.EVENT_BUY: {
+                long cost = buyCost(quantity, price);
+                balance = FixedPoint.subtract(balance, cost);
+                positions.add(cryptoId, quantity, cost, timeMs);
+                lots.addLot(cryptoId, quantity, cost, price, timeMs);
+                valuation.onTrade(bybitClient.getExchangeSymbol(cryptoId), cryptoId, quantity, cost, price);
+                break;
             }
+            case PortfolioJournal.EVENT_SELL: {
+                long quantityBefore = positions.getQuantity(cryptoId);
+                long costBefore = positions.getCost(cryptoId);
+                long proceeds = sellProceeds(quantity, price);
+                balance = FixedPoint.add(balance, proceeds);
+                // The lot method decides how much cost basis the sale relieves
+                long relieved = lots.relieve(cryptoId, quantity, proceeds);
+                positions.reduce(cryptoId, quantity, relieved, timeMs);
+                valuation.onTrade(bybitClient.getExchangeSymbol(cryptoId), cryptoId,
+                        positions.getQuantity(cryptoId) - quantityBefore,
+                        positions.getCost(cryptoId) - costBefore, price);
+                break;
+            }
+            case PortfolioJournal.EVENT_DEPOSIT:
+                returns.onCashFlow(price, totalValueUnits(), timeMs);
+                balance = FixedPoint.add(balance, price);
+                break;
+            case PortfolioJournal.EVENT_SET_BALANCE:
+                // Setting the balance is a flow of the difference
+                returns.onCashFlow(FixedPoint.subtract(price, balance), totalValueUnits(), timeMs);
+                balance = price;
+                break;
+            default:
+                Log.w(TAG, "Unknown journal event type " + type);
+        }
+    }
+    
+    /**
+     * Total value at FixedPoint.MONEY_SCALE from the writer's balance. Runs on the sequencer thread.
+     */
+    private long totalValueUnits() {
+        return FixedPoint.add(balance, valuation.getMarketValue());
+    }
+    
+    /**
+     * Append an applied event to the journal, snapshotting every few events
+     */
+    private void record(byte type, String cryptoId, long quantity, long price, long timeMs) {
+        long sequence = journal.append(type, cryptoId, quantity, price, timeMs);
+        recordTrade(sequence, type, cryptoId, quantity, price, timeMs);
+        if (++eventsSinceSnapshot >= SNAPSHOT_INTERVAL) {
+            saveSnapshot();
+        }
+    }
+    
+    /**
+     * Add buy and sell events to the trade ledger
+     */
+    private void recordTrade(long sequence, byte type, String cryptoId, long quantity, long price, long timeMs) {
+        if (type == PortfolioJournal.EVENT_BUY) {
+            ledger.record(sequence, timeMs, TradeLedger.SIDE_BUY, cryptoId, quantity, price, 0);
+        } else if (type == PortfolioJournal.EVENT_SELL) {
+            ledger.record(sequence, timeMs, TradeLedger.SIDE_SELL, cryptoId, quantity, price, 0);
         }
-        return null;
     }
     
     /**
-     * Save transaction to history
-     * @param type Transaction type (BUY/SELL)
-     * @param cryptoId Cryptocurrency ID
-     * @param quantity Quantity
-     * @param price Price
+     * Write the snapshot file and truncate the journal. State is captured now, on
+     * the sequencer thread, and written on the journal thread.
+     */
+    private void saveSnapshot() {
+        eventsSinceSnapshot = 0;
+        final PortfolioSnapshotCodec.Snapshot snapshot = new PortfolioSnapshotCodec.Snapshot();
+        snapshot.sequence = journal.getLastSequence();
+        snapshot.balance = balance;
+        int count = positions.size();
+        snapshot.positionIds = new String[count];
+        snapshot.positionQuantities = new long[count];
+        snapshot.positionCosts = new long[count];
+        snapshot.positionTimes = new long[count];
+        for (int i = 0; i < count; i++) {
+            snapshot.positionIds[i] = positions.getId(i);
+            snapshot.positionQuantities[i] = positions.getQuantity(i);
+            snapshot.positionCosts[i] = positions.getCost(i);
+            snapshot.positionTimes[i] = positions.getUpdatedTime(i);
+        }
+        snapshot.lots = lots.toData();
+        snapshot.returns = returns.toData();
+        journal.compact(() -> {
+            try {
+                PortfolioSnapshotCodec.write(snapshotFile, snapshot);
+            } catch (IOException e) {
+                // Keep the journal, it still holds everything since the last snapshot
+                throw new UncheckedIOException(e);
+            }
+            if (PortfolioSnapshotCodec.backupOf(snapshotFile).exists() && !prefs.getAll().isEmpty()) {
+                // Migrated and a backup exists; the JSON snapshot is no longer needed to recover
+                prefs.edit().clear().commit();
+            }
+        });
+    }
+    
+    /**
+     * Load a decoded snapshot into the books
+     * @return Journal sequence the snapshot covers, or -1 if it is inconsistent
      */
-    public void saveTransactionHistory(String type, String cryptoId, double quantity, double price) {
+    private long loadSnapshot(PortfolioSnapshotCodec.Snapshot snapshot) {
         try {
-            // Format date
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-            String timestamp = sdf.format(new Date());
-            
-            // Get symbol from ID
-            String symbol = coinGeckoClient.getSymbolFromId(cryptoId);
-            
-            // Calculate total value
-            double totalValue = quantity * price;
-            
-            // Format transaction string
-            String transaction = String.format(Locale.US, 
-                "%s %.8f %s @ $%.2f = $%.2f", 
-                type, quantity, symbol, price, totalValue);
-            
-            // Get existing history
-            String history = prefs.getString(KEY_TRANSACTION_HISTORY, "");
-            
-            // Add new transaction at the beginning
-            history = transaction + "\n" + history;
-            
-            // Save updated history
-            prefs.edit().putString(KEY_TRANSACTION_HISTORY, history).apply();
-            
+            balance = snapshot.balance;
+            for (int i = 0; i < snapshot.positionIds.length; i++) {
+                positions.restore(snapshot.positionIds[i], snapshot.positionQuantities[i],
+                        snapshot.positionCosts[i], snapshot.positionTimes[i]);
+            }
+            lots.load(snapshot.lots);
+            returns.load(snapshot.returns);
+            return snapshot.sequence;
         } catch (Exception e) {
-            Log.e(TAG, "Error saving transaction history: " + e.getMessage());
+            Log.e(TAG, "Error loading snapshot: " + e.getMessage());
+            positions.clear();
+            lots.clear();
+            returns.clear();
+            return -1;
         }
     }
     
     /**
-     * Save balance to SharedPreferences
+     * Load the JSON snapshot older versions kept in SharedPreferences. The
+     * constructor writes the snapshot file straight after; the JSON is removed
+     * once a backup of the file exists as well.
+     * @return Journal sequence the snapshot covers
      */
-    private void saveBalance() {
-        prefs.edit().putFloat(KEY_BALANCE, (float) balance).apply();
+    private long loadLegacySnapshot() {
+        if (prefs.contains(KEY_BALANCE_UNITS)) {
+            balance = prefs.getLong(KEY_BALANCE_UNITS, 0);
+        } else if (prefs.contains(KEY_BALANCE_BITS)) {
+            double legacyBalance = Double.longBitsToDouble(prefs.getLong(KEY_BALANCE_BITS, 0));
+            balance = FixedPoint.of(legacyBalance, FixedPoint.MONEY_SCALE);
+        } else {
+            // Older versions stored a float
+            double legacyBalance = prefs.getFloat(KEY_BALANCE, (float) INITIAL_BALANCE); // Default $10,000
+            balance = FixedPoint.of(legacyBalance, FixedPoint.MONEY_SCALE);
+        }
+        
+        Gson gson = new Gson();
+        String investmentsJson = prefs.getString(KEY_INVESTMENTS, "");
+        if (!investmentsJson.isEmpty()) {
+            try {
+                JsonArray array = JsonParser.parseString(investmentsJson).getAsJsonArray();
+                for (JsonElement element : array) {
+                    Investment investment = readInvestment(gson, element.getAsJsonObject());
+                    Date lastUpdated = investment.getLastUpdated();
+                    positions.set(investment.getCryptoId(), investment.getQuantityUnits(),
+                            investment.getPurchasePriceUnits(), lastUpdated != null ? lastUpdated.getTime() : 0);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading investments: " + e.getMessage());
+                positions.clear();
+            }
+        }
+        
+        // Snapshots from older versions get one lot per position
+        String lotsJson = prefs.getString(KEY_LOTS, "");
+        if (!lotsJson.isEmpty()) {
+            try {
+                lots.load(gson.fromJson(lotsJson, LotBook.Data.class));
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading lots: " + e.getMessage());
+                lots.clear();
+            }
+        } else {
+            for (int i = 0; i < positions.size(); i++) {
+                lots.addLot(positions.getId(i), positions.getQuantity(i), positions.getCost(i),
+                        positions.getAveragePrice(i), positions.getUpdatedTime(i));
+            }
+        }
+        
+        // Older snapshots start tracking returns at their first cash flow or now
+        String returnsJson = prefs.getString(KEY_RETURNS, "");
+        if (!returnsJson.isEmpty()) {
+            try {
+                returns.load(gson.fromJson(returnsJson, ReturnTracker.Data.class));
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading returns: " + e.getMessage());
+                returns.clear();
+            }
+        }
+        return prefs.getLong(KEY_SNAPSHOT_SEQUENCE, 0);
+    }
+    
+    /**
+     * Make every applied change durable: snapshot if events are pending, then sync
+     * the journal and the ledger. Runs on the persistence coordinator's thread.
+     */
+    private void flushStores() {
+        try {
+            sequencer.submit(() -> {
+                if (eventsSinceSnapshot > 0) {
+                    saveSnapshot();
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error saving snapshot: " + e.getCause());
+        }
+        journal.sync();
+        ledger.flush();
+    }
+    
+    /**
+     * Cost of a buy at FixedPoint.MONEY_SCALE, rounded up in the house's favour
+     */
+    public static long buyCost(long quantity, long price) {
+        return FixedPoint.multiply(quantity, FixedPoint.QUANTITY_SCALE, price, FixedPoint.PRICE_SCALE,
+                FixedPoint.MONEY_SCALE, RoundingMode.CEILING);
     }
     
     /**
-     * Save investments to SharedPreferences
+     * Proceeds of a sell at FixedPoint.MONEY_SCALE, rounded down in the house's favour
      */
-    private void saveInvestments() {
-        String investmentsJson = gson.toJson(investments);
-        prefs.edit().putString(KEY_INVESTMENTS, investmentsJson).apply();
+    public static long sellProceeds(long quantity, long price) {
+        return FixedPoint.multiply(quantity, FixedPoint.QUANTITY_SCALE, price, FixedPoint.PRICE_SCALE,
+                FixedPoint.MONEY_SCALE, RoundingMode.FLOOR);
+    }
+    
+    /**
+     * Convert a price to units at FixedPoint.PRICE_SCALE, rounded to the instrument's
+     * tick. Every instrument shares the one scale, so a tick finer than
+     * PRICE_SCALE is rounded to PRICE_SCALE.
+     * @return Price units, 0 if the price is not positive, not finite or rounds to
+     * nothing; callers must not quote or trigger on 0
+     */
+    public static long toPriceUnits(String cryptoId, double price) {
+        if (!(price > 0) || Double.isInfinite(price)) {
+            return 0;
+        }
+        InstrumentRegistry.Instrument instrument = InstrumentRegistry.getInstance().find(cryptoId);
+        int scale = instrument != null ? instrument.getPriceScale() : FixedPoint.PRICE_SCALE;
+        scale = Math.min(scale, FixedPoint.PRICE_SCALE);
+        try {
+            long units = FixedPoint.of(price, FixedPoint.PRICE_SCALE);
+            long ticks = FixedPoint.rescale(units, FixedPoint.PRICE_SCALE, scale, RoundingMode.HALF_EVEN);
+            return FixedPoint.rescale(ticks, scale, FixedPoint.PRICE_SCALE, RoundingMode.HALF_EVEN);
+        } catch (ArithmeticException e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Convert an order quantity to units at FixedPoint.QUANTITY_SCALE, first rounding
+     * it down to the instrument's quantity step
+     * @return Quantity units, 0 if the quantity is below one step or out of range
+     */
+    public static long toQuantityUnits(String cryptoId, double quantity) {
+        InstrumentRegistry.Instrument instrument = InstrumentRegistry.getInstance().find(cryptoId);
+        int scale = instrument != null ? instrument.getQuantityScale() : FixedPoint.QUANTITY_SCALE;
+        scale = Math.min(scale, FixedPoint.QUANTITY_SCALE);
+        if (!(quantity > 0) || Double.isInfinite(quantity)
+                || quantity >= (double) Long.MAX_VALUE / FixedPoint.one(FixedPoint.QUANTITY_SCALE)) {
+            return 0;
+        }
+        // Round to the nearest unit first so 0.3 is not truncated as 0.29999...
+        long units = FixedPoint.of(quantity, FixedPoint.QUANTITY_SCALE);
+        long stepped = FixedPoint.rescale(units, FixedPoint.QUANTITY_SCALE, scale, RoundingMode.DOWN);
+        return FixedPoint.rescale(stepped, scale, FixedPoint.QUANTITY_SCALE, RoundingMode.DOWN);
+    }
+    
+    /**
+     * Read a snapshotted investment; snapshots from older versions hold doubles
+     */
+    private static Investment readInvestment(Gson gson, JsonObject json) {
+        Date lastUpdated = json.has("lastUpdated") ? gson.fromJson(json.get("lastUpdated"), Date.class) : null;
+        String cryptoId = json.get("cryptoId").getAsString();
+        if (json.has("quantityUnits")) {
+            return new Investment(cryptoId, json.get("quantityUnits").getAsLong(),
+                    json.get("purchasePriceUnits").getAsLong(), lastUpdated);
+        }
+        return new Investment(cryptoId,
+                FixedPoint.of(json.get("quantity").getAsDouble(), FixedPoint.QUANTITY_SCALE),
+                FixedPoint.of(json.get("purchasePrice").getAsDouble(), FixedPoint.PRICE_SCALE),
+                lastUpdated);
     }
 }
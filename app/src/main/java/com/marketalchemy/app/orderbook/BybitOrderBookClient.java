@@ -0,0 +1,267 @@
+package com.marketalchemy.app.orderbook;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Client for Bybit public orderbook streams (orderbook.50 / orderbook.200).
+ * Applies snapshot and delta messages to an {@link OrderBook} per symbol and
+ * re-subscribes for a fresh snapshot whenever an update id gap is detected.
+ */
+public class BybitOrderBookClient {
+
+    private static final String TAG = "BybitOrderBookClient";
+    private static final String WS_URL = "wss://stream.bybit.com/v5/public/spot";
+    private static final long PING_INTERVAL_SECONDS = 20; // Bybit drops idle connections
+    private static final long RECONNECT_DELAY_SECONDS = 5;
+
+    private final OkHttpClient client;
+    private final ScheduledExecutorService scheduler;
+
+    // Topic (e.g. orderbook.50.BTCUSDT) -> book
+    private final Map<String, OrderBook> books;
+
+    private volatile WebSocket webSocket;
+    private ScheduledFuture<?> pingTask;
+    private OrderBookListener listener;
+    private boolean connected;
+
+    public interface OrderBookListener {
+        /**
+         * Called on the socket thread after a snapshot or delta was applied
+         */
+        void onOrderBookUpdate(OrderBook book);
+    }
+
+    public BybitOrderBookClient() {
+        client = new OkHttpClient.Builder()
+            .readTimeout(0, TimeUnit.MILLISECONDS)
+            .build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        books = new ConcurrentHashMap<>();
+    }
+
+    public void setOrderBookListener(OrderBookListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Subscribe to an order book stream
+     * @param symbol Trading pair symbol (e.g., BTCUSDT)
+     * @param depth 50 or 200
+     * @return Book that will be kept up to date
+     */
+    public synchronized OrderBook subscribe(String symbol, int depth) {
+        if (depth != 50 && depth != 200) {
+            throw new IllegalArgumentException("Unsupported order book depth: " + depth);
+        }
+        String topic = topic(symbol, depth);
+        OrderBook book = books.get(topic);
+        if (book == null) {
+            book = new OrderBook(symbol.toUpperCase(), depth);
+            books.put(topic, book);
+        }
+        if (webSocket == null) {
+            connect();
+        } else if (connected) {
+            send("subscribe", topic);
+        }
+        return book;
+    }
+
+    /**
+     * Unsubscribe from an order book stream
+     */
+    public synchronized void unsubscribe(String symbol, int depth) {
+        String topic = topic(symbol, depth);
+        if (books.remove(topic) != null && connected) {
+            send("unsubscribe", topic);
+        }
+    }
+
+    /**
+     * Get the book for a subscribed stream, or null
+     */
+    public OrderBook getOrderBook(String symbol, int depth) {
+        return books.get(topic(symbol, depth));
+    }
+
+    public synchronized void disconnect() {
+        books.clear();
+        if (pingTask != null) {
+            pingTask.cancel(false);
+            pingTask = null;
+        }
+        if (webSocket != null) {
+            webSocket.close(1000, "User requested disconnect");
+            webSocket = null;
+        }
+        connected = false;
+    }
+
+    private synchronized void connect() {
+        Request request = new Request.Builder()
+            .url(WS_URL)
+            .build();
+        webSocket = client.newWebSocket(request, new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket socket, Response response) {
+                Log.d(TAG, "Order book stream connected");
+                onConnected(socket);
+            }
+
+            @Override
+            public void onMessage(WebSocket socket, String text) {
+                try {
+                    handleMessage(new JSONObject(text));
+                } catch (Exception e) {
+                    Log.e(TAG, "Error parsing order book message: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void onFailure(WebSocket socket, Throwable t, Response response) {
+                Log.e(TAG, "Order book stream failed: " + t.getMessage());
+                onDisconnected(socket);
+            }
+
+            @Override
+            public void onClosed(WebSocket socket, int code, String reason) {
+                onDisconnected(socket);
+            }
+        });
+    }
+
+    private synchronized void onConnected(WebSocket socket) {
+        if (socket != webSocket) {
+            return;
+        }
+        connected = true;
+        for (String topic : books.keySet()) {
+            send("subscribe", topic);
+        }
+        pingTask = scheduler.scheduleWithFixedDelay(() -> {
+            WebSocket current = webSocket;
+            if (current != null) {
+                current.send("{\"op\":\"ping\"}");
+            }
+        }, PING_INTERVAL_SECONDS, PING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private synchronized void onDisconnected(WebSocket socket) {
+        if (socket != webSocket) {
+            return;
+        }
+        connected = false;
+        webSocket = null;
+        if (pingTask != null) {
+            pingTask.cancel(false);
+            pingTask = null;
+        }
+        for (OrderBook book : books.values()) {
+            book.invalidate();
+        }
+        if (!books.isEmpty()) {
+            // Attempt to reconnect after a delay
+            scheduler.schedule(() -> {
+                synchronized (BybitOrderBookClient.this) {
+                    if (webSocket == null && !books.isEmpty()) {
+                        connect();
+                    }
+                }
+            }, RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void handleMessage(JSONObject json) throws Exception {
+        if (!json.has("topic")) {
+            // Subscription acks and pongs
+            return;
+        }
+        String topic = json.getString("topic");
+        OrderBook book = books.get(topic);
+        if (book == null) {
+            return;
+        }
+
+        JSONObject data = json.getJSONObject("data");
+        long updateId = data.getLong("u");
+        long sequence = data.optLong("seq");
+        long timestamp = json.optLong("ts");
+        boolean snapshot = "snapshot".equals(json.optString("type"));
+
+        if (!snapshot) {
+            boolean wasSynced = book.isSynced();
+            if (!book.beginDelta(updateId)) {
+                // Ask for a snapshot once per gap, then drop deltas until it arrives
+                if (wasSynced) {
+                    resync(topic);
+                }
+                return;
+            }
+        }
+
+        // Apply all levels while holding the book so readers never see half a message
+        synchronized (book) {
+            if (snapshot) {
+                book.beginSnapshot();
+            }
+            JSONArray bids = data.getJSONArray("b");
+            for (int i = 0; i < bids.length(); i++) {
+                JSONArray level = bids.getJSONArray(i);
+                book.updateBid(Double.parseDouble(level.getString(0)), Double.parseDouble(level.getString(1)));
+            }
+            JSONArray asks = data.getJSONArray("a");
+            for (int i = 0; i < asks.length(); i++) {
+                JSONArray level = asks.getJSONArray(i);
+                book.updateAsk(Double.parseDouble(level.getString(0)), Double.parseDouble(level.getString(1)));
+            }
+            book.endUpdate(updateId, sequence, timestamp);
+        }
+
+        if (listener != null) {
+            listener.onOrderBookUpdate(book);
+        }
+    }
+
+    /**
+     * Re-subscribe to a topic so Bybit sends a fresh snapshot
+     */
+    private synchronized void resync(String topic) {
+        Log.w(TAG, "Update id gap on " + topic + ", requesting snapshot");
+        if (connected) {
+            send("unsubscribe", topic);
+            send("subscribe", topic);
+        }
+    }
+
+    private void send(String op, String topic) {
+        try {
+            JSONObject message = new JSONObject();
+            message.put("op", op);
+            message.put("args", new JSONArray().put(topic));
+            webSocket.send(message.toString());
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending " + op + " for " + topic + ": " + e.getMessage());
+        }
+    }
+
+    private static String topic(String symbol, int depth) {
+        return "orderbook." + depth + "." + symbol.toUpperCase();
+    }
+}
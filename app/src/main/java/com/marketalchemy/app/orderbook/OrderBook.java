@@ -0,0 +1,192 @@
+package com.marketalchemy.app.orderbook;
+
+/**
+ * Incrementally maintained order book for one instrument.
+ * Snapshots reset the book; deltas are applied only if their update id follows
+ * the last one applied, otherwise the book is marked out of sync.
+ * All methods are synchronized so the feed thread and UI readers can share it.
+ */
+public class OrderBook {
+
+    private final String symbol;
+    private final OrderBookSide bids;
+    private final OrderBookSide asks;
+
+    private long updateId;
+    private long sequence;
+    private long timestamp;
+    private boolean synced;
+
+    /**
+     * @param symbol Trading pair symbol (e.g., BTCUSDT)
+     * @param depth Number of levels per side (50 or 200)
+     */
+    public OrderBook(String symbol, int depth) {
+        this.symbol = symbol;
+        this.bids = new OrderBookSide(depth, true);
+        this.asks = new OrderBookSide(depth, false);
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Start a snapshot: clears both sides. Follow with level updates and {@link #endUpdate}.
+     */
+    public synchronized void beginSnapshot() {
+        bids.clear();
+        asks.clear();
+        synced = true;
+    }
+
+    /**
+     * Start a delta
+     * @param newUpdateId Update id of the delta
+     * @return True if the delta can be applied, false if an update was missed
+     */
+    public synchronized boolean beginDelta(long newUpdateId) {
+        if (!synced) {
+            return false;
+        }
+        if (newUpdateId != updateId + 1) {
+            // Gap in the stream, wait for a fresh snapshot
+            synced = false;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Apply one bid level; size 0 removes it
+     */
+    public synchronized void updateBid(double price, double size) {
+        bids.update(price, size);
+    }
+
+    /**
+     * Apply one ask level; size 0 removes it
+     */
+    public synchronized void updateAsk(double price, double size) {
+        asks.update(price, size);
+    }
+
+    /**
+     * Finish a snapshot or delta
+     * @param newUpdateId Update id of the message
+     * @param newSequence Cross-sequence number of the message
+     * @param newTimestamp Exchange timestamp in millis
+     */
+    public synchronized void endUpdate(long newUpdateId, long newSequence, long newTimestamp) {
+        updateId = newUpdateId;
+        sequence = newSequence;
+        timestamp = newTimestamp;
+    }
+
+    /**
+     * Mark the book as needing a snapshot
+     */
+    public synchronized void invalidate() {
+        synced = false;
+    }
+
+    public synchronized boolean isSynced() {
+        return synced;
+    }
+
+    public synchronized long getUpdateId() {
+        return updateId;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public synchronized long getTimestamp() {
+        return timestamp;
+    }
+
+    public synchronized double getBestBid() {
+        return bids.bestPrice();
+    }
+
+    public synchronized double getBestAsk() {
+        return asks.bestPrice();
+    }
+
+    public synchronized double getBestBidSize() {
+        return bids.bestSize();
+    }
+
+    public synchronized double getBestAskSize() {
+        return asks.bestSize();
+    }
+
+    /**
+     * Get the bid/ask spread, or NaN if either side is empty
+     */
+    public synchronized double getSpread() {
+        return asks.bestPrice() - bids.bestPrice();
+    }
+
+    /**
+     * Get the mid price, or NaN if either side is empty
+     */
+    public synchronized double getMidPrice() {
+        return (asks.bestPrice() + bids.bestPrice()) / 2;
+    }
+
+    /**
+     * Get cumulative bid size at prices >= limitPrice
+     */
+    public synchronized double getBidDepth(double limitPrice) {
+        return bids.depthTo(limitPrice);
+    }
+
+    /**
+     * Get cumulative ask size at prices <= limitPrice
+     */
+    public synchronized double getAskDepth(double limitPrice) {
+        return asks.depthTo(limitPrice);
+    }
+
+    /**
+     * Get the average price a market buy of the given quantity would pay
+     * @return Fill price, or NaN if the book is too thin
+     */
+    public synchronized double getBuyFillPrice(double quantity) {
+        return asks.averageFillPrice(quantity);
+    }
+
+    /**
+     * Get the average price a market sell of the given quantity would receive
+     * @return Fill price, or NaN if the book is too thin
+     */
+    public synchronized double getSellFillPrice(double quantity) {
+        return bids.averageFillPrice(quantity);
+    }
+
+    public synchronized int getBidLevels() {
+        return bids.size();
+    }
+
+    public synchronized int getAskLevels() {
+        return asks.size();
+    }
+
+    public synchronized double getBidPrice(int level) {
+        return bids.priceAt(level);
+    }
+
+    public synchronized double getBidSize(int level) {
+        return bids.sizeAt(level);
+    }
+
+    public synchronized double getAskPrice(int level) {
+        return asks.priceAt(level);
+    }
+
+    public synchronized double getAskSize(int level) {
+        return asks.sizeAt(level);
+    }
+}
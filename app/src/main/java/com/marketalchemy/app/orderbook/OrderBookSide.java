@@ -0,0 +1,232 @@
+package com.marketalchemy.app.orderbook;
+
+/**
+ * One side of an order book stored as parallel primitive arrays, best level first.
+ * <p>
+ * Levels are kept sorted so updates are a binary search plus an array shift.
+ * Size and notional are also held in Fenwick trees over the level positions, so
+ * depth and fill-price queries are O(log n). A delta that only changes the size
+ * of an existing level, the bulk of a live feed, updates the trees in O(log n);
+ * inserting or removing a level shifts every later position, which already
+ * costs O(n) in the arrays, so the trees are then rebuilt in O(n) on the next
+ * query. Nothing is allocated after construction.
+ */
+public class OrderBookSide {
+
+    private final boolean descending; // true for bids
+    private final double[] prices;
+    private final double[] sizes;
+    private int count;
+
+    // Fenwick trees of size and notional, 1-based; valid when !treeDirty
+    private final double[] sizeTree;
+    private final double[] notionalTree;
+    private boolean treeDirty;
+
+    /**
+     * @param capacity Maximum number of levels (e.g. 200 for orderbook.200)
+     * @param descending True for bids (highest first), false for asks (lowest first)
+     */
+    public OrderBookSide(int capacity, boolean descending) {
+        this.descending = descending;
+        prices = new double[capacity];
+        sizes = new double[capacity];
+        sizeTree = new double[capacity + 1];
+        notionalTree = new double[capacity + 1];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        count = 0;
+        treeDirty = true;
+    }
+
+    /**
+     * Set the size at a price level; a size of 0 removes the level
+     * @param price Level price
+     * @param size New total size at that price
+     */
+    public void update(double price, double size) {
+        int index = search(price);
+        if (index >= 0) {
+            if (size == 0) {
+                // Remove level
+                System.arraycopy(prices, index + 1, prices, index, count - index - 1);
+                System.arraycopy(sizes, index + 1, sizes, index, count - index - 1);
+                count--;
+                treeDirty = true;
+            } else {
+                double delta = size - sizes[index];
+                sizes[index] = size;
+                if (!treeDirty) {
+                    addToTree(index, delta, delta * prices[index]);
+                }
+            }
+        } else if (size != 0) {
+            int insertAt = -index - 1;
+            if (insertAt >= prices.length) {
+                // Worse than every level we keep
+                return;
+            }
+            int moved = Math.min(count, prices.length - 1) - insertAt;
+            if (moved > 0) {
+                System.arraycopy(prices, insertAt, prices, insertAt + 1, moved);
+                System.arraycopy(sizes, insertAt, sizes, insertAt + 1, moved);
+            }
+            prices[insertAt] = price;
+            sizes[insertAt] = size;
+            count = Math.min(count + 1, prices.length);
+            treeDirty = true;
+        }
+    }
+
+    /**
+     * Get the price of the i-th level, 0 being best
+     */
+    public double priceAt(int level) {
+        return prices[level];
+    }
+
+    /**
+     * Get the size of the i-th level, 0 being best
+     */
+    public double sizeAt(int level) {
+        return sizes[level];
+    }
+
+    /**
+     * Get the best price, or NaN if the side is empty
+     */
+    public double bestPrice() {
+        return count > 0 ? prices[0] : Double.NaN;
+    }
+
+    /**
+     * Get the size at the best price, or 0 if the side is empty
+     */
+    public double bestSize() {
+        return count > 0 ? sizes[0] : 0;
+    }
+
+    /**
+     * Get the total size of all levels at or better than a price
+     * @param limitPrice Price bound (inclusive)
+     * @return Cumulative size
+     */
+    public double depthTo(double limitPrice) {
+        int index = search(limitPrice);
+        // Number of levels at or better than limitPrice
+        int levels = index >= 0 ? index + 1 : -index - 1;
+        if (levels == 0) {
+            return 0;
+        }
+        ensureTree();
+        return prefixSize(levels);
+    }
+
+    /**
+     * Get the total size of the book side
+     */
+    public double totalSize() {
+        if (count == 0) {
+            return 0;
+        }
+        ensureTree();
+        return prefixSize(count);
+    }
+
+    /**
+     * Get the average price for filling a quantity by walking this side
+     * @param quantity Quantity to fill
+     * @return Volume-weighted fill price, or NaN if the side is too thin
+     */
+    public double averageFillPrice(double quantity) {
+        if (quantity <= 0 || count == 0) {
+            return Double.NaN;
+        }
+        ensureTree();
+        if (prefixSize(count) < quantity) {
+            return Double.NaN;
+        }
+        // Descend the trees to the first level where the cumulative size reaches the quantity
+        int position = 0;
+        double sizeBefore = 0;
+        double notionalBefore = 0;
+        for (int step = Integer.highestOneBit(count); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= count && sizeBefore + sizeTree[next] < quantity) {
+                position = next;
+                sizeBefore += sizeTree[next];
+                notionalBefore += notionalTree[next];
+            }
+        }
+        int index = Math.min(position, count - 1);
+        double notional = notionalBefore + (quantity - sizeBefore) * prices[index];
+        return notional / quantity;
+    }
+
+    /**
+     * Sum the sizes of the first levels
+     */
+    private double prefixSize(int levels) {
+        double sum = 0;
+        for (int i = levels; i > 0; i -= i & -i) {
+            sum += sizeTree[i];
+        }
+        return sum;
+    }
+
+    private void addToTree(int level, double size, double notional) {
+        for (int i = level + 1; i <= count; i += i & -i) {
+            sizeTree[i] += size;
+            notionalTree[i] += notional;
+        }
+    }
+
+    /**
+     * Rebuild the trees in O(n) after levels were inserted or removed
+     */
+    private void ensureTree() {
+        if (!treeDirty) {
+            return;
+        }
+        for (int i = 1; i <= count; i++) {
+            sizeTree[i] = sizes[i - 1];
+            notionalTree[i] = sizes[i - 1] * prices[i - 1];
+        }
+        for (int i = 1; i <= count; i++) {
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                sizeTree[parent] += sizeTree[i];
+                notionalTree[parent] += notionalTree[i];
+            }
+        }
+        treeDirty = false;
+    }
+
+    /**
+     * Binary search in best-first order
+     * @return Index if found, else (-(insertion point) - 1)
+     */
+    private int search(double price) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            double midPrice = prices[mid];
+            int cmp = descending ? Double.compare(price, midPrice) : Double.compare(midPrice, price);
+            // cmp > 0 means 'price' comes before 'midPrice'
+            if (cmp > 0) {
+                high = mid - 1;
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
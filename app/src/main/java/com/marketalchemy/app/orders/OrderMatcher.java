@@ -0,0 +1,386 @@
+package com.marketalchemy.app.orders;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.marketalchemy.app.api.BinanceWebSocketClient;
+import com.marketalchemy.app.api.BybitApiClient;
+import com.marketalchemy.app.api.BybitUpdateClient;
+import com.marketalchemy.app.data.PersistenceCoordinator;
+import com.marketalchemy.app.data.TradeLedger;
+import com.marketalchemy.app.model.OrderResult;
+import com.marketalchemy.app.model.PortfolioRegistry;
+import com.marketalchemy.app.model.Quote;
+import com.marketalchemy.app.model.VirtualPortfolio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Matches resting limit, stop and stop-limit orders against the live price stream.
+ * <p>
+ * Each instrument has two {@link TriggerLadder}s: orders that trigger when the price
+ * falls to them (buy limits, sell stops) and orders that trigger when it rises to
+ * them (sell limits, buy stops). A tick only looks at the orders it crosses, so
+ * thousands of resting orders cost O(log n + k) per tick rather than a scan.
+ * Triggered orders are filled at the tick price through {@link VirtualPortfolio}.
+ * Open orders are kept on disk and survive restarts.
+ */
+public class OrderMatcher implements BybitUpdateClient.PriceUpdateListener,
+        BinanceWebSocketClient.OnPriceUpdateListener {
+
+    private static final String TAG = "OrderMatcher";
+    private static final String ORDERS_FILE = "resting_orders.json";
+    private static final int FILE_VERSION = 1;
+    private static final long FILL_QUOTE_TTL_MS = 5000;
+
+    private static OrderMatcher instance;
+
+    private final PortfolioRegistry registry;
+    private final BybitApiClient bybitClient;
+    private final Handler mainHandler;
+    private final PersistenceCoordinator.Store ordersStore;
+    private final Gson gson;
+    private final File ordersFile;
+    private final Map<Long, RestingOrder> openOrders;
+    private final Map<String, Ladders> ladders; // By exchange symbol
+    private final List<OrderListener> listeners;
+    private long nextId;
+
+    /**
+     * Listener for order fills, rejections and cancellations
+     */
+    public interface OrderListener {
+        /**
+         * Called on the thread that completed the change
+         * @param order Copy of the order in its new state
+         */
+        void onOrderUpdated(RestingOrder order);
+    }
+
+    /**
+     * Both ladders of one instrument
+     */
+    private static class Ladders {
+        final String trackedSymbol; // Symbol subscribed on BybitUpdateClient
+        final TriggerLadder falling = new TriggerLadder(true);
+        final TriggerLadder rising = new TriggerLadder(false);
+
+        Ladders(String trackedSymbol) {
+            this.trackedSymbol = trackedSymbol;
+        }
+
+        boolean isEmpty() {
+            return falling.size() == 0 && rising.size() == 0;
+        }
+    }
+
+    /**
+     * On-disk format
+     */
+    private static class OrdersFile {
+        int version;
+        long nextId;
+        List<RestingOrder> orders;
+    }
+
+    private OrderMatcher(Context context) {
+        registry = PortfolioRegistry.getInstance(context);
+        bybitClient = BybitApiClient.getInstance();
+        mainHandler = new Handler(Looper.getMainLooper());
+        ordersStore = this::writeOrders;
+        gson = new Gson();
+        ordersFile = new File(context.getFilesDir(), ORDERS_FILE);
+        openOrders = new HashMap<>();
+        ladders = new HashMap<>();
+        listeners = new CopyOnWriteArrayList<>();
+        nextId = 1;
+        load();
+    }
+
+    /**
+     * Get singleton instance
+     * @param context Any context, the application context is kept
+     * @return OrderMatcher instance
+     */
+    public static synchronized OrderMatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new OrderMatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addOrderListener(OrderListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeOrderListener(OrderListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Place a resting order in the active portfolio
+     * @param cryptoId Cryptocurrency ID (e.g., "BTC")
+     * @param side TradeLedger.SIDE_BUY or SIDE_SELL
+     * @param type RestingOrder.TYPE_LIMIT, TYPE_STOP or TYPE_STOP_LIMIT
+     * @param quantity Amount, rounded down to the instrument's quantity step
+     * @param limitPrice Limit price; ignored for stops
+     * @param stopPrice Stop price; ignored for limits
+     * @return Copy of the placed order
+     * @throws IllegalArgumentException if the quantity or a required price is not positive
+     */
+    public synchronized RestingOrder placeOrder(String cryptoId, String side, int type, double quantity,
+                                                double limitPrice, double stopPrice) {
+        long quantityUnits = VirtualPortfolio.toQuantityUnits(cryptoId, quantity);
+        long limitUnits = type != RestingOrder.TYPE_STOP ? VirtualPortfolio.toPriceUnits(cryptoId, limitPrice) : 0;
+        long stopUnits = type != RestingOrder.TYPE_LIMIT ? VirtualPortfolio.toPriceUnits(cryptoId, stopPrice) : 0;
+        if (quantityUnits <= 0) {
+            throw new IllegalArgumentException("Quantity is below the minimum step");
+        }
+        if ((type != RestingOrder.TYPE_STOP && limitUnits <= 0) || (type != RestingOrder.TYPE_LIMIT && stopUnits <= 0)) {
+            throw new IllegalArgumentException("Price must be positive");
+        }
+        if (!TradeLedger.SIDE_BUY.equals(side) && !TradeLedger.SIDE_SELL.equals(side)) {
+            throw new IllegalArgumentException("Unknown side " + side);
+        }
+
+        RestingOrder order = new RestingOrder(nextId++, cryptoId, side, type, quantityUnits,
+                limitUnits, stopUnits, System.currentTimeMillis());
+        order.portfolioId = registry.getActiveId();
+        openOrders.put(order.id, order);
+        index(order);
+        persist();
+        return order.copy();
+    }
+
+    /**
+     * Cancel an open order
+     * @return True if the order was open
+     */
+    public synchronized boolean cancelOrder(long orderId) {
+        RestingOrder order = openOrders.remove(orderId);
+        if (order == null) {
+            return false;
+        }
+        String exchangeSymbol = bybitClient.getExchangeSymbol(order.cryptoId);
+        Ladders instrumentLadders = ladders.get(exchangeSymbol);
+        if (instrumentLadders != null) {
+            ladderFor(instrumentLadders, order).remove(triggerOf(order), order.id);
+            releaseIfEmpty(exchangeSymbol, instrumentLadders);
+        }
+        order.status = RestingOrder.STATUS_CANCELLED;
+        order.updatedAt = System.currentTimeMillis();
+        persist();
+        notifyListeners(order);
+        return true;
+    }
+
+    /**
+     * Get copies of all open orders, oldest first
+     */
+    public synchronized List<RestingOrder> getOpenOrders() {
+        List<RestingOrder> orders = new ArrayList<>(openOrders.size());
+        for (RestingOrder order : openOrders.values()) {
+            orders.add(order.copy());
+        }
+        Collections.sort(orders, (a, b) -> Long.compare(a.id, b.id));
+        return orders;
+    }
+
+    /**
+     * Match a price tick from either feed
+     * @param symbol Symbol, crypto ID or exchange symbol
+     */
+    @Override
+    public synchronized void onPriceUpdate(String symbol, double price, double change) {
+        String exchangeSymbol = bybitClient.getExchangeSymbol(symbol);
+        Ladders instrumentLadders = ladders.get(exchangeSymbol);
+        if (instrumentLadders == null) {
+            return;
+        }
+        // A price that rounds to nothing must not trigger anything
+        long priceUnits = VirtualPortfolio.toPriceUnits(symbol, price);
+        if (priceUnits <= 0) {
+            return;
+        }
+        boolean changed = drain(instrumentLadders, instrumentLadders.falling, priceUnits);
+        changed |= drain(instrumentLadders, instrumentLadders.rising, priceUnits);
+        if (changed) {
+            releaseIfEmpty(exchangeSymbol, instrumentLadders);
+            persist();
+        }
+    }
+
+    /**
+     * Take every order a price triggers from one ladder
+     * @return True if any order was triggered
+     */
+    private boolean drain(Ladders instrumentLadders, TriggerLadder ladder, long price) {
+        boolean changed = false;
+        while (ladder.hasTriggered(price)) {
+            RestingOrder order = openOrders.get(ladder.pollTriggered());
+            if (order == null) {
+                continue;
+            }
+            changed = true;
+            if (order.type == RestingOrder.TYPE_STOP_LIMIT && !order.stopTriggered) {
+                // Stop hit; rest as a limit order unless the limit is already crossed
+                order.stopTriggered = true;
+                order.updatedAt = System.currentTimeMillis();
+                if (!limitCrossed(order, price)) {
+                    ladderFor(instrumentLadders, order).add(order.limitPriceUnits, order.id);
+                    continue;
+                }
+            }
+            fill(order, price);
+        }
+        return changed;
+    }
+
+    /**
+     * Fill a triggered order at the tick price
+     */
+    private void fill(RestingOrder order, long price) {
+        openOrders.remove(order.id);
+        long now = System.currentTimeMillis();
+        Quote quote = new Quote(order.cryptoId, price, now, now + FILL_QUOTE_TTL_MS);
+        String portfolioId = order.portfolioId != null ? order.portfolioId : PortfolioRegistry.DEFAULT_ID;
+        registry.get(portfolioId).submitOrder(order.side, quote, order.quantityUnits)
+                .whenComplete((result, error) -> onFillResult(order, result, error));
+    }
+
+    private void onFillResult(RestingOrder order, OrderResult result, Throwable error) {
+        synchronized (this) {
+            if (error == null && result.isFilled()) {
+                order.status = RestingOrder.STATUS_FILLED;
+                order.fillPriceUnits = result.getPriceUnits();
+            } else {
+                order.status = RestingOrder.STATUS_REJECTED;
+                Log.w(TAG, "Order " + order.id + " rejected: "
+                        + (error != null ? error.getMessage() : result.getStatus()));
+            }
+            order.updatedAt = System.currentTimeMillis();
+        }
+        notifyListeners(order);
+    }
+
+    /**
+     * Add an open order to the ladder for its current trigger, subscribing to its
+     * instrument's prices if this is its first order
+     */
+    private void index(RestingOrder order) {
+        String exchangeSymbol = bybitClient.getExchangeSymbol(order.cryptoId);
+        Ladders instrumentLadders = ladders.get(exchangeSymbol);
+        if (instrumentLadders == null) {
+            instrumentLadders = new Ladders(bybitClient.getSymbolFromId(order.cryptoId));
+            ladders.put(exchangeSymbol, instrumentLadders);
+            String symbol = instrumentLadders.trackedSymbol;
+            // BybitUpdateClient is used from the main thread only
+            mainHandler.post(() -> BybitUpdateClient.getInstance().trackSymbol(symbol, this));
+        }
+        ladderFor(instrumentLadders, order).add(triggerOf(order), order.id);
+    }
+
+    private void releaseIfEmpty(String exchangeSymbol, Ladders instrumentLadders) {
+        if (!instrumentLadders.isEmpty()) {
+            return;
+        }
+        ladders.remove(exchangeSymbol);
+        String symbol = instrumentLadders.trackedSymbol;
+        mainHandler.post(() -> BybitUpdateClient.getInstance().untrackSymbol(symbol, this));
+    }
+
+    /**
+     * Buy limits and sell stops wait for a fall, sell limits and buy stops for a rise
+     */
+    private static TriggerLadder ladderFor(Ladders instrumentLadders, RestingOrder order) {
+        boolean fallsToTrigger = order.isWaitingOnLimit() == order.isBuy();
+        return fallsToTrigger ? instrumentLadders.falling : instrumentLadders.rising;
+    }
+
+    private static long triggerOf(RestingOrder order) {
+        return order.isWaitingOnLimit() ? order.limitPriceUnits : order.stopPriceUnits;
+    }
+
+    private static boolean limitCrossed(RestingOrder order, long price) {
+        return order.isBuy() ? price <= order.limitPriceUnits : price >= order.limitPriceUnits;
+    }
+
+    private void notifyListeners(RestingOrder order) {
+        RestingOrder copy;
+        synchronized (this) {
+            copy = order.copy();
+        }
+        for (OrderListener listener : listeners) {
+            listener.onOrderUpdated(copy);
+        }
+    }
+
+    /**
+     * Mark the open orders for writing; changes close together share one write
+     */
+    private void persist() {
+        PersistenceCoordinator.getInstance().markDirty(ordersStore);
+    }
+
+    /**
+     * Write the open orders to disk. Runs on the persistence coordinator's thread.
+     */
+    private void writeOrders() {
+        OrdersFile file = new OrdersFile();
+        synchronized (this) {
+            file.version = FILE_VERSION;
+            file.nextId = nextId;
+            file.orders = new ArrayList<>(openOrders.size());
+            for (RestingOrder order : openOrders.values()) {
+                file.orders.add(order.copy());
+            }
+        }
+        File tmp = new File(ordersFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            gson.toJson(file, writer);
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing orders: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(ordersFile)) {
+            Log.e(TAG, "Error replacing orders file");
+        }
+    }
+
+    private void load() {
+        if (!ordersFile.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(ordersFile), StandardCharsets.UTF_8)) {
+            OrdersFile file = gson.fromJson(reader, OrdersFile.class);
+            if (file == null || file.version != FILE_VERSION || file.orders == null) {
+                return;
+            }
+            nextId = file.nextId;
+            for (RestingOrder order : file.orders) {
+                openOrders.put(order.id, order);
+                index(order);
+                nextId = Math.max(nextId, order.id + 1);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading orders: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.marketalchemy.app.orders;
+
+import com.marketalchemy.app.data.TradeLedger;
+import com.marketalchemy.app.utils.FixedPoint;
+
+/**
+ * Limit, stop or stop-limit order waiting on the device for its price.
+ * Prices and quantity are fixed-point units (see {@link FixedPoint}).
+ */
+public class RestingOrder {
+
+    public static final int TYPE_LIMIT = 1;      // Fill at the limit price or better
+    public static final int TYPE_STOP = 2;       // Fill at market once the stop price trades
+    public static final int TYPE_STOP_LIMIT = 3; // Become a limit order once the stop price trades
+
+    public static final int STATUS_OPEN = 1;
+    public static final int STATUS_FILLED = 2;
+    public static final int STATUS_CANCELLED = 3;
+    public static final int STATUS_REJECTED = 4; // Triggered but the portfolio refused the trade
+
+    public long id;
+    public String portfolioId;   // Null for orders placed before multiple portfolios
+    public String cryptoId;
+    public String side;          // TradeLedger.SIDE_BUY or SIDE_SELL
+    public int type;
+    public long quantityUnits;   // At FixedPoint.QUANTITY_SCALE
+    public long limitPriceUnits; // At FixedPoint.PRICE_SCALE, 0 for stops
+    public long stopPriceUnits;  // At FixedPoint.PRICE_SCALE, 0 for limits
+    public boolean stopTriggered; // Stop-limit has become a limit order
+    public int status;
+    public long fillPriceUnits;
+    public long createdAt;
+    public long updatedAt;
+
+    public RestingOrder(long id, String cryptoId, String side, int type, long quantityUnits,
+                        long limitPriceUnits, long stopPriceUnits, long createdAt) {
+        this.id = id;
+        this.cryptoId = cryptoId;
+        this.side = side;
+        this.type = type;
+        this.quantityUnits = quantityUnits;
+        this.limitPriceUnits = limitPriceUnits;
+        this.stopPriceUnits = stopPriceUnits;
+        this.status = STATUS_OPEN;
+        this.createdAt = createdAt;
+        this.updatedAt = createdAt;
+    }
+
+    // For Gson deserialization
+    public RestingOrder() {
+    }
+
+    public RestingOrder copy() {
+        RestingOrder copy = new RestingOrder(id, cryptoId, side, type, quantityUnits,
+                limitPriceUnits, stopPriceUnits, createdAt);
+        copy.portfolioId = portfolioId;
+        copy.stopTriggered = stopTriggered;
+        copy.status = status;
+        copy.fillPriceUnits = fillPriceUnits;
+        copy.updatedAt = updatedAt;
+        return copy;
+    }
+
+    public boolean isBuy() {
+        return TradeLedger.SIDE_BUY.equals(side);
+    }
+
+    /**
+     * Check whether the order is currently waiting on its limit price
+     */
+    public boolean isWaitingOnLimit() {
+        return type == TYPE_LIMIT || (type == TYPE_STOP_LIMIT && stopTriggered);
+    }
+
+    public double getQuantity() {
+        return FixedPoint.toDouble(quantityUnits, FixedPoint.QUANTITY_SCALE);
+    }
+
+    public double getLimitPrice() {
+        return FixedPoint.toDouble(limitPriceUnits, FixedPoint.PRICE_SCALE);
+    }
+
+    public double getStopPrice() {
+        return FixedPoint.toDouble(stopPriceUnits, FixedPoint.PRICE_SCALE);
+    }
+}
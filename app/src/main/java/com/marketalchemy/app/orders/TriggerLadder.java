@@ -0,0 +1,108 @@
+package com.marketalchemy.app.orders;
+
+import java.util.Arrays;
+
+/**
+ * Resting orders of one instrument sorted by trigger price, stored as parallel
+ * primitive arrays.
+ * <p>
+ * Orders are kept so the next one to trigger is always last. Checking a tick is
+ * then a comparison with the last entry, and taking the k triggered orders costs
+ * O(k) with no array shifting. Placing or cancelling is a binary search plus one
+ * array copy. Orders with the same trigger leave in the order they were placed.
+ */
+public class TriggerLadder {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean triggersOnFall;
+    // Trigger (falling) or negated trigger (rising), ascending; the next to trigger is last
+    private long[] keys;
+    private long[] orderIds;
+    private int count;
+
+    /**
+     * @param triggersOnFall True for orders that trigger when the price falls to
+     *                       their trigger (buy limits, sell stops), false for orders
+     *                       that trigger when it rises to it (sell limits, buy stops)
+     */
+    public TriggerLadder(boolean triggersOnFall) {
+        this.triggersOnFall = triggersOnFall;
+        keys = new long[INITIAL_CAPACITY];
+        orderIds = new long[INITIAL_CAPACITY];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Add an order
+     * @param trigger Trigger price in fixed-point units
+     */
+    public void add(long trigger, long orderId) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            orderIds = Arrays.copyOf(orderIds, count * 2);
+        }
+        long key = toKey(trigger);
+        // Before any equal keys, so older orders stay nearer the end
+        int index = lowerBound(key);
+        System.arraycopy(keys, index, keys, index + 1, count - index);
+        System.arraycopy(orderIds, index, orderIds, index + 1, count - index);
+        keys[index] = key;
+        orderIds[index] = orderId;
+        count++;
+    }
+
+    /**
+     * Remove an order
+     * @return True if it was in the ladder
+     */
+    public boolean remove(long trigger, long orderId) {
+        long key = toKey(trigger);
+        for (int i = lowerBound(key); i < count && keys[i] == key; i++) {
+            if (orderIds[i] == orderId) {
+                System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+                System.arraycopy(orderIds, i + 1, orderIds, i, count - i - 1);
+                count--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a price triggers the next order
+     * @param price Price in fixed-point units
+     */
+    public boolean hasTriggered(long price) {
+        return count > 0 && keys[count - 1] >= toKey(price);
+    }
+
+    /**
+     * Take the next triggered order; only valid after {@link #hasTriggered} returned true
+     * @return Order ID
+     */
+    public long pollTriggered() {
+        return orderIds[--count];
+    }
+
+    private long toKey(long price) {
+        return triggersOnFall ? price : -price;
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,213 @@
+package com.marketalchemy.app.replay;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records every incoming market feed event to a compact binary log so that it can
+ * be replayed offline with {@link FeedReplayer}.
+ * <p>
+ * Layout: header (magic, version, wall-clock start in epoch millis), then records of
+ * {type byte, nanos since start (long), payload}. Symbols and URLs are written once
+ * as dictionary entries and referenced by id afterwards.
+ */
+public class FeedRecorder {
+
+    private static final String TAG = "FeedRecorder";
+
+    static final int MAGIC = 0x4D414652; // "MAFR"
+    static final int VERSION = 1;
+
+    // Record types
+    static final byte RECORD_STRING = 0;
+    static final byte RECORD_TICK = 1;
+    static final byte RECORD_KLINE = 2;
+    static final byte RECORD_SNAPSHOT = 3;
+
+    // Feed sources
+    public static final byte SOURCE_BYBIT = 1;
+    public static final byte SOURCE_COINGECKO = 2;
+    public static final byte SOURCE_BINANCE = 3;
+
+    // Singleton instance
+    private static FeedRecorder instance;
+
+    private DataOutputStream out;
+    private long startNanos;
+    private final Map<String, Integer> stringIds;
+
+    // Fast check so feeds pay nothing while not recording
+    private volatile boolean recording;
+
+    /**
+     * Private constructor for singleton pattern
+     */
+    private FeedRecorder() {
+        stringIds = new HashMap<>();
+    }
+
+    /**
+     * Get singleton instance
+     * @return FeedRecorder instance
+     */
+    public static synchronized FeedRecorder getInstance() {
+        if (instance == null) {
+            instance = new FeedRecorder();
+        }
+        return instance;
+    }
+
+    /**
+     * Start recording to a new log file
+     * @param file Log file (overwritten)
+     * @throws IOException if the file cannot be created
+     */
+    public synchronized void start(File file) throws IOException {
+        stop();
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        startNanos = System.nanoTime();
+        stringIds.clear();
+        recording = true;
+        Log.d(TAG, "Recording market feeds to " + file.getName());
+    }
+
+    /**
+     * Stop recording and close the log
+     */
+    public synchronized void stop() {
+        recording = false;
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing feed log: " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Record a price tick
+     * @param source Feed source (SOURCE_*)
+     * @param symbol Cryptocurrency symbol
+     * @param price Price
+     * @param change 24h price change percentage
+     */
+    public void recordTick(byte source, String symbol, double price, double change) {
+        if (!recording) {
+            return;
+        }
+        synchronized (this) {
+            if (out == null) {
+                return;
+            }
+            try {
+                int symbolId = stringId(symbol);
+                writeRecordHeader(RECORD_TICK);
+                out.writeByte(source);
+                out.writeInt(symbolId);
+                out.writeDouble(price);
+                out.writeDouble(change);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Record a kline update
+     * @param source Feed source (SOURCE_*)
+     * @param symbol Trading pair symbol
+     * @param timestamp Kline open time in seconds
+     */
+    public void recordKline(byte source, String symbol, double open, double high, double low, double close, long timestamp) {
+        if (!recording) {
+            return;
+        }
+        synchronized (this) {
+            if (out == null) {
+                return;
+            }
+            try {
+                int symbolId = stringId(symbol);
+                writeRecordHeader(RECORD_KLINE);
+                out.writeByte(source);
+                out.writeInt(symbolId);
+                out.writeDouble(open);
+                out.writeDouble(high);
+                out.writeDouble(low);
+                out.writeDouble(close);
+                out.writeLong(timestamp);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Record a raw REST response
+     * @param source Feed source (SOURCE_*)
+     * @param url Request URL
+     * @param body Response body
+     */
+    public void recordSnapshot(byte source, String url, String body) {
+        if (!recording) {
+            return;
+        }
+        synchronized (this) {
+            if (out == null) {
+                return;
+            }
+            try {
+                int urlId = stringId(url);
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                writeRecordHeader(RECORD_SNAPSHOT);
+                out.writeByte(source);
+                out.writeInt(urlId);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void writeRecordHeader(byte type) throws IOException {
+        out.writeByte(type);
+        out.writeLong(System.nanoTime() - startNanos);
+    }
+
+    private int stringId(String value) throws IOException {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = stringIds.size();
+            stringIds.put(value, id);
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeRecordHeader(RECORD_STRING);
+            out.writeInt(id);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+        return id;
+    }
+
+    private void fail(IOException e) {
+        Log.e(TAG, "Error writing feed log, stopping recorder: " + e.getMessage());
+        stop();
+    }
+}
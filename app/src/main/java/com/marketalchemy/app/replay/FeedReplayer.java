@@ -0,0 +1,272 @@
+package com.marketalchemy.app.replay;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.marketalchemy.app.api.BinanceWebSocketClient;
+import com.marketalchemy.app.api.BybitUpdateClient;
+import com.marketalchemy.app.api.CoinGeckoUpdateClient;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a log written by {@link FeedRecorder} through the same listener
+ * interfaces the live feeds use, at real time, N times real time or max speed.
+ * Events are dispatched on the replay thread; use {@link #attachToLiveClients}
+ * to route them through the app's update clients on the main thread instead.
+ */
+public class FeedReplayer {
+
+    private static final String TAG = "FeedReplayer";
+
+    // Pass as speed to replay as fast as possible
+    public static final double SPEED_MAX = Double.POSITIVE_INFINITY;
+
+    private final File file;
+    private final VirtualClock clock;
+
+    private BybitUpdateClient.PriceUpdateListener bybitListener;
+    private CoinGeckoUpdateClient.PriceUpdateListener coinGeckoListener;
+    private BinanceWebSocketClient.OnPriceUpdateListener binanceListener;
+    private BinanceWebSocketClient.OnKlineUpdateListener klineListener;
+    private SnapshotListener snapshotListener;
+
+    // The current run; a run whose thread is no longer here stops at its next record
+    private final AtomicReference<Thread> replayThread = new AtomicReference<>();
+
+    public FeedReplayer(File file) {
+        this.file = file;
+        this.clock = new VirtualClock();
+    }
+
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    public void setBybitListener(BybitUpdateClient.PriceUpdateListener listener) {
+        this.bybitListener = listener;
+    }
+
+    public void setCoinGeckoListener(CoinGeckoUpdateClient.PriceUpdateListener listener) {
+        this.coinGeckoListener = listener;
+    }
+
+    public void setBinanceListener(BinanceWebSocketClient.OnPriceUpdateListener listener) {
+        this.binanceListener = listener;
+    }
+
+    public void setKlineListener(BinanceWebSocketClient.OnKlineUpdateListener listener) {
+        this.klineListener = listener;
+    }
+
+    public void setSnapshotListener(SnapshotListener listener) {
+        this.snapshotListener = listener;
+    }
+
+    /**
+     * Route replayed ticks into the app's update clients as if they came from the network.
+     * Dispatch is posted to the main thread, where those clients notify their listeners.
+     * @param binanceClient Binance client to feed, or null to skip Binance events
+     */
+    public void attachToLiveClients(BinanceWebSocketClient binanceClient) {
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        BybitUpdateClient bybitClient = BybitUpdateClient.getInstance();
+        CoinGeckoUpdateClient coinGeckoClient = CoinGeckoUpdateClient.getInstance();
+
+        bybitListener = (symbol, price, change) ->
+                mainHandler.post(() -> bybitClient.publishUpdate(symbol, price, change));
+        coinGeckoListener = (symbol, price, change) ->
+                mainHandler.post(() -> coinGeckoClient.publishUpdate(symbol, price, change));
+        if (binanceClient != null) {
+            binanceListener = binanceClient::dispatchPriceUpdate;
+            klineListener = binanceClient::dispatchKlineUpdate;
+        }
+    }
+
+    /**
+     * Start replaying on a background thread
+     * @param speed 1 for real time, N for N times faster, SPEED_MAX for no delays
+     * @param completionListener Called on the replay thread when done, or null
+     */
+    public synchronized void start(double speed, CompletionListener completionListener) {
+        stop();
+        clock.reset();
+        Thread thread = new Thread(() -> {
+            int events = 0;
+            Exception error = null;
+            try {
+                events = replay(speed);
+            } catch (Exception e) {
+                Log.e(TAG, "Replay failed: " + e.getMessage());
+                error = e;
+            }
+            replayThread.compareAndSet(Thread.currentThread(), null);
+            if (completionListener != null) {
+                completionListener.onReplayFinished(events, error);
+            }
+        }, "FeedReplayer");
+        replayThread.set(thread);
+        thread.start();
+    }
+
+    /**
+     * Stop the replay, if running, and wait for its thread to finish; a listener
+     * may call this from the replay thread, which then stops at its next record
+     */
+    public void stop() {
+        Thread thread = replayThread.getAndSet(null);
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return replayThread.get() != null;
+    }
+
+    /**
+     * Whether the calling replay thread is still the current run
+     */
+    private boolean isCurrentRun() {
+        return replayThread.get() == Thread.currentThread();
+    }
+
+    /**
+     * Read and dispatch all records, pacing them against the virtual clock
+     * @return Number of events dispatched
+     */
+    private int replay(double speed) throws IOException {
+        List<String> strings = new ArrayList<>();
+        int events = 0;
+        long wallStart = System.nanoTime();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != FeedRecorder.MAGIC) {
+                throw new IOException("Not a feed log: " + file.getName());
+            }
+            int version = in.readInt();
+            if (version != FeedRecorder.VERSION) {
+                throw new IOException("Unsupported feed log version " + version);
+            }
+            in.readLong(); // Wall-clock start, informational
+
+            while (isCurrentRun()) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                long eventNanos = in.readLong();
+
+                if (type == FeedRecorder.RECORD_STRING) {
+                    int id = in.readInt();
+                    byte[] bytes = new byte[in.readUnsignedShort()];
+                    in.readFully(bytes);
+                    while (strings.size() <= id) {
+                        strings.add(null);
+                    }
+                    strings.set(id, new String(bytes, StandardCharsets.UTF_8));
+                    continue;
+                }
+
+                // Wait until wall time catches up with scaled virtual time
+                if (speed != SPEED_MAX) {
+                    long dueNanos = wallStart + (long) (eventNanos / speed);
+                    long waitNanos;
+                    while (isCurrentRun() && (waitNanos = dueNanos - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                    if (!isCurrentRun()) {
+                        break;
+                    }
+                }
+                clock.advanceTo(eventNanos);
+
+                byte source = in.readByte();
+                String key = strings.get(in.readInt());
+                switch (type) {
+                    case FeedRecorder.RECORD_TICK:
+                        dispatchTick(source, key, in.readDouble(), in.readDouble());
+                        break;
+                    case FeedRecorder.RECORD_KLINE:
+                        double open = in.readDouble();
+                        double high = in.readDouble();
+                        double low = in.readDouble();
+                        double close = in.readDouble();
+                        long timestamp = in.readLong();
+                        if (klineListener != null) {
+                            klineListener.onKlineUpdate(key, open, high, low, close, timestamp);
+                        }
+                        break;
+                    case FeedRecorder.RECORD_SNAPSHOT:
+                        byte[] body = new byte[in.readInt()];
+                        in.readFully(body);
+                        if (snapshotListener != null) {
+                            snapshotListener.onSnapshot(source, key, new String(body, StandardCharsets.UTF_8));
+                        }
+                        break;
+                    default:
+                        throw new IOException("Corrupt feed log, unknown record type " + type);
+                }
+                events++;
+            }
+        }
+        return events;
+    }
+
+    private void dispatchTick(byte source, String symbol, double price, double change) {
+        switch (source) {
+            case FeedRecorder.SOURCE_BYBIT:
+                if (bybitListener != null) {
+                    bybitListener.onPriceUpdate(symbol, price, change);
+                }
+                break;
+            case FeedRecorder.SOURCE_COINGECKO:
+                if (coinGeckoListener != null) {
+                    coinGeckoListener.onPriceUpdate(symbol, price, change);
+                }
+                break;
+            case FeedRecorder.SOURCE_BINANCE:
+                if (binanceListener != null) {
+                    binanceListener.onPriceUpdate(symbol, price, change);
+                }
+                break;
+            default:
+                Log.w(TAG, "Skipping tick from unknown source " + source);
+        }
+    }
+
+    /**
+     * Listener for replayed REST responses
+     */
+    public interface SnapshotListener {
+        void onSnapshot(byte source, String url, String body);
+    }
+
+    /**
+     * Listener for replay completion
+     */
+    public interface CompletionListener {
+        void onReplayFinished(int events, Exception error);
+    }
+}
@@ -0,0 +1,39 @@
+package com.marketalchemy.app.replay;
+
+/**
+ * Clock driven by replayed events instead of wall time.
+ * Time is expressed in nanoseconds since the start of the recording.
+ */
+public class VirtualClock {
+
+    private volatile long nowNanos;
+
+    /**
+     * Get current virtual time
+     * @return Nanoseconds since start of recording
+     */
+    public long nanos() {
+        return nowNanos;
+    }
+
+    /**
+     * Get current virtual time in milliseconds
+     */
+    public long millis() {
+        return nowNanos / 1_000_000L;
+    }
+
+    /**
+     * Move the clock forward. Virtual time never goes backwards.
+     * @param nanos New time in nanoseconds since start of recording
+     */
+    public void advanceTo(long nanos) {
+        if (nanos > nowNanos) {
+            nowNanos = nanos;
+        }
+    }
+
+    public void reset() {
+        nowNanos = 0;
+    }
+}
@@ -0,0 +1,372 @@
+package com.marketalchemy.app.utils;
+
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point decimal arithmetic on scaled longs.
+ * <p>
+ * An amount is a {@code long} count of units of 10^-scale, so 1.5 at scale 8 is
+ * 150000000. Add and subtract are exact; multiply and divide go through a 128-bit
+ * intermediate and round once with an explicit {@link RoundingMode}. Nothing here
+ * allocates, and every overflow throws {@link ArithmeticException}.
+ */
+public final class FixedPoint {
+
+    public static final int MAX_SCALE = 18;
+
+    // Scales used by the portfolio. One scale serves every instrument: prices are
+    // rounded to each instrument's tick when converted, and a price below one unit
+    // converts to 0, which callers treat as no price.
+    public static final int MONEY_SCALE = 8;    // Cash and cost basis in USD
+    public static final int PRICE_SCALE = 8;    // Prices in USD
+    public static final int QUANTITY_SCALE = 8; // Coin quantities
+
+    // Position of a discarded fraction relative to one half unit
+    private static final int FRACTION_ZERO = 0;
+    private static final int FRACTION_BELOW_HALF = 1;
+    private static final int FRACTION_HALF = 2;
+    private static final int FRACTION_ABOVE_HALF = 3;
+
+    private static final long[] POW10 = new long[MAX_SCALE + 1];
+    private static final long LOW_MASK = 0xFFFFFFFFL;
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Get 10^scale, the raw value of 1 at a scale
+     */
+    public static long one(int scale) {
+        return POW10[scale];
+    }
+
+    /**
+     * Convert a double, rounding half-even to the nearest unit
+     * @throws ArithmeticException if the value is not finite or out of range
+     */
+    public static long of(double value, int scale) {
+        double scaled = Math.rint(value * POW10[scale]);
+        if (Double.isNaN(scaled) || scaled >= 0x1p63 || scaled < -0x1p63) {
+            throw new ArithmeticException("Out of fixed-point range: " + value);
+        }
+        return (long) scaled;
+    }
+
+    /**
+     * Parse a plain decimal string (e.g. "-12.345") exactly
+     * @param mode Rounding applied to digits beyond the scale
+     * @throws NumberFormatException if the text is not a plain decimal
+     */
+    public static long parse(String text, int scale, RoundingMode mode) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int fractionDigits = -1; // -1 until the decimal point
+        boolean anyDigit = false;
+        // First dropped digit and whether any later dropped digit is non-zero
+        int roundDigit = -1;
+        boolean sticky = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Not a decimal: " + text);
+            }
+            anyDigit = true;
+            int digit = c - '0';
+            if (fractionDigits >= scale) {
+                if (roundDigit < 0) {
+                    roundDigit = digit;
+                } else if (digit != 0) {
+                    sticky = true;
+                }
+                continue;
+            }
+            units = Math.addExact(Math.multiplyExact(units, 10), digit);
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (!anyDigit) {
+            throw new NumberFormatException("Not a decimal: " + text);
+        }
+        int missing = scale - Math.max(fractionDigits, 0);
+        if (missing > 0) {
+            units = Math.multiplyExact(units, POW10[missing]);
+        }
+        if (roundDigit >= 0) {
+            int fraction = roundDigit == 0 && !sticky ? FRACTION_ZERO
+                    : roundDigit < 5 ? FRACTION_BELOW_HALF
+                    : roundDigit == 5 && !sticky ? FRACTION_HALF
+                    : FRACTION_ABOVE_HALF;
+            units = roundMagnitude(units, fraction, negative, mode);
+        }
+        return negative ? -units : units;
+    }
+
+    public static double toDouble(long raw, int scale) {
+        return (double) raw / POW10[scale];
+    }
+
+    /**
+     * Append the exact decimal form with every digit of the scale (e.g. "-12.34500000")
+     * @return The builder
+     */
+    public static StringBuilder append(StringBuilder out, long raw, int scale) {
+        long integer = raw / POW10[scale];
+        if (raw < 0 && integer == 0) {
+            out.append('-');
+        }
+        out.append(integer);
+        if (scale > 0) {
+            long fraction = Math.abs(raw % POW10[scale]);
+            out.append('.');
+            for (int i = scale - 1; i > 0 && fraction < POW10[i]; i--) {
+                out.append('0');
+            }
+            out.append(fraction);
+        }
+        return out;
+    }
+
+    /**
+     * Format the exact decimal form with every digit of the scale
+     */
+    public static String toPlainString(long raw, int scale) {
+        return append(new StringBuilder(24), raw, scale).toString();
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Change the scale of a value, rounding if precision is lost
+     */
+    public static long rescale(long raw, int fromScale, int toScale, RoundingMode mode) {
+        if (toScale >= fromScale) {
+            return Math.multiplyExact(raw, POW10[toScale - fromScale]);
+        }
+        long divisor = POW10[fromScale - toScale];
+        boolean negative = raw < 0;
+        long magnitude = negative ? -raw : raw; // Long.MIN_VALUE stays as unsigned 2^63
+        return divide128(0, magnitude, divisor, negative, mode);
+    }
+
+    /**
+     * Multiply two values
+     * @param resultScale Scale of the result
+     * @param mode Rounding applied once to the exact product
+     */
+    public static long multiply(long a, int scaleA, long b, int scaleB, int resultScale, RoundingMode mode) {
+        boolean negative = (a < 0) != (b < 0);
+        long x = a < 0 ? -a : a;
+        long y = b < 0 ? -b : b;
+
+        // Unsigned 64x64 -> 128 bit product of the magnitudes
+        long low = x * y;
+        long high = multiplyHighUnsigned(x, y);
+
+        int shift = scaleA + scaleB - resultScale;
+        if (shift < 0) {
+            if (high != 0 || low < 0) {
+                throw new ArithmeticException("Fixed-point overflow");
+            }
+            long product = Math.multiplyExact(low, POW10[-shift]);
+            return negative ? -product : product;
+        }
+        if (shift > MAX_SCALE) {
+            throw new ArithmeticException("Scale difference too large: " + shift);
+        }
+        return divide128(high, low, POW10[shift], negative, mode);
+    }
+
+    /**
+     * Divide two values
+     * @param resultScale Scale of the result
+     * @param mode Rounding applied once to the exact quotient
+     * @throws ArithmeticException on division by zero
+     */
+    public static long divide(long a, int scaleA, long b, int scaleB, int resultScale, RoundingMode mode) {
+        if (b == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        // a / b at resultScale = a * 10^(resultScale + scaleB - scaleA) / b
+        int shift = resultScale + scaleB - scaleA;
+        if (shift < -MAX_SCALE || shift > MAX_SCALE) {
+            throw new ArithmeticException("Scale difference too large: " + shift);
+        }
+        boolean negative = (a < 0) != (b < 0);
+        long x = a < 0 ? -a : a;
+        long y = b < 0 ? -b : b;
+        if (shift < 0) {
+            // Truncate x / y, then drop -shift more digits keeping the first remainder as a sticky bit
+            long whole = Long.divideUnsigned(x, y);
+            boolean sticky = Long.remainderUnsigned(x, y) != 0;
+            long divisor = POW10[-shift];
+            long quotient = Long.divideUnsigned(whole, divisor);
+            long remainder = Long.remainderUnsigned(whole, divisor);
+            long rest = divisor - remainder;
+            int fraction = remainder == 0 ? (sticky ? FRACTION_BELOW_HALF : FRACTION_ZERO)
+                    : remainder < rest ? FRACTION_BELOW_HALF
+                    : remainder == rest && !sticky ? FRACTION_HALF
+                    : FRACTION_ABOVE_HALF;
+            if (quotient < 0) {
+                throw new ArithmeticException("Fixed-point overflow");
+            }
+            long rounded = roundMagnitude(quotient, fraction, negative, mode);
+            return negative ? -rounded : rounded;
+        }
+        long factor = POW10[shift];
+
+        // Unsigned 128-bit numerator x * factor, factor < 2^63
+        return divide128(multiplyHighUnsigned(x, factor), x * factor, y, negative, mode);
+    }
+
+    /**
+     * Compute a * b / c with a 128-bit intermediate, e.g. the share of a lot's cost
+     * for part of its quantity. The scale of the result is that of a * b / c.
+     * @param mode Rounding applied once to the exact quotient
+     * @throws ArithmeticException on division by zero or overflow
+     */
+    public static long multiplyDivide(long a, long b, long c, RoundingMode mode) {
+        if (c == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        boolean negative = (a < 0) != (b < 0) != (c < 0);
+        long x = a < 0 ? -a : a;
+        long y = b < 0 ? -b : b;
+        long z = c < 0 ? -c : c;
+        return divide128(multiplyHighUnsigned(x, y), x * y, z, negative, mode);
+    }
+
+    /**
+     * Number of decimals in a step string such as "0.000100" (gives 4)
+     * @param fallback Returned when the step is missing or malformed
+     */
+    public static int scaleOf(String step, int fallback) {
+        if (step == null) {
+            return fallback;
+        }
+        int point = step.indexOf('.');
+        if (point < 0) {
+            return 0;
+        }
+        int end = step.length();
+        while (end > point + 1 && step.charAt(end - 1) == '0') {
+            end--;
+        }
+        int scale = end - point - 1;
+        return scale <= MAX_SCALE ? scale : fallback;
+    }
+
+    /**
+     * High 64 bits of the unsigned 128-bit product of two longs
+     */
+    private static long multiplyHighUnsigned(long x, long y) {
+        long xLow = x & LOW_MASK;
+        long xHigh = x >>> 32;
+        long yLow = y & LOW_MASK;
+        long yHigh = y >>> 32;
+        long lowLow = xLow * yLow;
+        long lowHigh = xLow * yHigh;
+        long highLow = xHigh * yLow;
+        long middle = (lowLow >>> 32) + (lowHigh & LOW_MASK) + (highLow & LOW_MASK);
+        return xHigh * yHigh + (lowHigh >>> 32) + (highLow >>> 32) + (middle >>> 32);
+    }
+
+    /**
+     * Divide the unsigned 128-bit value high:low by a positive divisor and round
+     */
+    private static long divide128(long high, long low, long divisor, boolean negative, RoundingMode mode) {
+        long quotient;
+        long remainder;
+        if (high == 0 && low >= 0 && divisor > 0) {
+            quotient = low / divisor;
+            remainder = low % divisor;
+        } else {
+            if (Long.compareUnsigned(high, divisor) >= 0) {
+                throw new ArithmeticException("Fixed-point overflow");
+            }
+            // Restoring division, one quotient bit per step
+            remainder = high;
+            quotient = 0;
+            for (int i = 63; i >= 0; i--) {
+                boolean carry = remainder < 0;
+                remainder = (remainder << 1) | ((low >>> i) & 1);
+                quotient <<= 1;
+                if (carry || Long.compareUnsigned(remainder, divisor) >= 0) {
+                    remainder -= divisor;
+                    quotient |= 1;
+                }
+            }
+            if (quotient < 0) {
+                throw new ArithmeticException("Fixed-point overflow");
+            }
+        }
+        // Compare the remainder with divisor / 2 without overflowing
+        long rest = divisor - remainder;
+        int fraction = remainder == 0 ? FRACTION_ZERO
+                : Long.compareUnsigned(remainder, rest) < 0 ? FRACTION_BELOW_HALF
+                : remainder == rest ? FRACTION_HALF
+                : FRACTION_ABOVE_HALF;
+        long rounded = roundMagnitude(quotient, fraction, negative, mode);
+        return negative ? -rounded : rounded;
+    }
+
+    /**
+     * Round a truncated magnitude given where the discarded fraction lies
+     * @param fraction One of the FRACTION_ constants
+     */
+    private static long roundMagnitude(long magnitude, int fraction, boolean negative, RoundingMode mode) {
+        if (fraction == FRACTION_ZERO) {
+            return magnitude;
+        }
+        boolean up;
+        switch (mode) {
+            case UP:
+                up = true;
+                break;
+            case DOWN:
+                up = false;
+                break;
+            case CEILING:
+                up = !negative;
+                break;
+            case FLOOR:
+                up = negative;
+                break;
+            case HALF_UP:
+                up = fraction >= FRACTION_HALF;
+                break;
+            case HALF_DOWN:
+                up = fraction > FRACTION_HALF;
+                break;
+            case HALF_EVEN:
+                up = fraction == FRACTION_ABOVE_HALF || (fraction == FRACTION_HALF && (magnitude & 1) == 1);
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+        return up ? Math.addExact(magnitude, 1) : magnitude;
+    }
+}
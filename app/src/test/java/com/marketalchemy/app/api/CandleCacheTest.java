@@ -0,0 +1,130 @@
+package com.marketalchemy.app.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Range merging and gap detection of {@link CandleCache}
+ */
+public class CandleCacheTest {
+
+    private static final String SYMBOL = "BTCUSDT";
+    private static final String INTERVAL = "1";
+    private static final long MINUTE = 60 * 1000;
+    private static final long BASE = 19675L * 24 * 60 * MINUTE; // Day-aligned, well in the past
+
+    private CandleCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new CandleCache();
+    }
+
+    @Test
+    public void intervalToMillis_parsesBybitIntervals() {
+        assertEquals(MINUTE, CandleCache.intervalToMillis("1"));
+        assertEquals(60 * MINUTE, CandleCache.intervalToMillis("60"));
+        assertEquals(24 * 60 * MINUTE, CandleCache.intervalToMillis("D"));
+        assertEquals(7 * 24 * 60 * MINUTE, CandleCache.intervalToMillis("W"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalToMillis_rejectsMonths() {
+        CandleCache.intervalToMillis("M");
+    }
+
+    @Test
+    public void missingRanges_coverEverythingWhenEmpty() {
+        List<long[]> gaps = cache.getMissingRanges(SYMBOL, INTERVAL, at(0) + 1234, at(9) + 5);
+        // Aligned down at the start, through the end of the candle containing the end
+        assertRanges(gaps, at(0), at(10));
+    }
+
+    @Test
+    public void missingRanges_skipCoveredRanges() {
+        put(0, 10);
+        put(20, 30);
+        assertEquals(2, cache.getCoveredRangeCount(SYMBOL, INTERVAL));
+
+        assertRanges(cache.getMissingRanges(SYMBOL, INTERVAL, at(0), at(9)));
+        assertRanges(cache.getMissingRanges(SYMBOL, INTERVAL, at(0), at(29)), at(10), at(20));
+        assertRanges(cache.getMissingRanges(SYMBOL, INTERVAL, at(5), at(39)), at(10), at(20), at(30), at(40));
+        assertRanges(cache.getMissingRanges(SYMBOL, INTERVAL, at(-5), at(4)), at(-5), at(0));
+    }
+
+    @Test
+    public void put_mergesAdjacentAndOverlappingRanges() {
+        put(0, 10);
+        put(20, 30);
+        put(10, 20); // Touches both neighbours
+        assertEquals(1, cache.getCoveredRangeCount(SYMBOL, INTERVAL));
+        assertRanges(cache.getMissingRanges(SYMBOL, INTERVAL, at(0), at(29)));
+
+        put(25, 40); // Overlaps the end
+        put(-10, 5); // Overlaps the start
+        assertEquals(1, cache.getCoveredRangeCount(SYMBOL, INTERVAL));
+        assertRanges(cache.getMissingRanges(SYMBOL, INTERVAL, at(-20), at(49)), at(-20), at(-10), at(40), at(50));
+
+        put(60, 70); // Leaves a gap
+        assertEquals(2, cache.getCoveredRangeCount(SYMBOL, INTERVAL));
+    }
+
+    @Test
+    public void put_neverCoversTheOpenCandle() {
+        long now = System.currentTimeMillis();
+        long openCandle = Math.floorDiv(now, MINUTE) * MINUTE;
+        cache.put(SYMBOL, INTERVAL, openCandle - 5 * MINUTE, openCandle + MINUTE, new ArrayList<>());
+        assertRanges(cache.getMissingRanges(SYMBOL, INTERVAL, openCandle - 5 * MINUTE, now),
+                openCandle, openCandle + MINUTE);
+    }
+
+    @Test
+    public void get_returnsCandlesInRangeOldestFirst() {
+        put(0, 10);
+        List<CandleCache.Candle> candles = cache.get(SYMBOL, INTERVAL, at(3) + 10, at(6));
+        assertEquals(4, candles.size());
+        for (int i = 0; i < candles.size(); i++) {
+            assertEquals(at(3 + i), candles.get(i).openTime);
+        }
+        assertTrue(cache.get("ETHUSDT", INTERVAL, at(0), at(9)).isEmpty());
+    }
+
+    @Test
+    public void series_areKeptPerSymbolAndInterval() {
+        put(0, 10);
+        assertRanges(cache.getMissingRanges("btcusdt", INTERVAL, at(0), at(9)));
+        assertRanges(cache.getMissingRanges(SYMBOL, "5", at(0), at(9)), at(0), at(10));
+        assertRanges(cache.getMissingRanges("ETHUSDT", INTERVAL, at(0), at(9)), at(0), at(10));
+    }
+
+    /**
+     * Fetch minutes [from, to) with one candle per minute
+     */
+    private void put(int fromMinute, int toMinute) {
+        List<CandleCache.Candle> candles = new ArrayList<>();
+        for (int m = fromMinute; m < toMinute; m++) {
+            candles.add(new CandleCache.Candle(at(m), 1, 2, 0.5, 1.5, 10));
+        }
+        cache.put(SYMBOL, INTERVAL, at(fromMinute), at(toMinute), candles);
+    }
+
+    private static long at(int minute) {
+        return BASE + minute * MINUTE;
+    }
+
+    private static void assertRanges(List<long[]> gaps, long... bounds) {
+        long[] actual = new long[gaps.size() * 2];
+        for (int i = 0; i < gaps.size(); i++) {
+            actual[2 * i] = gaps.get(i)[0];
+            actual[2 * i + 1] = gaps.get(i)[1];
+        }
+        assertArrayEquals(bounds, actual);
+    }
+}
@@ -0,0 +1,181 @@
+package com.marketalchemy.app.backtest;
+
+import com.marketalchemy.app.model.LotBook;
+import com.marketalchemy.app.model.VirtualPortfolio;
+import com.marketalchemy.app.utils.FixedPoint;
+
+import org.junit.Test;
+
+import java.math.RoundingMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Order fills of {@link BacktestAccount} and their replay by {@link Backtester}
+ */
+public class BacktestAccountTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void buy_fillsAtNextOpenWithFee() {
+        BacktestAccount account = account(1000, 10);
+        account.buy(quantity(2));
+        assertTrue(account.hasPendingOrders());
+        assertEquals(money(1000), account.getBalance());
+
+        account.fill(MINUTE, price(100));
+        assertFalse(account.hasPendingOrders());
+        // 200 plus 10 bps
+        assertEquals(money(799.8), account.getBalance());
+        assertEquals(quantity(2), account.getQuantity());
+        assertEquals(money(200.2), account.getCostBasis());
+        assertEquals(money(0.2), account.getFeesPaid());
+
+        BacktestResult.Trades trades = account.getTrades();
+        assertEquals(1, trades.size);
+        assertEquals(BacktestResult.SIDE_BUY, trades.sides[0]);
+        assertEquals(price(100), trades.prices[0]);
+        assertEquals(MINUTE, trades.times[0]);
+    }
+
+    @Test
+    public void buy_isRejectedWhenBalanceShort() {
+        BacktestAccount account = account(100, 0);
+        account.buy(quantity(2));
+        account.fill(MINUTE, price(100));
+        assertEquals(1, account.getRejectedOrders());
+        assertEquals(money(100), account.getBalance());
+        assertEquals(0, account.getQuantity());
+        assertEquals(0, account.getTrades().size);
+    }
+
+    @Test
+    public void sell_realizesProfitNetOfFees() {
+        BacktestAccount account = account(1000, 10);
+        account.buy(quantity(1));
+        account.fill(MINUTE, price(100));
+        account.sell(quantity(1));
+        account.fill(2 * MINUTE, price(110));
+
+        // Bought for 100.10, sold for 110 less 0.11
+        assertEquals(money(9.79), account.getRealizedProfitLoss());
+        assertEquals(money(1009.79), account.getBalance());
+        assertEquals(0, account.getQuantity());
+        assertEquals(money(9.79), account.getTrades().realized[1]);
+    }
+
+    @Test
+    public void sell_isRejectedBeyondHolding() {
+        BacktestAccount account = account(1000, 0);
+        account.buy(quantity(1));
+        account.fill(MINUTE, price(100));
+        account.sell(quantity(2));
+        account.fill(2 * MINUTE, price(100));
+        assertEquals(1, account.getRejectedOrders());
+        assertEquals(quantity(1), account.getQuantity());
+    }
+
+    @Test
+    public void fill_sellsBeforeBuying() {
+        BacktestAccount account = account(50, 0);
+        account.buy(quantity(0.5));
+        account.fill(MINUTE, price(100));
+        assertEquals(0, account.getBalance());
+
+        // The buy is only affordable with the proceeds of the sell in the same bar
+        account.sellAll();
+        account.buy(quantity(0.25));
+        account.fill(2 * MINUTE, price(200));
+        assertEquals(0, account.getRejectedOrders());
+        assertEquals(quantity(0.25), account.getQuantity());
+        assertEquals(money(50), account.getBalance());
+    }
+
+    @Test
+    public void buyWithCash_spendsNoMoreThanBudget() {
+        BacktestAccount account = account(1000, 25);
+        account.buyWithCash(money(1000));
+        account.fill(MINUTE, price(333.33));
+
+        long quantity = account.getQuantity();
+        assertTrue(quantity > 0);
+        assertTrue(account.getBalance() >= 0);
+        // One more unit would not have been covered
+        long nextCost = VirtualPortfolio.buyCost(quantity + 1, price(333.33));
+        long nextFee = FixedPoint.multiplyDivide(nextCost, 25, 10000, RoundingMode.CEILING);
+        assertTrue(nextCost + nextFee > money(1000));
+    }
+
+    @Test
+    public void cancelPending_dropsOrders() {
+        BacktestAccount account = account(1000, 0);
+        account.buy(quantity(1));
+        account.buyWithCash(money(10));
+        account.cancelPending();
+        assertFalse(account.hasPendingOrders());
+        account.fill(MINUTE, price(100));
+        assertEquals(money(1000), account.getBalance());
+        assertEquals(0, account.getTrades().size);
+    }
+
+    @Test
+    public void equity_marksHoldingAtClose() {
+        BacktestAccount account = account(1000, 0);
+        account.buy(quantity(2));
+        account.fill(MINUTE, price(100));
+        account.mark(price(120));
+        assertEquals(money(1040), account.getEquity());
+    }
+
+    @Test
+    public void backtester_fillsOrdersAtNextBarOpen() {
+        CandleSeries.Builder builder = new CandleSeries.Builder("BTCUSDT", MINUTE, 4);
+        builder.add(0, 100.0, 101.0, 99.0, 100.0, 1);
+        builder.add(MINUTE, 102.0, 110.0, 101.0, 108.0, 1);
+        builder.add(2 * MINUTE, 108.0, 112.0, 107.0, 111.0, 1);
+        builder.add(3 * MINUTE, 111.0, 115.0, 110.0, 114.0, 1);
+        CandleSeries series = builder.build();
+
+        Strategy strategy = (bars, bar, account) -> {
+            if (bar == 0) {
+                account.buy(quantity(1));
+            } else if (bar == 1) {
+                account.sellAll();
+            } else if (bar == 3) {
+                account.buy(quantity(1)); // No next bar, dropped
+            }
+        };
+        BacktestResult result = new Backtester(money(1000), 0, LotBook.METHOD_FIFO).run(series, strategy);
+
+        assertEquals(2, result.getTradeCount());
+        assertEquals(price(102), result.getTrades().prices[0]); // Bar 1 open
+        assertEquals(price(108), result.getTrades().prices[1]); // Bar 2 open
+        long[] equity = result.getEquityCurve();
+        assertEquals(4, equity.length);
+        assertEquals(money(1000), equity[0]);
+        assertEquals(money(1006), equity[1]); // Holding marked at bar 1's close
+        assertEquals(money(1006), result.getFinalEquity());
+        assertEquals(0.006, result.getTotalReturn(), 1e-12);
+        assertEquals(1.0, result.getWinRate(), 0);
+        assertEquals(0.25, result.getExposure(), 0);
+    }
+
+    private static BacktestAccount account(double balance, int feeBps) {
+        return new BacktestAccount("bitcoin", money(balance), feeBps, LotBook.METHOD_FIFO);
+    }
+
+    private static long quantity(double coins) {
+        return FixedPoint.of(coins, FixedPoint.QUANTITY_SCALE);
+    }
+
+    private static long price(double price) {
+        return FixedPoint.of(price, FixedPoint.PRICE_SCALE);
+    }
+
+    private static long money(double amount) {
+        return FixedPoint.of(amount, FixedPoint.MONEY_SCALE);
+    }
+}
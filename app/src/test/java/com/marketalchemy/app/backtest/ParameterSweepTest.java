@@ -0,0 +1,108 @@
+package com.marketalchemy.app.backtest;
+
+import com.marketalchemy.app.api.CandleCache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Completion of {@link ParameterSweep} when there is nothing to run or variants fail
+ */
+public class ParameterSweepTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void emptySpace_completesWithoutResults() throws InterruptedException {
+        ParameterSpace space = ParameterSpace.random(new String[]{"period"}, new double[]{5},
+                new double[]{50}, new boolean[]{true}, 0, 1);
+        Listener listener = new Listener();
+        ParameterSweep.Handle handle = sweep(space, parameters -> (series, bar, account) -> { })
+                .start(listener);
+
+        listener.await();
+        assertTrue(handle.isDone());
+        assertEquals(0, listener.ranked.size());
+        assertEquals(0, listener.results);
+    }
+
+    @Test
+    public void failingVariants_countAsCompleted() throws InterruptedException {
+        ParameterSpace space = ParameterSpace.grid(new String[]{"period"},
+                new double[][]{{5, 10, 20, 40}});
+        Listener listener = new Listener();
+        ParameterSweep.Handle handle = sweep(space, parameters -> {
+            if (parameters[0] >= 20) {
+                throw new IllegalArgumentException("Period too long");
+            }
+            return (series, bar, account) -> { };
+        }).start(listener);
+
+        listener.await();
+        assertTrue(handle.isDone());
+        assertFalse(listener.cancelled);
+        assertEquals(4, handle.getCompleted());
+        assertEquals(2, listener.results);
+        assertEquals(2, listener.ranked.size());
+    }
+
+    @Test
+    public void failingScore_stillCompletes() throws InterruptedException {
+        ParameterSpace space = ParameterSpace.grid(new String[]{"period"},
+                new double[][]{{5, 10}});
+        Listener listener = new Listener();
+        ParameterSweep.Handle handle = new ParameterSweep(new Backtester(), series(), space,
+                parameters -> (series, bar, account) -> { },
+                result -> {
+                    throw new IllegalStateException("No score");
+                }).start(listener);
+
+        listener.await();
+        assertTrue(handle.isDone());
+        assertEquals(2, handle.getCompleted());
+        assertEquals(0, listener.ranked.size());
+    }
+
+    private static ParameterSweep sweep(ParameterSpace space, ParameterSweep.StrategyFactory factory) {
+        return new ParameterSweep(new Backtester(), series(), space, factory, ParameterSweep.SHARPE_RATIO);
+    }
+
+    private static CandleSeries series() {
+        List<CandleCache.Candle> candles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            candles.add(new CandleCache.Candle(i * MINUTE, 100 + i, 101 + i, 99 + i, 100.5 + i, 5));
+        }
+        return CandleSeries.fromCandles("BTCUSDT", "1", candles);
+    }
+
+    private static class Listener implements ParameterSweep.SweepListener {
+        private final CountDownLatch complete = new CountDownLatch(1);
+        private volatile int results;
+        private volatile List<ParameterSweep.Result> ranked;
+        private volatile boolean cancelled;
+
+        @Override
+        public void onResult(ParameterSweep.Result result, int rank, int completed, int total) {
+            results++;
+        }
+
+        @Override
+        public void onComplete(List<ParameterSweep.Result> ranked, boolean cancelled) {
+            this.ranked = ranked;
+            this.cancelled = cancelled;
+            complete.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Sweep did not complete", complete.await(10, TimeUnit.SECONDS));
+        }
+    }
+}
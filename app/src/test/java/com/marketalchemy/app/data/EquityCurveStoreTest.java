@@ -0,0 +1,87 @@
+package com.marketalchemy.app.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of {@link EquityCurveStore}
+ */
+public class EquityCurveStoreTest {
+
+    private static final long T0 = 1700000000000L;
+    private static final long STEP_MS = 60 * 1000;
+
+    @Test
+    public void downsample_returnsInputThatFits() {
+        EquityCurveStore.Points points = series(100);
+        assertSame(points, EquityCurveStore.downsample(points, 100));
+        assertSame(points, EquityCurveStore.downsample(points, 500));
+        assertSame(points, EquityCurveStore.downsample(points, 2));
+    }
+
+    @Test
+    public void downsample_keepsEndsAndTimeOrder() {
+        EquityCurveStore.Points points = series(10000);
+        EquityCurveStore.Points sampled = EquityCurveStore.downsample(points, 200);
+        assertEquals(200, sampled.size);
+        assertEquals(points.times[0], sampled.times[0]);
+        assertEquals(points.values[0], sampled.values[0], 0);
+        assertEquals(points.times[points.size - 1], sampled.times[199]);
+        assertEquals(points.values[points.size - 1], sampled.values[199], 0);
+        for (int i = 1; i < sampled.size; i++) {
+            assertTrue(sampled.times[i] > sampled.times[i - 1]);
+        }
+    }
+
+    @Test
+    public void downsample_keepsOnePointPerBucket() {
+        int n = 1002;
+        int threshold = 12;
+        EquityCurveStore.Points sampled = EquityCurveStore.downsample(series(n), threshold);
+        // Buckets of 100 points between the first and the last
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            long index = (sampled.times[bucket + 1] - T0) / STEP_MS;
+            assertTrue(index >= 1 + bucket * 100 && index < 1 + (bucket + 1) * 100);
+        }
+    }
+
+    @Test
+    public void downsample_keepsSpikes() {
+        EquityCurveStore.Points points = new EquityCurveStore.Points(5000);
+        for (int i = 0; i < 5000; i++) {
+            add(points, T0 + i * STEP_MS, 10000);
+        }
+        points.values[1234] = 15000; // A one-sample jump
+        points.values[3456] = 5000;  // And a one-sample drop
+
+        EquityCurveStore.Points sampled = EquityCurveStore.downsample(points, 50);
+        assertTrue(contains(sampled, T0 + 1234 * STEP_MS, 15000));
+        assertTrue(contains(sampled, T0 + 3456 * STEP_MS, 5000));
+    }
+
+    private static EquityCurveStore.Points series(int n) {
+        EquityCurveStore.Points points = new EquityCurveStore.Points(n);
+        for (int i = 0; i < n; i++) {
+            add(points, T0 + i * STEP_MS, 10000 + 500 * Math.sin(i / 50.0) + (i % 7) * 3);
+        }
+        return points;
+    }
+
+    private static void add(EquityCurveStore.Points points, long timeMs, double value) {
+        points.times[points.size] = timeMs;
+        points.values[points.size] = value;
+        points.size++;
+    }
+
+    private static boolean contains(EquityCurveStore.Points points, long timeMs, double value) {
+        for (int i = 0; i < points.size; i++) {
+            if (points.times[i] == timeMs && points.values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
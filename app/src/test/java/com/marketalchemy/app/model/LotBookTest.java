@@ -0,0 +1,150 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Lot relief of {@link LotBook} under each method
+ */
+public class LotBookTest {
+
+    private static final String BTC = "bitcoin";
+    private static final long ONE = FixedPoint.one(FixedPoint.QUANTITY_SCALE);
+
+    private LotBook book;
+
+    @Before
+    public void setUp() {
+        book = new LotBook();
+        // Three lots of one coin, bought at 100, 300 and 200
+        buy(1, 100, 1);
+        buy(1, 300, 2);
+        buy(1, 200, 3);
+    }
+
+    @Test
+    public void fifo_relievesOldestLotsFirst() {
+        book.setMethod(LotBook.METHOD_FIFO);
+        assertEquals(money(250), book.relieve(BTC, quantity(1.5), money(450)));
+        assertEquals(money(200), book.getRealized());
+        assertEquals(money(350), book.getCost(BTC));
+        assertEquals(2, book.getLotCount(BTC));
+    }
+
+    @Test
+    public void lifo_relievesNewestLotsFirst() {
+        book.setMethod(LotBook.METHOD_LIFO);
+        assertEquals(money(350), book.relieve(BTC, quantity(1.5), money(450)));
+        assertEquals(money(100), book.getRealized());
+        assertEquals(money(250), book.getCost(BTC));
+        assertEquals(2, book.getLotCount(BTC));
+    }
+
+    @Test
+    public void hifo_relievesHighestPricedLotsFirst() {
+        book.setMethod(LotBook.METHOD_HIFO);
+        assertEquals(money(400), book.relieve(BTC, quantity(1.5), money(450)));
+        assertEquals(money(50), book.getRealized());
+        assertEquals(money(200), book.getCost(BTC));
+        assertEquals(2, book.getLotCount(BTC));
+    }
+
+    @Test
+    public void averageCost_relievesShareOfTotalCost() {
+        book.setMethod(LotBook.METHOD_AVERAGE_COST);
+        assertEquals(money(300), book.relieve(BTC, quantity(1.5), money(450)));
+        assertEquals(money(150), book.getRealized());
+        assertEquals(money(300), book.getCost(BTC));
+    }
+
+    @Test
+    public void closingPosition_relievesAllRemainingCost() {
+        book.setMethod(LotBook.METHOD_AVERAGE_COST);
+        // Three thirds do not add up exactly; the last sale takes the remainder
+        long first = book.relieve(BTC, quantity(1), money(100));
+        long second = book.relieve(BTC, quantity(1), money(100));
+        long third = book.relieve(BTC, quantity(1), money(100));
+        assertEquals(money(600), first + second + third);
+        assertEquals(0, book.getCost(BTC));
+        assertEquals(0, book.getLotCount(BTC));
+        assertEquals(money(-300), book.getRealized());
+    }
+
+    @Test
+    public void overselling_isCappedAtHolding() {
+        // Selling 6 with 3 held: only half of the proceeds are matched against lots
+        assertEquals(money(600), book.relieve(BTC, quantity(6), money(1200)));
+        assertEquals(0, book.getRealized());
+        assertEquals(0, book.relieve("ethereum", quantity(1), money(10)));
+    }
+
+    @Test
+    public void realized_isTrackedPerInstrument() {
+        book.addLot("ethereum", quantity(2), money(20), money(10), 4);
+        book.relieve("ethereum", quantity(1), money(15));
+        book.relieve(BTC, quantity(1), money(50));
+        assertEquals(money(5), book.getRealized("ethereum"));
+        assertEquals(money(-50), book.getRealized(BTC));
+        assertEquals(money(-45), book.getRealized());
+    }
+
+    @Test
+    public void hifo_keepsPriceOrderAcrossManyLots() {
+        book.clear();
+        book.setMethod(LotBook.METHOD_HIFO);
+        Random random = new Random(7);
+        PriorityQueue<Long> held = new PriorityQueue<>(Collections.reverseOrder());
+        for (int i = 0; i < 500; i++) {
+            // Buys and sells interleaved so emptied lots are compacted mid-way; many equal prices
+            if (held.isEmpty() || random.nextInt(3) > 0) {
+                long price = money(100 + random.nextInt(50));
+                book.addLot(BTC, ONE, price, price, i);
+                held.add(price);
+            } else {
+                // Each lot costs its price, so the highest remaining price is relieved
+                assertEquals((long) held.poll(), book.relieve(BTC, ONE, 0));
+            }
+        }
+        assertEquals(held.size(), book.getLotCount(BTC));
+    }
+
+    @Test
+    public void data_roundTripsBook() {
+        book.setMethod(LotBook.METHOD_LIFO);
+        book.relieve(BTC, quantity(0.5), money(100));
+        LotBook restored = new LotBook();
+        restored.load(book.toData());
+        assertEquals(LotBook.METHOD_LIFO, restored.getMethod());
+        assertEquals(book.getRealized(), restored.getRealized());
+        assertEquals(book.getRealized(BTC), restored.getRealized(BTC));
+        assertEquals(book.getCost(BTC), restored.getCost(BTC));
+        assertEquals(3, restored.getLotCount(BTC));
+        // Relief continues where the original would
+        assertEquals(book.relieve(BTC, quantity(1.5), money(300)), restored.relieve(BTC, quantity(1.5), money(300)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMethod_rejectsUnknownMethod() {
+        book.setMethod(0);
+    }
+
+    private void buy(double coins, double price, long timeMs) {
+        book.addLot(BTC, quantity(coins), money(coins * price), money(price), timeMs);
+    }
+
+    private static long quantity(double coins) {
+        return FixedPoint.of(coins, FixedPoint.QUANTITY_SCALE);
+    }
+
+    private static long money(double amount) {
+        return FixedPoint.of(amount, FixedPoint.MONEY_SCALE);
+    }
+}
@@ -0,0 +1,243 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replay of {@link PortfolioJournal} files, including torn tails and records
+ * written before amounts were fixed-point
+ */
+public class PortfolioJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay_returnsAppendedEventsInOrder() throws IOException {
+        File file = folder.newFile("journal");
+        PortfolioJournal journal = new PortfolioJournal(file);
+        assertTrue(journal.open(0, new Recorder()));
+        journal.append(PortfolioJournal.EVENT_DEPOSIT, null, 0, units(1000), 10);
+        journal.append(PortfolioJournal.EVENT_BUY, "bitcoin", units(0.5), units(20000), 20);
+        journal.append(PortfolioJournal.EVENT_SELL, "bitcoin", units(0.25), units(21000), 30);
+        journal.sync();
+
+        Recorder replayed = new Recorder();
+        PortfolioJournal reopened = new PortfolioJournal(file);
+        assertTrue(reopened.open(0, replayed));
+        assertEquals(3, replayed.events.size());
+        assertEvent(replayed.events.get(0), 1, PortfolioJournal.EVENT_DEPOSIT, "", 0, units(1000), 10);
+        assertEvent(replayed.events.get(1), 2, PortfolioJournal.EVENT_BUY, "bitcoin", units(0.5), units(20000), 20);
+        assertEvent(replayed.events.get(2), 3, PortfolioJournal.EVENT_SELL, "bitcoin", units(0.25), units(21000), 30);
+        assertEquals(3, reopened.getLastSequence());
+    }
+
+    @Test
+    public void replay_skipsEventsCoveredBySnapshot() throws IOException {
+        File file = folder.newFile("journal");
+        PortfolioJournal journal = new PortfolioJournal(file);
+        journal.open(0, new Recorder());
+        for (int i = 0; i < 5; i++) {
+            journal.append(PortfolioJournal.EVENT_DEPOSIT, null, 0, units(i + 1), i);
+        }
+        journal.sync();
+
+        Recorder replayed = new Recorder();
+        assertTrue(new PortfolioJournal(file).open(3, replayed));
+        assertEquals(2, replayed.events.size());
+        assertEquals(4, replayed.events.get(0).sequence);
+        assertEquals(5, replayed.events.get(1).sequence);
+    }
+
+    @Test
+    public void replay_cutsOffTornTail() throws IOException {
+        File file = folder.newFile("journal");
+        PortfolioJournal journal = new PortfolioJournal(file);
+        journal.open(0, new Recorder());
+        journal.append(PortfolioJournal.EVENT_DEPOSIT, null, 0, units(100), 1);
+        journal.append(PortfolioJournal.EVENT_BUY, "ethereum", units(2), units(1500), 2);
+        journal.sync();
+        long validLength = file.length();
+
+        // A crash in the middle of writing the next record
+        byte[] torn = legacyRecord(3, PortfolioJournal.EVENT_SELL, "ethereum", 1, 1600, 3);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(torn, 0, torn.length / 2);
+        }
+
+        Recorder replayed = new Recorder();
+        PortfolioJournal reopened = new PortfolioJournal(file);
+        assertTrue(reopened.open(0, replayed));
+        assertEquals(2, replayed.events.size());
+        assertEquals(validLength, file.length());
+
+        // New records follow the last good one and replay after it
+        assertEquals(3, reopened.append(PortfolioJournal.EVENT_SELL, "ethereum", units(1), units(1600), 4));
+        reopened.sync();
+        Recorder again = new Recorder();
+        new PortfolioJournal(file).open(0, again);
+        assertEquals(3, again.events.size());
+        assertEvent(again.events.get(2), 3, PortfolioJournal.EVENT_SELL, "ethereum", units(1), units(1600), 4);
+    }
+
+    @Test
+    public void replay_stopsAtCorruptRecord() throws IOException {
+        File file = folder.newFile("journal");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(legacyRecord(1, PortfolioJournal.EVENT_DEPOSIT, "", 0, 100, 1));
+            byte[] corrupt = legacyRecord(2, PortfolioJournal.EVENT_DEPOSIT, "", 0, 200, 2);
+            corrupt[corrupt.length - 1] ^= 0x01;
+            out.write(corrupt);
+            out.write(legacyRecord(3, PortfolioJournal.EVENT_DEPOSIT, "", 0, 300, 3));
+        }
+
+        Recorder replayed = new Recorder();
+        new PortfolioJournal(file).open(0, replayed);
+        assertEquals(1, replayed.events.size());
+    }
+
+    @Test
+    public void replay_convertsLegacyRecords() throws IOException {
+        File file = folder.newFile("journal");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(legacyRecord(1, PortfolioJournal.EVENT_SET_BALANCE, "", 0, 10000, 100));
+            out.write(legacyRecord(2, PortfolioJournal.EVENT_BUY, "bitcoin", 0.12345678, 43210.99, 200));
+        }
+
+        // Fixed-point records appended after legacy ones replay alongside them
+        PortfolioJournal journal = new PortfolioJournal(file);
+        Recorder first = new Recorder();
+        assertTrue(journal.open(0, first));
+        assertEquals(2, first.events.size());
+        journal.append(PortfolioJournal.EVENT_SELL, "bitcoin", units(0.1), units(44000), 300);
+        journal.sync();
+
+        Recorder replayed = new Recorder();
+        new PortfolioJournal(file).open(0, replayed);
+        assertEquals(3, replayed.events.size());
+        assertEvent(replayed.events.get(0), 1, PortfolioJournal.EVENT_SET_BALANCE, "", 0, units(10000), 100);
+        assertEvent(replayed.events.get(1), 2, PortfolioJournal.EVENT_BUY, "bitcoin", 12345678L, 4321099000000L, 200);
+        assertEvent(replayed.events.get(2), 3, PortfolioJournal.EVENT_SELL, "bitcoin", units(0.1), units(44000), 300);
+    }
+
+    @Test
+    public void open_reportsMissingRecords() throws IOException {
+        File file = folder.newFile("journal");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(legacyRecord(5, PortfolioJournal.EVENT_DEPOSIT, "", 0, 100, 5));
+        }
+        // The snapshot covers up to 2, so records 3 and 4 are lost
+        assertFalse(new PortfolioJournal(file).open(2, new Recorder()));
+        assertTrue(new PortfolioJournal(file).open(4, new Recorder()));
+    }
+
+    @Test
+    public void compact_keepsPreviousGenerationReplayable() throws IOException {
+        File file = folder.newFile("journal");
+        PortfolioJournal journal = new PortfolioJournal(file);
+        journal.open(0, new Recorder());
+        journal.append(PortfolioJournal.EVENT_DEPOSIT, null, 0, units(1), 1);
+        journal.append(PortfolioJournal.EVENT_DEPOSIT, null, 0, units(2), 2);
+        // Like the portfolio, capture the snapshot's sequence before compacting
+        assertEquals(2, journal.getLastSequence());
+        final boolean[] written = {false};
+        journal.compact(() -> written[0] = true);
+        journal.append(PortfolioJournal.EVENT_DEPOSIT, null, 0, units(3), 3);
+        journal.sync();
+        assertTrue(written[0]);
+        assertTrue(new File(file.getPath() + ".prev").exists());
+
+        // A snapshot one compaction old still replays forward
+        Recorder fromStart = new Recorder();
+        assertTrue(new PortfolioJournal(file).open(0, fromStart));
+        assertEquals(3, fromStart.events.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, fromStart.events.get(i).sequence);
+        }
+
+        Recorder fromSnapshot = new Recorder();
+        assertTrue(new PortfolioJournal(file).open(2, fromSnapshot));
+        assertEquals(1, fromSnapshot.events.size());
+        assertEquals(3, fromSnapshot.events.get(0).sequence);
+    }
+
+    private static long units(double value) {
+        return FixedPoint.of(value, FixedPoint.MONEY_SCALE);
+    }
+
+    private static void assertEvent(Event event, long sequence, byte type, String cryptoId,
+                                    long quantity, long price, long timeMs) {
+        assertEquals(sequence, event.sequence);
+        assertEquals(type, event.type);
+        assertEquals(cryptoId, event.cryptoId);
+        assertEquals(quantity, event.quantity);
+        assertEquals(price, event.price);
+        assertEquals(timeMs, event.timeMs);
+    }
+
+    /**
+     * Encode a record the way the journal did before amounts were fixed-point
+     */
+    private static byte[] legacyRecord(long sequence, byte type, String cryptoId, double quantity,
+                                       double price, long timeMs) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream event = new DataOutputStream(body);
+        event.writeLong(sequence);
+        event.writeByte(type);
+        event.writeLong(timeMs);
+        event.writeDouble(quantity);
+        event.writeDouble(price);
+        event.writeUTF(cryptoId);
+        byte[] bytes = body.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+        return record.toByteArray();
+    }
+
+    private static class Event {
+        long sequence;
+        byte type;
+        String cryptoId;
+        long quantity;
+        long price;
+        long timeMs;
+    }
+
+    private static class Recorder implements PortfolioJournal.EventVisitor {
+        final List<Event> events = new ArrayList<>();
+
+        @Override
+        public void onEvent(long sequence, byte type, String cryptoId, long quantity, long price, long timeMs) {
+            Event event = new Event();
+            event.sequence = sequence;
+            event.type = type;
+            event.cryptoId = cryptoId;
+            event.quantity = quantity;
+            event.price = price;
+            event.timeMs = timeMs;
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.marketalchemy.app.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trip and corruption handling of {@link PortfolioSnapshotCodec}
+ */
+public class PortfolioSnapshotCodecTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_keepsEveryField() throws IOException {
+        File file = new File(folder.getRoot(), "portfolio.snap");
+        PortfolioSnapshotCodec.Snapshot written = sample(42);
+        PortfolioSnapshotCodec.write(file, written);
+
+        PortfolioSnapshotCodec.Snapshot read = PortfolioSnapshotCodec.read(file);
+        assertEquals(42, read.sequence);
+        assertEquals(written.balance, read.balance);
+        assertArrayEquals(written.positionIds, read.positionIds);
+        assertArrayEquals(written.positionQuantities, read.positionQuantities);
+        assertArrayEquals(written.positionCosts, read.positionCosts);
+        assertArrayEquals(written.positionTimes, read.positionTimes);
+
+        assertEquals(LotBook.METHOD_HIFO, read.lots.method);
+        assertEquals(written.lots.realized, read.lots.realized);
+        assertEquals(1, read.lots.queues.size());
+        LotBook.QueueData queue = read.lots.queues.get(0);
+        LotBook.QueueData expected = written.lots.queues.get(0);
+        assertEquals(expected.cryptoId, queue.cryptoId);
+        assertEquals(expected.realized, queue.realized);
+        assertEquals(expected.totalQuantity, queue.totalQuantity);
+        assertEquals(expected.totalCost, queue.totalCost);
+        assertArrayEquals(expected.quantities, queue.quantities);
+        assertArrayEquals(expected.costs, queue.costs);
+        assertArrayEquals(expected.prices, queue.prices);
+        assertArrayEquals(expected.times, queue.times);
+
+        assertEquals(written.returns.inceptionTime, read.returns.inceptionTime);
+        assertEquals(written.returns.linkedGrowth, read.returns.linkedGrowth, 0);
+        assertEquals(written.returns.periodStartValue, read.returns.periodStartValue);
+        assertEquals(written.returns.netContributions, read.returns.netContributions);
+        assertEquals(written.returns.lastRate, read.returns.lastRate, 0);
+        assertArrayEquals(written.returns.flowTimes, read.returns.flowTimes);
+        assertArrayEquals(written.returns.flowAmounts, read.returns.flowAmounts);
+    }
+
+    @Test
+    public void roundTrip_handlesEmptyPortfolio() throws IOException {
+        File file = new File(folder.getRoot(), "portfolio.snap");
+        PortfolioSnapshotCodec.Snapshot empty = new PortfolioSnapshotCodec.Snapshot();
+        empty.positionIds = new String[0];
+        empty.positionQuantities = new long[0];
+        empty.positionCosts = new long[0];
+        empty.positionTimes = new long[0];
+        empty.lots = new LotBook().toData();
+        empty.returns = new ReturnTracker().toData();
+        PortfolioSnapshotCodec.write(file, empty);
+
+        PortfolioSnapshotCodec.Snapshot read = PortfolioSnapshotCodec.read(file);
+        assertEquals(0, read.positionIds.length);
+        assertTrue(read.lots.queues.isEmpty());
+        assertEquals(0, read.returns.flowTimes.length);
+    }
+
+    @Test
+    public void read_rejectsCorruptChecksum() throws IOException {
+        File file = new File(folder.getRoot(), "portfolio.snap");
+        PortfolioSnapshotCodec.write(file, sample(1));
+
+        // Flip one bit of the balance, just after the header and sequence
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8 + 8 + 7);
+            int value = raf.read();
+            raf.seek(8 + 8 + 7);
+            raf.write(value ^ 0x01);
+        }
+        assertUnreadable(file);
+    }
+
+    @Test
+    public void read_rejectsTruncatedFile() throws IOException {
+        File file = new File(folder.getRoot(), "portfolio.snap");
+        PortfolioSnapshotCodec.write(file, sample(1));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        assertUnreadable(file);
+    }
+
+    @Test
+    public void write_keepsPreviousSnapshotAsBackup() throws IOException {
+        File file = new File(folder.getRoot(), "portfolio.snap");
+        File backup = PortfolioSnapshotCodec.backupOf(file);
+        PortfolioSnapshotCodec.write(file, sample(1));
+        assertFalse(backup.exists());
+
+        PortfolioSnapshotCodec.write(file, sample(2));
+        assertEquals(2, PortfolioSnapshotCodec.read(file).sequence);
+        assertEquals(1, PortfolioSnapshotCodec.read(backup).sequence);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void recover_readsSnapshotWhenIntact() throws IOException {
+        File file = new File(folder.getRoot(), "portfolio.snap");
+        PortfolioSnapshotCodec.write(file, sample(1));
+        PortfolioSnapshotCodec.write(file, sample(2));
+
+        PortfolioSnapshotCodec.Recovery recovery = PortfolioSnapshotCodec.recover(file);
+        assertEquals(2, recovery.snapshot.sequence);
+        assertFalse(recovery.fromBackup);
+        assertEquals(0, recovery.corruptFiles);
+    }
+
+    @Test
+    public void recover_fallsBackToBackupAndKeepsCorruptSnapshot() throws IOException {
+        File file = new File(folder.getRoot(), "portfolio.snap");
+        PortfolioSnapshotCodec.write(file, sample(1));
+        PortfolioSnapshotCodec.write(file, sample(2));
+        truncate(file);
+
+        PortfolioSnapshotCodec.Recovery recovery = PortfolioSnapshotCodec.recover(file);
+        assertEquals(1, recovery.snapshot.sequence);
+        assertTrue(recovery.fromBackup);
+        assertEquals(1, recovery.corruptFiles);
+        assertFalse(file.exists());
+        assertTrue(new File(file.getPath() + ".corrupt").exists());
+
+        // The next write must not rotate the corrupt file into the backup
+        PortfolioSnapshotCodec.write(file, sample(3));
+        assertEquals(1, PortfolioSnapshotCodec.read(PortfolioSnapshotCodec.backupOf(file)).sequence);
+    }
+
+    @Test
+    public void recover_unreadableSnapshotAndBackup_movesBothAside() throws IOException {
+        File file = new File(folder.getRoot(), "portfolio.snap");
+        File backup = PortfolioSnapshotCodec.backupOf(file);
+        PortfolioSnapshotCodec.write(file, sample(1));
+        PortfolioSnapshotCodec.write(file, sample(2));
+        truncate(file);
+        truncate(backup);
+        long corruptLength = file.length();
+
+        PortfolioSnapshotCodec.Recovery recovery = PortfolioSnapshotCodec.recover(file);
+        assertNull(recovery.snapshot);
+        assertTrue(recovery.fromBackup);
+        assertEquals(2, recovery.corruptFiles);
+        assertFalse(file.exists());
+        assertFalse(backup.exists());
+        assertEquals(corruptLength, new File(file.getPath() + ".corrupt").length());
+        assertTrue(new File(backup.getPath() + ".corrupt").exists());
+
+        // A second start finds nothing to recover instead of failing again
+        recovery = PortfolioSnapshotCodec.recover(file);
+        assertNull(recovery.snapshot);
+        assertEquals(0, recovery.corruptFiles);
+    }
+
+    private static void truncate(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+    }
+
+    private static void assertUnreadable(File file) {
+        try {
+            PortfolioSnapshotCodec.read(file);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    private static PortfolioSnapshotCodec.Snapshot sample(long sequence) {
+        PortfolioSnapshotCodec.Snapshot snapshot = new PortfolioSnapshotCodec.Snapshot();
+        snapshot.sequence = sequence;
+        snapshot.balance = 123456789012L;
+        snapshot.positionIds = new String[]{"bitcoin", "ethereum"};
+        snapshot.positionQuantities = new long[]{50000000L, 300000000L};
+        snapshot.positionCosts = new long[]{2000000000000L, 450000000000L};
+        snapshot.positionTimes = new long[]{1700000000000L, 1700000100000L};
+
+        LotBook.Data lots = new LotBook.Data();
+        lots.method = LotBook.METHOD_HIFO;
+        lots.realized = -98765L;
+        lots.queues = new ArrayList<>();
+        LotBook.QueueData queue = new LotBook.QueueData();
+        queue.cryptoId = "bitcoin";
+        queue.realized = 555L;
+        queue.totalQuantity = 50000000L;
+        queue.totalCost = 2000000000000L;
+        queue.quantities = new long[]{20000000L, 30000000L};
+        queue.costs = new long[]{700000000000L, 1300000000000L};
+        queue.prices = new long[]{3500000000000L, 4333333333333L};
+        queue.times = new long[]{1699000000000L, 1700000000000L};
+        lots.queues.add(queue);
+        snapshot.lots = lots;
+
+        ReturnTracker.Data returns = new ReturnTracker.Data();
+        returns.inceptionTime = 1690000000000L;
+        returns.linkedGrowth = 1.0625;
+        returns.periodStartValue = 1100000000000L;
+        returns.netContributions = 1050000000000L;
+        returns.lastRate = 0.031;
+        returns.flowTimes = new long[]{1690000000000L, 1695000000000L};
+        returns.flowAmounts = new long[]{1000000000000L, 50000000000L};
+        snapshot.returns = returns;
+        return snapshot;
+    }
+}
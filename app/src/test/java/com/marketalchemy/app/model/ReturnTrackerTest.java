@@ -0,0 +1,116 @@
+package com.marketalchemy.app.model;
+
+import com.marketalchemy.app.utils.FixedPoint;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Time- and money-weighted returns of {@link ReturnTracker}
+ */
+public class ReturnTrackerTest {
+
+    private static final double DELTA = 1e-9;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final long YEAR_MS = 365 * DAY_MS;
+    private static final long T0 = 1700000000000L;
+
+    private ReturnTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new ReturnTracker();
+    }
+
+    @Test
+    public void timeWeighted_ignoresCashFlows() {
+        tracker.start(money(1000), T0);
+        assertTrue(tracker.isStarted());
+        assertEquals(0.10, tracker.getTimeWeightedReturn(money(1100)), DELTA);
+
+        // Doubling the capital after a 10% gain, then another 10%, is 21% whatever the amounts
+        tracker.onCashFlow(money(1000), money(1100), T0 + DAY_MS);
+        assertEquals(0.10, tracker.getTimeWeightedReturn(money(2100)), DELTA);
+        assertEquals(0.21, tracker.getTimeWeightedReturn(money(2310)), DELTA);
+
+        // A withdrawal after a 10% loss
+        tracker.onCashFlow(money(-1000), money(2079), T0 + 2 * DAY_MS);
+        assertEquals(1.1 * 1.1 * 0.9 - 1, tracker.getTimeWeightedReturn(money(1079)), DELTA);
+        assertEquals(money(1000), tracker.getNetContributions());
+    }
+
+    @Test
+    public void timeWeighted_skipsEmptyPeriods() {
+        tracker.start(0, T0);
+        // Funding an empty portfolio has no growth to link
+        tracker.onCashFlow(money(500), 0, T0 + DAY_MS);
+        assertEquals(1.0, tracker.getLinkedGrowth(), DELTA);
+        assertEquals(0.2, tracker.getTimeWeightedReturn(money(600)), DELTA);
+    }
+
+    @Test
+    public void cashFlow_startsTrackingWhenNotStarted() {
+        assertFalse(tracker.isStarted());
+        tracker.onCashFlow(money(100), money(1000), T0);
+        assertTrue(tracker.isStarted());
+        assertEquals(T0, tracker.getInceptionTime());
+        assertEquals(money(1100), tracker.getNetContributions());
+        assertEquals(money(1100), tracker.getPeriodStartValue());
+    }
+
+    @Test
+    public void moneyWeighted_isCumulativeUnderAYear() {
+        tracker.start(money(1000), T0);
+        assertEquals(0.10, tracker.getMoneyWeightedReturn(money(1100), T0 + YEAR_MS / 2), 1e-8);
+        assertEquals(0.0, tracker.getMoneyWeightedReturn(money(1100), T0), DELTA);
+    }
+
+    @Test
+    public void moneyWeighted_isAnnualizedOverAYear() {
+        tracker.start(money(1000), T0);
+        assertEquals(0.10, tracker.getMoneyWeightedReturn(money(1210), T0 + 2 * YEAR_MS), 1e-8);
+    }
+
+    @Test
+    public void moneyWeighted_weighsFlowsByTimeInvested() {
+        long end = T0 + 100 * DAY_MS;
+        tracker.start(money(1000), T0);
+        tracker.onCashFlow(money(1000), money(1000), T0 + 50 * DAY_MS);
+        // At 10% over the period the first deposit grows by 1.1 and the second by sqrt(1.1)
+        double value = 1000 * 1.1 + 1000 * Math.sqrt(1.1);
+        assertEquals(0.10, tracker.getMoneyWeightedReturn(money(value), end), 1e-8);
+        // Solving again from the previous solution gives the same answer
+        assertEquals(0.10, tracker.getMoneyWeightedReturn(money(value), end), 1e-8);
+    }
+
+    @Test
+    public void moneyWeighted_handlesLosses() {
+        tracker.start(money(1000), T0);
+        assertEquals(-0.5, tracker.getMoneyWeightedReturn(money(500), T0 + 30 * DAY_MS), 1e-8);
+    }
+
+    @Test
+    public void data_roundTripsTracker() {
+        tracker.start(money(1000), T0);
+        tracker.onCashFlow(money(250), money(1100), T0 + DAY_MS);
+        tracker.getMoneyWeightedReturn(money(1400), T0 + 10 * DAY_MS);
+
+        ReturnTracker restored = new ReturnTracker();
+        restored.load(tracker.toData());
+        assertEquals(tracker.getLinkedGrowth(), restored.getLinkedGrowth(), 0);
+        assertEquals(tracker.getPeriodStartValue(), restored.getPeriodStartValue());
+        assertEquals(tracker.getNetContributions(), restored.getNetContributions());
+        assertEquals(tracker.getInceptionTime(), restored.getInceptionTime());
+        assertEquals(tracker.getTimeWeightedReturn(money(1500)), restored.getTimeWeightedReturn(money(1500)), 0);
+        assertEquals(tracker.getMoneyWeightedReturn(money(1500), T0 + 20 * DAY_MS),
+                restored.getMoneyWeightedReturn(money(1500), T0 + 20 * DAY_MS), 1e-12);
+    }
+
+    private static long money(double amount) {
+        return FixedPoint.of(amount, FixedPoint.MONEY_SCALE);
+    }
+}
@@ -0,0 +1,157 @@
+package com.marketalchemy.app.orders;
+
+import com.marketalchemy.app.data.TradeLedger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Trigger order of {@link TriggerLadder} and the ladder moves of a stop-limit order
+ */
+public class TriggerLadderTest {
+
+    @Test
+    public void falling_triggersHighestFirst() {
+        TriggerLadder ladder = new TriggerLadder(true);
+        ladder.add(95, 1);
+        ladder.add(99, 2);
+        ladder.add(90, 3);
+
+        assertFalse(ladder.hasTriggered(100));
+        assertTrue(ladder.hasTriggered(99));
+        assertEquals(2, ladder.pollTriggered());
+        assertFalse(ladder.hasTriggered(96));
+
+        // A gap down takes every order it crosses, nearest first
+        assertTrue(ladder.hasTriggered(80));
+        assertEquals(1, ladder.pollTriggered());
+        assertTrue(ladder.hasTriggered(80));
+        assertEquals(3, ladder.pollTriggered());
+        assertFalse(ladder.hasTriggered(80));
+        assertEquals(0, ladder.size());
+    }
+
+    @Test
+    public void rising_triggersLowestFirst() {
+        TriggerLadder ladder = new TriggerLadder(false);
+        ladder.add(105, 1);
+        ladder.add(101, 2);
+        ladder.add(110, 3);
+
+        assertFalse(ladder.hasTriggered(100));
+        assertTrue(ladder.hasTriggered(101));
+        assertEquals(2, ladder.pollTriggered());
+        assertTrue(ladder.hasTriggered(120));
+        assertEquals(1, ladder.pollTriggered());
+        assertTrue(ladder.hasTriggered(120));
+        assertEquals(3, ladder.pollTriggered());
+    }
+
+    @Test
+    public void equalTriggers_leaveInPlacementOrder() {
+        TriggerLadder ladder = new TriggerLadder(true);
+        for (long id = 1; id <= 5; id++) {
+            ladder.add(100, id);
+        }
+        for (long id = 1; id <= 5; id++) {
+            assertTrue(ladder.hasTriggered(100));
+            assertEquals(id, ladder.pollTriggered());
+        }
+    }
+
+    @Test
+    public void remove_takesOnlyThatOrder() {
+        TriggerLadder ladder = new TriggerLadder(true);
+        ladder.add(100, 1);
+        ladder.add(100, 2);
+        ladder.add(100, 3);
+        ladder.add(90, 4);
+
+        assertTrue(ladder.remove(100, 2));
+        assertFalse(ladder.remove(100, 2));
+        assertFalse(ladder.remove(95, 4)); // Wrong trigger
+        assertEquals(3, ladder.size());
+
+        assertTrue(ladder.hasTriggered(100));
+        assertEquals(1, ladder.pollTriggered());
+        assertEquals(3, ladder.pollTriggered());
+        assertFalse(ladder.hasTriggered(100));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        TriggerLadder ladder = new TriggerLadder(false);
+        for (int i = 0; i < 100; i++) {
+            ladder.add(1000 - i, i);
+        }
+        assertEquals(100, ladder.size());
+        long previous = Long.MIN_VALUE;
+        while (ladder.hasTriggered(Long.MAX_VALUE / 2)) {
+            long id = ladder.pollTriggered();
+            long trigger = 1000 - id;
+            assertTrue(trigger >= previous);
+            previous = trigger;
+        }
+        assertEquals(0, ladder.size());
+    }
+
+    @Test
+    public void sellStopLimit_restsOnLimitAfterStop() {
+        // Sell if the price falls to 90, but not below 92
+        RestingOrder order = new RestingOrder(7, "bitcoin", TradeLedger.SIDE_SELL,
+                RestingOrder.TYPE_STOP_LIMIT, 1, 92, 90, 0);
+        TriggerLadder falling = new TriggerLadder(true);
+        TriggerLadder rising = new TriggerLadder(false);
+        assertFalse(order.isWaitingOnLimit());
+        falling.add(order.stopPriceUnits, order.id);
+
+        assertFalse(falling.hasTriggered(91));
+        assertTrue(falling.hasTriggered(89));
+        assertEquals(order.id, falling.pollTriggered());
+
+        // The stop traded below the limit, so the order now waits for a rise to it
+        order.stopTriggered = true;
+        assertTrue(order.isWaitingOnLimit());
+        rising.add(order.limitPriceUnits, order.id);
+        assertFalse(rising.hasTriggered(91));
+        assertTrue(rising.hasTriggered(92));
+        assertEquals(order.id, rising.pollTriggered());
+        assertEquals(0, falling.size());
+    }
+
+    @Test
+    public void buyStopLimit_restsOnLimitAfterStop() {
+        // Buy if the price rises to 110, but not above 108
+        RestingOrder order = new RestingOrder(8, "bitcoin", TradeLedger.SIDE_BUY,
+                RestingOrder.TYPE_STOP_LIMIT, 1, 108, 110, 0);
+        TriggerLadder falling = new TriggerLadder(true);
+        TriggerLadder rising = new TriggerLadder(false);
+        rising.add(order.stopPriceUnits, order.id);
+
+        assertFalse(rising.hasTriggered(109));
+        assertTrue(rising.hasTriggered(111));
+        assertEquals(order.id, rising.pollTriggered());
+
+        order.stopTriggered = true;
+        assertTrue(order.isWaitingOnLimit());
+        falling.add(order.limitPriceUnits, order.id);
+        assertFalse(falling.hasTriggered(109));
+        assertTrue(falling.hasTriggered(108));
+        assertEquals(order.id, falling.pollTriggered());
+    }
+
+    @Test
+    public void copy_keepsStopState() {
+        RestingOrder order = new RestingOrder(9, "bitcoin", TradeLedger.SIDE_SELL,
+                RestingOrder.TYPE_STOP_LIMIT, 1, 92, 90, 0);
+        order.stopTriggered = true;
+        RestingOrder copy = order.copy();
+        assertTrue(copy.isWaitingOnLimit());
+        assertFalse(copy.isBuy());
+        assertFalse(new RestingOrder(10, "bitcoin", TradeLedger.SIDE_SELL,
+                RestingOrder.TYPE_STOP, 1, 0, 90, 0).isWaitingOnLimit());
+    }
+}
@@ -0,0 +1,160 @@
+package com.marketalchemy.app.utils;
+
+import org.junit.Test;
+
+import java.math.RoundingMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Rounding and overflow of {@link FixedPoint}
+ */
+public class FixedPointTest {
+
+    private static final int SCALE = 8;
+    private static final long ONE = FixedPoint.one(SCALE);
+
+    @Test
+    public void parse_isExactWithinScale() {
+        assertEquals(123456789L, FixedPoint.parse("1.23456789", SCALE, RoundingMode.UNNECESSARY));
+        assertEquals(-1250000000L, FixedPoint.parse("-12.5", SCALE, RoundingMode.UNNECESSARY));
+        assertEquals(7 * ONE, FixedPoint.parse("7", SCALE, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    public void parse_roundsDroppedDigits() {
+        // Exactly half: half-even goes to the even neighbour
+        assertEquals(123456790L, FixedPoint.parse("1.234567895", SCALE, RoundingMode.HALF_EVEN));
+        assertEquals(123456788L, FixedPoint.parse("1.234567885", SCALE, RoundingMode.HALF_EVEN));
+        // A non-zero digit after the half makes it more than half
+        assertEquals(123456789L, FixedPoint.parse("1.2345678850001", SCALE, RoundingMode.HALF_EVEN));
+        // Half-up rounds away from zero on both sides
+        assertEquals(123456789L, FixedPoint.parse("1.234567885", SCALE, RoundingMode.HALF_UP));
+        assertEquals(-123456789L, FixedPoint.parse("-1.234567885", SCALE, RoundingMode.HALF_UP));
+        // Directed modes
+        assertEquals(1L, FixedPoint.parse("0.000000001", SCALE, RoundingMode.CEILING));
+        assertEquals(0L, FixedPoint.parse("0.000000001", SCALE, RoundingMode.FLOOR));
+        assertEquals(-1L, FixedPoint.parse("-0.000000001", SCALE, RoundingMode.FLOOR));
+        assertEquals(0L, FixedPoint.parse("-0.000000001", SCALE, RoundingMode.DOWN));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_rejectsNonDecimal() {
+        FixedPoint.parse("1e5", SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void parse_rejectsOverflow() {
+        FixedPoint.parse("100000000000", SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    @Test
+    public void of_roundsToNearestUnit() {
+        assertEquals(150000000L, FixedPoint.of(1.5, SCALE));
+        assertEquals(1L, FixedPoint.of(0.000000009, SCALE));
+        assertEquals(0L, FixedPoint.of(0.000000004, SCALE));
+    }
+
+    @Test
+    public void of_rejectsValuesOutOfRange() {
+        assertOverflow(() -> FixedPoint.of(Double.NaN, SCALE));
+        assertOverflow(() -> FixedPoint.of(Double.POSITIVE_INFINITY, SCALE));
+        assertOverflow(() -> FixedPoint.of(1e11, SCALE));
+        assertOverflow(() -> FixedPoint.of(-1e11, SCALE));
+    }
+
+    @Test
+    public void multiply_roundsOnce() {
+        long product = FixedPoint.multiply(150000000L, SCALE, 250000000L, SCALE, SCALE, RoundingMode.UNNECESSARY);
+        assertEquals(375000000L, product);
+
+        // 0.00000001 * 0.5 is exactly half a unit
+        assertEquals(0L, FixedPoint.multiply(1, SCALE, ONE / 2, SCALE, SCALE, RoundingMode.HALF_EVEN));
+        assertEquals(1L, FixedPoint.multiply(1, SCALE, ONE / 2, SCALE, SCALE, RoundingMode.HALF_UP));
+        assertEquals(1L, FixedPoint.multiply(1, SCALE, ONE / 2, SCALE, SCALE, RoundingMode.CEILING));
+        assertEquals(-1L, FixedPoint.multiply(-1, SCALE, ONE / 2, SCALE, SCALE, RoundingMode.FLOOR));
+        assertEquals(0L, FixedPoint.multiply(-1, SCALE, ONE / 2, SCALE, SCALE, RoundingMode.CEILING));
+    }
+
+    @Test
+    public void multiply_usesWideIntermediate() {
+        // 100000 * 100000: the raw product is 10^26, far beyond 64 bits, but the result fits
+        long value = 100000 * ONE;
+        assertEquals(10000000000L * ONE, FixedPoint.multiply(value, SCALE, value, SCALE, SCALE, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    public void multiply_throwsOnOverflow() {
+        assertOverflow(() -> FixedPoint.multiply(Long.MAX_VALUE, SCALE, 2 * ONE, SCALE, SCALE, RoundingMode.HALF_EVEN));
+        assertOverflow(() -> FixedPoint.multiply(1000000 * ONE, SCALE, 1000000 * ONE, SCALE, SCALE, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    public void divide_rounds() {
+        assertEquals(33333333L, FixedPoint.divide(ONE, SCALE, 3 * ONE, SCALE, SCALE, RoundingMode.HALF_EVEN));
+        assertEquals(66666667L, FixedPoint.divide(2 * ONE, SCALE, 3 * ONE, SCALE, SCALE, RoundingMode.HALF_EVEN));
+        assertEquals(66666666L, FixedPoint.divide(2 * ONE, SCALE, 3 * ONE, SCALE, SCALE, RoundingMode.FLOOR));
+        assertEquals(-66666667L, FixedPoint.divide(-2 * ONE, SCALE, 3 * ONE, SCALE, SCALE, RoundingMode.FLOOR));
+        // Fewer result digits than the operands
+        assertEquals(67L, FixedPoint.divide(2 * ONE, SCALE, 3 * ONE, SCALE, 2, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    public void divide_throwsOnZeroAndOverflow() {
+        assertOverflow(() -> FixedPoint.divide(ONE, SCALE, 0, SCALE, SCALE, RoundingMode.HALF_EVEN));
+        assertOverflow(() -> FixedPoint.divide(Long.MAX_VALUE, SCALE, 1, SCALE, SCALE, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    public void rescale_roundsHalves() {
+        assertEquals(2L, FixedPoint.rescale(150, 2, 0, RoundingMode.HALF_EVEN));
+        assertEquals(2L, FixedPoint.rescale(250, 2, 0, RoundingMode.HALF_EVEN));
+        assertEquals(3L, FixedPoint.rescale(250, 2, 0, RoundingMode.HALF_UP));
+        assertEquals(-3L, FixedPoint.rescale(-250, 2, 0, RoundingMode.HALF_UP));
+        assertEquals(12500L, FixedPoint.rescale(125, 2, 4, RoundingMode.UNNECESSARY));
+        assertOverflow(() -> FixedPoint.rescale(Long.MAX_VALUE, 0, 1, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    public void multiplyDivide_roundsOnce() {
+        // A third of a lot costing 1.00000000 for part of its quantity
+        assertEquals(33333333L, FixedPoint.multiplyDivide(ONE, 1, 3, RoundingMode.HALF_EVEN));
+        assertEquals(33333334L, FixedPoint.multiplyDivide(ONE, 1, 3, RoundingMode.CEILING));
+        // Intermediate beyond 64 bits
+        assertEquals(Long.MAX_VALUE / 2, FixedPoint.multiplyDivide(Long.MAX_VALUE / 2, 1L << 40, 1L << 40,
+                RoundingMode.UNNECESSARY));
+        assertOverflow(() -> FixedPoint.multiplyDivide(Long.MAX_VALUE, 4, 2, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    public void addAndSubtract_throwOnOverflow() {
+        assertOverflow(() -> FixedPoint.add(Long.MAX_VALUE, 1));
+        assertOverflow(() -> FixedPoint.subtract(Long.MIN_VALUE, 1));
+    }
+
+    @Test
+    public void toPlainString_printsEveryDigit() {
+        assertEquals("1234.56789012", FixedPoint.toPlainString(123456789012L, SCALE));
+        assertEquals("-0.00000005", FixedPoint.toPlainString(-5, SCALE));
+        assertEquals("0.00000000", FixedPoint.toPlainString(0, SCALE));
+        assertEquals("12", FixedPoint.toPlainString(12, 0));
+    }
+
+    @Test
+    public void scaleOf_countsSignificantDecimals() {
+        assertEquals(4, FixedPoint.scaleOf("0.000100", SCALE));
+        assertEquals(0, FixedPoint.scaleOf("1", SCALE));
+        assertEquals(0, FixedPoint.scaleOf("10.000", SCALE));
+        assertEquals(SCALE, FixedPoint.scaleOf(null, SCALE));
+    }
+
+    private static void assertOverflow(Runnable operation) {
+        try {
+            operation.run();
+            fail("Expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+            // Expected
+        }
+    }
+}